@@ -24,14 +24,22 @@ package no.nordicsemi.android.blinky;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
 import butterknife.BindView;
@@ -39,6 +47,12 @@ import butterknife.ButterKnife;
 import butterknife.OnClick;
 import no.nordicsemi.android.ble.livedata.state.ConnectionState;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.core.button.ButtonEventWriter;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.blinky.metrics.LedLatencyTest;
+import no.nordicsemi.android.blinky.metrics.LedThroughputTest;
+import no.nordicsemi.android.blinky.metrics.MetricsOverlay;
+import no.nordicsemi.android.blinky.utils.Utils;
 import no.nordicsemi.android.blinky.viewmodels.BlinkyViewModel;
 
 @SuppressWarnings("ConstantConditions")
@@ -50,6 +64,15 @@ public class BlinkyActivity extends AppCompatActivity {
 	@BindView(R.id.led_switch) SwitchMaterial led;
 	@BindView(R.id.button_state) TextView buttonState;
 
+	/** True while the LED switch is updated to reflect the device state. */
+	private boolean updatingLedSwitch;
+	/** The time of the last Button notification counted in the metrics. */
+	private long lastButtonNotificationTime;
+	private boolean connected;
+	/** The progress of the LED latency test or throughput benchmark, shown while running. */
+	@Nullable
+	private Snackbar ledTestProgress;
+
 	@Override
 	protected void onCreate(final Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -78,7 +101,12 @@ public class BlinkyActivity extends AppCompatActivity {
 		final View content = findViewById(R.id.device_container);
 		final View notSupported = findViewById(R.id.not_supported);
 
-		led.setOnCheckedChangeListener((buttonView, isChecked) -> viewModel.setLedState(isChecked));
+		// Only user actions are sent to the device. Changes made to reflect the device state
+		// are not echoed back.
+		led.setOnCheckedChangeListener((buttonView, isChecked) -> {
+			if (!updatingLedSwitch)
+				viewModel.setLedState(isChecked);
+		});
 		viewModel.getConnectionState().observe(this, state -> {
 			switch (state.getState()) {
 				case CONNECTING:
@@ -108,13 +136,115 @@ public class BlinkyActivity extends AppCompatActivity {
 					break;
 			}
 		});
-		viewModel.getLedState().observe(this, isOn -> {
-			ledState.setText(isOn ? R.string.turn_on : R.string.turn_off);
-			led.setChecked(isOn);
+		viewModel.getLedState().observe(this, state -> {
+			ledState.setText(state.isOn() ? R.string.turn_on : R.string.turn_off);
+			// A confirmation of an older intent would move the switch back, while the
+			// user has already toggled it again.
+			if (state.isLatest())
+				setLedSwitchChecked(state.isOn());
+			viewModel.onLedStateShown(state);
+		});
+		viewModel.getButtonState().observe(this, pressed -> {
+			buttonState.setText(pressed ? R.string.button_pressed : R.string.button_released);
+			// The last value is delivered again after a configuration change, count it once.
+			final long notificationTime = viewModel.getButtonNotificationTime();
+			if (notificationTime != lastButtonNotificationTime) {
+				lastButtonNotificationTime = notificationTime;
+				AppMetrics.BUTTON_LATENCY.recordSince(notificationTime, AppMetrics.now());
+			}
 		});
-		viewModel.getButtonState().observe(this,
-				pressed -> buttonState.setText(pressed ?
-						R.string.button_pressed : R.string.button_released));
+		viewModel.getLedLatencyTest().observe(this, this::onLedLatencyTestChanged);
+		viewModel.getLedLatencyTestResult().observe(this, test -> {
+			if (test.isCancelled()) {
+				Snackbar.make(led, R.string.led_latency_cancelled, Snackbar.LENGTH_SHORT).show();
+				return;
+			}
+			new AlertDialog.Builder(this)
+					.setTitle(R.string.led_latency_title)
+					.setMessage(test.getReport())
+					.setPositiveButton(android.R.string.ok, null)
+					.show();
+		});
+		viewModel.getButtonEventExportResult().observe(this, exporter -> {
+			final String message;
+			if (exporter.getError() != null) {
+				message = getString(R.string.button_event_export_failed, exporter.getError().getMessage());
+			} else if (exporter.getLost() > 0) {
+				message = getString(R.string.button_event_export_lost, exporter.getWritten(),
+						exporter.getFile().getPath(), exporter.getLost());
+			} else {
+				message = getString(R.string.button_event_export_finished, exporter.getWritten(),
+						exporter.getFile().getPath());
+			}
+			Snackbar.make(led, message, Snackbar.LENGTH_LONG).show();
+		});
+		viewModel.getLedThroughputTest().observe(this, this::onLedThroughputTestChanged);
+		viewModel.getLedThroughputTestResult().observe(this, test -> {
+			if (test.isCancelled()) {
+				Snackbar.make(led, R.string.led_throughput_cancelled, Snackbar.LENGTH_SHORT).show();
+				return;
+			}
+			new AlertDialog.Builder(this)
+					.setTitle(R.string.led_throughput_title)
+					.setMessage(test.getReport())
+					.setPositiveButton(android.R.string.ok, null)
+					.show();
+		});
+	}
+
+	@Override
+	protected void onStart() {
+		super.onStart();
+		// The LED latency test taps the switch like the user would.
+		viewModel.setLedToggle(led::toggle);
+	}
+
+	@Override
+	protected void onStop() {
+		super.onStop();
+		viewModel.setLedToggle(null);
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		if (BuildConfig.DEBUG && Utils.isMetricsOverlayEnabled(this))
+			MetricsOverlay.show(this);
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(final Menu menu) {
+		getMenuInflater().inflate(R.menu.blinky, menu);
+		menu.findItem(R.id.button_event_export).setChecked(viewModel.isButtonEventExportRunning());
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(final MenuItem item) {
+		switch (item.getItemId()) {
+			case R.id.led_latency_test:
+				showLedLatencyTestDialog();
+				return true;
+			case R.id.led_throughput_test:
+				showLedThroughputTestDialog();
+				return true;
+			case R.id.button_statistics:
+				new AlertDialog.Builder(this)
+						.setTitle(R.string.button_statistics_title)
+						.setMessage(viewModel.getButtonStatistics().toString())
+						.setPositiveButton(android.R.string.ok, null)
+						.show();
+				return true;
+			case R.id.button_event_export:
+				if (viewModel.isButtonEventExportRunning()) {
+					item.setChecked(false);
+					viewModel.stopButtonEventExport();
+				} else {
+					showButtonEventExportDialog(item);
+				}
+				return true;
+		}
+		return super.onOptionsItemSelected(item);
 	}
 
 	@OnClick(R.id.action_clear_cache)
@@ -123,10 +253,132 @@ public class BlinkyActivity extends AppCompatActivity {
 	}
 
 	private void onConnectionStateChanged(final boolean connected) {
-		led.setEnabled(connected);
+		this.connected = connected;
+		led.setEnabled(connected && !viewModel.isLedTestRunning());
 		if (!connected) {
-			led.setChecked(false);
+			// Writes to a disconnected device would fail until the end of the benchmark.
+			final LedThroughputTest test = viewModel.getLedThroughputTest().getValue();
+			if (test != null && !test.isSimulated())
+				viewModel.cancelLedThroughputTest();
+			setLedSwitchChecked(false);
 			buttonState.setText(R.string.button_unknown);
 		}
 	}
+
+	private void showLedLatencyTestDialog() {
+		final View view = getLayoutInflater().inflate(R.layout.dialog_led_latency, null);
+		final EditText count = view.findViewById(R.id.led_latency_count);
+		final EditText rate = view.findViewById(R.id.led_latency_rate);
+		final CheckBox simulated = view.findViewById(R.id.led_latency_simulated);
+		count.setText(String.valueOf(Utils.getLedLatencyTestCount(this)));
+		rate.setText(String.valueOf(Utils.getLedLatencyTestRate(this)));
+		simulated.setChecked(Utils.isLedLatencyTestSimulated(this));
+
+		new AlertDialog.Builder(this)
+				.setTitle(R.string.led_latency_title)
+				.setView(view)
+				.setNegativeButton(android.R.string.cancel, null)
+				.setPositiveButton(R.string.led_test_start, (dialog, which) -> {
+					try {
+						final int n = Integer.parseInt(count.getText().toString());
+						final float r = Float.parseFloat(rate.getText().toString());
+						if (n <= 0 || r <= 0)
+							return;
+						Utils.setLedLatencyTestSettings(this, n, r, simulated.isChecked());
+						viewModel.startLedLatencyTest(n, r, simulated.isChecked());
+					} catch (final NumberFormatException e) {
+						// Ignore invalid values
+					}
+				})
+				.show();
+	}
+
+	private void showLedThroughputTestDialog() {
+		final View view = getLayoutInflater().inflate(R.layout.dialog_led_throughput, null);
+		final EditText duration = view.findViewById(R.id.led_throughput_duration);
+		final EditText depth = view.findViewById(R.id.led_throughput_depth);
+		final CheckBox simulated = view.findViewById(R.id.led_throughput_simulated);
+		duration.setText(String.valueOf(Utils.getLedThroughputTestDuration(this)));
+		depth.setText(String.valueOf(Utils.getLedThroughputTestDepth(this)));
+		simulated.setChecked(Utils.isLedThroughputTestSimulated(this));
+
+		new AlertDialog.Builder(this)
+				.setTitle(R.string.led_throughput_title)
+				.setView(view)
+				.setNegativeButton(android.R.string.cancel, null)
+				.setPositiveButton(R.string.led_test_start, (dialog, which) -> {
+					try {
+						final int seconds = Integer.parseInt(duration.getText().toString());
+						final int d = Integer.parseInt(depth.getText().toString());
+						if (seconds <= 0 || d <= 0)
+							return;
+						Utils.setLedThroughputTestSettings(this, seconds, d, simulated.isChecked());
+						viewModel.startLedThroughputTest(seconds * 1000L, d, simulated.isChecked());
+					} catch (final NumberFormatException e) {
+						// Ignore invalid values
+					}
+				})
+				.show();
+	}
+
+	private void showButtonEventExportDialog(@NonNull final MenuItem item) {
+		new AlertDialog.Builder(this)
+				.setTitle(R.string.button_event_export_format)
+				.setItems(R.array.button_event_export_formats, (dialog, which) -> {
+					final ButtonEventWriter.Format format = ButtonEventWriter.Format.values()[which];
+					item.setChecked(true);
+					final String path = viewModel.startButtonEventExport(format).getPath();
+					Snackbar.make(led, getString(R.string.button_event_export_started, path),
+							Snackbar.LENGTH_LONG).show();
+				})
+				.show();
+	}
+
+	private void onLedLatencyTestChanged(@Nullable final LedLatencyTest test) {
+		if (test == null) {
+			hideLedTestProgress();
+			return;
+		}
+		showLedTestProgress(getString(R.string.led_latency_progress, test.getShown(), test.getCount()),
+				v -> viewModel.cancelLedLatencyTest());
+	}
+
+	private void onLedThroughputTestChanged(@Nullable final LedThroughputTest test) {
+		if (test == null) {
+			hideLedTestProgress();
+			return;
+		}
+		final LedThroughputTest.Mode mode = test.getCurrentMode();
+		showLedTestProgress(mode != null ?
+						getString(R.string.led_throughput_progress, mode.getDescription()) :
+						getString(R.string.led_throughput_connecting),
+				v -> viewModel.cancelLedThroughputTest());
+	}
+
+	private void showLedTestProgress(@NonNull final String progress,
+									 @NonNull final View.OnClickListener cancel) {
+		// The switch is controlled by the test only.
+		led.setEnabled(false);
+		if (ledTestProgress == null) {
+			ledTestProgress = Snackbar.make(led, progress, Snackbar.LENGTH_INDEFINITE)
+					.setAction(android.R.string.cancel, cancel);
+			ledTestProgress.show();
+		} else {
+			ledTestProgress.setText(progress);
+		}
+	}
+
+	private void hideLedTestProgress() {
+		led.setEnabled(connected);
+		if (ledTestProgress != null) {
+			ledTestProgress.dismiss();
+			ledTestProgress = null;
+		}
+	}
+
+	private void setLedSwitchChecked(final boolean checked) {
+		updatingLedSwitch = true;
+		led.setChecked(checked);
+		updatingLedSwitch = false;
+	}
 }
@@ -3,9 +3,19 @@ package no.nordicsemi.android.blinky;
 import android.app.Application;
 import android.os.Build;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import no.nordicsemi.android.blinky.core.trace.Tracing;
+import no.nordicsemi.android.blinky.metrics.SystemTraceBackend;
+import no.nordicsemi.android.blinky.viewmodels.PresenceMonitor;
+import no.nordicsemi.android.blinky.viewmodels.SharedScanner;
+import no.nordicsemi.android.blinky.viewmodels.SpeculativeConnector;
+
 public class BlinkyApplication extends Application {
+    private SpeculativeConnector speculativeConnector;
+    private SharedScanner sharedScanner;
+    private PresenceMonitor presenceMonitor;
 
     @Override
     public void onCreate() {
@@ -14,5 +24,36 @@ public class BlinkyApplication extends Application {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             AppCompatDelegate.setCompatVectorFromResourcesEnabled(true);
         }
+        // Trace sections of the scanner and profile code are written to the system trace.
+        Tracing.setBackend(new SystemTraceBackend());
+        speculativeConnector = new SpeculativeConnector(this);
+        sharedScanner = new SharedScanner(this);
+        presenceMonitor = new PresenceMonitor(this);
+    }
+
+    /**
+     * Returns the connector that keeps a link to the most likely target device while
+     * the scanner is shown. It is shared between the scanner and the Blinky screens.
+     */
+    @NonNull
+    public SpeculativeConnector getSpeculativeConnector() {
+        return speculativeConnector;
+    }
+
+    /**
+     * Returns the scanner shared by all components which need scan results.
+     */
+    @NonNull
+    public SharedScanner getSharedScanner() {
+        return sharedScanner;
+    }
+
+    /**
+     * Returns the monitor reporting when known devices come into and go out of range
+     * while the app is in the background.
+     */
+    @NonNull
+    public PresenceMonitor getPresenceMonitor() {
+        return presenceMonitor;
     }
 }
@@ -28,14 +28,17 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.core.app.ActivityCompat;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.DividerItemDecoration;
@@ -45,16 +48,47 @@ import androidx.recyclerview.widget.SimpleItemAnimator;
 
 import com.google.android.material.appbar.MaterialToolbar;
 
+import java.io.File;
+import java.io.IOException;
+
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import no.nordicsemi.android.blinky.adapter.DevicesAdapter;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.core.SortMode;
+import no.nordicsemi.android.blinky.metrics.MetricsOverlay;
 import no.nordicsemi.android.blinky.utils.Utils;
+import no.nordicsemi.android.blinky.viewmodels.ScanEvent;
 import no.nordicsemi.android.blinky.viewmodels.ScannerStateLiveData;
 import no.nordicsemi.android.blinky.viewmodels.ScannerViewModel;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanEnvironmentSimulator;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanRecorder;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanReplayer;
 
 public class ScannerActivity extends AppCompatActivity implements DevicesAdapter.OnItemClickListener {
+    /**
+     * Number of simulated advertisers to show instead of scan results, for load testing.
+     * Honored only in debug builds, for example:
+     * <pre>adb shell am start -n no.nordicsemi.android.nrfblinky/no.nordicsemi.android.blinky.ScannerActivity --ei no.nordicsemi.android.blinky.EXTRA_SIMULATED_DEVICES 500</pre>
+     */
+    public static final String EXTRA_SIMULATED_DEVICES = "no.nordicsemi.android.blinky.EXTRA_SIMULATED_DEVICES";
+    /** The seed of the simulated environment, as long. */
+    public static final String EXTRA_SIMULATION_SEED = "no.nordicsemi.android.blinky.EXTRA_SIMULATION_SEED";
+    /**
+     * Name of a file in the app's external files directory to record scan results to.
+     * Honored only in debug builds.
+     */
+    public static final String EXTRA_RECORD_SCAN = "no.nordicsemi.android.blinky.EXTRA_RECORD_SCAN";
+    /**
+     * Name of a file in the app's external files directory to replay instead of scanning.
+     * Honored only in debug builds.
+     */
+    public static final String EXTRA_REPLAY_SCAN = "no.nordicsemi.android.blinky.EXTRA_REPLAY_SCAN";
+    /** The replay speed factor, as float. 1 is the original speed, 0 is as fast as possible. */
+    public static final String EXTRA_REPLAY_SPEED = "no.nordicsemi.android.blinky.EXTRA_REPLAY_SPEED";
+
+    private static final String TAG = "ScannerActivity";
     private static final int REQUEST_ACCESS_FINE_LOCATION = 1022; // random number
 
     private ScannerViewModel scannerViewModel;
@@ -79,7 +113,14 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
 
         // Create view model containing utility methods for scanning
         scannerViewModel = new ViewModelProvider(this).get(ScannerViewModel.class);
+        if (BuildConfig.DEBUG) {
+            configureLoadTesting(getIntent());
+        }
         scannerViewModel.getScannerState().observe(this, this::startScan);
+        scannerViewModel.getScanEvents().observe(this, event -> {
+            if (event == ScanEvent.FAILED)
+                Toast.makeText(this, R.string.scanning_failed, Toast.LENGTH_SHORT).show();
+        });
 
         // Configure the recycler view
         final RecyclerView recyclerView = findViewById(R.id.recycler_view_ble_devices);
@@ -94,6 +135,13 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
         recyclerView.setAdapter(adapter);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (BuildConfig.DEBUG && Utils.isMetricsOverlayEnabled(this))
+            MetricsOverlay.show(this);
+    }
+
     @Override
     protected void onRestart() {
         super.onRestart();
@@ -109,8 +157,16 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
     @Override
     public boolean onCreateOptionsMenu(final Menu menu) {
         getMenuInflater().inflate(R.menu.filter, menu);
+        setUpSearch(menu.findItem(R.id.search));
         menu.findItem(R.id.filter_uuid).setChecked(scannerViewModel.isUuidFilterEnabled());
         menu.findItem(R.id.filter_nearby).setChecked(scannerViewModel.isNearbyFilterEnabled());
+        menu.findItem(R.id.speculative_connect).setChecked(scannerViewModel.isSpeculativeConnectEnabled());
+        menu.findItem(R.id.rate_limit).setChecked(scannerViewModel.isRateLimitEnabled());
+        menu.findItem(R.id.presence_monitoring).setVisible(scannerViewModel.isPresenceMonitoringSupported())
+                .setChecked(scannerViewModel.isPresenceMonitoringEnabled());
+        menu.findItem(getSortMenuItem(scannerViewModel.getSortMode())).setChecked(true);
+        menu.findItem(R.id.metrics_overlay).setVisible(BuildConfig.DEBUG)
+                .setChecked(Utils.isMetricsOverlayEnabled(this));
         return true;
     }
 
@@ -125,12 +181,42 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
                 item.setChecked(!item.isChecked());
                 scannerViewModel.filterByDistance(item.isChecked());
                 return true;
+            case R.id.speculative_connect:
+                item.setChecked(!item.isChecked());
+                scannerViewModel.setSpeculativeConnectEnabled(item.isChecked());
+                return true;
+            case R.id.sort_discovery:
+            case R.id.sort_signal:
+            case R.id.sort_name:
+            case R.id.sort_last_seen:
+            case R.id.sort_connections:
+                item.setChecked(true);
+                scannerViewModel.setSortMode(getSortMode(item.getItemId()));
+                return true;
+            case R.id.rate_limit:
+                item.setChecked(!item.isChecked());
+                scannerViewModel.setRateLimitEnabled(item.isChecked());
+                return true;
+            case R.id.presence_monitoring:
+                item.setChecked(!item.isChecked());
+                scannerViewModel.setPresenceMonitoringEnabled(item.isChecked());
+                return true;
+            case R.id.metrics_overlay:
+                item.setChecked(!item.isChecked());
+                Utils.setMetricsOverlayEnabled(this, item.isChecked());
+                if (item.isChecked())
+                    MetricsOverlay.show(this);
+                else
+                    MetricsOverlay.hide(this);
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
     public void onItemClick(@NonNull final DiscoveredBluetoothDevice device) {
+        scannerViewModel.onDeviceSelected(device);
+
         final Intent controlBlinkIntent = new Intent(this, BlinkyActivity.class);
         controlBlinkIntent.putExtra(BlinkyActivity.EXTRA_DEVICE, device);
         startActivity(controlBlinkIntent);
@@ -174,6 +260,44 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
         startActivity(intent);
     }
 
+    /**
+     * Replaces or records the scan results based on the debug extras in the intent.
+     */
+    private void configureLoadTesting(@NonNull final Intent intent) {
+        final File directory = getExternalFilesDir(null);
+        final int simulatedDevices = intent.getIntExtra(EXTRA_SIMULATED_DEVICES, 0);
+        final String replayFile = intent.getStringExtra(EXTRA_REPLAY_SCAN);
+        final String recordFile = intent.getStringExtra(EXTRA_RECORD_SCAN);
+
+        if (!scannerViewModel.isScanSimulated()) {
+            if (replayFile != null) {
+                try {
+                    final float speed = intent.getFloatExtra(EXTRA_REPLAY_SPEED, 1.0f);
+                    scannerViewModel.setScanSource(
+                            new ScanReplayer(new File(directory, replayFile), speed, true));
+                } catch (final IOException | IllegalStateException e) {
+                    Log.e(TAG, "Replaying scan failed", e);
+                }
+            } else if (simulatedDevices > 0) {
+                try {
+                    scannerViewModel.setScanSource(new ScanEnvironmentSimulator.Builder()
+                            .setDeviceCount(simulatedDevices)
+                            .setSeed(intent.getLongExtra(EXTRA_SIMULATION_SEED, 0))
+                            .build());
+                } catch (final IllegalStateException e) {
+                    Log.e(TAG, "Simulating scan failed", e);
+                }
+            }
+        }
+        if (recordFile != null && !scannerViewModel.isScanRecorded()) {
+            try {
+                scannerViewModel.setScanRecorder(new ScanRecorder(new File(directory, recordFile)));
+            } catch (final IOException e) {
+                Log.e(TAG, "Recording scan failed", e);
+            }
+        }
+    }
+
     /**
      * Start scanning for Bluetooth devices or displays a message based on the scanner state.
      */
@@ -234,4 +358,61 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
         scannerViewModel.getDevices().clear();
         scannerViewModel.getScannerState().clearRecords();
     }
+
+    private void setUpSearch(@NonNull final MenuItem item) {
+        final SearchView searchView = (SearchView) item.getActionView();
+        searchView.setQueryHint(getString(R.string.menu_search_hint));
+        // Restore the query after the activity has been recreated.
+        final String query = scannerViewModel.getSearchQuery();
+        if (!query.isEmpty()) {
+            item.expandActionView();
+            searchView.setQuery(query, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(final String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(final String query) {
+                scannerViewModel.search(query);
+                return true;
+            }
+        });
+    }
+
+    private static int getSortMenuItem(@NonNull final SortMode mode) {
+        switch (mode) {
+            case SIGNAL:
+                return R.id.sort_signal;
+            case NAME:
+                return R.id.sort_name;
+            case LAST_SEEN:
+                return R.id.sort_last_seen;
+            case CONNECTIONS:
+                return R.id.sort_connections;
+            case DISCOVERY:
+            default:
+                return R.id.sort_discovery;
+        }
+    }
+
+    @NonNull
+    private static SortMode getSortMode(final int menuItemId) {
+        switch (menuItemId) {
+            case R.id.sort_signal:
+                return SortMode.SIGNAL;
+            case R.id.sort_name:
+                return SortMode.NAME;
+            case R.id.sort_last_seen:
+                return SortMode.LAST_SEEN;
+            case R.id.sort_connections:
+                return SortMode.CONNECTIONS;
+            case R.id.sort_discovery:
+            default:
+                return SortMode.DISCOVERY;
+        }
+    }
 }
@@ -30,20 +30,40 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.recyclerview.widget.DiffUtil;
+import androidx.lifecycle.LifecycleOwner;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import no.nordicsemi.android.blinky.R;
-import no.nordicsemi.android.blinky.ScannerActivity;
+import no.nordicsemi.android.blinky.core.DeviceListSnapshot;
+import no.nordicsemi.android.blinky.core.DeviceSnapshot;
+import no.nordicsemi.android.blinky.core.ListUpdates;
+import no.nordicsemi.android.blinky.core.trace.Tracing;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
 import no.nordicsemi.android.blinky.viewmodels.DevicesLiveData;
 
+/**
+ * The adapter of the device list. The adapter keeps its own copy of the sorted list and
+ * updates it with the changes recorded by {@link DevicesLiveData}, notifying each insert,
+ * removal and move separately. Rows are bound from the {@link DeviceListSnapshot} given with
+ * the changes, not from the devices, which are being updated on the scanner thread.
+ * <p>
+ * A new adapter starts with the whole list, see {@link DevicesLiveData#resync()}.
+ */
 @SuppressWarnings("unused")
 public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHolder> {
-	private List<DiscoveredBluetoothDevice> devices;
+	private final List<DiscoveredBluetoothDevice> devices = new ArrayList<>();
+	private DeviceListSnapshot<DiscoveredBluetoothDevice> snapshot;
+	/**
+	 * The last seen time of each device when its latency was last recorded, by discovery index.
+	 * Rows bound again on scrolling or after a reset show the same advertisement.
+	 */
+	private long[] recordedLastSeen = new long[64];
 	private OnItemClickListener onItemClickListener;
 
 	@FunctionalInterface
@@ -55,17 +75,56 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 		onItemClickListener = listener;
 	}
 
-	public DevicesAdapter(@NonNull final ScannerActivity activity,
+	public DevicesAdapter(@NonNull final LifecycleOwner owner,
 						  @NonNull final DevicesLiveData devicesLiveData) {
 		setHasStableIds(true);
-		devicesLiveData.observe(activity, newDevices -> {
-			final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
-					new DeviceDiffCallback(devices, newDevices), false);
-			devices = newDevices;
-			result.dispatchUpdatesTo(this);
+		// The changes were dispatched to the previous adapter, if there was one.
+		devicesLiveData.resync();
+		devicesLiveData.observe(owner, version -> {
+			Tracing.beginSection("DevicesAdapter.dispatchUpdates");
+			final long start = AppMetrics.now();
+			try {
+				snapshot = devicesLiveData.dispatchUpdatesTo(updateListener);
+			} finally {
+				AppMetrics.SCAN_DISPATCH_TIME.recordSince(start, AppMetrics.now());
+				Tracing.endSection();
+			}
 		});
 	}
 
+	private final ListUpdates.Listener<DiscoveredBluetoothDevice> updateListener =
+			new ListUpdates.Listener<DiscoveredBluetoothDevice>() {
+		@Override
+		public void onReset(final List<DiscoveredBluetoothDevice> items) {
+			devices.clear();
+			devices.addAll(items);
+			notifyDataSetChanged();
+		}
+
+		@Override
+		public void onInserted(final int position, final DiscoveredBluetoothDevice item) {
+			devices.add(position, item);
+			notifyItemInserted(position);
+		}
+
+		@Override
+		public void onRemoved(final int position) {
+			devices.remove(position);
+			notifyItemRemoved(position);
+		}
+
+		@Override
+		public void onMoved(final int fromPosition, final int toPosition) {
+			devices.add(toPosition, devices.remove(fromPosition));
+			notifyItemMoved(fromPosition, toPosition);
+		}
+
+		@Override
+		public void onChanged(final int position) {
+			notifyItemChanged(position);
+		}
+	};
+
 	@NonNull
 	@Override
 	public ViewHolder onCreateViewHolder(@NonNull final ViewGroup parent, final int viewType) {
@@ -76,16 +135,41 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 
 	@Override
 	public void onBindViewHolder(@NonNull final ViewHolder holder, final int position) {
-		final DiscoveredBluetoothDevice device = devices.get(position);
-		final String deviceName = device.getName();
-
-		if (!TextUtils.isEmpty(deviceName))
-			holder.deviceName.setText(deviceName);
-		else
-			holder.deviceName.setText(R.string.unknown_device);
-		holder.deviceAddress.setText(device.getAddress());
-		final int rssiPercent = (int) (100.0f * (127.0f + device.getRssi()) / (127.0f + 20.0f));
-		holder.rssi.setImageLevel(rssiPercent);
+		Tracing.beginSection("DevicesAdapter.onBindViewHolder");
+		try {
+			final DiscoveredBluetoothDevice device = devices.get(position);
+			final DeviceSnapshot<DiscoveredBluetoothDevice> state = snapshot.get(device);
+			final String deviceName = state.getName();
+
+			if (!TextUtils.isEmpty(deviceName))
+				holder.deviceName.setText(deviceName);
+			else
+				holder.deviceName.setText(R.string.unknown_device);
+			holder.deviceAddress.setText(device.getAddress());
+			holder.rssi.setImageLevel(state.getSignalPercent());
+			recordLatency(device.getDiscoveryIndex(), state.getLastSeen());
+		} finally {
+			Tracing.endSection();
+		}
+	}
+
+	/**
+	 * Records the time from the advertisement to the row, unless the advertisement
+	 * has already been shown.
+	 */
+	private void recordLatency(final int discoveryIndex, final long lastSeen) {
+		if (discoveryIndex >= recordedLastSeen.length)
+			recordedLastSeen = Arrays.copyOf(recordedLastSeen,
+					Math.max(discoveryIndex + 1, recordedLastSeen.length * 2));
+		if (lastSeen <= recordedLastSeen[discoveryIndex])
+			return;
+		recordedLastSeen[discoveryIndex] = lastSeen;
+		AppMetrics.SCAN_ROW_LATENCY.recordSince(lastSeen, AppMetrics.now());
+	}
+
+	@NonNull
+	public DiscoveredBluetoothDevice getItem(final int position) {
+		return devices.get(position);
 	}
 
 	@Override
@@ -95,7 +179,7 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 
 	@Override
 	public int getItemCount() {
-		return devices != null ? devices.size() : 0;
+		return devices.size();
 	}
 
 	public boolean isEmpty() {
@@ -112,8 +196,12 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 			ButterKnife.bind(this, view);
 
 			view.findViewById(R.id.device_container).setOnClickListener(v -> {
+				// The row may be tapped while it is being removed.
+				final int position = getAdapterPosition();
+				if (position == RecyclerView.NO_POSITION)
+					return;
 				if (onItemClickListener != null) {
-					onItemClickListener.onItemClick(devices.get(getAdapterPosition()));
+					onItemClickListener.onItemClick(devices.get(position));
 				}
 			});
 		}
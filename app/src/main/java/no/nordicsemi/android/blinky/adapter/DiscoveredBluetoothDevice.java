@@ -29,21 +29,41 @@ import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import no.nordicsemi.android.blinky.core.Addresses;
+import no.nordicsemi.android.blinky.core.BatchCoalescer;
+import no.nordicsemi.android.blinky.core.DeviceRecord;
+import no.nordicsemi.android.blinky.core.RssiModel;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 
-public class DiscoveredBluetoothDevice implements Parcelable {
+/**
+ * The Android adapter of a {@link DeviceRecord}, keeping also the {@link BluetoothDevice}
+ * and the last {@link ScanResult}.
+ */
+public class DiscoveredBluetoothDevice extends DeviceRecord implements Parcelable {
 	private final BluetoothDevice device;
 	private ScanResult lastScanResult;
-	private String name;
-	private int rssi;
-	private int previousRssi;
-	private int highestRssi = -128;
 
 	public DiscoveredBluetoothDevice(@NonNull final ScanResult scanResult) {
+		super(Addresses.parse(scanResult.getDevice().getAddress()));
 		device = scanResult.getDevice();
 		update(scanResult);
 	}
 
+	/**
+	 * Creates the device from its advertisements in a coalesced batch.
+	 *
+	 * @param lastScanResult the last scan result of the device in the batch.
+	 * @param batch          the coalesced batch.
+	 * @param group          the group of the device in the batch.
+	 */
+	public DiscoveredBluetoothDevice(@NonNull final ScanResult lastScanResult,
+									 @NonNull final BatchCoalescer batch, final int group) {
+		super(batch.getAddress(group));
+		device = lastScanResult.getDevice();
+		update(lastScanResult, batch, group);
+	}
+
 	@NonNull
 	public BluetoothDevice getDevice() {
 		return device;
@@ -55,71 +75,46 @@ public class DiscoveredBluetoothDevice implements Parcelable {
 	}
 
 	@Nullable
+	@Override
 	public String getName() {
-		return name;
-	}
-
-	@SuppressWarnings("WeakerAccess")
-	public int getRssi() {
-		return rssi;
+		return super.getName();
 	}
 
 	@NonNull
 	public ScanResult getScanResult() {
 		return lastScanResult;
 	}
-	/**
-	 * Returns the highest recorded RSSI value during the scan.
-	 *
-	 * @return Highest RSSI value.
-	 */
-	public int getHighestRssi() {
-		return highestRssi;
-	}
 
 	/**
-	 * This method returns true if the RSSI range has changed. The RSSI range depends on drawable
-	 * levels from {@link no.nordicsemi.android.blinky.R.drawable#ic_signal_bar}.
+	 * Updates the device values based on the scan result. If the advertising data have not
+	 * changed, only the RSSI and the last seen time are updated and the previous scan result
+	 * is kept.
 	 *
-	 * @return True, if the RSSI range has changed.
+	 * @param scanResult the new received scan result.
+	 * @return True, if the advertising data have changed.
 	 */
-	/* package */ boolean hasRssiLevelChanged() {
-		final int newLevel =
-				rssi <= 10 ?
-						0 :
-						rssi <= 28 ?
-								1 :
-								rssi <= 45 ?
-										2 :
-										rssi <= 65 ?
-												3 :
-												4;
-		final int oldLevel =
-				previousRssi <= 10 ?
-						0 :
-						previousRssi <= 28 ?
-								1 :
-								previousRssi <= 45 ?
-										2 :
-										previousRssi <= 65 ?
-												3 :
-												4;
-		return newLevel != oldLevel;
+	public boolean update(@NonNull final ScanResult scanResult) {
+		final boolean changed = update(scanResult.getRssi(), scanResult.getTimestampNanos(),
+				getBytes(scanResult));
+		if (changed || lastScanResult == null)
+			lastScanResult = scanResult;
+		return changed;
 	}
 
 	/**
-	 * Updates the device values based on the scan result.
+	 * Updates the device values based on all its scan results in a batch.
 	 *
-	 * @param scanResult the new received scan result.
+	 * @param lastScanResult the last scan result of the device in the batch.
+	 * @param batch          the coalesced batch.
+	 * @param group          the group of the device in the batch.
+	 * @return True, if the advertising data have changed.
 	 */
-	public void update(@NonNull final ScanResult scanResult) {
-		lastScanResult = scanResult;
-		name = scanResult.getScanRecord() != null ?
-				scanResult.getScanRecord().getDeviceName() : null;
-		previousRssi = rssi;
-		rssi = scanResult.getRssi();
-		if (highestRssi < rssi)
-			highestRssi = rssi;
+	public boolean update(@NonNull final ScanResult lastScanResult,
+						  @NonNull final BatchCoalescer batch, final int group) {
+		final boolean changed = update(batch, group, getBytes(lastScanResult));
+		if (changed || this.lastScanResult == null)
+			this.lastScanResult = lastScanResult;
+		return changed;
 	}
 
 	public boolean matches(@NonNull final ScanResult scanResult) {
@@ -143,22 +138,28 @@ public class DiscoveredBluetoothDevice implements Parcelable {
 	// Parcelable implementation
 
 	private DiscoveredBluetoothDevice(final Parcel in) {
-		device = in.readParcelable(BluetoothDevice.class.getClassLoader());
-		lastScanResult = in.readParcelable(ScanResult.class.getClassLoader());
-		name = in.readString();
-		rssi = in.readInt();
-		previousRssi = in.readInt();
-		highestRssi = in.readInt();
+		this(in.readParcelable(BluetoothDevice.class.getClassLoader()),
+				in.readParcelable(ScanResult.class.getClassLoader()),
+				in.readLong(),
+				new RssiModel(in.readInt(), in.readInt(), in.readInt(), in.readFloat()));
+	}
+
+	private DiscoveredBluetoothDevice(final BluetoothDevice device, final ScanResult lastScanResult,
+									  final long lastSeen, final RssiModel rssiModel) {
+		super(Addresses.parse(device.getAddress()), getBytes(lastScanResult), lastSeen, rssiModel);
+		this.device = device;
+		this.lastScanResult = lastScanResult;
 	}
 
 	@Override
 	public void writeToParcel(final Parcel parcel, final int flags) {
 		parcel.writeParcelable(device, flags);
 		parcel.writeParcelable(lastScanResult, flags);
-		parcel.writeString(name);
-		parcel.writeInt(rssi);
-		parcel.writeInt(previousRssi);
-		parcel.writeInt(highestRssi);
+		parcel.writeLong(getLastSeen());
+		parcel.writeInt(getRssiModel().getRssi());
+		parcel.writeInt(getRssiModel().getPreviousRssi());
+		parcel.writeInt(getRssiModel().getHighestRssi());
+		parcel.writeFloat(getRssiModel().getSmoothedRssi());
 	}
 
 	@Override
@@ -166,6 +167,12 @@ public class DiscoveredBluetoothDevice implements Parcelable {
 		return 0;
 	}
 
+	@Nullable
+	private static byte[] getBytes(@NonNull final ScanResult scanResult) {
+		final ScanRecord record = scanResult.getScanRecord();
+		return record != null ? record.getBytes() : null;
+	}
+
 	public static final Creator<DiscoveredBluetoothDevice> CREATOR = new Creator<DiscoveredBluetoothDevice>() {
 		@Override
 		public DiscoveredBluetoothDevice createFromParcel(final Parcel source) {
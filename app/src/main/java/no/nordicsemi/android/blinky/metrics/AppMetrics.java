@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.metrics;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import no.nordicsemi.android.blinky.core.metrics.Counter;
+import no.nordicsemi.android.blinky.core.metrics.Histogram;
+import no.nordicsemi.android.blinky.core.metrics.MetricsRegistry;
+import no.nordicsemi.android.blinky.core.metrics.Unit;
+
+/**
+ * Metrics of the scanning and GATT hot paths. All times are taken from
+ * {@link SystemClock#elapsedRealtimeNanos()}, the clock used for scan result timestamps.
+ * Recording takes a few atomic operations and does not allocate.
+ */
+public final class AppMetrics {
+	public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+	/** Number of scan results delivered. */
+	public static final Counter SCAN_RESULTS = REGISTRY.counter("scan.results");
+	/** Number of scan results in each batch, 1 when results are not batched. */
+	public static final Histogram SCAN_BATCH_SIZE = REGISTRY.histogram("scan.batch_size", Unit.COUNT);
+	/** Number of distinct devices in each batch, after coalescing. */
+	public static final Histogram SCAN_BATCH_DEVICES = REGISTRY.histogram("scan.batch_devices", Unit.COUNT);
+	/** Number of advertisements of known devices with the same payload as the previous one. */
+	public static final Counter SCAN_FINGERPRINT_HITS = REGISTRY.counter("scan.fingerprint_hits");
+	/** Number of advertisements of known devices with a changed payload, which were parsed again. */
+	public static final Counter SCAN_FINGERPRINT_MISSES = REGISTRY.counter("scan.fingerprint_misses");
+	/** Number of advertisements only sampled, as their device exceeded the rate limit. */
+	public static final Counter SCAN_RATE_LIMITED = REGISTRY.counter("scan.rate_limited");
+	/** Number of times scanning was started. */
+	public static final Counter SCAN_STARTS = REGISTRY.counter("scan.starts");
+	/** Number of scans started by the shared scanner, for any number of subscribers. */
+	public static final Counter SCAN_SESSIONS = REGISTRY.counter("scan.sessions");
+	/** Number of times scanning failed to start. */
+	public static final Counter SCAN_FAILURES = REGISTRY.counter("scan.failures");
+	/** CPU time of handling a delivery of the foreground scan, in the scan callback. */
+	public static final Histogram SCAN_DELIVERY_CPU = REGISTRY.histogram("scan.delivery_cpu", Unit.NANOSECONDS);
+	/** Number of deliveries of the background presence scan and exit alarm, each waking the app. */
+	public static final Counter PRESENCE_DELIVERIES = REGISTRY.counter("presence.deliveries");
+	/** CPU time of handling a delivery of the background presence scan. */
+	public static final Histogram PRESENCE_DELIVERY_CPU = REGISTRY.histogram("presence.delivery_cpu", Unit.NANOSECONDS);
+	/** Number of monitored devices which came into range. */
+	public static final Counter PRESENCE_ENTERS = REGISTRY.counter("presence.enters");
+	/** Number of monitored devices which went out of range. */
+	public static final Counter PRESENCE_EXITS = REGISTRY.counter("presence.exits");
+	/** Time of adding a batch of results to the device list. */
+	public static final Histogram SCAN_INGEST_TIME = REGISTRY.histogram("scan.ingest_time", Unit.NANOSECONDS);
+	/** Time of finding the devices matching a new search query, without applying the filter. */
+	public static final Histogram SCAN_SEARCH_TIME = REGISTRY.histogram("scan.search_time", Unit.NANOSECONDS);
+	/** Time of applying the filter to the device list. */
+	public static final Histogram SCAN_FILTER_TIME = REGISTRY.histogram("scan.filter_time", Unit.NANOSECONDS);
+	/** Time of replaying the recorded changes of the device list to the adapter. */
+	public static final Histogram SCAN_DISPATCH_TIME = REGISTRY.histogram("scan.dispatch_time", Unit.NANOSECONDS);
+	/** Time from receiving an advertisement to first binding a row showing it. */
+	public static final Histogram SCAN_ROW_LATENCY = REGISTRY.histogram("scan.advertisement_to_row", Unit.NANOSECONDS);
+	/** Time from sending a LED write request to receiving the response. */
+	public static final Histogram LED_WRITE_TIME = REGISTRY.histogram("gatt.led_write", Unit.NANOSECONDS);
+	/** Number of failed LED writes. */
+	public static final Counter LED_WRITE_FAILURES = REGISTRY.counter("gatt.led_write_failures");
+	/** Number of connection state changes. */
+	public static final Counter CONNECTION_EVENTS = REGISTRY.counter("gatt.connection_events");
+	/** Number of Button state notifications. */
+	public static final Counter BUTTON_EVENTS = REGISTRY.counter("gatt.button_events");
+	/** Time from receiving a Button notification to showing the new state. */
+	public static final Histogram BUTTON_LATENCY = REGISTRY.histogram("gatt.button_to_ui", Unit.NANOSECONDS);
+
+	private AppMetrics() {
+		// empty
+	}
+
+	/**
+	 * Returns the counter of advertisements of the given device that were only sampled,
+	 * as it exceeded the rate limit. The counter is created on first use, so it should be
+	 * kept by the caller.
+	 *
+	 * @param address the device address.
+	 * @return The counter, named scan.rate_limited.&lt;address&gt;.
+	 */
+	@NonNull
+	public static Counter deviceRateLimited(@NonNull final String address) {
+		return REGISTRY.counter(SCAN_RATE_LIMITED.getName() + "." + address);
+	}
+
+	/**
+	 * Returns the current time, in nanoseconds.
+	 */
+	public static long now() {
+		return SystemClock.elapsedRealtimeNanos();
+	}
+}
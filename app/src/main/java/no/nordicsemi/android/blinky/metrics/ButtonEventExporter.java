@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.metrics;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import no.nordicsemi.android.blinky.core.button.ButtonEventLog;
+import no.nordicsemi.android.blinky.core.button.ButtonEventWriter;
+
+/**
+ * Streams Button events from a {@link ButtonEventLog} to a file on a background thread.
+ * <p>
+ * The export starts with the oldest event kept in the log and continues with new events
+ * until stopped. The log is polled every {@link #POLL_INTERVAL} ms, so events are lost only
+ * if more than the log capacity is recorded in that time. The number of lost events is
+ * reported in {@link #getLost()}.
+ */
+public class ButtonEventExporter {
+	private static final String TAG = "ButtonEventExporter";
+	private static final long POLL_INTERVAL = 100; // [ms]
+	private static final int CHUNK_SIZE = 512;
+
+	public interface Listener {
+		/** Called on the main thread when the export has been stopped and the file closed. */
+		void onStopped(@NonNull final ButtonEventExporter exporter);
+	}
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final ButtonEventLog.Reader reader;
+	private final File file;
+	private final ButtonEventWriter.Format format;
+
+	// Used only on the executor thread.
+	private final long[] times = new long[CHUNK_SIZE];
+	private final byte[] states = new byte[CHUNK_SIZE];
+	private ButtonEventWriter writer;
+
+	private volatile long written;
+	@Nullable
+	private volatile IOException error;
+	private boolean stopped;
+
+	/**
+	 * Creates the exporter.
+	 *
+	 * @param log    the log to export.
+	 * @param file   the output file, overwritten if exists.
+	 * @param format the file format.
+	 */
+	public ButtonEventExporter(@NonNull final ButtonEventLog log, @NonNull final File file,
+							   @NonNull final ButtonEventWriter.Format format) {
+		this.reader = log.newReader();
+		this.file = file;
+		this.format = format;
+	}
+
+	/**
+	 * Opens the file and starts streaming events.
+	 */
+	public void start() {
+		executor.execute(() -> {
+			try {
+				writer = new ButtonEventWriter(new FileOutputStream(file), format);
+			} catch (final IOException e) {
+				onError(e);
+			}
+		});
+		executor.scheduleWithFixedDelay(this::drain, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes the remaining events and closes the file.
+	 *
+	 * @param listener the listener notified when the file has been closed.
+	 */
+	public void stop(@Nullable final Listener listener) {
+		if (stopped)
+			return;
+		stopped = true;
+		executor.execute(() -> {
+			drain();
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (final IOException e) {
+					onError(e);
+				}
+				writer = null;
+			}
+			Log.i(TAG, "Exported " + written + " events to " + file + ", lost: " + reader.getLost());
+			if (listener != null)
+				handler.post(() -> listener.onStopped(this));
+		});
+		executor.shutdown();
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	@NonNull
+	public File getFile() {
+		return file;
+	}
+
+	/** Returns the number of events written to the file so far. */
+	public long getWritten() {
+		return written;
+	}
+
+	/** Returns the number of events overwritten in the log before they were exported. */
+	public long getLost() {
+		return reader.getLost();
+	}
+
+	/** Returns the error which stopped the export, or null. */
+	@Nullable
+	public IOException getError() {
+		return error;
+	}
+
+	private void drain() {
+		if (writer == null)
+			return;
+		try {
+			int count;
+			while ((count = reader.read(times, states)) > 0)
+				writer.write(times, states, count);
+			writer.flush();
+			written = writer.getWritten();
+		} catch (final IOException e) {
+			onError(e);
+		}
+	}
+
+	private void onError(@NonNull final IOException e) {
+		Log.e(TAG, "Exporting Button events failed", e);
+		error = e;
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (final IOException ignored) {
+				// Already failed
+			}
+			writer = null;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.metrics;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+import no.nordicsemi.android.blinky.core.metrics.Samples;
+import no.nordicsemi.android.blinky.core.metrics.Unit;
+import no.nordicsemi.android.blinky.profile.LedLink;
+
+/**
+ * A run of LED toggles measuring the end-to-end latency of the LED control.
+ * <p>
+ * Each toggle is timestamped when the switch is tapped, when the write is enqueued, when
+ * the write has been confirmed by the device, and when the confirmed state is shown on the UI.
+ * The latency of each segment is reported as p50, p95 and p99 over all toggles confirmed
+ * in time. The toggles are tapped at a fixed rate, so with rates higher than the link can
+ * handle the writes queue up and the enqueue to sent segment grows.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class LedLatencyTest implements LedLink.LedWriteListener {
+	private static final String TAG = "LedLatencyTest";
+	/** Time to wait for toggles to be confirmed after the last one was tapped. */
+	private static final long CONFIRMATION_TIMEOUT = 5000; // [ms]
+
+	public interface Listener {
+		/** Called when a toggle has been tapped or confirmed. */
+		void onProgress(@NonNull final LedLatencyTest test);
+
+		/** Called when the test has finished or was cancelled. */
+		void onFinished(@NonNull final LedLatencyTest test);
+	}
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final SparseArray<Toggle> toggles = new SparseArray<>();
+	private final Runnable tap;
+	private final Listener listener;
+	private final int count;
+	private final float rate;
+	private final boolean simulated;
+
+	private final Samples tapToEnqueue = new Samples("tap -> enqueue", Unit.NANOSECONDS);
+	private final Samples enqueueToSent = new Samples("enqueue -> sent", Unit.NANOSECONDS);
+	private final Samples sentToUi = new Samples("sent -> UI", Unit.NANOSECONDS);
+	private final Samples total = new Samples("tap -> UI", Unit.NANOSECONDS);
+
+	private long startTime; // [ms] uptime
+	private int tapped;
+	private int shown;
+	private int ticks;
+	private boolean running;
+	private boolean finished;
+	private boolean cancelled;
+
+	/**
+	 * Creates the test.
+	 *
+	 * @param count     the number of toggles.
+	 * @param rate      the number of toggles per second.
+	 * @param simulated true if the toggles are sent to the simulated peripheral.
+	 * @param tap       the action toggling the LED switch, which results in a call to
+	 *                  {@link #onTapped(int, long)}.
+	 * @param listener  the listener.
+	 */
+	public LedLatencyTest(final int count, final float rate, final boolean simulated,
+						  @NonNull final Runnable tap, @NonNull final Listener listener) {
+		if (count <= 0 || rate <= 0)
+			throw new IllegalArgumentException("Count and rate must be positive");
+		this.count = count;
+		this.rate = rate;
+		this.simulated = simulated;
+		this.tap = tap;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts tapping the switch.
+	 */
+	public void start() {
+		if (running || finished)
+			return;
+		running = true;
+		startTime = SystemClock.uptimeMillis();
+		handler.post(this::tick);
+	}
+
+	/**
+	 * Stops the test. The listener is notified, but no results are calculated.
+	 */
+	public void cancel() {
+		if (finished)
+			return;
+		cancelled = true;
+		finish();
+	}
+
+	/**
+	 * Records the time the switch was tapped.
+	 *
+	 * @param intentId the ID of the intent created by the tap.
+	 * @param time     the time of the tap, see {@link AppMetrics#now()}.
+	 */
+	public void onTapped(final int intentId, final long time) {
+		if (!running)
+			return;
+		toggle(intentId).tapped = time;
+		tapped++;
+		listener.onProgress(this);
+	}
+
+	@Override
+	public void onLedWriteEnqueued(final int intentId, final long time) {
+		if (running)
+			toggle(intentId).enqueued = time;
+	}
+
+	@Override
+	public void onLedWriteSent(final int intentId, final long time) {
+		final Toggle toggle = toggles.get(intentId);
+		if (running && toggle != null)
+			toggle.sent = time;
+	}
+
+	/**
+	 * Records the time the LED state confirming the given intent was shown on the UI.
+	 *
+	 * @param intentId the intent ID from the shown {@link no.nordicsemi.android.blinky.profile.data.LedState}.
+	 * @param time     the time, see {@link AppMetrics#now()}.
+	 */
+	public void onLedStateShown(final int intentId, final long time) {
+		final Toggle toggle = toggles.get(intentId);
+		if (!running || toggle == null || toggle.shown != 0)
+			return;
+		toggle.shown = time;
+		shown++;
+		listener.onProgress(this);
+		if (ticks == count && shown == tapped)
+			finish();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public boolean isSimulated() {
+		return simulated;
+	}
+
+	/** Returns the number of toggles to be tapped. */
+	public int getCount() {
+		return count;
+	}
+
+	/** Returns the number of toggles tapped so far. */
+	public int getTapped() {
+		return tapped;
+	}
+
+	/** Returns the number of toggles shown on the UI so far. */
+	public int getShown() {
+		return shown;
+	}
+
+	/**
+	 * Returns the latency of each segment and the total latency. The samples are available
+	 * after the test has finished.
+	 */
+	@NonNull
+	public Samples[] getSegments() {
+		return new Samples[] { tapToEnqueue, enqueueToSent, sentToUi, total };
+	}
+
+	/**
+	 * Returns a multi-line report of the finished test.
+	 */
+	@NonNull
+	public String getReport() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.US, "%d toggles at %.1f/s, %s peripheral",
+				count, rate, simulated ? "simulated" : "real"));
+		for (final Samples segment : getSegments())
+			builder.append('\n').append(segment);
+		builder.append("\nnot tapped: ").append(count - tapped)
+				.append(", not confirmed: ").append(tapped - total.size());
+		return builder.toString();
+	}
+
+	private void tick() {
+		if (!running)
+			return;
+		ticks++;
+		tap.run();
+		if (ticks < count) {
+			handler.postAtTime(this::tick, startTime + (long) (ticks * 1000 / rate));
+		} else if (shown == tapped) {
+			finish();
+		} else {
+			handler.postDelayed(this::finish, CONFIRMATION_TIMEOUT);
+		}
+	}
+
+	private void finish() {
+		if (finished)
+			return;
+		finished = true;
+		running = false;
+		handler.removeCallbacksAndMessages(null);
+		if (!cancelled) {
+			for (int i = 0; i < toggles.size(); ++i) {
+				final Toggle toggle = toggles.valueAt(i);
+				if (toggle.tapped == 0 || toggle.enqueued == 0 || toggle.sent == 0 || toggle.shown == 0)
+					continue;
+				tapToEnqueue.add(toggle.enqueued - toggle.tapped);
+				enqueueToSent.add(toggle.sent - toggle.enqueued);
+				sentToUi.add(toggle.shown - toggle.sent);
+				total.add(toggle.shown - toggle.tapped);
+			}
+			Log.i(TAG, getReport());
+		}
+		listener.onFinished(this);
+	}
+
+	@NonNull
+	private Toggle toggle(final int intentId) {
+		Toggle toggle = toggles.get(intentId);
+		if (toggle == null) {
+			toggle = new Toggle();
+			toggles.put(intentId, toggle);
+		}
+		return toggle;
+	}
+
+	private static final class Toggle {
+		private long tapped;
+		private long enqueued;
+		private long sent;
+		private long shown;
+	}
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.metrics;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import no.nordicsemi.android.blinky.core.metrics.Samples;
+import no.nordicsemi.android.blinky.core.metrics.Unit;
+import no.nordicsemi.android.blinky.profile.LedLink;
+
+/**
+ * A benchmark writing the LED characteristic at the maximum rate the link allows.
+ * <p>
+ * Each mode is run for the same duration, one after another:
+ * <ul>
+ * <li>{@link Mode#SEQUENTIAL} - Write Requests, each issued when the previous one completed,
+ * like the app does when the switch is flipped,</li>
+ * <li>{@link Mode#PIPELINED} - Write Requests, with up to the given number of writes waiting
+ * in the BLE Library queue, so the next write is sent as soon as a response arrives,</li>
+ * <li>{@link Mode#WRITE_COMMAND} - pipelined Write Commands, only if the LED characteristic
+ * supports them.</li>
+ * </ul>
+ * The report contains the achieved operations per second, the error rate and the distribution
+ * of the time from issuing each write to its completion.
+ * <p>
+ * After a failed write the next one is issued with an increasing delay. The test is aborted
+ * after {@link #MAX_CONSECUTIVE_FAILURES} failures in a row, e.g. when the link was lost.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class LedThroughputTest {
+	private static final String TAG = "LedThroughputTest";
+	/** Time to wait for writes in flight after a mode has ended. */
+	private static final long DRAIN_TIMEOUT = 5000; // [ms]
+	/** Delay before retrying after the first failed write, doubled with each next failure. */
+	private static final long RETRY_DELAY = 10; // [ms]
+	private static final long MAX_RETRY_DELAY = 1000; // [ms]
+	private static final int MAX_CONSECUTIVE_FAILURES = 10;
+
+	public enum Mode {
+		SEQUENTIAL("Write Request, sequential"),
+		PIPELINED("Write Request, pipelined"),
+		WRITE_COMMAND("Write Command, pipelined");
+
+		private final String description;
+
+		Mode(final String description) {
+			this.description = description;
+		}
+
+		@NonNull
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	public interface Listener {
+		/** Called when a mode has started or finished. */
+		void onProgress(@NonNull final LedThroughputTest test);
+
+		/** Called when the test has finished or was cancelled. */
+		void onFinished(@NonNull final LedThroughputTest test);
+	}
+
+	/**
+	 * The results of a single mode.
+	 */
+	public static final class Result {
+		private final Mode mode;
+		private final Samples latency;
+		private int succeeded;
+		private int failed;
+		private long duration; // [ns]
+
+		private Result(@NonNull final Mode mode) {
+			this.mode = mode;
+			this.latency = new Samples(mode.description, Unit.NANOSECONDS);
+		}
+
+		@NonNull
+		public Mode getMode() {
+			return mode;
+		}
+
+		/** Returns the time from issuing each completed write to its completion. */
+		@NonNull
+		public Samples getLatency() {
+			return latency;
+		}
+
+		public int getSucceeded() {
+			return succeeded;
+		}
+
+		/** Returns the number of writes that failed or did not complete in time. */
+		public int getFailed() {
+			return failed;
+		}
+
+		/** Returns the number of successful writes per second. */
+		public float getOperationsPerSecond() {
+			return duration > 0 ? succeeded * 1_000_000_000f / duration : 0;
+		}
+
+		/** Returns the share of failed writes, from 0 to 1. */
+		public float getErrorRate() {
+			final int total = succeeded + failed;
+			return total > 0 ? (float) failed / total : 0;
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%s: %.1f ops/s, %d writes, %.2f%% errors\n  %s",
+					mode.description, getOperationsPerSecond(), succeeded + failed,
+					getErrorRate() * 100, latency);
+		}
+	}
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final List<Result> results = new ArrayList<>();
+	private final LedLink link;
+	private final Listener listener;
+	private final long modeDuration; // [ms]
+	private final int depth;
+	private final boolean simulated;
+
+	private final Runnable endOfMode = this::fill;
+	private final Runnable drainTimeout = this::onDrainTimeout;
+	private final Runnable retry = this::onRetry;
+
+	private Result current;
+	private long modeStartTime; // [ms] uptime
+	private long modeStartNanos;
+	private int inFlight;
+	/** Incremented on each mode, so that late completions of previous modes are ignored. */
+	private int generation;
+	private int consecutiveFailures;
+	private boolean on;
+	private boolean filling;
+	private boolean backingOff;
+	private boolean aborted;
+	private boolean running;
+	private boolean finished;
+	private boolean cancelled;
+
+	/**
+	 * Creates the test.
+	 *
+	 * @param link         the LED control.
+	 * @param modeDuration the duration of each mode, in milliseconds.
+	 * @param depth        the maximum number of pipelined writes.
+	 * @param simulated    true if the link is the simulated peripheral.
+	 * @param listener     the listener.
+	 */
+	public LedThroughputTest(@NonNull final LedLink link, final long modeDuration, final int depth,
+							 final boolean simulated, @NonNull final Listener listener) {
+		if (modeDuration <= 0 || depth <= 0)
+			throw new IllegalArgumentException("Duration and depth must be positive");
+		this.link = link;
+		this.modeDuration = modeDuration;
+		this.depth = depth;
+		this.simulated = simulated;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts the first mode.
+	 */
+	public void start() {
+		if (running || finished)
+			return;
+		running = true;
+		nextMode();
+	}
+
+	/**
+	 * Stops the test. The listener is notified, but no report is logged.
+	 */
+	public void cancel() {
+		if (finished)
+			return;
+		cancelled = true;
+		finish();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public boolean isSimulated() {
+		return simulated;
+	}
+
+	/**
+	 * Returns the mode being run, or null if the test is not running.
+	 */
+	public Mode getCurrentMode() {
+		return running && current != null ? current.mode : null;
+	}
+
+	/**
+	 * Returns the results of the modes run so far.
+	 */
+	@NonNull
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Returns a multi-line report of the finished test.
+	 */
+	@NonNull
+	public String getReport() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.US, "%.1f s per mode, pipeline depth %d, %s peripheral",
+				modeDuration / 1000f, depth, simulated ? "simulated" : "real"));
+		for (final Result result : results)
+			builder.append('\n').append(result);
+		if (!link.isWriteWithoutResponseSupported())
+			builder.append("\nWrite Command is not supported by the LED characteristic.");
+		if (aborted)
+			builder.append(String.format(Locale.US, "\nAborted after %d failed writes in a row.",
+					MAX_CONSECUTIVE_FAILURES));
+		return builder.toString();
+	}
+
+	private void nextMode() {
+		final int index = results.size();
+		final Mode[] modes = Mode.values();
+		if (index == Mode.WRITE_COMMAND.ordinal() && !link.isWriteWithoutResponseSupported()
+				|| index == modes.length) {
+			finish();
+			return;
+		}
+
+		current = new Result(modes[index]);
+		results.add(current);
+		generation++;
+		inFlight = 0;
+		consecutiveFailures = 0;
+		backingOff = false;
+		handler.removeCallbacks(retry);
+		modeStartTime = SystemClock.uptimeMillis();
+		modeStartNanos = AppMetrics.now();
+		handler.postAtTime(endOfMode, modeStartTime + modeDuration);
+		listener.onProgress(this);
+		fill();
+	}
+
+	/**
+	 * Issues writes until the pipeline is full, or ends the mode when its time is up and
+	 * all writes have completed.
+	 */
+	private void fill() {
+		if (!running || filling)
+			return;
+		filling = true;
+		final int maxInFlight = current.mode == Mode.SEQUENTIAL ? 1 : depth;
+		final int failed = current.failed;
+		boolean ended;
+		// Writes may fail synchronously, e.g. when disconnected. Those are retried later.
+		while (!(ended = SystemClock.uptimeMillis() >= modeStartTime + modeDuration)
+				&& inFlight < maxInFlight && current.failed == failed && !backingOff) {
+			write();
+		}
+		filling = false;
+		if (!running)
+			return; // Aborted by a failed write.
+
+		if (ended) {
+			if (current.duration == 0) {
+				current.duration = AppMetrics.now() - modeStartNanos;
+				handler.postDelayed(drainTimeout, DRAIN_TIMEOUT);
+			}
+			if (inFlight == 0) {
+				handler.removeCallbacks(drainTimeout);
+				nextMode();
+			}
+		}
+	}
+
+	private void write() {
+		final Result result = current;
+		final int writeGeneration = generation;
+		final long start = AppMetrics.now();
+		inFlight++;
+		on = !on;
+		link.writeLed(on, result.mode != Mode.WRITE_COMMAND, success -> {
+			if (writeGeneration != generation)
+				return;
+			inFlight--;
+			if (success) {
+				consecutiveFailures = 0;
+				result.succeeded++;
+				result.latency.add(AppMetrics.now() - start);
+				fill();
+			} else {
+				result.failed++;
+				onWriteFailed();
+			}
+		});
+	}
+
+	/**
+	 * Delays the next write, as failed writes may complete immediately, or aborts the test
+	 * if the writes keep failing.
+	 */
+	private void onWriteFailed() {
+		if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+			Log.w(TAG, "Aborted after " + consecutiveFailures + " failed writes in a row");
+			aborted = true;
+			finish();
+			return;
+		}
+		if (backingOff)
+			return;
+		backingOff = true;
+		final long delay = Math.min(RETRY_DELAY << (consecutiveFailures - 1), MAX_RETRY_DELAY);
+		handler.postDelayed(retry, delay);
+	}
+
+	private void onRetry() {
+		backingOff = false;
+		fill();
+	}
+
+	private void onDrainTimeout() {
+		// Writes which did not complete in time are counted as failed.
+		current.failed += inFlight;
+		inFlight = 0;
+		nextMode();
+	}
+
+	private void finish() {
+		if (finished)
+			return;
+		finished = true;
+		running = false;
+		generation++;
+		handler.removeCallbacksAndMessages(null);
+		if (!cancelled)
+			Log.i(TAG, getReport());
+		listener.onFinished(this);
+	}
+}
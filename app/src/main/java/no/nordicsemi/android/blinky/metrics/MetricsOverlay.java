@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.metrics;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A debug overlay showing the current {@link AppMetrics} at the bottom of an activity,
+ * refreshed every second. Tap the overlay to reset the metrics, long press it to log
+ * the snapshot as JSON.
+ */
+public final class MetricsOverlay implements View.OnAttachStateChangeListener, Runnable {
+	private static final String TAG = "MetricsOverlay";
+	private static final long REFRESH_INTERVAL = 1000; // [ms]
+
+	private final TextView view;
+
+	private MetricsOverlay(@NonNull final TextView view) {
+		this.view = view;
+		view.addOnAttachStateChangeListener(this);
+		view.setOnClickListener(v -> {
+			AppMetrics.REGISTRY.reset();
+			run();
+		});
+		view.setOnLongClickListener(v -> {
+			Log.i(TAG, AppMetrics.REGISTRY.snapshot().toJson());
+			return true;
+		});
+	}
+
+	/**
+	 * Shows the overlay on top of the content of the activity, if not shown already.
+	 *
+	 * @param activity the activity.
+	 */
+	public static void show(@NonNull final Activity activity) {
+		final ViewGroup content = activity.findViewById(android.R.id.content);
+		if (content.findViewWithTag(TAG) != null)
+			return;
+
+		final TextView view = new TextView(activity);
+		view.setTag(TAG);
+		view.setTypeface(Typeface.MONOSPACE);
+		view.setTextSize(TypedValue.COMPLEX_UNIT_SP, 9);
+		view.setTextColor(Color.WHITE);
+		view.setBackgroundColor(0xB0000000);
+		final int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4,
+				activity.getResources().getDisplayMetrics());
+		view.setPadding(padding, padding, padding, padding);
+		new MetricsOverlay(view);
+
+		content.addView(view, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+				ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM));
+	}
+
+	/**
+	 * Removes the overlay from the activity, if shown.
+	 *
+	 * @param activity the activity.
+	 */
+	public static void hide(@NonNull final Activity activity) {
+		final ViewGroup content = activity.findViewById(android.R.id.content);
+		final View view = content.findViewWithTag(TAG);
+		if (view != null)
+			content.removeView(view);
+	}
+
+	@Override
+	public void run() {
+		view.setText(AppMetrics.REGISTRY.snapshot().toString().trim());
+		view.removeCallbacks(this);
+		view.postDelayed(this, REFRESH_INTERVAL);
+	}
+
+	@Override
+	public void onViewAttachedToWindow(final View v) {
+		run();
+	}
+
+	@Override
+	public void onViewDetachedFromWindow(final View v) {
+		view.removeCallbacks(this);
+	}
+}
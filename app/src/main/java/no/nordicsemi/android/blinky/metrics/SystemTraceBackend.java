@@ -20,40 +20,38 @@
  * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-package no.nordicsemi.android.blinky.adapter;
+package no.nordicsemi.android.blinky.metrics;
 
-import androidx.recyclerview.widget.DiffUtil;
+import android.os.Build;
+import android.os.Trace;
 
-import java.util.List;
-
-public class DeviceDiffCallback extends DiffUtil.Callback {
-	private final List<DiscoveredBluetoothDevice> oldList;
-	private final List<DiscoveredBluetoothDevice> newList;
-
-	DeviceDiffCallback(final List<DiscoveredBluetoothDevice> oldList,
-					   final List<DiscoveredBluetoothDevice> newList) {
-		this.oldList = oldList;
-		this.newList = newList;
-	}
+import no.nordicsemi.android.blinky.core.trace.Tracing;
 
+/**
+ * The tracing backend writing sections to the system trace, to be viewed in Systrace or
+ * Perfetto. Async sections require Android 10, on older versions they are ignored.
+ * When the system trace is not being captured, the platform skips sections after a cheap check.
+ */
+public class SystemTraceBackend implements Tracing.Backend {
 	@Override
-	public int getOldListSize() {
-		return oldList != null ? oldList.size() : 0;
+	public void beginSection(final String name) {
+		Trace.beginSection(name);
 	}
 
 	@Override
-	public int getNewListSize() {
-		return newList != null ? newList.size() : 0;
+	public void endSection() {
+		Trace.endSection();
 	}
 
 	@Override
-	public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
-		return oldList.get(oldItemPosition) == newList.get(newItemPosition);
+	public void beginAsyncSection(final String name, final int cookie) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+			Trace.beginAsyncSection(name, cookie);
 	}
 
 	@Override
-	public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
-		final DiscoveredBluetoothDevice device = oldList.get(oldItemPosition);
-		return device.hasRssiLevelChanged();
+	public void endAsyncSection(final String name, final int cookie) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+			Trace.endAsyncSection(name, cookie);
 	}
 }
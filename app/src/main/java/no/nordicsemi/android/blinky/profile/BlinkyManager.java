@@ -34,18 +34,34 @@ import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import no.nordicsemi.android.ble.WriteRequest;
 import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.livedata.ObservableBleManager;
+import no.nordicsemi.android.blinky.core.button.ButtonEventLog;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.core.led.LedController;
+import no.nordicsemi.android.blinky.core.stream.EventPublisher;
+import no.nordicsemi.android.blinky.core.trace.Tracing;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
 import no.nordicsemi.android.blinky.profile.callback.BlinkyButtonDataCallback;
 import no.nordicsemi.android.blinky.profile.callback.BlinkyLedDataCallback;
 import no.nordicsemi.android.blinky.profile.data.BlinkyLED;
+import no.nordicsemi.android.blinky.profile.data.LedState;
 import no.nordicsemi.android.log.LogContract;
 import no.nordicsemi.android.log.LogSession;
 import no.nordicsemi.android.log.Logger;
 
-public class BlinkyManager extends ObservableBleManager {
+public class BlinkyManager extends ObservableBleManager implements LedLink {
 	/** Nordic Blinky Service UUID. */
 	public final static UUID LBS_UUID_SERVICE = UUID.fromString("00001523-1212-efde-1523-785feabcd123");
 	/** BUTTON characteristic UUID. */
@@ -53,19 +69,72 @@ public class BlinkyManager extends ObservableBleManager {
 	/** LED characteristic UUID. */
 	private final static UUID LBS_UUID_LED_CHAR = UUID.fromString("00001525-1212-efde-1523-785feabcd123");
 
-	private final MutableLiveData<Boolean> ledState = new MutableLiveData<>();
+	/** The trace section from initializing the device to it being ready. */
+	private final static String TRACE_INITIALIZATION = "BlinkyManager.initialization";
+
+	/**
+	 * The executor logging to nRF Logger, as each message requires an IPC call. Log sessions
+	 * should be created on it as well. Messages are logged in order, as it has a single thread.
+	 */
+	public final static Executor LOG_EXECUTOR = Executors.newSingleThreadExecutor();
+
+	/** Maximum number of messages kept until the log session is set. */
+	private final static int MAX_PENDING_LOGS = 200;
+	/** Number of Button events kept in the event log. */
+	private final static int BUTTON_EVENT_CAPACITY = 16384;
+	/** Number of states kept for stream subscribers which have not requested them yet. */
+	private final static int STATE_STREAM_CAPACITY = 1024;
+
+	private final MutableLiveData<LedState> ledState = new MutableLiveData<>();
 	private final MutableLiveData<Boolean> buttonState = new MutableLiveData<>();
+	private final ButtonEventLog buttonEvents = new ButtonEventLog(BUTTON_EVENT_CAPACITY);
+	private final EventPublisher<LedState> ledStates =
+			new EventPublisher<>(STATE_STREAM_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	private final EventPublisher<Boolean> buttonStates =
+			new EventPublisher<>(STATE_STREAM_CAPACITY, OverflowPolicy.DROP_OLDEST);
+
+	/** Messages logged before the log session was set. */
+	private final Queue<PendingLog> pendingLogs = new ArrayDeque<>();
+	/** User intents and LED states confirmed by the device. */
+	private final LedController led = new LedController(this::enqueueLedWrite, new LedController.Listener() {
+		@Override
+		public void onLedStateReceived(final boolean on, final int intentId, final boolean latest) {
+			if (intentId != LedState.NO_INTENT && ledWriteListener != null)
+				ledWriteListener.onLedWriteSent(intentId, AppMetrics.now());
+			log(LogContract.Log.Level.APPLICATION, "LED " + (on ? "ON" : "OFF"));
+			setLedState(new LedState(on, intentId, latest));
+		}
 
+		@Override
+		public void onLedWriteFailed(final int intentId, final boolean confirmedOn, final boolean latest) {
+			// Show the actual state again, unless a newer intent is pending.
+			setLedState(new LedState(confirmedOn, intentId, latest));
+		}
+	});
 	private BluetoothGattCharacteristic buttonCharacteristic, ledCharacteristic;
 	private LogSession logSession;
+	@Nullable
+	private LedWriteListener ledWriteListener;
+	private boolean logSessionSet;
 	private boolean supported;
-	private boolean ledOn;
+	/** The time the current LED write was sent, see {@link AppMetrics#now()}. */
+	private long ledWriteStartTime;
+	/** The time the last Button notification was received, see {@link AppMetrics#now()}. */
+	private long buttonNotificationTime;
+	/** The cookie of the current initialization trace section, 0 if none is open. */
+	private int initializationCookie;
+	private int initializationCount;
 
 	public BlinkyManager(@NonNull final Context context) {
 		super(context);
 	}
 
-	public final LiveData<Boolean> getLedState() {
+	/**
+	 * Returns the LED state confirmed by the device, together with the ID of the user intent
+	 * it confirms.
+	 */
+	@Override
+	public final LiveData<LedState> getLedState() {
 		return ledState;
 	}
 
@@ -73,6 +142,42 @@ public class BlinkyManager extends ObservableBleManager {
 		return buttonState;
 	}
 
+	/**
+	 * Returns every LED state, as a Reactive Streams publisher delivering off the main thread.
+	 * Unlike {@link #getLedState()}, no state is skipped while subscribers keep up.
+	 */
+	public final Publisher<LedState> getLedStates() {
+		return ledStates;
+	}
+
+	/**
+	 * Returns every Button state received, as a Reactive Streams publisher delivering off
+	 * the main thread.
+	 */
+	public final Publisher<Boolean> getButtonStates() {
+		return buttonStates;
+	}
+
+	/**
+	 * Returns the log of all Button states received, including reads. Event times are taken
+	 * with {@link AppMetrics#now()}.
+	 */
+	public ButtonEventLog getButtonEvents() {
+		return buttonEvents;
+	}
+
+	/**
+	 * Returns the time the last Button state was received, see {@link AppMetrics#now()}.
+	 */
+	public long getButtonNotificationTime() {
+		return buttonNotificationTime;
+	}
+
+	@Override
+	public void setLedWriteListener(@Nullable final LedWriteListener listener) {
+		ledWriteListener = listener;
+	}
+
 	@NonNull
 	@Override
 	protected BleManagerGattCallback getGattCallback() {
@@ -81,16 +186,48 @@ public class BlinkyManager extends ObservableBleManager {
 
 	/**
 	 * Sets the log session to be used for low level logging.
+	 * <p>
+	 * Messages logged before the session was set are buffered and replayed into the session
+	 * on {@link #LOG_EXECUTOR}. Creating a session requires an IPC call to nRF Logger, so it
+	 * may be created in background after the connection has been requested.
+	 *
 	 * @param session the session, or null, if nRF Logger is not installed.
 	 */
 	public void setLogger(@Nullable final LogSession session) {
-		logSession = session;
+		synchronized (pendingLogs) {
+			logSession = session;
+			logSessionSet = true;
+			if (session == null) {
+				pendingLogs.clear();
+				return;
+			}
+			final List<PendingLog> replayed = new ArrayList<>(pendingLogs);
+			pendingLogs.clear();
+			// Enqueued before releasing the lock, so that new messages are logged after these.
+			// The IPC calls are made on the executor, not holding the lock.
+			LOG_EXECUTOR.execute(() -> {
+				for (final PendingLog pending : replayed)
+					Logger.log(session, pending.level, pending.message);
+			});
+		}
 	}
 
 	@Override
 	public void log(final int priority, @NonNull final String message) {
 		// The priority is a Log.X constant, while the Logger accepts it's log levels.
-		Logger.log(logSession, LogContract.Log.Level.fromPriority(priority), message);
+		final int level = LogContract.Log.Level.fromPriority(priority);
+		final LogSession session;
+		synchronized (pendingLogs) {
+			if (!logSessionSet) {
+				if (pendingLogs.size() == MAX_PENDING_LOGS)
+					pendingLogs.poll();
+				pendingLogs.add(new PendingLog(level, message));
+				return;
+			}
+			session = logSession;
+		}
+		if (session != null)
+			LOG_EXECUTOR.execute(() -> Logger.log(session, level, message));
 	}
 
 	@Override
@@ -98,6 +235,11 @@ public class BlinkyManager extends ObservableBleManager {
 		return !supported;
 	}
 
+	private void setLedState(@NonNull final LedState state) {
+		ledState.setValue(state);
+		ledStates.publish(state);
+	}
+
 	/**
 	 * The Button callback will be notified when a notification from Button characteristic
 	 * has been received, or its data was read.
@@ -111,8 +253,11 @@ public class BlinkyManager extends ObservableBleManager {
 		@Override
 		public void onButtonStateChanged(@NonNull final BluetoothDevice device,
 										 final boolean pressed) {
+			buttonNotificationTime = AppMetrics.now();
+			buttonEvents.record(buttonNotificationTime, pressed);
 			log(LogContract.Log.Level.APPLICATION, "Button " + (pressed ? "pressed" : "released"));
 			buttonState.setValue(pressed);
+			buttonStates.publish(pressed);
 		}
 
 		@Override
@@ -137,9 +282,7 @@ public class BlinkyManager extends ObservableBleManager {
 		@Override
 		public void onLedStateChanged(@NonNull final BluetoothDevice device,
 									  final boolean on) {
-			ledOn = on;
-			log(LogContract.Log.Level.APPLICATION, "LED " + (on ? "ON" : "OFF"));
-			ledState.setValue(on);
+			led.onStateReceived(on);
 		}
 
 		@Override
@@ -156,54 +299,147 @@ public class BlinkyManager extends ObservableBleManager {
 	private class BlinkyBleManagerGattCallback extends BleManagerGattCallback {
 		@Override
 		protected void initialize() {
-			setNotificationCallback(buttonCharacteristic).with(buttonCallback);
-			readCharacteristic(ledCharacteristic).with(ledCallback).enqueue();
-			readCharacteristic(buttonCharacteristic).with(buttonCallback).enqueue();
-			enableNotifications(buttonCharacteristic).enqueue();
+			Tracing.beginSection("BlinkyManager.initialize");
+			try {
+				initializationCookie = ++initializationCount;
+				Tracing.beginAsyncSection(TRACE_INITIALIZATION, initializationCookie);
+				setNotificationCallback(buttonCharacteristic).with(buttonCallback);
+				readCharacteristic(ledCharacteristic).with(ledCallback).enqueue();
+				readCharacteristic(buttonCharacteristic).with(buttonCallback).enqueue();
+				enableNotifications(buttonCharacteristic).enqueue();
+			} finally {
+				Tracing.endSection();
+			}
+		}
+
+		@Override
+		protected void onDeviceReady() {
+			endInitializationSection();
 		}
 
 		@Override
 		public boolean isRequiredServiceSupported(@NonNull final BluetoothGatt gatt) {
-			final BluetoothGattService service = gatt.getService(LBS_UUID_SERVICE);
-			if (service != null) {
-				buttonCharacteristic = service.getCharacteristic(LBS_UUID_BUTTON_CHAR);
-				ledCharacteristic = service.getCharacteristic(LBS_UUID_LED_CHAR);
-			}
+			Tracing.beginSection("BlinkyManager.isRequiredServiceSupported");
+			try {
+				final BluetoothGattService service = gatt.getService(LBS_UUID_SERVICE);
+				if (service != null) {
+					buttonCharacteristic = service.getCharacteristic(LBS_UUID_BUTTON_CHAR);
+					ledCharacteristic = service.getCharacteristic(LBS_UUID_LED_CHAR);
+				}
 
-			boolean writeRequest = false;
-			if (ledCharacteristic != null) {
-				final int rxProperties = ledCharacteristic.getProperties();
-				writeRequest = (rxProperties & BluetoothGattCharacteristic.PROPERTY_WRITE) > 0;
-			}
+				boolean writeRequest = false;
+				if (ledCharacteristic != null) {
+					final int rxProperties = ledCharacteristic.getProperties();
+					writeRequest = (rxProperties & BluetoothGattCharacteristic.PROPERTY_WRITE) > 0;
+				}
 
-			supported = buttonCharacteristic != null && ledCharacteristic != null && writeRequest;
-			return supported;
+				supported = buttonCharacteristic != null && ledCharacteristic != null && writeRequest;
+				return supported;
+			} finally {
+				Tracing.endSection();
+			}
 		}
 
 		@Override
 		protected void onDeviceDisconnected() {
+			endInitializationSection();
 			buttonCharacteristic = null;
 			ledCharacteristic = null;
+			// Queued writes are failed after this, they will not be counted as pending.
+			led.onDisconnected();
 		}
 	}
 
 	/**
-	 * Sends a request to the device to turn the LED on or off.
+	 * Sends a request to the device to turn the LED on or off. This method should be called
+	 * only as a result of a user action. Exactly one write is issued for each intent that
+	 * changes the requested state.
 	 *
 	 * @param on true to turn the LED on, false to turn it off.
+	 * @return The ID of the intent, which will be set in the {@link LedState} confirming it,
+	 * or {@link LedState#NO_INTENT} if no write was needed.
 	 */
-	public void turnLed(final boolean on) {
+	@Override
+	public int turnLed(final boolean on) {
 		// Are we connected?
 		if (ledCharacteristic == null)
-			return;
+			return LedState.NO_INTENT;
 
-		// No need to change?
-		if (ledOn == on)
-			return;
+		// The write is enqueued by enqueueLedWrite(int, boolean), unless no change is needed.
+		return led.turnLed(on);
+	}
 
+	private void enqueueLedWrite(final int intentId, final boolean on) {
 		log(Log.VERBOSE, "Turning LED " + (on ? "ON" : "OFF") + "...");
 		writeCharacteristic(ledCharacteristic,
 				on ? BlinkyLED.turnOn() : BlinkyLED.turnOff())
-				.with(ledCallback).enqueue();
+				.before(device -> {
+					led.onWriteStarted(intentId);
+					ledWriteStartTime = AppMetrics.now();
+				})
+				.with(ledCallback)
+				.done(device -> {
+					AppMetrics.LED_WRITE_TIME.recordSince(ledWriteStartTime, AppMetrics.now());
+					led.onWriteFinished(intentId, true);
+				})
+				.fail((device, status) -> {
+					AppMetrics.LED_WRITE_FAILURES.increment();
+					led.onWriteFinished(intentId, false);
+				})
+				.enqueue();
+		if (ledWriteListener != null)
+			ledWriteListener.onLedWriteEnqueued(intentId, AppMetrics.now());
+	}
+
+	@Override
+	public void writeLed(final boolean on, final boolean withResponse,
+						 @NonNull final LedWriteCallback callback) {
+		final BluetoothGattCharacteristic characteristic = ledCharacteristic;
+		if (characteristic == null) {
+			callback.onLedWriteCompleted(false);
+			return;
+		}
+
+		final int writeType = withResponse ?
+				BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT :
+				BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+		// The request takes the write type from the characteristic when it is created, so it
+		// is set only for this one and user intents are still sent with Write Request.
+		characteristic.setWriteType(writeType);
+		final WriteRequest request =
+				writeCharacteristic(characteristic, on ? BlinkyLED.turnOn() : BlinkyLED.turnOff());
+		characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+		request.done(device -> callback.onLedWriteCompleted(true))
+				.fail((device, status) -> callback.onLedWriteCompleted(false))
+				.enqueue();
+	}
+
+	@Override
+	public boolean isWriteWithoutResponseSupported() {
+		return ledCharacteristic != null && (ledCharacteristic.getProperties()
+				& BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) > 0;
+	}
+
+	@Override
+	public void readLed() {
+		if (ledCharacteristic != null)
+			readCharacteristic(ledCharacteristic).with(ledCallback).enqueue();
+	}
+
+	private void endInitializationSection() {
+		if (initializationCookie != 0) {
+			Tracing.endAsyncSection(TRACE_INITIALIZATION, initializationCookie);
+			initializationCookie = 0;
+		}
+	}
+
+	private static final class PendingLog {
+		private final int level;
+		private final String message;
+
+		private PendingLog(final int level, @NonNull final String message) {
+			this.level = level;
+			this.message = message;
+		}
 	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+
+import no.nordicsemi.android.blinky.profile.data.LedState;
+
+/**
+ * The LED control of a Blinky device, implemented by {@link BlinkyManager} for real boards
+ * and by {@link no.nordicsemi.android.blinky.profile.sim.SimulatedLedLink} for the
+ * simulated peripheral.
+ */
+public interface LedLink {
+
+	/**
+	 * Listener notified about the progress of LED writes, used to measure their latency.
+	 * Times are taken with {@link no.nordicsemi.android.blinky.metrics.AppMetrics#now()}.
+	 */
+	interface LedWriteListener {
+		/** Called when the write for the given intent has been enqueued. */
+		void onLedWriteEnqueued(final int intentId, final long time);
+
+		/** Called when the write for the given intent has been sent and confirmed. */
+		void onLedWriteSent(final int intentId, final long time);
+	}
+
+	/**
+	 * Callback of a write issued with {@link #writeLed(boolean, boolean, LedWriteCallback)}.
+	 */
+	interface LedWriteCallback {
+		/**
+		 * Called when the write has completed.
+		 *
+		 * @param success true if the write was sent, false if it failed.
+		 */
+		void onLedWriteCompleted(final boolean success);
+	}
+
+	/**
+	 * Requests the LED to be turned on or off.
+	 *
+	 * @param on true to turn the LED on, false to turn it off.
+	 * @return The ID of the intent, which will be set in the {@link LedState} confirming it,
+	 * or {@link LedState#NO_INTENT} if no write was needed.
+	 */
+	int turnLed(final boolean on);
+
+	/**
+	 * Writes the LED characteristic without creating a user intent. The written state is not
+	 * reported in {@link #getLedState()}, call {@link #readLed()} afterwards to update it.
+	 * This is meant for benchmarking, which issues writes at the maximum rate.
+	 *
+	 * @param on           true to turn the LED on, false to turn it off.
+	 * @param withResponse true to use Write Request, false to use Write Command, see
+	 *                     {@link #isWriteWithoutResponseSupported()}.
+	 * @param callback     the callback.
+	 */
+	void writeLed(final boolean on, final boolean withResponse, @NonNull final LedWriteCallback callback);
+
+	/**
+	 * Returns true if the LED characteristic may be written using Write Command.
+	 * The ble_app_blinky firmware supports only Write Request.
+	 */
+	boolean isWriteWithoutResponseSupported();
+
+	/**
+	 * Reads the LED state from the device. The value is reported in {@link #getLedState()}.
+	 */
+	void readLed();
+
+	/**
+	 * Returns the LED state confirmed by the device.
+	 */
+	LiveData<LedState> getLedState();
+
+	/**
+	 * Sets the listener notified about LED writes.
+	 *
+	 * @param listener the listener, or null to remove it.
+	 */
+	void setLedWriteListener(@Nullable final LedWriteListener listener);
+}
@@ -27,6 +27,7 @@ import androidx.annotation.NonNull;
 
 import no.nordicsemi.android.ble.callback.profile.ProfileDataCallback;
 import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.blinky.core.trace.Tracing;
 
 @SuppressWarnings("ConstantConditions")
 public abstract class BlinkyButtonDataCallback implements ProfileDataCallback, BlinkyButtonCallback {
@@ -35,18 +36,23 @@ public abstract class BlinkyButtonDataCallback implements ProfileDataCallback, B
 
     @Override
     public void onDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
-        if (data.size() != 1) {
-            onInvalidDataReceived(device, data);
-            return;
-        }
+        Tracing.beginSection("BlinkyButtonDataCallback.onDataReceived");
+        try {
+            if (data.size() != 1) {
+                onInvalidDataReceived(device, data);
+                return;
+            }
 
-        final int state = data.getIntValue(Data.FORMAT_UINT8, 0);
-        if (state == STATE_PRESSED) {
-            onButtonStateChanged(device, true);
-        } else if (state == STATE_RELEASED) {
-            onButtonStateChanged(device, false);
-        } else {
-            onInvalidDataReceived(device, data);
+            final int state = data.getIntValue(Data.FORMAT_UINT8, 0);
+            if (state == STATE_PRESSED) {
+                onButtonStateChanged(device, true);
+            } else if (state == STATE_RELEASED) {
+                onButtonStateChanged(device, false);
+            } else {
+                onInvalidDataReceived(device, data);
+            }
+        } finally {
+            Tracing.endSection();
         }
     }
 }
@@ -28,6 +28,7 @@ import androidx.annotation.NonNull;
 import no.nordicsemi.android.ble.callback.DataSentCallback;
 import no.nordicsemi.android.ble.callback.profile.ProfileDataCallback;
 import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.blinky.core.trace.Tracing;
 
 @SuppressWarnings("ConstantConditions")
 public abstract class BlinkyLedDataCallback implements ProfileDataCallback, DataSentCallback, BlinkyLedCallback {
@@ -45,18 +46,23 @@ public abstract class BlinkyLedDataCallback implements ProfileDataCallback, Data
     }
 
     private void parse(@NonNull final BluetoothDevice device, @NonNull final Data data) {
-        if (data.size() != 1) {
-            onInvalidDataReceived(device, data);
-            return;
-        }
+        Tracing.beginSection("BlinkyLedDataCallback.parse");
+        try {
+            if (data.size() != 1) {
+                onInvalidDataReceived(device, data);
+                return;
+            }
 
-        final int state = data.getIntValue(Data.FORMAT_UINT8, 0);
-        if (state == STATE_ON) {
-            onLedStateChanged(device, true);
-        } else if (state == STATE_OFF) {
-            onLedStateChanged(device, false);
-        } else {
-            onInvalidDataReceived(device, data);
+            final int state = data.getIntValue(Data.FORMAT_UINT8, 0);
+            if (state == STATE_ON) {
+                onLedStateChanged(device, true);
+            } else if (state == STATE_OFF) {
+                onLedStateChanged(device, false);
+            } else {
+                onInvalidDataReceived(device, data);
+            }
+        } finally {
+            Tracing.endSection();
         }
     }
 }
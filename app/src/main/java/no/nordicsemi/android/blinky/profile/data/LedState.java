@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.data;
+
+import androidx.annotation.NonNull;
+
+import no.nordicsemi.android.blinky.core.led.LedIntentTracker;
+
+/**
+ * The LED state confirmed by the device.
+ * <p>
+ * Each user action gets an intent ID from
+ * {@link no.nordicsemi.android.blinky.profile.BlinkyManager#turnLed(boolean)}. The state
+ * confirming a write carries the ID of the intent it was written for. States read from the
+ * device have {@link #NO_INTENT} ID. This allows the UI to tell apart confirmations of its
+ * own actions from changes it should reflect.
+ */
+public final class LedState {
+    /** The intent ID of states not caused by a user action. */
+    public static final int NO_INTENT = LedIntentTracker.NO_INTENT;
+
+    private final boolean on;
+    private final int intentId;
+    private final boolean latest;
+
+    public LedState(final boolean on, final int intentId, final boolean latest) {
+        this.on = on;
+        this.intentId = intentId;
+        this.latest = latest;
+    }
+
+    /**
+     * Returns true if the LED is on.
+     */
+    public boolean isOn() {
+        return on;
+    }
+
+    /**
+     * Returns the ID of the user intent this state is a result of, or {@link #NO_INTENT}.
+     */
+    public int getIntentId() {
+        return intentId;
+    }
+
+    /**
+     * Returns true if no other user intent was pending when this state was confirmed.
+     * Otherwise, the state will be superseded by a newer one and should not be shown on
+     * the controls, as they already reflect the newer intent.
+     */
+    public boolean isLatest() {
+        return latest;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "LedState{on=" + on + ", intent=" + intentId + ", latest=" + latest + "}";
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.sim;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.blinky.core.led.LedController;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.blinky.profile.LedLink;
+import no.nordicsemi.android.blinky.profile.callback.BlinkyLedDataCallback;
+import no.nordicsemi.android.blinky.profile.data.BlinkyLED;
+import no.nordicsemi.android.blinky.profile.data.LedState;
+
+/**
+ * The LED control of a {@link VirtualBlinkyPeripheral} running in real time on the main
+ * thread. Intents are handled by the same {@link LedController} as in
+ * {@link no.nordicsemi.android.blinky.profile.BlinkyManager}, so the UI can be driven by
+ * the simulation without a board.
+ */
+public class SimulatedLedLink implements LedLink {
+	private final MutableLiveData<LedState> ledState = new MutableLiveData<>();
+	private final Scheduler scheduler;
+	private final VirtualBlinkyPeripheral peripheral;
+	private final LedController led = new LedController(this::enqueueLedWrite, new LedController.Listener() {
+		@Override
+		public void onLedStateReceived(final boolean on, final int intentId, final boolean latest) {
+			if (intentId != LedState.NO_INTENT && ledWriteListener != null)
+				ledWriteListener.onLedWriteSent(intentId, AppMetrics.now());
+			ledState.setValue(new LedState(on, intentId, latest));
+		}
+
+		@Override
+		public void onLedWriteFailed(final int intentId, final boolean confirmedOn, final boolean latest) {
+			ledState.setValue(new LedState(confirmedOn, intentId, latest));
+		}
+	});
+	@Nullable
+	private LedWriteListener ledWriteListener;
+
+	/**
+	 * Creates a link to a peripheral with the default link parameters of
+	 * {@link VirtualBlinkyPeripheral.Builder}.
+	 */
+	public SimulatedLedLink() {
+		this(new HandlerScheduler(), System.nanoTime());
+	}
+
+	/**
+	 * Creates a link driven by the given scheduler, a {@link VirtualClock} in JVM tests.
+	 */
+	/* package */ SimulatedLedLink(@NonNull final Scheduler scheduler, final long seed) {
+		this.scheduler = scheduler;
+		peripheral = new VirtualBlinkyPeripheral.Builder(scheduler)
+				.setSeed(seed)
+				.build();
+	}
+
+	/**
+	 * Connects to the simulated peripheral and reads the LED state.
+	 *
+	 * @param onReady called when the LED may be controlled.
+	 */
+	public void connect(@NonNull final Runnable onReady) {
+		peripheral.connect(new VirtualBlinkyPeripheral.ConnectionListener() {
+			@Override
+			public void onConnected() {
+				// Empty
+			}
+
+			@Override
+			public void onReady() {
+				peripheral.readLed(ledCallback);
+				onReady.run();
+			}
+
+			@Override
+			public void onDisconnected() {
+				// The peripheral drops queued writes without completing them.
+				led.onDisconnected();
+			}
+		});
+	}
+
+	/**
+	 * Disconnects and cancels all pending operations.
+	 */
+	public void close() {
+		peripheral.disconnect();
+		if (scheduler instanceof HandlerScheduler)
+			((HandlerScheduler) scheduler).cancel();
+	}
+
+	@NonNull
+	/* package */ VirtualBlinkyPeripheral getPeripheral() {
+		return peripheral;
+	}
+
+	@Override
+	public int turnLed(final boolean on) {
+		if (!peripheral.isReady())
+			return LedState.NO_INTENT;
+
+		return led.turnLed(on);
+	}
+
+	private void enqueueLedWrite(final int intentId, final boolean on) {
+		peripheral.writeLed(on ? BlinkyLED.turnOn() : BlinkyLED.turnOff(), (device, data) -> {
+			led.onWriteStarted(intentId);
+			ledCallback.onDataSent(device, data);
+			led.onWriteFinished(intentId, true);
+		});
+		if (ledWriteListener != null)
+			ledWriteListener.onLedWriteEnqueued(intentId, AppMetrics.now());
+	}
+
+	@Override
+	public void writeLed(final boolean on, final boolean withResponse,
+						 @NonNull final LedWriteCallback callback) {
+		if (!peripheral.isReady()) {
+			callback.onLedWriteCompleted(false);
+			return;
+		}
+		final Data data = on ? BlinkyLED.turnOn() : BlinkyLED.turnOff();
+		if (withResponse) {
+			peripheral.writeLed(data, (device, d) -> callback.onLedWriteCompleted(true));
+		} else {
+			peripheral.writeLedWithoutResponse(data, (device, d) -> callback.onLedWriteCompleted(true));
+		}
+	}
+
+	@Override
+	public boolean isWriteWithoutResponseSupported() {
+		return true;
+	}
+
+	@Override
+	public void readLed() {
+		if (peripheral.isReady())
+			peripheral.readLed(ledCallback);
+	}
+
+	@Override
+	public LiveData<LedState> getLedState() {
+		return ledState;
+	}
+
+	@Override
+	public void setLedWriteListener(@Nullable final LedWriteListener listener) {
+		ledWriteListener = listener;
+	}
+
+	private final BlinkyLedDataCallback ledCallback = new BlinkyLedDataCallback() {
+		@Override
+		public void onLedStateChanged(@NonNull final BluetoothDevice device, final boolean on) {
+			led.onStateReceived(on);
+		}
+
+		@Override
+		public void onInvalidDataReceived(@NonNull final BluetoothDevice device,
+										  @NonNull final Data data) {
+			// The simulated peripheral always returns valid data.
+		}
+	};
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.sim;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+import no.nordicsemi.android.ble.callback.DataReceivedCallback;
+import no.nordicsemi.android.ble.callback.DataSentCallback;
+import no.nordicsemi.android.ble.data.Data;
+
+/**
+ * An in-process simulation of a device running the ble_app_blinky firmware, together with
+ * the link layer between it and the phone.
+ * <p>
+ * The Android BLE Library does not allow to replace the {@link android.bluetooth.BluetoothGatt}
+ * used by {@link no.nordicsemi.android.blinky.profile.BlinkyManager}, so the simulation does not
+ * run below the manager: it replaces both the manager's request queue and the link, and
+ * {@link SimulatedLedLink} takes the place of the manager. Requests are executed one at a time,
+ * like in the BLE Library request queue, and the results are delivered to the same
+ * {@link no.nordicsemi.android.blinky.profile.callback.BlinkyLedDataCallback} and
+ * {@link no.nordicsemi.android.blinky.profile.callback.BlinkyButtonDataCallback} the manager
+ * uses.
+ * <p>
+ * Values are passed as {@link Data}, which is Parcelable, and callbacks get the
+ * {@link BluetoothDevice} set in the {@link Builder}, which may be null. No Android method
+ * is called, so with a {@link VirtualClock} it runs in JVM unit tests.
+ * <p>
+ * The link is modeled with connection events every connection interval. Packets from the phone
+ * are received in the events the peripheral listens to, which depends on the slave latency.
+ * Each lost packet is retransmitted in the next event. A response is sent in the event
+ * following the request. Jitter is added to each packet delivered to the phone.
+ * <p>
+ * All methods must be called from the {@link Scheduler} thread and all callbacks are called on it.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class VirtualBlinkyPeripheral {
+	private static final byte STATE_OFF = 0x00;
+	private static final byte STATE_ON = 0x01;
+
+	private static final int FROM_PHONE = 0;
+	private static final int FROM_PERIPHERAL = 1;
+
+	/** Connection state callbacks. */
+	public interface ConnectionListener {
+		/** Called when the link has been established. */
+		void onConnected();
+
+		/** Called when services have been discovered and requests may be enqueued. */
+		void onReady();
+
+		/** Called when the link has been closed. */
+		void onDisconnected();
+	}
+
+	private final Scheduler scheduler;
+	private final Random random;
+	@Nullable
+	private final BluetoothDevice device;
+
+	// Configuration
+	private final long interval;
+	private final int slaveLatency;
+	private final long jitter;
+	private final float packetLoss;
+	private final long advertisingInterval;
+	private final int discoveryRoundTrips;
+	private final int maxPacketsPerEvent;
+	private final long buttonPeriod;
+
+	// Link state
+	private final Queue<Operation> queue = new ArrayDeque<>();
+	private final long[] lastEvent = new long[2];
+	private final int[] packetsInEvent = new int[2];
+	private final long[] lastDelivery = new long[2];
+	@Nullable
+	private ConnectionListener connectionListener;
+	@Nullable
+	private DataReceivedCallback buttonCallback;
+	private boolean busy;
+	private boolean connected;
+	private boolean ready;
+	private long anchor;
+	/** Incremented on each connection, so that tasks scheduled for an old link are ignored. */
+	private int linkId;
+
+	// Peripheral state
+	private boolean ledOn;
+	private boolean buttonPressed;
+	private boolean notificationsEnabled;
+
+	// Statistics
+	private long packetsSent;
+	private long packetsLost;
+	private long ledWrites;
+	private long notificationsSent;
+
+	private VirtualBlinkyPeripheral(@NonNull final Builder builder) {
+		scheduler = builder.scheduler;
+		random = new Random(builder.seed);
+		device = builder.device;
+		interval = builder.interval;
+		slaveLatency = builder.slaveLatency;
+		jitter = builder.jitter;
+		packetLoss = builder.packetLoss;
+		advertisingInterval = builder.advertisingInterval;
+		discoveryRoundTrips = builder.discoveryRoundTrips;
+		maxPacketsPerEvent = builder.maxPacketsPerEvent;
+		buttonPeriod = builder.buttonNotificationRate > 0 ?
+				(long) (1_000_000_000L / builder.buttonNotificationRate) : 0;
+	}
+
+	/**
+	 * Connects to the peripheral. The link is established in the next advertising event
+	 * and followed by service discovery.
+	 *
+	 * @param listener the connection state listener.
+	 */
+	public void connect(@NonNull final ConnectionListener listener) {
+		if (connected)
+			return;
+
+		connectionListener = listener;
+		final int link = ++linkId;
+		final long delay = (long) (random.nextDouble() * advertisingInterval);
+		scheduler.schedule(() -> {
+			if (link != linkId)
+				return;
+			connected = true;
+			anchor = scheduler.now();
+			lastEvent[FROM_PHONE] = lastEvent[FROM_PERIPHERAL] = -1;
+			lastDelivery[FROM_PHONE] = lastDelivery[FROM_PERIPHERAL] = 0;
+			listener.onConnected();
+			discover(link, discoveryRoundTrips);
+		}, delay);
+	}
+
+	/**
+	 * Closes the link. Pending requests are dropped.
+	 */
+	public void disconnect() {
+		if (!connected && linkId == 0)
+			return;
+
+		linkId++;
+		final boolean wasConnected = connected;
+		connected = false;
+		ready = false;
+		busy = false;
+		notificationsEnabled = false;
+		queue.clear();
+		if (wasConnected && connectionListener != null)
+			connectionListener.onDisconnected();
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Sets the callback for Button notifications, for example a
+	 * {@link no.nordicsemi.android.blinky.profile.callback.BlinkyButtonDataCallback}.
+	 *
+	 * @param callback the callback.
+	 */
+	public void setButtonNotificationCallback(@Nullable final DataReceivedCallback callback) {
+		buttonCallback = callback;
+	}
+
+	/**
+	 * Enqueues reading the LED characteristic.
+	 *
+	 * @param callback the callback, called with the value.
+	 */
+	public void readLed(@NonNull final DataReceivedCallback callback) {
+		enqueue(new Operation(Operation.READ_LED, null, callback, null));
+	}
+
+	/**
+	 * Enqueues reading the Button characteristic.
+	 *
+	 * @param callback the callback, called with the value.
+	 */
+	public void readButton(@NonNull final DataReceivedCallback callback) {
+		enqueue(new Operation(Operation.READ_BUTTON, null, callback, null));
+	}
+
+	/**
+	 * Enqueues enabling Button notifications by writing the CCCD descriptor.
+	 */
+	public void enableButtonNotifications() {
+		enqueue(new Operation(Operation.ENABLE_NOTIFICATIONS, null, null, null));
+	}
+
+	/**
+	 * Enqueues writing the LED characteristic using Write Request. The callback is called
+	 * when the Write Response has been received.
+	 *
+	 * @param data     the value, as created by {@link no.nordicsemi.android.blinky.profile.data.BlinkyLED}.
+	 * @param callback the callback.
+	 */
+	public void writeLed(@NonNull final Data data, @Nullable final DataSentCallback callback) {
+		enqueue(new Operation(Operation.WRITE_LED, data, null, callback));
+	}
+
+	/**
+	 * Enqueues writing the LED characteristic using Write Command. The callback is called
+	 * when the packet has been sent. Following commands may be sent in the same connection
+	 * event, up to the maximum number of packets per event.
+	 *
+	 * @param data     the value, as created by {@link no.nordicsemi.android.blinky.profile.data.BlinkyLED}.
+	 * @param callback the callback.
+	 */
+	public void writeLedWithoutResponse(@NonNull final Data data,
+										@Nullable final DataSentCallback callback) {
+		enqueue(new Operation(Operation.WRITE_LED_NO_RESPONSE, data, null, callback));
+	}
+
+	/**
+	 * Simulates pressing or releasing the button on the device.
+	 *
+	 * @param pressed true if the button was pressed, false if released.
+	 */
+	public void setButtonPressed(final boolean pressed) {
+		buttonPressed = pressed;
+		if (!connected || !notificationsEnabled)
+			return;
+
+		notificationsSent++;
+		final int link = linkId;
+		final Data data = value(pressed);
+		final long arrival = deliver(FROM_PERIPHERAL, transmit(FROM_PERIPHERAL, scheduler.now()));
+		scheduler.schedule(() -> {
+			if (link == linkId && buttonCallback != null)
+				buttonCallback.onDataReceived(device, data);
+		}, arrival - scheduler.now());
+	}
+
+	/**
+	 * Returns the LED state on the peripheral.
+	 */
+	public boolean isLedOn() {
+		return ledOn;
+	}
+
+	public boolean isButtonPressed() {
+		return buttonPressed;
+	}
+
+	/** Returns the number of link layer packets sent, including retransmissions. */
+	public long getPacketsSent() {
+		return packetsSent;
+	}
+
+	/** Returns the number of link layer packets lost. */
+	public long getPacketsLost() {
+		return packetsLost;
+	}
+
+	/** Returns the number of LED writes received by the peripheral. */
+	public long getLedWrites() {
+		return ledWrites;
+	}
+
+	/** Returns the number of Button notifications sent by the peripheral. */
+	public long getNotificationsSent() {
+		return notificationsSent;
+	}
+
+	private void discover(final int link, final int roundTrips) {
+		if (link != linkId)
+			return;
+		if (roundTrips == 0) {
+			ready = true;
+			if (connectionListener != null)
+				connectionListener.onReady();
+			if (buttonPeriod > 0)
+				scheduler.schedule(() -> toggleButton(link), buttonPeriod);
+			next();
+			return;
+		}
+		final long request = transmit(FROM_PHONE, scheduler.now());
+		final long response = deliver(FROM_PERIPHERAL, transmit(FROM_PERIPHERAL, request + 1));
+		scheduler.schedule(() -> discover(link, roundTrips - 1), response - scheduler.now());
+	}
+
+	private void toggleButton(final int link) {
+		if (link != linkId)
+			return;
+		setButtonPressed(!buttonPressed);
+		scheduler.schedule(() -> toggleButton(link), buttonPeriod);
+	}
+
+	private void enqueue(@NonNull final Operation operation) {
+		queue.add(operation);
+		next();
+	}
+
+	private void next() {
+		if (busy || !ready)
+			return;
+		final Operation operation = queue.poll();
+		if (operation == null)
+			return;
+
+		busy = true;
+		final int link = linkId;
+		final long now = scheduler.now();
+		final long request = transmit(FROM_PHONE, now);
+
+		if (operation.type == Operation.WRITE_LED_NO_RESPONSE) {
+			// The peripheral receives the command in the event it's sent.
+			scheduler.schedule(() -> {
+				if (link != linkId)
+					return;
+				ledWrites++;
+				ledOn = isOn(operation.data);
+				if (operation.sentCallback != null)
+					operation.sentCallback.onDataSent(device, operation.data);
+				complete();
+			}, request - now);
+			return;
+		}
+
+		// The response is sent in the next connection event.
+		final long response = deliver(FROM_PERIPHERAL, transmit(FROM_PERIPHERAL, request + 1));
+		scheduler.schedule(() -> {
+			if (link != linkId)
+				return;
+			switch (operation.type) {
+				case Operation.WRITE_LED:
+					ledWrites++;
+					ledOn = isOn(operation.data);
+					break;
+				case Operation.ENABLE_NOTIFICATIONS:
+					notificationsEnabled = true;
+					break;
+			}
+		}, request - now);
+		scheduler.schedule(() -> {
+			if (link != linkId)
+				return;
+			switch (operation.type) {
+				case Operation.READ_LED:
+					operation.receivedCallback.onDataReceived(device, value(ledOn));
+					break;
+				case Operation.READ_BUTTON:
+					operation.receivedCallback.onDataReceived(device, value(buttonPressed));
+					break;
+				case Operation.WRITE_LED:
+					if (operation.sentCallback != null)
+						operation.sentCallback.onDataSent(device, operation.data);
+					break;
+			}
+			complete();
+		}, response - now);
+	}
+
+	private void complete() {
+		busy = false;
+		next();
+	}
+
+	/**
+	 * Returns the time of the connection event in which a packet ready to be sent at given
+	 * time will be received, including retransmissions.
+	 */
+	private long transmit(final int direction, final long earliest) {
+		long event = Math.max(0, (earliest - anchor + interval - 1) / interval);
+		// When idle, the peripheral listens only every (latency + 1) connection events.
+		if (direction == FROM_PHONE && slaveLatency > 0) {
+			final int period = slaveLatency + 1;
+			event = (event + period - 1) / period * period;
+		}
+		// Packets are sent in order.
+		if (event < lastEvent[direction])
+			event = lastEvent[direction];
+		if (event == lastEvent[direction] && packetsInEvent[direction] >= maxPacketsPerEvent)
+			event++;
+		packetsSent++;
+		while (packetLoss > 0 && random.nextFloat() < packetLoss) {
+			packetsLost++;
+			packetsSent++;
+			event++;
+		}
+		if (event != lastEvent[direction]) {
+			lastEvent[direction] = event;
+			packetsInEvent[direction] = 0;
+		}
+		packetsInEvent[direction]++;
+		return anchor + event * interval;
+	}
+
+	/**
+	 * Adds the jitter of the phone's Bluetooth stack to the time of reception, keeping the order.
+	 */
+	private long deliver(final int direction, final long received) {
+		long time = received;
+		if (jitter > 0)
+			time += (long) (random.nextDouble() * jitter);
+		time = Math.max(time, lastDelivery[direction]);
+		lastDelivery[direction] = time;
+		return time;
+	}
+
+	@NonNull
+	private static Data value(final boolean on) {
+		return new Data(new byte[] { on ? STATE_ON : STATE_OFF });
+	}
+
+	private static boolean isOn(@NonNull final Data data) {
+		final byte[] value = data.getValue();
+		return value != null && value.length == 1 && value[0] == STATE_ON;
+	}
+
+	private static final class Operation {
+		private static final int READ_LED = 0;
+		private static final int READ_BUTTON = 1;
+		private static final int WRITE_LED = 2;
+		private static final int WRITE_LED_NO_RESPONSE = 3;
+		private static final int ENABLE_NOTIFICATIONS = 4;
+
+		private final int type;
+		private final Data data;
+		private final DataReceivedCallback receivedCallback;
+		private final DataSentCallback sentCallback;
+
+		private Operation(final int type, @Nullable final Data data,
+						  @Nullable final DataReceivedCallback receivedCallback,
+						  @Nullable final DataSentCallback sentCallback) {
+			this.type = type;
+			this.data = data;
+			this.receivedCallback = receivedCallback;
+			this.sentCallback = sentCallback;
+		}
+	}
+
+	/**
+	 * The builder of the virtual peripheral. By default, the link has 30 ms connection
+	 * interval, no slave latency, no jitter and no packet loss, and the button is not pressed
+	 * automatically.
+	 */
+	public static class Builder {
+		private final Scheduler scheduler;
+		private BluetoothDevice device;
+		private long seed = 0;
+		private long interval = 30_000_000L;
+		private int slaveLatency = 0;
+		private long jitter = 0;
+		private float packetLoss = 0.0f;
+		private long advertisingInterval = 40_000_000L;
+		private int discoveryRoundTrips = 6;
+		private int maxPacketsPerEvent = 4;
+		private float buttonNotificationRate = 0.0f;
+
+		/**
+		 * Creates the builder.
+		 *
+		 * @param scheduler the scheduler, {@link VirtualClock} for deterministic tests.
+		 */
+		public Builder(@NonNull final Scheduler scheduler) {
+			this.scheduler = scheduler;
+		}
+
+		/**
+		 * Sets the device passed to the callbacks. May be null in JVM tests.
+		 */
+		public Builder setDevice(@Nullable final BluetoothDevice device) {
+			this.device = device;
+			return this;
+		}
+
+		/**
+		 * Sets the seed of the random generator used for jitter, packet loss and connection time.
+		 */
+		public Builder setSeed(final long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * Sets the connection interval, from 7.5 to 4000 ms.
+		 */
+		public Builder setConnectionInterval(final float intervalMs) {
+			if (intervalMs < 7.5f || intervalMs > 4000f)
+				throw new IllegalArgumentException("Connection interval must be in range 7.5 - 4000 ms");
+			this.interval = (long) (intervalMs * 1_000_000L);
+			return this;
+		}
+
+		/**
+		 * Sets the slave latency, that is the number of connection events the peripheral may
+		 * skip when it has no data to send.
+		 */
+		public Builder setSlaveLatency(final int slaveLatency) {
+			if (slaveLatency < 0 || slaveLatency > 499)
+				throw new IllegalArgumentException("Slave latency must be in range 0 - 499");
+			this.slaveLatency = slaveLatency;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum random delay added by the phone to each received packet.
+		 */
+		public Builder setJitter(final float jitterMs) {
+			if (jitterMs < 0)
+				throw new IllegalArgumentException("Jitter must not be negative");
+			this.jitter = (long) (jitterMs * 1_000_000L);
+			return this;
+		}
+
+		/**
+		 * Sets the probability of losing a link layer packet, in range [0, 1).
+		 */
+		public Builder setPacketLoss(final float packetLoss) {
+			if (packetLoss < 0 || packetLoss >= 1)
+				throw new IllegalArgumentException("Packet loss must be in range [0, 1)");
+			this.packetLoss = packetLoss;
+			return this;
+		}
+
+		/**
+		 * Sets the advertising interval, which determines the time to establish a connection.
+		 */
+		public Builder setAdvertisingInterval(final float intervalMs) {
+			this.advertisingInterval = (long) (intervalMs * 1_000_000L);
+			return this;
+		}
+
+		/**
+		 * Sets the number of request-response pairs needed to discover services.
+		 */
+		public Builder setDiscoveryRoundTrips(final int roundTrips) {
+			this.discoveryRoundTrips = Math.max(0, roundTrips);
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of packets sent in each direction in a connection event.
+		 */
+		public Builder setMaxPacketsPerEvent(final int packets) {
+			this.maxPacketsPerEvent = Math.max(1, packets);
+			return this;
+		}
+
+		/**
+		 * Sets the rate at which the button state toggles after the device is ready,
+		 * in notifications per second. 0 disables automatic button presses.
+		 */
+		public Builder setButtonNotificationRate(final float rate) {
+			if (rate < 0)
+				throw new IllegalArgumentException("Rate must not be negative");
+			this.buttonNotificationRate = rate;
+			return this;
+		}
+
+		@NonNull
+		public VirtualBlinkyPeripheral build() {
+			return new VirtualBlinkyPeripheral(this);
+		}
+	}
+}
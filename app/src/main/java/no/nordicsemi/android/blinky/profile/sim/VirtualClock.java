@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.sim;
+
+import androidx.annotation.NonNull;
+
+import java.util.PriorityQueue;
+
+/**
+ * A discrete event scheduler with virtual time. Tasks are executed only when the time
+ * is advanced, on the thread advancing it, so the simulation runs as fast as possible and
+ * gives the same results each time for the same seed.
+ */
+@SuppressWarnings("unused")
+public class VirtualClock implements Scheduler {
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+	private long now;
+	private long sequence;
+
+	@Override
+	public long now() {
+		return now;
+	}
+
+	@Override
+	public void schedule(@NonNull final Runnable task, final long delay) {
+		events.add(new Event(now + Math.max(0, delay), sequence++, task));
+	}
+
+	/**
+	 * Executes all tasks scheduled up to the given time, including tasks scheduled by them,
+	 * and sets the clock to that time.
+	 *
+	 * @param time the target time in nanoseconds.
+	 */
+	public void advanceTo(final long time) {
+		Event event;
+		while ((event = events.peek()) != null && event.time <= time) {
+			events.poll();
+			now = event.time;
+			event.task.run();
+		}
+		now = Math.max(now, time);
+	}
+
+	/**
+	 * Advances the clock by the given amount of time.
+	 *
+	 * @param duration the duration in nanoseconds.
+	 */
+	public void advanceBy(final long duration) {
+		advanceTo(now + duration);
+	}
+
+	/**
+	 * Executes all tasks until there is nothing scheduled. Periodic tasks, like button
+	 * notifications with a non-zero rate, never let the clock become idle, so use
+	 * {@link #advanceTo(long)} in that case.
+	 */
+	public void runUntilIdle() {
+		Event event;
+		while ((event = events.poll()) != null) {
+			now = event.time;
+			event.task.run();
+		}
+	}
+
+	/**
+	 * Returns true if no task is scheduled.
+	 */
+	public boolean isIdle() {
+		return events.isEmpty();
+	}
+
+	private static final class Event implements Comparable<Event> {
+		private final long time;
+		private final long sequence;
+		private final Runnable task;
+
+		private Event(final long time, final long sequence, @NonNull final Runnable task) {
+			this.time = time;
+			this.sequence = sequence;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(@NonNull final Event other) {
+			if (time != other.time)
+				return time < other.time ? -1 : 1;
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
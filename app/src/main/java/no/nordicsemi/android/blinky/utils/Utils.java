@@ -36,9 +36,28 @@ import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 public class Utils {
 	private static final String PREFS_LOCATION_NOT_REQUIRED = "location_not_required";
 	private static final String PREFS_PERMISSION_REQUESTED = "permission_requested";
+	private static final String PREFS_CONNECTION_HISTORY = "connection_history";
+	private static final String PREFS_METRICS_OVERLAY = "metrics_overlay";
+	private static final String PREFS_LED_LATENCY_COUNT = "led_latency_count";
+	private static final String PREFS_LED_LATENCY_RATE = "led_latency_rate";
+	private static final String PREFS_LED_LATENCY_SIMULATED = "led_latency_simulated";
+	private static final String PREFS_LED_THROUGHPUT_DURATION = "led_throughput_duration";
+	private static final String PREFS_LED_THROUGHPUT_DEPTH = "led_throughput_depth";
+	private static final String PREFS_LED_THROUGHPUT_SIMULATED = "led_throughput_simulated";
+
+	/**
+	 * The number of connections by device address, loaded once from the preferences. Devices
+	 * are ranked with each scan batch, which should not read the preferences each time.
+	 */
+	private static Map<String, Integer> connectionHistory;
 
 	/**
 	 * Checks whether Bluetooth is enabled.
@@ -135,7 +154,168 @@ public class Utils {
 		preferences.edit().putBoolean(PREFS_PERMISSION_REQUESTED, true).apply();
 	}
 
+	/**
+	 * Returns the number of times the user has connected to the device with given address.
+	 *
+	 * @param context the context.
+	 * @param address the device MAC address.
+	 * @return The number of previous connections.
+	 */
+	public static int getConnectionCount(@NonNull final Context context, @NonNull final String address) {
+		synchronized (Utils.class) {
+			final Integer count = getConnectionHistory(context).get(address);
+			return count != null ? count : 0;
+		}
+	}
+
+	/**
+	 * Increments the number of connections to the device with given address. The history
+	 * is used to rank devices for speculative connection.
+	 *
+	 * @param context the context.
+	 * @param address the device MAC address.
+	 */
+	public static void markDeviceConnected(@NonNull final Context context, @NonNull final String address) {
+		final int count;
+		synchronized (Utils.class) {
+			count = getConnectionCount(context, address) + 1;
+			connectionHistory.put(address, count);
+		}
+		final SharedPreferences preferences =
+				context.getSharedPreferences(PREFS_CONNECTION_HISTORY, Context.MODE_PRIVATE);
+		preferences.edit().putInt(address, count).apply();
+	}
+
+	/**
+	 * Returns the addresses of all devices the user has connected to.
+	 *
+	 * @param context the context.
+	 * @return The device MAC addresses.
+	 */
+	@NonNull
+	public static Set<String> getConnectedDevices(@NonNull final Context context) {
+		synchronized (Utils.class) {
+			return new HashSet<>(getConnectionHistory(context).keySet());
+		}
+	}
+
+	/**
+	 * Returns the connection history, reading it from the preferences on the first call.
+	 * Must be called with the lock of this class held.
+	 */
+	@NonNull
+	private static Map<String, Integer> getConnectionHistory(@NonNull final Context context) {
+		if (connectionHistory == null) {
+			final SharedPreferences preferences =
+					context.getSharedPreferences(PREFS_CONNECTION_HISTORY, Context.MODE_PRIVATE);
+			connectionHistory = new HashMap<>();
+			for (final Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+				if (entry.getValue() instanceof Integer)
+					connectionHistory.put(entry.getKey(), (Integer) entry.getValue());
+			}
+		}
+		return connectionHistory;
+	}
+
+	/**
+	 * Returns whether the metrics overlay should be shown. The overlay is available only
+	 * in debug builds.
+	 *
+	 * @param context the context.
+	 * @return True, if the overlay is enabled.
+	 */
+	public static boolean isMetricsOverlayEnabled(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getBoolean(PREFS_METRICS_OVERLAY, false);
+	}
+
+	public static void setMetricsOverlayEnabled(@NonNull final Context context, final boolean enabled) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		preferences.edit().putBoolean(PREFS_METRICS_OVERLAY, enabled).apply();
+	}
+
+	/**
+	 * Returns the number of toggles in the last LED latency test, 100 by default.
+	 */
+	public static int getLedLatencyTestCount(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getInt(PREFS_LED_LATENCY_COUNT, 100);
+	}
+
+	/**
+	 * Returns the toggle rate of the last LED latency test, 5 per second by default.
+	 */
+	public static float getLedLatencyTestRate(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getFloat(PREFS_LED_LATENCY_RATE, 5.0f);
+	}
+
+	/**
+	 * Returns whether the last LED latency test used the simulated peripheral.
+	 */
+	public static boolean isLedLatencyTestSimulated(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getBoolean(PREFS_LED_LATENCY_SIMULATED, false);
+	}
+
+	/**
+	 * Saves the LED latency test settings, so that they are offered again.
+	 */
+	public static void setLedLatencyTestSettings(@NonNull final Context context,
+												 final int count, final float rate,
+												 final boolean simulated) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		preferences.edit()
+				.putInt(PREFS_LED_LATENCY_COUNT, count)
+				.putFloat(PREFS_LED_LATENCY_RATE, rate)
+				.putBoolean(PREFS_LED_LATENCY_SIMULATED, simulated)
+				.apply();
+	}
+
+	/**
+	 * Returns the duration of each mode of the last LED throughput benchmark, in seconds,
+	 * 10 by default.
+	 */
+	public static int getLedThroughputTestDuration(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getInt(PREFS_LED_THROUGHPUT_DURATION, 10);
+	}
+
+	/**
+	 * Returns the number of pipelined writes in the last LED throughput benchmark, 8 by default.
+	 */
+	public static int getLedThroughputTestDepth(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getInt(PREFS_LED_THROUGHPUT_DEPTH, 8);
+	}
+
+	/**
+	 * Returns whether the last LED throughput benchmark used the simulated peripheral.
+	 */
+	public static boolean isLedThroughputTestSimulated(@NonNull final Context context) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getBoolean(PREFS_LED_THROUGHPUT_SIMULATED, false);
+	}
+
+	/**
+	 * Saves the LED throughput benchmark settings, so that they are offered again.
+	 */
+	public static void setLedThroughputTestSettings(@NonNull final Context context,
+													final int duration, final int depth,
+													final boolean simulated) {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		preferences.edit()
+				.putInt(PREFS_LED_THROUGHPUT_DURATION, duration)
+				.putInt(PREFS_LED_THROUGHPUT_DEPTH, depth)
+				.putBoolean(PREFS_LED_THROUGHPUT_SIMULATED, simulated)
+				.apply();
+	}
+
 	public static boolean isMarshmallowOrAbove() {
 		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
 	}
+
+	public static boolean isOreoOrAbove() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+	}
 }
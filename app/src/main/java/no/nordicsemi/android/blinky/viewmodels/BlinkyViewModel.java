@@ -24,26 +24,87 @@ package no.nordicsemi.android.blinky.viewmodels;
 
 import android.app.Application;
 import android.bluetooth.BluetoothDevice;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 
 import no.nordicsemi.android.ble.livedata.state.ConnectionState;
+import no.nordicsemi.android.blinky.BlinkyApplication;
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.core.button.ButtonEventStatistics;
+import no.nordicsemi.android.blinky.core.button.ButtonEventWriter;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.metrics.ButtonEventExporter;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.blinky.metrics.LedLatencyTest;
+import no.nordicsemi.android.blinky.metrics.LedThroughputTest;
 import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.blinky.profile.LedLink;
+import no.nordicsemi.android.blinky.profile.data.LedState;
+import no.nordicsemi.android.blinky.profile.sim.SimulatedLedLink;
+import no.nordicsemi.android.blinky.utils.Utils;
 import no.nordicsemi.android.log.LogSession;
 import no.nordicsemi.android.log.Logger;
 
 public class BlinkyViewModel extends AndroidViewModel {
-	private final BlinkyManager blinkyManager;
+	/** The period over which the Button event rate is calculated. */
+	private static final long BUTTON_EVENT_RATE_WINDOW = 10_000_000_000L; // [ns]
+	/** The number of events kept for observers which are not started. */
+	private static final int EVENT_CAPACITY = 64;
+
+	/** The LED state of the current {@link #ledLink}. */
+	private final MediatorLiveData<LedState> ledState = new MediatorLiveData<>();
+	/** The test in progress, or null. */
+	private final MutableLiveData<LedLatencyTest> ledLatencyTest = new MutableLiveData<>();
+	private final LifecycleEventChannel<LedLatencyTest> ledLatencyTestResult =
+			new LifecycleEventChannel<>(EVENT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	/** The benchmark in progress, or null. */
+	private final MutableLiveData<LedThroughputTest> ledThroughputTest = new MutableLiveData<>();
+	private final LifecycleEventChannel<LedThroughputTest> ledThroughputTestResult =
+			new LifecycleEventChannel<>(EVENT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	private final LifecycleEventChannel<ButtonEventExporter> buttonEventExportResult =
+			new LifecycleEventChannel<>(EVENT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	/** Every connection state change, unlike {@link #getConnectionState()}. */
+	private final LifecycleEventChannel<ConnectionState> connectionEvents =
+			new LifecycleEventChannel<>(EVENT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	/** Every Button state notification, unlike {@link #getButtonState()}. */
+	private final LifecycleEventChannel<Boolean> buttonEvents =
+			new LifecycleEventChannel<>(EVENT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	private final Observer<ConnectionState> connectionStateObserver = connectionEvents::publish;
+	private final Observer<Boolean> buttonStateObserver = buttonEvents::publish;
+
+	private BlinkyManager blinkyManager;
 	private BluetoothDevice device;
+	/** The LED control, the manager or the simulated peripheral during a simulated test. */
+	private LedLink ledLink;
+	@Nullable
+	private SimulatedLedLink simulatedLedLink;
+	/** The action toggling the LED switch, set while the UI is visible. */
+	@Nullable
+	private Runnable ledToggle;
+	@Nullable
+	private ButtonEventExporter buttonEventExporter;
 
 	public BlinkyViewModel(@NonNull final Application application) {
 		super(application);
-
-		// Initialize the manager.
-		blinkyManager = new BlinkyManager(getApplication());
+		// The events are logged and counted, in addition to any observer in the UI.
+		connectionEvents.observeForever(state -> {
+			AppMetrics.CONNECTION_EVENTS.increment();
+			if (blinkyManager != null)
+				blinkyManager.log(Log.DEBUG, "Connection state: " + state.getState());
+		});
+		buttonEvents.observeForever(pressed -> AppMetrics.BUTTON_EVENTS.increment());
 	}
 
 	public LiveData<ConnectionState> getConnectionState() {
@@ -54,12 +115,131 @@ public class BlinkyViewModel extends AndroidViewModel {
 		return blinkyManager.getButtonState();
 	}
 
-	public LiveData<Boolean> getLedState() {
-		return blinkyManager.getLedState();
+	/**
+	 * Returns the channel of all connection state changes. Unlike {@link #getConnectionState()},
+	 * each change is delivered to each observer, also while the UI is stopped.
+	 */
+	public LifecycleEventChannel<ConnectionState> getConnectionEvents() {
+		return connectionEvents;
+	}
+
+	/**
+	 * Returns the channel of all Button state notifications.
+	 */
+	public LifecycleEventChannel<Boolean> getButtonEvents() {
+		return buttonEvents;
+	}
+
+	/**
+	 * Returns the LED state confirmed by the device. During a simulated LED latency test
+	 * the state of the simulated peripheral is returned instead.
+	 */
+	public LiveData<LedState> getLedState() {
+		return ledState;
+	}
+
+	/**
+	 * Returns the LED latency test in progress, or null.
+	 */
+	public LiveData<LedLatencyTest> getLedLatencyTest() {
+		return ledLatencyTest;
+	}
+
+	/**
+	 * Returns the event emitted when an LED latency test has finished or was cancelled.
+	 */
+	public LifecycleEventChannel<LedLatencyTest> getLedLatencyTestResult() {
+		return ledLatencyTestResult;
+	}
+
+	/**
+	 * Returns the LED throughput benchmark in progress, or null.
+	 */
+	public LiveData<LedThroughputTest> getLedThroughputTest() {
+		return ledThroughputTest;
+	}
+
+	/**
+	 * Returns the event emitted when an LED throughput benchmark has finished or was cancelled.
+	 */
+	public LifecycleEventChannel<LedThroughputTest> getLedThroughputTestResult() {
+		return ledThroughputTestResult;
+	}
+
+	/**
+	 * Returns true if an LED latency test or throughput benchmark is in progress.
+	 */
+	public boolean isLedTestRunning() {
+		return ledLatencyTest.getValue() != null || ledThroughputTest.getValue() != null;
+	}
+
+	/**
+	 * Returns the time the last Button state was received, see
+	 * {@link no.nordicsemi.android.blinky.metrics.AppMetrics#now()}.
+	 */
+	public long getButtonNotificationTime() {
+		return blinkyManager.getButtonNotificationTime();
+	}
+
+	/**
+	 * Returns the press duration and event rate statistics of the recent Button events.
+	 */
+	@NonNull
+	public ButtonEventStatistics getButtonStatistics() {
+		return blinkyManager.getButtonEvents().getStatistics(AppMetrics.now(), BUTTON_EVENT_RATE_WINDOW);
+	}
+
+	/**
+	 * Returns the event emitted when the Button event export has been stopped and the file
+	 * closed.
+	 */
+	public LifecycleEventChannel<ButtonEventExporter> getButtonEventExportResult() {
+		return buttonEventExportResult;
+	}
+
+	public boolean isButtonEventExportRunning() {
+		return buttonEventExporter != null;
+	}
+
+	/**
+	 * Starts streaming all Button events to a new file in the app's external files directory,
+	 * starting with the events received so far.
+	 *
+	 * @param format the file format.
+	 * @return The file.
+	 */
+	@NonNull
+	public File startButtonEventExport(@NonNull final ButtonEventWriter.Format format) {
+		stopButtonEventExport();
+		File directory = getApplication().getExternalFilesDir(null);
+		if (directory == null)
+			directory = getApplication().getFilesDir();
+		final String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+		final File file = new File(directory, "button-events-" + time + "." + format.getExtension());
+		buttonEventExporter = new ButtonEventExporter(blinkyManager.getButtonEvents(), file, format);
+		buttonEventExporter.start();
+		return file;
+	}
+
+	/**
+	 * Stops the Button event export, if running. The result is emitted when the file is closed.
+	 */
+	public void stopButtonEventExport() {
+		if (buttonEventExporter != null) {
+			buttonEventExporter.stop(buttonEventExportResult::publish);
+			buttonEventExporter = null;
+		}
 	}
 
 	/**
-	 * Connect to the given peripheral.
+	 * Connect to the given peripheral. This method must be called before any of the state
+	 * getters.
+	 * <p>
+	 * If the device has been connected speculatively while the scanner was shown, the
+	 * ready manager is taken over and no new connection is made.
+	 * <p>
+	 * The connection is requested first. The log session is created afterwards in background,
+	 * and messages logged until then are replayed into it.
 	 *
 	 * @param target the target device.
 	 */
@@ -67,10 +247,26 @@ public class BlinkyViewModel extends AndroidViewModel {
 		// Prevent from calling again when called again (screen orientation changed).
 		if (device == null) {
 			device = target.getDevice();
-			final LogSession logSession = Logger
-					.newSession(getApplication(), null, target.getAddress(), target.getName());
-			blinkyManager.setLogger(logSession);
-			reconnect();
+
+			// Initialize the manager.
+			final BlinkyApplication application = getApplication();
+			blinkyManager = application.getSpeculativeConnector().adopt(target);
+			if (blinkyManager == null) {
+				blinkyManager = new BlinkyManager(application);
+				reconnect();
+			}
+			setLedLink(blinkyManager);
+			blinkyManager.getState().observeForever(connectionStateObserver);
+			blinkyManager.getButtonState().observeForever(buttonStateObserver);
+
+			final BlinkyManager manager = blinkyManager;
+			// Creating a session requires an IPC call to nRF Logger.
+			BlinkyManager.LOG_EXECUTOR.execute(() -> {
+				Utils.markDeviceConnected(application, target.getAddress());
+				final LogSession logSession = Logger
+						.newSession(application, null, target.getAddress(), target.getName());
+				manager.setLogger(logSession);
+			});
 		}
 	}
 
@@ -80,7 +276,7 @@ public class BlinkyViewModel extends AndroidViewModel {
 	 * reconnection may help.
 	 */
 	public void reconnect() {
-		if (device != null) {
+		if (device != null && blinkyManager != null) {
 			blinkyManager.connect(device)
 					.retry(3, 100)
 					.useAutoConnect(false)
@@ -97,18 +293,180 @@ public class BlinkyViewModel extends AndroidViewModel {
 	}
 
 	/**
-	 * Sends a command to turn ON or OFF the LED on the nRF5 DK.
+	 * Sends a command to turn ON or OFF the LED on the nRF5 DK. This should be called only as
+	 * a result of a user action, never when reflecting the {@link #getLedState()} on the UI.
 	 *
 	 * @param on true to turn the LED on, false to turn it OFF.
+	 * @return The ID of the intent, or {@link LedState#NO_INTENT} if no write was needed.
 	 */
-	public void setLedState(final boolean on) {
-		blinkyManager.turnLed(on);
+	public int setLedState(final boolean on) {
+		final long tapTime = AppMetrics.now();
+		final int intentId = ledLink.turnLed(on);
+		final LedLatencyTest test = ledLatencyTest.getValue();
+		if (test != null && intentId != LedState.NO_INTENT)
+			test.onTapped(intentId, tapTime);
+		return intentId;
+	}
+
+	/**
+	 * Notifies that the LED state has been shown on the UI. This is used to measure the
+	 * LED control latency.
+	 *
+	 * @param state the state shown.
+	 */
+	public void onLedStateShown(@NonNull final LedState state) {
+		final LedLatencyTest test = ledLatencyTest.getValue();
+		if (test != null && state.getIntentId() != LedState.NO_INTENT)
+			test.onLedStateShown(state.getIntentId(), AppMetrics.now());
+	}
+
+	/**
+	 * Sets the action toggling the LED switch, used by the LED latency test to tap it.
+	 *
+	 * @param toggle the action, or null when the UI is not visible.
+	 */
+	public void setLedToggle(@Nullable final Runnable toggle) {
+		ledToggle = toggle;
+	}
+
+	/**
+	 * Starts measuring the LED control latency by toggling the LED switch at the given rate.
+	 * The toggles are skipped while the UI is not visible.
+	 *
+	 * @param count     the number of toggles.
+	 * @param rate      the number of toggles per second.
+	 * @param simulated true to control the simulated peripheral instead of the device.
+	 */
+	public void startLedLatencyTest(final int count, final float rate, final boolean simulated) {
+		if (isLedTestRunning())
+			return;
+
+		final LedLatencyTest test = new LedLatencyTest(count, rate, simulated, () -> {
+			if (ledToggle != null)
+				ledToggle.run();
+		}, new LedLatencyTest.Listener() {
+			@Override
+			public void onProgress(@NonNull final LedLatencyTest test) {
+				ledLatencyTest.setValue(test);
+			}
+
+			@Override
+			public void onFinished(@NonNull final LedLatencyTest test) {
+				ledLink.setLedWriteListener(null);
+				releaseSimulatedLedLink();
+				ledLatencyTest.setValue(null);
+				ledLatencyTestResult.publish(test);
+			}
+		});
+		ledLatencyTest.setValue(test);
+		if (simulated) {
+			final SimulatedLedLink link = useSimulatedLedLink();
+			link.setLedWriteListener(test);
+			link.connect(test::start);
+		} else {
+			blinkyManager.setLedWriteListener(test);
+			test.start();
+		}
+	}
+
+	/**
+	 * Cancels the LED latency test in progress, if any.
+	 */
+	public void cancelLedLatencyTest() {
+		final LedLatencyTest test = ledLatencyTest.getValue();
+		if (test != null)
+			test.cancel();
+	}
+
+	/**
+	 * Starts the LED throughput benchmark, which writes the LED characteristic at the maximum
+	 * rate, comparing sequential and pipelined writes.
+	 *
+	 * @param modeDuration the duration of each mode, in milliseconds.
+	 * @param depth        the maximum number of pipelined writes.
+	 * @param simulated    true to write to the simulated peripheral instead of the device.
+	 */
+	public void startLedThroughputTest(final long modeDuration, final int depth,
+									   final boolean simulated) {
+		if (isLedTestRunning())
+			return;
+
+		final LedLink link = simulated ? useSimulatedLedLink() : blinkyManager;
+		final LedThroughputTest test = new LedThroughputTest(link, modeDuration, depth, simulated,
+				new LedThroughputTest.Listener() {
+					@Override
+					public void onProgress(@NonNull final LedThroughputTest test) {
+						ledThroughputTest.setValue(test);
+					}
+
+					@Override
+					public void onFinished(@NonNull final LedThroughputTest test) {
+						// The benchmark writes are not reported in the LED state.
+						if (!releaseSimulatedLedLink())
+							blinkyManager.readLed();
+						ledThroughputTest.setValue(null);
+						ledThroughputTestResult.publish(test);
+					}
+				});
+		ledThroughputTest.setValue(test);
+		if (simulated) {
+			((SimulatedLedLink) link).connect(test::start);
+		} else {
+			test.start();
+		}
+	}
+
+	/**
+	 * Cancels the LED throughput benchmark in progress, if any.
+	 */
+	public void cancelLedThroughputTest() {
+		final LedThroughputTest test = ledThroughputTest.getValue();
+		if (test != null)
+			test.cancel();
+	}
+
+	/**
+	 * Creates the simulated peripheral and shows its LED state instead of the device's.
+	 */
+	@NonNull
+	private SimulatedLedLink useSimulatedLedLink() {
+		final SimulatedLedLink link = simulatedLedLink = new SimulatedLedLink();
+		setLedLink(link);
+		return link;
+	}
+
+	/**
+	 * Closes the simulated peripheral, if used, and shows the device's LED state again.
+	 *
+	 * @return True, if the simulated peripheral was used.
+	 */
+	private boolean releaseSimulatedLedLink() {
+		if (simulatedLedLink == null)
+			return false;
+		simulatedLedLink.close();
+		simulatedLedLink = null;
+		setLedLink(blinkyManager);
+		return true;
+	}
+
+	private void setLedLink(@NonNull final LedLink link) {
+		if (ledLink != null)
+			ledState.removeSource(ledLink.getLedState());
+		ledLink = link;
+		ledState.addSource(link.getLedState(), ledState::setValue);
 	}
 
 	@Override
 	protected void onCleared() {
 		super.onCleared();
-		if (blinkyManager.isConnected()) {
+		cancelLedLatencyTest();
+		cancelLedThroughputTest();
+		stopButtonEventExport();
+		if (blinkyManager != null) {
+			blinkyManager.getState().removeObserver(connectionStateObserver);
+			blinkyManager.getButtonState().removeObserver(buttonStateObserver);
+		}
+		if (blinkyManager != null && blinkyManager.isConnected()) {
 			disconnect();
 		}
 	}
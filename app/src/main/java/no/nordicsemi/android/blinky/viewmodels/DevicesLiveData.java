@@ -22,139 +22,434 @@
 
 package no.nordicsemi.android.blinky.viewmodels;
 
+import android.util.LongSparseArray;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
-import android.os.ParcelUuid;
 
-import java.util.ArrayList;
+import org.reactivestreams.Publisher;
+
+import java.util.Collections;
 import java.util.List;
 
 import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.core.Addresses;
+import no.nordicsemi.android.blinky.core.BatchCoalescer;
+import no.nordicsemi.android.blinky.core.DeviceFilter;
+import no.nordicsemi.android.blinky.core.ChangeSet;
+import no.nordicsemi.android.blinky.core.DeviceListSnapshot;
+import no.nordicsemi.android.blinky.core.DeviceRegistry;
+import no.nordicsemi.android.blinky.core.ListUpdates;
+import no.nordicsemi.android.blinky.core.OrderedDevices;
+import no.nordicsemi.android.blinky.core.RateLimiter;
+import no.nordicsemi.android.blinky.core.SnapshotPublisher;
+import no.nordicsemi.android.blinky.core.SortMode;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.core.stream.EventPublisher;
+import no.nordicsemi.android.blinky.core.metrics.Counter;
+import no.nordicsemi.android.blinky.core.trace.Tracing;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
 import no.nordicsemi.android.blinky.profile.BlinkyManager;
-import no.nordicsemi.android.support.v18.scanner.ScanRecord;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 
 /**
  * This class keeps the current list of discovered Bluetooth LE devices matching filter.
- * Each time @{link {@link #applyFilter()} is called, the observers are notified with a new
- * list instance.
+ * Each time {@link #applyFilter()} is called, the observers are notified with the new
+ * {@link DeviceListSnapshot}.
+ * <p>
+ * Devices are kept in a {@link DeviceRegistry} from the platform-free core, this class only
+ * converts scan results and publishes the filtered list. After a batch of scan results,
+ * the filter is only applied to the devices in the batch, see {@link DeviceRegistry#applyChanges()}.
+ * <p>
+ * The devices shown are also kept in {@link OrderedDevices}, sorted by the {@link SortMode}.
+ * Each time the filter is applied, added and removed devices and updated devices whose sort
+ * key has changed are recorded as changes of the ordered list, which the adapter replays with
+ * {@link #dispatchUpdatesTo(ListUpdates.Listener)}. A new adapter, e.g. after the activity
+ * was recreated on rotation, gets the whole list first with {@link #resync()}.
+ * A device that moved costs O(log n),
+ * the list is never sorted nor compared as a whole.
+ * <p>
+ * The values of the devices are published with the changes as an immutable
+ * {@link DeviceListSnapshot}, in which only the devices updated since the previous version
+ * are copied. The adapter binds the rows from the snapshot it was given with the changes,
+ * so it reads a consistent state without holding the lock of this class.
+ * <p>
+ * When rate limiting is enabled, a known device advertising more often than
+ * {@link #RATE_LIMIT} times per second is only sampled: its RSSI and last seen time are
+ * updated, but the advertisement is not compared, parsed nor filtered. Devices shown on the
+ * list or advertising the LBS UUID get a {@link #RATE_LIMIT_BOOST} times higher budget.
+ * <p>
+ * All scan results, including those rate limited, are also published by
+ * {@link #getScanResults()} for consumers which need every advertisement, not the list.
  */
 @SuppressWarnings("unused")
-public class DevicesLiveData extends LiveData<List<DiscoveredBluetoothDevice>> {
-	private static final ParcelUuid FILTER_UUID = new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE);
+public class DevicesLiveData extends LiveData<DeviceListSnapshot<DiscoveredBluetoothDevice>> {
 	private static final int FILTER_RSSI = -50; // [dBm]
+	private static final float RATE_LIMIT = 10; // [advertisements/s]
+	private static final float RATE_LIMIT_BURST = 20;
+	private static final float RATE_LIMIT_BOOST = 4;
+	/** The number of devices with their own rate limit counter in {@link AppMetrics}. */
+	private static final int MAX_RATE_LIMIT_COUNTERS = 16;
+	/** The number of scan results kept for stream subscribers which have not requested them. */
+	private static final int SCAN_RESULT_STREAM_CAPACITY = 4096;
+
+	/** Applies the filter to the devices changed since it was last applied. */
+	private static final int APPLY_CHANGES = 0;
+	/** Applies the filter to all devices, after the filter has changed. */
+	private static final int APPLY_FILTER = 1;
+	/** Applies the filter to the devices whose search match has changed. */
+	private static final int APPLY_SEARCH = 2;
 
 	@NonNull
-	private final List<DiscoveredBluetoothDevice> devices = new ArrayList<>();
+	private final DeviceRegistry<DiscoveredBluetoothDevice> registry;
+	/** Reused for each batch of scan results. */
+	private final BatchCoalescer coalescer = new BatchCoalescer();
+	private final RateLimiter rateLimiter;
+	/** Per-device counters of rate limited advertisements, by address. */
+	private final LongSparseArray<Counter> rateLimitCounters = new LongSparseArray<>();
+	private final OrderedDevices<DiscoveredBluetoothDevice> orderedDevices;
+	/** Changes of the ordered list not yet dispatched to the adapter. */
+	private final ListUpdates<DiscoveredBluetoothDevice> updates = new ListUpdates<>();
+	private final SnapshotPublisher<DiscoveredBluetoothDevice> snapshots = new SnapshotPublisher<>();
+	private final EventPublisher<ScanResult> scanResults =
+			new EventPublisher<>(SCAN_RESULT_STREAM_CAPACITY, OverflowPolicy.DROP_OLDEST);
 	@Nullable
-	private List<DiscoveredBluetoothDevice> filteredDevices = null;
-	private boolean filterUuidRequired;
-	private boolean filterNearbyOnly;
+	private ConnectionHistory connectionHistory;
+	/** Whether the filter has been applied since the list was cleared. */
+	private boolean filtered;
 
-	/* package */ DevicesLiveData(final boolean filterUuidRequired, final boolean filterNearbyOnly) {
-		this.filterUuidRequired = filterUuidRequired;
-		this.filterNearbyOnly = filterNearbyOnly;
+	/**
+	 * Provides the number of previous connections to a device, used by
+	 * {@link SortMode#CONNECTIONS}.
+	 */
+	@FunctionalInterface
+	public interface ConnectionHistory {
+		int getConnectionCount(@NonNull final String address);
+	}
+
+	/* package */ DevicesLiveData(final boolean filterUuidRequired, final boolean filterNearbyOnly,
+								  final boolean rateLimited, @NonNull final SortMode sortMode) {
+		final DeviceFilter filter = new DeviceFilter(BlinkyManager.LBS_UUID_SERVICE, FILTER_RSSI);
+		filter.setUuidRequired(filterUuidRequired);
+		filter.setNearbyOnly(filterNearbyOnly);
+		registry = new DeviceRegistry<>(filter);
+		rateLimiter = new RateLimiter(rateLimited ? RATE_LIMIT : 0, RATE_LIMIT_BURST, RATE_LIMIT_BOOST);
+		orderedDevices = new OrderedDevices<>(sortMode);
 	}
 
 	/* package */ synchronized void bluetoothDisabled() {
-		devices.clear();
-		filteredDevices = null;
-		postValue(null);
+		registry.clear();
+		rateLimiter.clear();
+		clearOrder();
+		filtered = false;
+		postValue(snapshots.getCurrent());
 	}
 
-	/* package */  boolean filterByUuid(final boolean uuidRequired) {
-		filterUuidRequired = uuidRequired;
-		return applyFilter();
+	/* package */ synchronized boolean filterByUuid(final boolean uuidRequired) {
+		registry.getFilter().setUuidRequired(uuidRequired);
+		return applyChanges(APPLY_FILTER);
 	}
 
-	/* package */  boolean filterByDistance(final boolean nearbyOnly) {
-		filterNearbyOnly = nearbyOnly;
-		return applyFilter();
+	/* package */ synchronized boolean filterByDistance(final boolean nearbyOnly) {
+		registry.getFilter().setNearbyOnly(nearbyOnly);
+		return applyChanges(APPLY_FILTER);
+	}
+
+	/**
+	 * Shows only devices whose name or address contain the query. The matching devices are
+	 * found in the search index of the filter, and only the devices which started or stopped
+	 * matching are checked against the other conditions, see
+	 * {@link DeviceRegistry#applySearch()}.
+	 *
+	 * @param query the query, empty or null to show all devices.
+	 * @return True, if any device matches the filter.
+	 */
+	/* package */ synchronized boolean search(@Nullable final String query) {
+		final long start = AppMetrics.now();
+		registry.getFilter().getSearch().setQuery(query);
+		AppMetrics.SCAN_SEARCH_TIME.recordSince(start, AppMetrics.now());
+		return applyChanges(APPLY_SEARCH);
+	}
+
+	@NonNull
+	/* package */ synchronized String getSearchQuery() {
+		return registry.getFilter().getSearch().getQuery();
+	}
+
+	/* package */ synchronized void setConnectionHistory(@Nullable final ConnectionHistory history) {
+		connectionHistory = history;
+	}
+
+	/**
+	 * Sorts the list again in the given mode. The adapter is given the new list as a whole.
+	 *
+	 * @param mode the new sort mode.
+	 */
+	/* package */ synchronized void setSortMode(@NonNull final SortMode mode) {
+		if (orderedDevices.getMode() == mode)
+			return;
+		orderedDevices.setMode(mode);
+		if (filtered) {
+			updates.reset(orderedDevices.toList());
+			postValue(snapshots.getCurrent());
+		}
+	}
+
+	/* package */ synchronized SortMode getSortMode() {
+		return orderedDevices.getMode();
+	}
+
+	/* package */ synchronized void setRateLimited(final boolean rateLimited) {
+		rateLimiter.setLimits(rateLimited ? RATE_LIMIT : 0, RATE_LIMIT_BURST, RATE_LIMIT_BOOST);
+	}
+
+	/**
+	 * Returns all scan results, as a Reactive Streams publisher delivering off the main thread.
+	 * A subscriber more than {@link #SCAN_RESULT_STREAM_CAPACITY} results behind loses
+	 * the oldest ones, the scanner is never slowed down.
+	 */
+	@NonNull
+	public Publisher<ScanResult> getScanResults() {
+		return scanResults;
 	}
 
 	/* package */ synchronized boolean deviceDiscovered(@NonNull final ScanResult result) {
-		DiscoveredBluetoothDevice device;
+		scanResults.publish(result);
+		final long address = Addresses.parse(result.getDevice().getAddress());
 
 		// Check if it's a new device.
-		final int index = indexOf(result);
-		if (index == -1) {
+		DiscoveredBluetoothDevice device = registry.find(address);
+		if (device == null) {
 			device = new DiscoveredBluetoothDevice(result);
-			devices.add(device);
+			add(device);
+		} else if (!rateLimiter.tryAcquire(address, result.getTimestampNanos(), isBoosted(device))) {
+			device.sample(result.getRssi(), result.getTimestampNanos());
+			changed(device);
+			rateLimited(device, 1);
+			return false;
+		} else if (device.update(result)) {
+			AppMetrics.SCAN_FINGERPRINT_MISSES.increment();
+			registry.dataChanged(device);
+			changed(device);
 		} else {
-			device = devices.get(index);
+			// Only RSSI and the last seen time were updated.
+			AppMetrics.SCAN_FINGERPRINT_HITS.increment();
+			changed(device);
 		}
 
-		// Update RSSI and name.
-		device.update(result);
-
 		// Return true if the device was on the filtered list or is to be added.
-		return (filteredDevices != null && filteredDevices.contains(device))
-				|| (matchesUuidFilter(result) && matchesNearbyFilter(device.getHighestRssi()));
-    }
+		return registry.isRelevant(device);
+	}
+
+	/**
+	 * Adds a batch of scan results. Results are coalesced per device first, so each device
+	 * is looked up and checked against the filter once per batch.
+	 *
+	 * @param results the batch.
+	 * @return True, if any of the devices was on the filtered list or is to be added.
+	 */
+	/* package */ synchronized boolean devicesDiscovered(@NonNull final List<ScanResult> results) {
+		coalescer.reset();
+		// Indexed loops, as an iterator would be allocated for each batch.
+		for (int i = 0, size = results.size(); i < size; ++i) {
+			final ScanResult result = results.get(i);
+			scanResults.publish(result);
+			coalescer.add(Addresses.parse(result.getDevice().getAddress()),
+					result.getRssi(), result.getTimestampNanos());
+		}
+		AppMetrics.SCAN_BATCH_DEVICES.record(coalescer.getGroupCount());
+
+		boolean relevant = false;
+		for (int group = 0, groups = coalescer.getGroupCount(); group < groups; ++group) {
+			final ScanResult last = results.get(coalescer.getLast(group));
+			final long address = coalescer.getAddress(group);
+			DiscoveredBluetoothDevice device = registry.find(address);
+			if (device == null) {
+				device = new DiscoveredBluetoothDevice(last, coalescer, group);
+				add(device);
+			} else if (!rateLimiter.tryAcquire(address, last.getTimestampNanos(), isBoosted(device),
+					coalescer.getCount(group))) {
+				// The group takes a token for each advertisement. With one token per group,
+				// a device could not exceed one ingest per report delay and never be limited.
+				device.sample(coalescer, group);
+				changed(device);
+				rateLimited(device, coalescer.getCount(group));
+				continue;
+			} else if (device.update(last, coalescer, group)) {
+				AppMetrics.SCAN_FINGERPRINT_MISSES.increment();
+				registry.dataChanged(device);
+				changed(device);
+			} else {
+				AppMetrics.SCAN_FINGERPRINT_HITS.increment();
+				changed(device);
+			}
+			relevant |= registry.isRelevant(device);
+		}
+		return relevant;
+	}
+
+	private void add(@NonNull final DiscoveredBluetoothDevice device) {
+		if (connectionHistory != null)
+			device.setConnectionCount(connectionHistory.getConnectionCount(device.getAddress()));
+		registry.add(device);
+		snapshots.changed(device);
+	}
+
+	/**
+	 * Marks the device as updated, so that the filter is applied to it and its position
+	 * and its snapshot are refreshed when the filter is applied.
+	 */
+	private void changed(@NonNull final DiscoveredBluetoothDevice device) {
+		registry.changed(device);
+		orderedDevices.invalidate(device);
+		snapshots.changed(device);
+	}
+
+	/**
+	 * Returns whether the device should get a higher rate limit: it is shown on the list,
+	 * or it advertises the LBS UUID.
+	 */
+	private boolean isBoosted(@NonNull final DiscoveredBluetoothDevice device) {
+		return device.isFiltered() || registry.getFilter().advertisesService(device);
+	}
+
+	private void rateLimited(@NonNull final DiscoveredBluetoothDevice device, final int count) {
+		AppMetrics.SCAN_RATE_LIMITED.add(count);
+		final long address = device.getRawAddress();
+		Counter counter = rateLimitCounters.get(address);
+		if (counter == null) {
+			if (rateLimitCounters.size() >= MAX_RATE_LIMIT_COUNTERS)
+				return;
+			counter = AppMetrics.deviceRateLimited(device.getAddress());
+			rateLimitCounters.put(address, counter);
+		}
+		counter.add(count);
+	}
 
 	/**
 	 * Clears the list of devices.
 	 */
 	public synchronized void clear() {
-		devices.clear();
-		filteredDevices = null;
-		postValue(null);
+		registry.clear();
+		rateLimiter.clear();
+		clearOrder();
+		filtered = false;
+		postValue(snapshots.getCurrent());
+	}
+
+	/**
+	 * Returns the unmodifiable list of devices matching the filter, as last created when
+	 * the filter was applied.
+	 */
+	@Nullable
+	/* package */ synchronized List<DiscoveredBluetoothDevice> getFilteredDevices() {
+		return filtered ? registry.getFilteredDevices() : null;
 	}
 
 	/**
-	 * Refreshes the filtered device list based on the filter flags.
+	 * Refreshes the filtered device list with the devices updated since the filter
+	 * was last applied.
 	 */
 	/* package */ synchronized boolean applyFilter() {
-		final List<DiscoveredBluetoothDevice> tmp = new ArrayList<>();
-		for (final DiscoveredBluetoothDevice device : devices) {
-			final ScanResult result = device.getScanResult();
-			if (matchesUuidFilter(result) && matchesNearbyFilter(device.getHighestRssi())) {
-				tmp.add(device);
-			}
-		}
-		filteredDevices = tmp;
-        postValue(filteredDevices);
-        return !filteredDevices.isEmpty();
+		return applyChanges(APPLY_CHANGES);
 	}
 
 	/**
-	 * Finds the index of existing devices on the device list.
+	 * Applies the filter to the changed devices, to all devices, or only to those whose search
+	 * match has changed, and publishes the changes.
 	 *
-	 * @param result scan result.
-	 * @return Index of -1 if not found.
+	 * @param mode {@link #APPLY_CHANGES}, {@link #APPLY_FILTER} or {@link #APPLY_SEARCH}.
+	 * @return True, if any device matches the filter.
 	 */
-	private int indexOf(@NonNull final ScanResult result) {
-		int i = 0;
-		for (final DiscoveredBluetoothDevice device : devices) {
-			if (device.matches(result))
-				return i;
-			i++;
+	private boolean applyChanges(final int mode) {
+		Tracing.beginSection("DevicesLiveData.applyFilter");
+		try {
+			final long start = AppMetrics.now();
+			final ChangeSet<DiscoveredBluetoothDevice> changes;
+			switch (mode) {
+				case APPLY_FILTER:
+					changes = registry.applyFilter();
+					break;
+				case APPLY_SEARCH:
+					changes = registry.applySearch();
+					break;
+				default:
+					changes = registry.applyChanges();
+					break;
+			}
+			final List<DiscoveredBluetoothDevice> filteredDevices = changes.getDevices();
+			if (!filtered) {
+				// The adapter was cleared, it gets the whole list at once.
+				for (final DiscoveredBluetoothDevice device : filteredDevices)
+					orderedDevices.add(device);
+				updates.reset(orderedDevices.toList());
+			} else {
+				updateOrder(changes);
+			}
+			final DeviceListSnapshot<DiscoveredBluetoothDevice> snapshot = snapshots.publish();
+			AppMetrics.SCAN_FILTER_TIME.recordSince(start, AppMetrics.now());
+			filtered = true;
+			postValue(snapshot);
+			return !filteredDevices.isEmpty();
+		} finally {
+			Tracing.endSection();
 		}
-		return -1;
 	}
 
-	@SuppressWarnings("SimplifiableIfStatement")
-	private boolean matchesUuidFilter(@NonNull final ScanResult result) {
-		if (!filterUuidRequired)
-			return true;
+	/**
+	 * Replaces the changes not yet dispatched with the whole ordered list. This must be called
+	 * by an adapter that starts empty while the list is already shown, as the changes
+	 * dispatched to the previous adapter are not replayed.
+	 */
+	public synchronized void resync() {
+		if (filtered)
+			updates.reset(orderedDevices.toList());
+	}
 
-		final ScanRecord record = result.getScanRecord();
-		if (record == null)
-			return false;
+	/**
+	 * Replays the changes of the ordered list made since the last call to the listener.
+	 * This should be called on the main thread when the value changes.
+	 *
+	 * @param listener the adapter.
+	 * @return The snapshot of the devices matching the replayed changes. It contains all devices
+	 * on the list after the changes are applied.
+	 */
+	@NonNull
+	public synchronized DeviceListSnapshot<DiscoveredBluetoothDevice> dispatchUpdatesTo(
+			@NonNull final ListUpdates.Listener<DiscoveredBluetoothDevice> listener) {
+		updates.dispatchTo(listener);
+		return snapshots.getCurrent();
+	}
 
-		final List<ParcelUuid> uuids = record.getServiceUuids();
-		if (uuids == null)
-			return false;
+	/**
+	 * Applies the changes of the filtered list to the ordered list and records them.
+	 */
+	private void updateOrder(@NonNull final ChangeSet<DiscoveredBluetoothDevice> changes) {
+		final List<DiscoveredBluetoothDevice> removed = changes.getRemoved();
+		for (int i = 0, size = removed.size(); i < size; ++i) {
+			final int position = orderedDevices.remove(removed.get(i));
+			if (position >= 0)
+				updates.removed(position);
+		}
+		orderedDevices.refresh(updates);
+		final List<DiscoveredBluetoothDevice> added = changes.getAdded();
+		for (int i = 0, size = added.size(); i < size; ++i) {
+			final DiscoveredBluetoothDevice device = added.get(i);
+			updates.inserted(orderedDevices.add(device), device);
+		}
+		final List<DiscoveredBluetoothDevice> changed = changes.getChanged();
+		for (int i = 0, size = changed.size(); i < size; ++i)
+			updates.changed(orderedDevices.indexOf(changed.get(i)));
 
-		return uuids.contains(FILTER_UUID);
+		// While the adapter is not observing, replace the changes with the list.
+		if (updates.size() > 2 * orderedDevices.size() + 64)
+			updates.reset(orderedDevices.toList());
 	}
 
-	@SuppressWarnings("SimplifiableIfStatement")
-	private boolean matchesNearbyFilter(final int rssi) {
-		if (!filterNearbyOnly)
-			return true;
-
-		return rssi >= FILTER_RSSI;
+	private void clearOrder() {
+		orderedDevices.clear();
+		updates.reset(Collections.emptyList());
+		snapshots.clear();
 	}
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import no.nordicsemi.android.blinky.core.event.EventChannel;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.core.stream.EventPublisher;
+
+/**
+ * An {@link EventChannel} delivering events to observers on the main thread, replacing
+ * SingleLiveEvent, which notified only one observer.
+ * <p>
+ * Events may be published on any thread. Each observer receives every event, in order.
+ * A lifecycle-aware observer receives events while its owner is at least started; events
+ * published while it is stopped are delivered when it is started again, up to the capacity
+ * of the channel. A lifecycle-aware observer added when no other one is observing, for example
+ * after a configuration change, receives the events published since the last one was delivered
+ * to such an observer. Observers added with {@link #observeForever(EventChannel.Handler)},
+ * like loggers in view models, receive only the events published after they were added, and
+ * do not affect what is replayed to lifecycle-aware observers.
+ * <p>
+ * Other threads, like a logger, may subscribe to the {@link #getChannel() channel} directly,
+ * or to the Reactive Streams {@link #asPublisher() publisher}, which delivers off the main thread.
+ *
+ * @param <T> the type of events.
+ */
+@SuppressWarnings("unused")
+public class LifecycleEventChannel<T> {
+	private final EventPublisher<T> publisher;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	/** Whether {@link #deliver} has been posted and has not run yet. */
+	private final AtomicBoolean deliveryPending = new AtomicBoolean();
+	/** The observers on the main thread. */
+	private final List<ObserverWrapper> observers = new ArrayList<>();
+	/** The number of lifecycle-aware observers. */
+	private int lifecycleObservers;
+	/** The sequence number of the next event not yet delivered to any lifecycle-aware observer. */
+	private long delivered;
+
+	private final Runnable deliver = this::deliver;
+
+	public LifecycleEventChannel(final int capacity, @NonNull final OverflowPolicy policy) {
+		publisher = new EventPublisher<>(capacity, policy);
+	}
+
+	@NonNull
+	public EventChannel<T> getChannel() {
+		return publisher.getChannel();
+	}
+
+	/**
+	 * Returns the events as a Reactive Streams publisher. Its subscribers share the capacity
+	 * and the overflow policy of the observers.
+	 */
+	@NonNull
+	public EventPublisher<T> asPublisher() {
+		return publisher;
+	}
+
+	/**
+	 * Publishes the event to all observers and subscribers. This method may be called on
+	 * any thread and does not allocate, other than posting to the main thread when no
+	 * delivery is pending and waking up stream subscribers which have caught up.
+	 *
+	 * @param event the event.
+	 * @return False, if the event was dropped, see {@link OverflowPolicy#DROP_NEWEST}.
+	 */
+	public boolean publish(@NonNull final T event) {
+		if (!publisher.publish(event))
+			return false;
+		if (deliveryPending.compareAndSet(false, true))
+			mainHandler.post(deliver);
+		return true;
+	}
+
+	/**
+	 * Adds an observer receiving events on the main thread while the owner is at least
+	 * started. The observer is removed when the owner is destroyed.
+	 *
+	 * @param owner   the lifecycle owner.
+	 * @param handler the handler of events.
+	 */
+	@MainThread
+	public void observe(@NonNull final LifecycleOwner owner,
+						@NonNull final EventChannel.Handler<? super T> handler) {
+		if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED)
+			return;
+		final ObserverWrapper wrapper = new ObserverWrapper(handler, owner);
+		observers.add(wrapper);
+		lifecycleObservers++;
+		owner.getLifecycle().addObserver(wrapper);
+	}
+
+	/**
+	 * Adds an observer receiving events on the main thread until it is removed with
+	 * {@link #removeObserver(EventChannel.Handler)}.
+	 *
+	 * @param handler the handler of events.
+	 */
+	@MainThread
+	public void observeForever(@NonNull final EventChannel.Handler<? super T> handler) {
+		final ObserverWrapper wrapper = new ObserverWrapper(handler, null);
+		observers.add(wrapper);
+		wrapper.deliver();
+	}
+
+	@MainThread
+	public void removeObserver(@NonNull final EventChannel.Handler<? super T> handler) {
+		for (int i = 0; i < observers.size(); ++i) {
+			final ObserverWrapper wrapper = observers.get(i);
+			if (wrapper.handler == handler) {
+				wrapper.remove();
+				return;
+			}
+		}
+	}
+
+	@MainThread
+	private void deliver() {
+		deliveryPending.set(false);
+		// Indexed loop, as a handler may remove its observer.
+		for (int i = 0; i < observers.size(); ++i)
+			observers.get(i).deliver();
+	}
+
+	private final class ObserverWrapper implements LifecycleEventObserver {
+		private final EventChannel.Handler<? super T> handler;
+		private final LifecycleOwner owner;
+		private final EventChannel.Subscription<T> subscription;
+
+		private ObserverWrapper(@NonNull final EventChannel.Handler<? super T> handler,
+								final LifecycleOwner owner) {
+			this.handler = handler;
+			this.owner = owner;
+			// Pending events are given to the first lifecycle-aware observer, like LiveData gives
+			// the last value.
+			final boolean replay = owner != null && lifecycleObservers == 0;
+			subscription = publisher.getChannel().subscribe(replay ? delivered : Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onStateChanged(@NonNull final LifecycleOwner source,
+								   @NonNull final Lifecycle.Event event) {
+			if (event == Lifecycle.Event.ON_DESTROY)
+				remove();
+			else if (event == Lifecycle.Event.ON_START)
+				deliver();
+		}
+
+		private void deliver() {
+			if (owner != null && !owner.getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED))
+				return;
+			subscription.poll(handler);
+			if (owner != null)
+				delivered = Math.max(delivered, subscription.getPosition());
+		}
+
+		private void remove() {
+			subscription.close();
+			observers.remove(this);
+			if (owner != null) {
+				lifecycleObservers--;
+				owner.getLifecycle().removeObserver(this);
+			}
+		}
+	}
+}
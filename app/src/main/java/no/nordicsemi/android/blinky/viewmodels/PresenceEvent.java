@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A monitored device came into or went out of range, published by
+ * {@link PresenceMonitor#getEvents()}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PresenceEvent {
+	private final String address;
+	private final boolean entered;
+	private final long timestamp;
+
+	/* package */ PresenceEvent(@NonNull final String address, final boolean entered, final long timestamp) {
+		this.address = address;
+		this.entered = entered;
+		this.timestamp = timestamp;
+	}
+
+	@NonNull
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns true if the device came into range, false if it went out of range.
+	 */
+	public boolean isEntered() {
+		return entered;
+	}
+
+	/**
+	 * Returns the time the device was first seen when it entered, or last seen when it
+	 * exited, from {@link android.os.SystemClock#elapsedRealtimeNanos()}.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return (entered ? "Entered: " : "Exited: ") + address;
+	}
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.core.Addresses;
+import no.nordicsemi.android.blinky.core.PresenceTracker;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.core.metrics.DeliveryStats;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.blinky.utils.Utils;
+import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat;
+import no.nordicsemi.android.support.v18.scanner.ScanFilter;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+
+/**
+ * Monitors when the registered devices come into and go out of range while the app is in
+ * the background, without a foreground service. A low power scan with filters for the
+ * registered addresses and service UUIDs is started with a {@link PendingIntent}, so it keeps
+ * running when the app is stopped. Results are batched by the controller, if supported, and
+ * delivered to the {@link PresenceReceiver} every {@link #REPORT_DELAY} ms while any of
+ * the devices is in range. The process is woken up only for these deliveries.
+ * <p>
+ * Enter and exit events are computed from the deliveries by a {@link PresenceTracker}. Nothing
+ * is delivered once all devices are gone, so exits are also checked by an alarm. The alarm does
+ * not wake the device up: exits are reported when it wakes for another reason, with the time
+ * the device was last seen.
+ * <p>
+ * The state is saved, as the process may be killed between deliveries. The scan does not
+ * survive a reboot or Bluetooth being turned off; it is started again by {@link #resume()}.
+ * Each delivery and its handling CPU time are counted in {@link #getStats()}, for comparison
+ * with the foreground scan in {@link SharedScanner#getStats()}. The CPU time does not include
+ * starting the process.
+ * <p>
+ * Scanning with a {@link PendingIntent} is supported by the system from Android 8. On older
+ * versions the scanner compat library emulates it with a long running service of its own,
+ * which is what this class is meant to avoid, so monitoring is available only when
+ * {@link #isSupported()}.
+ * <p>
+ * All methods must be called from the main thread.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class PresenceMonitor {
+	private static final String TAG = "PresenceMonitor";
+
+	/** Delay of reporting the batched results of the background scan. */
+	public static final long REPORT_DELAY = 30000; // [ms]
+	/** Time after the last sighting when a device is reported as gone, a few report delays. */
+	public static final long EXIT_TIMEOUT = 4 * REPORT_DELAY; // [ms]
+
+	/* package */ static final String ACTION_SCAN_RESULTS = "no.nordicsemi.android.blinky.action.PRESENCE_SCAN_RESULTS";
+	/* package */ static final String ACTION_CHECK_EXITS = "no.nordicsemi.android.blinky.action.PRESENCE_CHECK_EXITS";
+
+	private static final int REQUEST_SCAN = 1;
+	private static final int REQUEST_CHECK_EXITS = 2;
+	private static final int EVENT_CAPACITY = 64;
+
+	private static final String PREFS_NAME = "presence";
+	private static final String PREFS_ENABLED = "enabled";
+	private static final String PREFS_ADDRESSES = "addresses";
+	private static final String PREFS_SERVICE_UUIDS = "service_uuids";
+	private static final String PREFS_SEEN_PREFIX = "seen.";
+	private static final String PREFS_STATS_DELIVERIES = "stats.deliveries";
+	private static final String PREFS_STATS_RESULTS = "stats.results";
+	private static final String PREFS_STATS_CPU_TIME = "stats.cpu_time";
+	private static final String PREFS_STATS_ACTIVE_TIME = "stats.active_time";
+	private static final String PREFS_STATS_STARTED_AT = "stats.started_at";
+
+	private final Context context;
+	private final SharedPreferences preferences;
+	private final PresenceTracker tracker = new PresenceTracker(EXIT_TIMEOUT * 1_000_000L);
+	private final LifecycleEventChannel<PresenceEvent> events =
+			new LifecycleEventChannel<>(EVENT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+	private final Set<String> addresses = new HashSet<>();
+	private final Set<UUID> serviceUuids = new HashSet<>();
+	private final DeliveryStats stats;
+	private boolean enabled;
+
+	private final PresenceTracker.Listener listener = new PresenceTracker.Listener() {
+		@Override
+		public void onEnter(final long address, final long time) {
+			AppMetrics.PRESENCE_ENTERS.increment();
+			publish(new PresenceEvent(Addresses.format(address), true, time));
+		}
+
+		@Override
+		public void onExit(final long address, final long lastSeen) {
+			AppMetrics.PRESENCE_EXITS.increment();
+			publish(new PresenceEvent(Addresses.format(address), false, lastSeen));
+		}
+	};
+
+	public PresenceMonitor(@NonNull final Context context) {
+		this.context = context.getApplicationContext();
+		this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		enabled = isSupported() && preferences.getBoolean(PREFS_ENABLED, false);
+		addresses.addAll(preferences.getStringSet(PREFS_ADDRESSES, new HashSet<>()));
+		for (final String uuid : preferences.getStringSet(PREFS_SERVICE_UUIDS, new HashSet<>()))
+			serviceUuids.add(UUID.fromString(uuid));
+
+		final long now = AppMetrics.now();
+		stats = new DeliveryStats(preferences.getLong(PREFS_STATS_DELIVERIES, 0),
+				preferences.getLong(PREFS_STATS_RESULTS, 0),
+				preferences.getLong(PREFS_STATS_CPU_TIME, 0),
+				preferences.getLong(PREFS_STATS_ACTIVE_TIME, 0));
+		// Times saved before a reboot are later than now and are not valid any more.
+		if (enabled)
+			stats.start(Math.min(now, preferences.getLong(PREFS_STATS_STARTED_AT, now)));
+		for (final Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+			if (entry.getKey().startsWith(PREFS_SEEN_PREFIX) && (Long) entry.getValue() <= now)
+				tracker.restore(Addresses.parse(entry.getKey().substring(PREFS_SEEN_PREFIX.length())),
+						(Long) entry.getValue());
+		}
+	}
+
+	/**
+	 * Returns true if the system supports scanning with a {@link PendingIntent},
+	 * that is on Android 8 or newer.
+	 */
+	public static boolean isSupported() {
+		return Utils.isOreoOrAbove();
+	}
+
+	/**
+	 * Returns true if monitoring has been started and not stopped, even if the scan
+	 * was stopped by the system.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts monitoring the given devices, replacing the previously registered ones.
+	 * The statistics are reset.
+	 *
+	 * @param addresses    the addresses of the devices to monitor.
+	 * @param serviceUuids the service UUIDs advertised by the devices to monitor.
+	 * @throws IllegalArgumentException      if neither addresses nor UUIDs are given, as all
+	 *                                       devices in range would then wake the app up.
+	 * @throws UnsupportedOperationException if monitoring is not {@link #isSupported()}.
+	 */
+	@MainThread
+	public void start(@NonNull final Collection<String> addresses,
+					  @NonNull final Collection<UUID> serviceUuids) {
+		if (!isSupported())
+			throw new UnsupportedOperationException("Scanning with PendingIntent requires Android 8");
+		if (addresses.isEmpty() && serviceUuids.isEmpty())
+			throw new IllegalArgumentException("No devices to monitor");
+		stopScan();
+		this.addresses.clear();
+		this.addresses.addAll(addresses);
+		this.serviceUuids.clear();
+		this.serviceUuids.addAll(serviceUuids);
+		tracker.clear();
+
+		final long now = AppMetrics.now();
+		stats.reset();
+		stats.start(now);
+		enabled = true;
+
+		final Set<String> uuids = new HashSet<>();
+		for (final UUID uuid : serviceUuids)
+			uuids.add(uuid.toString());
+		final SharedPreferences.Editor editor = preferences.edit().clear()
+				.putBoolean(PREFS_ENABLED, true)
+				.putStringSet(PREFS_ADDRESSES, new HashSet<>(addresses))
+				.putStringSet(PREFS_SERVICE_UUIDS, uuids);
+		saveStats(editor);
+		editor.apply();
+		startScan();
+	}
+
+	/**
+	 * Starts the scan again if monitoring is enabled, for example after Bluetooth was turned
+	 * on or the device was restarted.
+	 */
+	@MainThread
+	public void resume() {
+		if (!enabled)
+			return;
+		stopScan();
+		startScan();
+	}
+
+	/**
+	 * Stops monitoring. Devices in range are not reported as exited.
+	 */
+	@MainThread
+	public void stop() {
+		if (!enabled)
+			return;
+		enabled = false;
+		stopScan();
+		getAlarmManager().cancel(getPendingIntent(ACTION_CHECK_EXITS, REQUEST_CHECK_EXITS));
+		tracker.clear();
+		stats.stop(AppMetrics.now());
+
+		final SharedPreferences.Editor editor = preferences.edit();
+		for (final String key : preferences.getAll().keySet()) {
+			if (key.startsWith(PREFS_SEEN_PREFIX))
+				editor.remove(key);
+		}
+		editor.putBoolean(PREFS_ENABLED, false);
+		saveStats(editor);
+		editor.apply();
+	}
+
+	@NonNull
+	public Set<String> getAddresses() {
+		return new HashSet<>(addresses);
+	}
+
+	@NonNull
+	public Set<UUID> getServiceUuids() {
+		return new HashSet<>(serviceUuids);
+	}
+
+	/**
+	 * Returns true if the device with the given address is in range.
+	 */
+	public boolean isPresent(@NonNull final String address) {
+		return tracker.isPresent(Addresses.parse(address));
+	}
+
+	/**
+	 * Returns the events of devices coming into and going out of range. Events are published
+	 * only while the process is running, so consumers should also check
+	 * {@link #isPresent(String)} when started.
+	 */
+	@NonNull
+	public LifecycleEventChannel<PresenceEvent> getEvents() {
+		return events;
+	}
+
+	/**
+	 * Returns the statistics of the deliveries since monitoring was started.
+	 */
+	@NonNull
+	public DeliveryStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Returns the wakeups and CPU time per hour of the background monitoring compared with
+	 * the given statistics of a foreground scan, for logging.
+	 */
+	@NonNull
+	public String getReport(@NonNull final DeliveryStats foreground) {
+		final long now = AppMetrics.now();
+		final double background = stats.getCpuTimePerHour(now);
+		final String ratio = background > 0
+				? String.format(Locale.US, " (%.1fx CPU time)", foreground.getCpuTimePerHour(now) / background)
+				: "";
+		return "Background monitoring: " + stats.format(now)
+				+ "; foreground scan: " + foreground.format(now) + ratio;
+	}
+
+	/* package */ void onScanResults(@NonNull final List<ScanResult> results) {
+		if (!enabled)
+			return;
+		final long cpuStart = Debug.threadCpuTimeNanos();
+		// Indexed loop, as an iterator would be allocated for each delivery.
+		for (int i = 0, size = results.size(); i < size; ++i) {
+			final ScanResult result = results.get(i);
+			tracker.onSighting(Addresses.parse(result.getDevice().getAddress()),
+					result.getTimestampNanos(), listener);
+		}
+		onDelivered(results.size(), cpuStart);
+	}
+
+	/* package */ void onCheckExits() {
+		if (!enabled)
+			return;
+		onDelivered(0, Debug.threadCpuTimeNanos());
+	}
+
+	/* package */ void onScanFailed(final int errorCode) {
+		AppMetrics.SCAN_FAILURES.increment();
+		Log.w(TAG, "Background scan failed with error " + errorCode);
+	}
+
+	private void onDelivered(final int resultCount, final long cpuStart) {
+		tracker.checkExits(AppMetrics.now(), listener);
+		scheduleExitCheck();
+
+		final SharedPreferences.Editor editor = preferences.edit();
+		for (final String key : preferences.getAll().keySet()) {
+			if (key.startsWith(PREFS_SEEN_PREFIX))
+				editor.remove(key);
+		}
+		for (final long address : tracker.getPresent())
+			editor.putLong(PREFS_SEEN_PREFIX + Addresses.format(address), tracker.getLastSeen(address));
+
+		final long cpuTime = cpuStart >= 0 ? Debug.threadCpuTimeNanos() - cpuStart : -1;
+		stats.record(resultCount, cpuTime);
+		AppMetrics.PRESENCE_DELIVERIES.increment();
+		if (cpuTime >= 0)
+			AppMetrics.PRESENCE_DELIVERY_CPU.record(cpuTime);
+		saveStats(editor);
+		editor.apply();
+	}
+
+	private void publish(@NonNull final PresenceEvent event) {
+		Log.i(TAG, event + ", " + stats.format(AppMetrics.now()));
+		events.publish(event);
+	}
+
+	/**
+	 * Schedules the check of the first device to exit, or cancels it when no device is present.
+	 */
+	private void scheduleExitCheck() {
+		final PendingIntent intent = getPendingIntent(ACTION_CHECK_EXITS, REQUEST_CHECK_EXITS);
+		final long next = tracker.getNextExitTime();
+		if (next == Long.MAX_VALUE) {
+			getAlarmManager().cancel(intent);
+			return;
+		}
+		// A non-wakeup alarm, exits do not need to be reported while the device is asleep.
+		getAlarmManager().set(AlarmManager.ELAPSED_REALTIME, next / 1_000_000L, intent);
+	}
+
+	private void startScan() {
+		if (!Utils.isBleEnabled()) {
+			Log.w(TAG, "Bluetooth is disabled, background scan not started");
+			return;
+		}
+		final List<ScanFilter> filters = new ArrayList<>();
+		for (final String address : addresses)
+			filters.add(new ScanFilter.Builder().setDeviceAddress(address).build());
+		for (final UUID uuid : serviceUuids)
+			filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build());
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setScanMode(ScanSettings.SCAN_MODE_LOW_POWER)
+				.setReportDelay(REPORT_DELAY)
+				.setUseHardwareFilteringIfSupported(true)
+				.setUseHardwareBatchingIfSupported(true)
+				.build();
+		BluetoothLeScannerCompat.getScanner().startScan(filters, settings, context,
+				getPendingIntent(ACTION_SCAN_RESULTS, REQUEST_SCAN));
+		AppMetrics.SCAN_SESSIONS.increment();
+		Log.d(TAG, "Monitoring " + addresses.size() + " addresses and " + serviceUuids.size() + " service UUIDs");
+	}
+
+	private void stopScan() {
+		if (Utils.isBleEnabled())
+			BluetoothLeScannerCompat.getScanner().stopScan(context,
+					getPendingIntent(ACTION_SCAN_RESULTS, REQUEST_SCAN));
+	}
+
+	private void saveStats(@NonNull final SharedPreferences.Editor editor) {
+		// The active time is saved without the current period, which is restored from its start.
+		editor.putLong(PREFS_STATS_DELIVERIES, stats.getDeliveries())
+				.putLong(PREFS_STATS_RESULTS, stats.getResults())
+				.putLong(PREFS_STATS_CPU_TIME, stats.getCpuTime())
+				.putLong(PREFS_STATS_ACTIVE_TIME, stats.getActiveTime(stats.getStartedAt()))
+				.putLong(PREFS_STATS_STARTED_AT, stats.getStartedAt());
+	}
+
+	@NonNull
+	private PendingIntent getPendingIntent(@NonNull final String action, final int requestCode) {
+		final Intent intent = new Intent(context, PresenceReceiver.class).setAction(action);
+		return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+	}
+
+	@NonNull
+	private AlarmManager getAlarmManager() {
+		return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+	}
+}
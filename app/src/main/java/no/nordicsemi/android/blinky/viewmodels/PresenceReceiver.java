@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.List;
+
+import no.nordicsemi.android.blinky.BlinkyApplication;
+import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Receives the results of the background presence scan and the exit check alarms,
+ * and hands them to the {@link PresenceMonitor}. The process is started for each delivery
+ * if it is not running.
+ */
+public class PresenceReceiver extends BroadcastReceiver {
+	private static final String TAG = "PresenceReceiver";
+
+	@Override
+	public void onReceive(final Context context, final Intent intent) {
+		final PresenceMonitor monitor =
+				((BlinkyApplication) context.getApplicationContext()).getPresenceMonitor();
+		final String action = intent.getAction();
+		if (PresenceMonitor.ACTION_CHECK_EXITS.equals(action)) {
+			monitor.onCheckExits();
+			return;
+		}
+		if (!PresenceMonitor.ACTION_SCAN_RESULTS.equals(action))
+			return;
+
+		final int errorCode = intent.getIntExtra(BluetoothLeScannerCompat.EXTRA_ERROR_CODE, 0);
+		if (errorCode != 0) {
+			monitor.onScanFailed(errorCode);
+			return;
+		}
+		final List<ScanResult> results =
+				intent.getParcelableArrayListExtra(BluetoothLeScannerCompat.EXTRA_LIST_SCAN_RESULT);
+		if (results != null)
+			monitor.onScanResults(results);
+		else
+			Log.w(TAG, "Scan delivery without results");
+	}
+}
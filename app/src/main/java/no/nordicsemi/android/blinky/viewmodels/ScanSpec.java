@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.core.Addresses;
+import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+
+/**
+ * What a subscriber of the {@link SharedScanner} wants to receive: the devices, given by
+ * their addresses or advertised service UUIDs, and how often the results are reported.
+ * A spec without addresses and UUIDs matches all devices.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ScanSpec {
+	private final long[] addresses;
+	private final UUID[] serviceUuids;
+	private final int scanMode;
+	private final long reportDelay;
+
+	private ScanSpec(@NonNull final Builder builder) {
+		addresses = new long[builder.addresses.size()];
+		for (int i = 0; i < addresses.length; ++i)
+			addresses[i] = builder.addresses.get(i);
+		serviceUuids = builder.serviceUuids.toArray(new UUID[0]);
+		scanMode = builder.scanMode;
+		reportDelay = builder.reportDelay;
+	}
+
+	@NonNull
+	/* package */ long[] getAddresses() {
+		return addresses;
+	}
+
+	@NonNull
+	/* package */ UUID[] getServiceUuids() {
+		return serviceUuids;
+	}
+
+	/**
+	 * Returns the scan mode, one of the ScanSettings.SCAN_MODE_* constants.
+	 */
+	public int getScanMode() {
+		return scanMode;
+	}
+
+	/**
+	 * Returns the report delay, in milliseconds. With 0 each result is reported with
+	 * ScanCallback.onScanResult, otherwise results are reported in batches.
+	 */
+	public long getReportDelay() {
+		return reportDelay;
+	}
+
+	public static final class Builder {
+		private final List<Long> addresses = new ArrayList<>();
+		private final List<UUID> serviceUuids = new ArrayList<>();
+		private int scanMode = ScanSettings.SCAN_MODE_LOW_POWER;
+		private long reportDelay;
+
+		/**
+		 * Adds a device to receive results of.
+		 *
+		 * @param address the device address, in the XX:XX:XX:XX:XX:XX format.
+		 */
+		public Builder addDeviceAddress(@NonNull final String address) {
+			addresses.add(Addresses.parse(address));
+			return this;
+		}
+
+		/**
+		 * Adds a service UUID. Results of devices advertising it are received.
+		 */
+		public Builder addServiceUuid(@NonNull final UUID uuid) {
+			serviceUuids.add(uuid);
+			return this;
+		}
+
+		/**
+		 * Sets the scan mode needed. The shared scan uses the most frequent mode of all
+		 * subscribers.
+		 *
+		 * @param scanMode one of the ScanSettings.SCAN_MODE_* constants, by default
+		 *                 {@link ScanSettings#SCAN_MODE_LOW_POWER}.
+		 */
+		public Builder setScanMode(final int scanMode) {
+			this.scanMode = scanMode;
+			return this;
+		}
+
+		/**
+		 * Sets the report delay.
+		 *
+		 * @param reportDelay the delay in milliseconds, 0 to report each result immediately.
+		 */
+		public Builder setReportDelay(final long reportDelay) {
+			if (reportDelay < 0)
+				throw new IllegalArgumentException("Invalid report delay: " + reportDelay);
+			this.reportDelay = reportDelay;
+			return this;
+		}
+
+		@NonNull
+		public ScanSpec build() {
+			return new ScanSpec(this);
+		}
+	}
+}
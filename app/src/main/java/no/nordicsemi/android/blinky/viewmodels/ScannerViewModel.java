@@ -31,21 +31,38 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.location.LocationManager;
 import android.preference.PreferenceManager;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 
+import java.util.Collections;
 import java.util.List;
-
+import java.util.Set;
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.BlinkyApplication;
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.core.SortMode;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.core.trace.Tracing;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.blinky.profile.BlinkyManager;
 import no.nordicsemi.android.blinky.utils.Utils;
-import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanRecorder;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanSource;
 import no.nordicsemi.android.support.v18.scanner.ScanCallback;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 import no.nordicsemi.android.support.v18.scanner.ScanSettings;
 
 public class ScannerViewModel extends AndroidViewModel {
+	private static final String TAG = "ScannerViewModel";
 	private static final String PREFS_FILTER_UUID_REQUIRED = "filter_uuid";
 	private static final String PREFS_FILTER_NEARBY_ONLY = "filter_nearby";
+	private static final String PREFS_SPECULATIVE_CONNECT = "speculative_connect";
+	private static final String PREFS_RATE_LIMIT = "rate_limit";
+	private static final String PREFS_SORT_MODE = "sort_mode";
 
 	/**
 	 * MutableLiveData containing the list of devices.
@@ -55,8 +72,23 @@ public class ScannerViewModel extends AndroidViewModel {
 	 * MutableLiveData containing the scanner state.
 	 */
 	private final ScannerStateLiveData scannerStateLiveData;
+	/**
+	 * Every start, stop and failure of scanning, logged and counted here and observed by the UI.
+	 */
+	private final LifecycleEventChannel<ScanEvent> scanEvents =
+			new LifecycleEventChannel<>(16, OverflowPolicy.DROP_OLDEST);
 
 	private final SharedPreferences preferences;
+	private final SpeculativeConnector speculativeConnector;
+	private final SharedScanner sharedScanner;
+	private final PresenceMonitor presenceMonitor;
+	/** The subscription to the shared scanner, while scanning without a scan source. */
+	@Nullable
+	private SharedScanner.Subscription scanSubscription;
+	@Nullable
+	private ScanSource scanSource;
+	@Nullable
+	private ScanRecorder scanRecorder;
 
 	public DevicesLiveData getDevices() {
 		return devicesLiveData;
@@ -66,6 +98,10 @@ public class ScannerViewModel extends AndroidViewModel {
 		return scannerStateLiveData;
 	}
 
+	public LifecycleEventChannel<ScanEvent> getScanEvents() {
+		return scanEvents;
+	}
+
 	public ScannerViewModel(final Application application) {
 		super(application);
 		preferences = PreferenceManager.getDefaultSharedPreferences(application);
@@ -75,13 +111,36 @@ public class ScannerViewModel extends AndroidViewModel {
 
 		scannerStateLiveData = new ScannerStateLiveData(Utils.isBleEnabled(),
 				Utils.isLocationEnabled(application));
-		devicesLiveData = new DevicesLiveData(filterUuidRequired, filerNearbyOnly);
+		devicesLiveData = new DevicesLiveData(filterUuidRequired, filerNearbyOnly,
+				isRateLimitEnabled(), getSortMode());
+		devicesLiveData.setConnectionHistory(address -> Utils.getConnectionCount(application, address));
+		speculativeConnector = ((BlinkyApplication) application).getSpeculativeConnector();
+		sharedScanner = ((BlinkyApplication) application).getSharedScanner();
+		presenceMonitor = ((BlinkyApplication) application).getPresenceMonitor();
+		// The background scan is stopped by the system on reboot or when Bluetooth is turned off.
+		presenceMonitor.resume();
+		speculativeConnector.setEnabled(isSpeculativeConnectEnabled());
 		registerBroadcastReceivers(application);
+		scanEvents.observeForever(event -> {
+			Log.i(TAG, "Scan event: " + event);
+			if (event == ScanEvent.STARTED)
+				AppMetrics.SCAN_STARTS.increment();
+			else if (event == ScanEvent.FAILED)
+				AppMetrics.SCAN_FAILURES.increment();
+		});
 	}
 
 	@Override
 	protected void onCleared() {
 		super.onCleared();
+		if (scanSource != null)
+			scanSource.stop();
+		// The scanner is shared, it must not be kept scanning for this model.
+		if (scanSubscription != null) {
+			scanSubscription.close();
+			scanSubscription = null;
+		}
+		setScanRecorder(null);
 		getApplication().unregisterReceiver(bluetoothStateBroadcastReceiver);
 
 		if (Utils.isMarshmallowOrAbove()) {
@@ -97,6 +156,94 @@ public class ScannerViewModel extends AndroidViewModel {
 		return preferences.getBoolean(PREFS_FILTER_NEARBY_ONLY, false);
 	}
 
+	public boolean isSpeculativeConnectEnabled() {
+		return preferences.getBoolean(PREFS_SPECULATIVE_CONNECT, false);
+	}
+
+	@NonNull
+	public SortMode getSortMode() {
+		try {
+			return SortMode.valueOf(preferences.getString(PREFS_SORT_MODE, SortMode.DISCOVERY.name()));
+		} catch (final IllegalArgumentException e) {
+			return SortMode.DISCOVERY;
+		}
+	}
+
+	/**
+	 * Changes the order of the device list.
+	 *
+	 * @param mode the new sort mode.
+	 */
+	public void setSortMode(@NonNull final SortMode mode) {
+		preferences.edit().putString(PREFS_SORT_MODE, mode.name()).apply();
+		devicesLiveData.setSortMode(mode);
+	}
+
+	public boolean isRateLimitEnabled() {
+		return preferences.getBoolean(PREFS_RATE_LIMIT, true);
+	}
+
+	/**
+	 * Enables or disables the per-device rate limit. When enabled, advertisements of devices
+	 * advertising more often than the limit are only sampled for RSSI.
+	 *
+	 * @param enabled true to enable the rate limit.
+	 */
+	public void setRateLimitEnabled(final boolean enabled) {
+		preferences.edit().putBoolean(PREFS_RATE_LIMIT, enabled).apply();
+		devicesLiveData.setRateLimited(enabled);
+	}
+
+	/**
+	 * Enables or disables speculative connection. When enabled, the most likely target device
+	 * on the list is connected in the background, so that selecting it opens a ready link.
+	 *
+	 * @param enabled true to enable speculative connection.
+	 */
+	public void setSpeculativeConnectEnabled(final boolean enabled) {
+		preferences.edit().putBoolean(PREFS_SPECULATIVE_CONNECT, enabled).apply();
+		speculativeConnector.setEnabled(enabled);
+	}
+
+	public boolean isPresenceMonitoringSupported() {
+		return PresenceMonitor.isSupported();
+	}
+
+	public boolean isPresenceMonitoringEnabled() {
+		return presenceMonitor.isEnabled();
+	}
+
+	/**
+	 * Enables or disables monitoring of the boards the user has connected to before while
+	 * the app is in the background. If there are none, all boards advertising the LED Button
+	 * Service are monitored. The cost of the monitoring compared with the foreground scan
+	 * is logged.
+	 *
+	 * @param enabled true to enable background monitoring.
+	 */
+	public void setPresenceMonitoringEnabled(final boolean enabled) {
+		if (enabled) {
+			final Set<String> addresses = Utils.getConnectedDevices(getApplication());
+			final Set<UUID> serviceUuids = addresses.isEmpty()
+					? Collections.singleton(BlinkyManager.LBS_UUID_SERVICE)
+					: Collections.emptySet();
+			presenceMonitor.start(addresses, serviceUuids);
+		} else {
+			Log.i(TAG, presenceMonitor.getReport(sharedScanner.getStats()));
+			presenceMonitor.stop();
+		}
+	}
+
+	/**
+	 * Notifies the view model that the user has selected the given device.
+	 * A speculative connection to any other device is dropped.
+	 *
+	 * @param device the selected device.
+	 */
+	public void onDeviceSelected(@NonNull final DiscoveredBluetoothDevice device) {
+		speculativeConnector.onDeviceSelected(device);
+	}
+
 	/**
 	 * Forces the observers to be notified. This method is used to refresh the screen after the
 	 * location permission has been granted. In result, the observer in
@@ -137,6 +284,64 @@ public class ScannerViewModel extends AndroidViewModel {
 			scannerStateLiveData.clearRecords();
 	}
 
+	/**
+	 * Shows only devices whose name or address contain the query. Unlike the other filters,
+	 * the query is not saved.
+	 *
+	 * @param query the text typed by the user, empty to show all devices.
+	 */
+	public void search(@Nullable final String query) {
+		if (devicesLiveData.search(query))
+			scannerStateLiveData.recordFound();
+		else
+			scannerStateLiveData.clearRecords();
+	}
+
+	@NonNull
+	public String getSearchQuery() {
+		return devicesLiveData.getSearchQuery();
+	}
+
+	/**
+	 * Replaces the scanner with a simulated advertising environment or a recording.
+	 * The results are delivered to the same scan callback. This is intended for load testing.
+	 *
+	 * @param source the source of results, or null to use the scanner.
+	 */
+	public void setScanSource(@Nullable final ScanSource source) {
+		final boolean scanning = scannerStateLiveData.isScanning();
+		stopScan();
+		this.scanSource = source;
+		if (scanning)
+			startScan();
+	}
+
+	/**
+	 * Returns whether the scanner has been replaced with another source of results.
+	 */
+	public boolean isScanSimulated() {
+		return scanSource != null;
+	}
+
+	/**
+	 * Sets the recorder to which all received results are written. The previous recorder,
+	 * if any, is closed.
+	 *
+	 * @param recorder the recorder, or null to stop recording.
+	 */
+	public void setScanRecorder(@Nullable final ScanRecorder recorder) {
+		if (scanRecorder != null)
+			scanRecorder.close();
+		scanRecorder = recorder;
+	}
+
+	/**
+	 * Returns whether scan results are being recorded.
+	 */
+	public boolean isScanRecorded() {
+		return scanRecorder != null;
+	}
+
 	/**
 	 * Start scanning for Bluetooth devices.
 	 */
@@ -145,65 +350,106 @@ public class ScannerViewModel extends AndroidViewModel {
 			return;
 		}
 
-		// Scanning settings
-		final ScanSettings settings = new ScanSettings.Builder()
+		if (scanSource != null) {
+			scanSource.start(scanCallback);
+			scannerStateLiveData.scanningStarted();
+			scanEvents.publish(ScanEvent.STARTED);
+			return;
+		}
+
+		// All devices are shown, so the shared scan is not filtered while the list is visible.
+		final ScanSpec spec = new ScanSpec.Builder()
 				.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
 				.setReportDelay(500)
-				.setUseHardwareBatchingIfSupported(false)
 				.build();
-
-		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
-		scanner.startScan(null, settings, scanCallback);
+		scanSubscription = sharedScanner.subscribe(spec, scanCallback);
 		scannerStateLiveData.scanningStarted();
+		scanEvents.publish(ScanEvent.STARTED);
 	}
 
 	/**
 	 * Stop scanning for bluetooth devices.
 	 */
 	public void stopScan() {
-		if (scannerStateLiveData.isScanning() && scannerStateLiveData.isBluetoothEnabled()) {
-			final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
-			scanner.stopScan(scanCallback);
+		if (scannerStateLiveData.isScanning() && scanSource != null) {
+			scanSource.stop();
 			scannerStateLiveData.scanningStopped();
+			scanEvents.publish(ScanEvent.STOPPED);
+		} else if (scannerStateLiveData.isScanning() && scanSubscription != null) {
+			scanSubscription.close();
+			scanSubscription = null;
+			scannerStateLiveData.scanningStopped();
+			scanEvents.publish(ScanEvent.STOPPED);
 		}
+		// The list is no longer visible, a link to a device that was not selected is not needed.
+		speculativeConnector.cancel();
 	}
 
 	private final ScanCallback scanCallback = new ScanCallback() {
 		@Override
 		public void onScanResult(final int callbackType, @NonNull final ScanResult result) {
-			// This callback will be called only if the scan report delay is not set or is set to 0.
-
-			// If the packet has been obtained while Location was disabled, mark Location as not required
-			if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
-				Utils.markLocationNotRequired(getApplication());
-
-			if (devicesLiveData.deviceDiscovered(result)) {
-				devicesLiveData.applyFilter();
-				scannerStateLiveData.recordFound();
+			Tracing.beginSection("ScannerViewModel.onScanResult");
+			try {
+				// This callback will be called only if the scan report delay is not set or is set to 0.
+				if (scanRecorder != null)
+					scanRecorder.record(Collections.singletonList(result));
+
+				// If the packet has been obtained while Location was disabled, mark Location as not required
+				if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
+					Utils.markLocationNotRequired(getApplication());
+
+				AppMetrics.SCAN_RESULTS.increment();
+				AppMetrics.SCAN_BATCH_SIZE.record(1);
+				final long start = AppMetrics.now();
+				final boolean matchedFilter = devicesLiveData.deviceDiscovered(result);
+				AppMetrics.SCAN_INGEST_TIME.recordSince(start, AppMetrics.now());
+
+				if (matchedFilter) {
+					devicesLiveData.applyFilter();
+					scannerStateLiveData.recordFound();
+				}
+				speculativeConnector.onCandidatesChanged(devicesLiveData.getFilteredDevices());
+			} finally {
+				Tracing.endSection();
 			}
 		}
 
 		@Override
 		public void onBatchScanResults(@NonNull final List<ScanResult> results) {
-			// This callback will be called only if the report delay set above is greater then 0.
-
-			// If the packet has been obtained while Location was disabled, mark Location as not required
-			if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
-				Utils.markLocationNotRequired(getApplication());
-
-			boolean atLeastOneMatchedFilter = false;
-			for (final ScanResult result : results)
-				atLeastOneMatchedFilter = devicesLiveData.deviceDiscovered(result) || atLeastOneMatchedFilter;
-			if (atLeastOneMatchedFilter) {
-				devicesLiveData.applyFilter();
-				scannerStateLiveData.recordFound();
+			Tracing.beginSection("ScannerViewModel.onBatchScanResults");
+			try {
+				// This callback will be called only if the report delay set above is greater then 0.
+				if (scanRecorder != null)
+					scanRecorder.record(results);
+
+				// If the packet has been obtained while Location was disabled, mark Location as not required
+				if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
+					Utils.markLocationNotRequired(getApplication());
+
+				AppMetrics.SCAN_RESULTS.add(results.size());
+				AppMetrics.SCAN_BATCH_SIZE.record(results.size());
+				final long start = AppMetrics.now();
+				final boolean atLeastOneMatchedFilter = devicesLiveData.devicesDiscovered(results);
+				AppMetrics.SCAN_INGEST_TIME.recordSince(start, AppMetrics.now());
+				if (atLeastOneMatchedFilter) {
+					devicesLiveData.applyFilter();
+					scannerStateLiveData.recordFound();
+				}
+				speculativeConnector.onCandidatesChanged(devicesLiveData.getFilteredDevices());
+			} finally {
+				Tracing.endSection();
 			}
 		}
 
 		@Override
 		public void onScanFailed(final int errorCode) {
-			// TODO This should be handled
+			Log.w(TAG, "Scanning failed with error " + errorCode);
+			if (scanSubscription != null) {
+				scanSubscription.close();
+				scanSubscription = null;
+			}
 			scannerStateLiveData.scanningStopped();
+			scanEvents.publish(ScanEvent.FAILED);
 		}
 	};
 
@@ -240,6 +486,7 @@ public class ScannerViewModel extends AndroidViewModel {
 			switch (state) {
 				case BluetoothAdapter.STATE_ON:
 					scannerStateLiveData.bluetoothEnabled();
+					presenceMonitor.resume();
 					break;
 				case BluetoothAdapter.STATE_TURNING_OFF:
 				case BluetoothAdapter.STATE_OFF:
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothAdapter;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.core.Addresses;
+import no.nordicsemi.android.blinky.core.ScanFilterIndex;
+import no.nordicsemi.android.blinky.core.metrics.DeliveryStats;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.blinky.utils.Utils;
+import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat;
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanFilter;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+
+/**
+ * The scanner shared by all components of the app. It runs a single scan while anyone is
+ * subscribed and delivers each result to the subscribers whose {@link ScanSpec} it matches,
+ * each at its own report delay. Components needing scan results therefore do not start scans
+ * of their own, which would cost radio time and count against the system limit of scans.
+ * <p>
+ * The scan uses the union of the subscribers' filters, the most frequent scan mode and
+ * the shortest report delay. It is restarted only when these change, and stopped when the last
+ * subscription is closed. Results are matched against the subscribers with
+ * a {@link ScanFilterIndex}, by address and service UUID, without checking each subscriber.
+ * Each callback and the CPU time of handling it are counted in {@link #getStats()}.
+ * <p>
+ * Subscriptions made while Bluetooth is disabled are kept, and the scan is started when
+ * it is enabled. When the scan fails, all subscriptions are closed and the subscribers are
+ * notified with {@link ScanCallback#onScanFailed(int)}, so they may subscribe again.
+ * <p>
+ * All methods must be called from the main thread, where the callbacks are called as well.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SharedScanner {
+	private static final String TAG = "SharedScanner";
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final ScanFilterIndex index = new ScanFilterIndex();
+	private final Subscription[] subscriptions = new Subscription[ScanFilterIndex.MAX_SUBSCRIBERS];
+	private final DeliveryStats stats = new DeliveryStats();
+	/** The parameters of the running scan, or null if not scanning. */
+	@Nullable
+	private Session session;
+
+	/**
+	 * Creates the scanner. It should be created once, by the application.
+	 *
+	 * @param context the application context, used to observe the Bluetooth state.
+	 */
+	public SharedScanner(@NonNull final Context context) {
+		context.registerReceiver(bluetoothStateBroadcastReceiver,
+				new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+	}
+
+	/**
+	 * Subscribes to scan results, starting or adjusting the scan if needed.
+	 *
+	 * @param spec     the devices to receive results of and the report delay.
+	 * @param callback the callback. With a report delay of 0,
+	 *                 {@link ScanCallback#onScanResult(int, ScanResult)} is called for each
+	 *                 result, otherwise {@link ScanCallback#onBatchScanResults(List)}.
+	 * @return The subscription, which must be closed when no longer needed.
+	 * @throws IllegalStateException if there are already
+	 *                               {@link ScanFilterIndex#MAX_SUBSCRIBERS} subscriptions.
+	 */
+	@MainThread
+	@NonNull
+	public Subscription subscribe(@NonNull final ScanSpec spec, @NonNull final ScanCallback callback) {
+		final int slot = index.add(spec.getAddresses(), spec.getServiceUuids());
+		final Subscription subscription = new Subscription(slot, spec, callback);
+		subscriptions[slot] = subscription;
+		update();
+		return subscription;
+	}
+
+	/**
+	 * Returns true if the shared scan is running.
+	 */
+	@MainThread
+	public boolean isScanning() {
+		return session != null;
+	}
+
+	@MainThread
+	public int getSubscriberCount() {
+		return index.size();
+	}
+
+	/**
+	 * Returns the statistics of the scan callbacks while scanning, since the app was started.
+	 */
+	@MainThread
+	@NonNull
+	public DeliveryStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Starts, restarts or stops the scan to match the current subscriptions.
+	 */
+	private void update() {
+		if (index.isEmpty()) {
+			stop();
+			return;
+		}
+		int scanMode = ScanSettings.SCAN_MODE_OPPORTUNISTIC;
+		long reportDelay = Long.MAX_VALUE;
+		for (final Subscription subscription : subscriptions) {
+			if (subscription != null) {
+				scanMode = Math.max(scanMode, subscription.spec.getScanMode());
+				reportDelay = Math.min(reportDelay, subscription.spec.getReportDelay());
+			}
+		}
+		final Session wanted = new Session(scanMode, reportDelay, index.matchesAll(),
+				index.getAddresses(), index.getServiceUuids());
+		if (wanted.equals(session))
+			return;
+		stop();
+		start(wanted);
+	}
+
+	private void start(@NonNull final Session wanted) {
+		if (!Utils.isBleEnabled()) {
+			Log.w(TAG, "Bluetooth is disabled, scanning not started");
+			return;
+		}
+		List<ScanFilter> filters = null;
+		if (!wanted.matchAll) {
+			filters = new ArrayList<>();
+			for (final long address : wanted.addresses)
+				filters.add(new ScanFilter.Builder().setDeviceAddress(Addresses.format(address)).build());
+			for (final UUID uuid : wanted.serviceUuids)
+				filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build());
+		}
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setScanMode(wanted.scanMode)
+				.setReportDelay(wanted.reportDelay)
+				.setUseHardwareBatchingIfSupported(false)
+				.build();
+		BluetoothLeScannerCompat.getScanner().startScan(filters, settings, scanCallback);
+		session = wanted;
+		stats.start(AppMetrics.now());
+		AppMetrics.SCAN_SESSIONS.increment();
+		Log.d(TAG, "Scanning for " + index.size() + " subscribers, report delay " + wanted.reportDelay + " ms");
+	}
+
+	private void stop() {
+		if (session == null)
+			return;
+		session = null;
+		stats.stop(AppMetrics.now());
+		if (Utils.isBleEnabled())
+			BluetoothLeScannerCompat.getScanner().stopScan(scanCallback);
+	}
+
+	private final ScanCallback scanCallback = new ScanCallback() {
+		@Override
+		public void onScanResult(final int callbackType, @NonNull final ScanResult result) {
+			final long cpuStart = Debug.threadCpuTimeNanos();
+			dispatch(result);
+			flushDue();
+			onDelivered(1, cpuStart);
+		}
+
+		@Override
+		public void onBatchScanResults(@NonNull final List<ScanResult> results) {
+			final long cpuStart = Debug.threadCpuTimeNanos();
+			// Indexed loop, as an iterator would be allocated for each batch.
+			for (int i = 0, size = results.size(); i < size; ++i)
+				dispatch(results.get(i));
+			flushDue();
+			onDelivered(results.size(), cpuStart);
+		}
+
+		@Override
+		public void onScanFailed(final int errorCode) {
+			Log.w(TAG, "Scanning failed with error " + errorCode);
+			session = null;
+			stats.stop(AppMetrics.now());
+			// The scan is not retried, as it would most likely fail again.
+			for (final Subscription subscription : subscriptions) {
+				if (subscription != null) {
+					subscription.release();
+					subscription.callback.onScanFailed(errorCode);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Starts the scan for existing subscriptions when Bluetooth is enabled. When it is
+	 * disabled, the system stops the scan without a callback.
+	 */
+	private final BroadcastReceiver bluetoothStateBroadcastReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(final Context context, final Intent intent) {
+			final int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.STATE_OFF);
+			switch (state) {
+				case BluetoothAdapter.STATE_ON:
+					update();
+					break;
+				case BluetoothAdapter.STATE_TURNING_OFF:
+				case BluetoothAdapter.STATE_OFF:
+					if (session != null) {
+						session = null;
+						stats.stop(AppMetrics.now());
+					}
+					break;
+			}
+		}
+	};
+
+	private void onDelivered(final int resultCount, final long cpuStart) {
+		final long cpuTime = cpuStart >= 0 ? Debug.threadCpuTimeNanos() - cpuStart : -1;
+		stats.record(resultCount, cpuTime);
+		if (cpuTime >= 0)
+			AppMetrics.SCAN_DELIVERY_CPU.record(cpuTime);
+	}
+
+	/**
+	 * Delivers the result to the matching subscribers.
+	 */
+	private void dispatch(@NonNull final ScanResult result) {
+		if (session == null)
+			return;
+		long matching = index.matchAddress(Addresses.parse(result.getDevice().getAddress()));
+		final ScanRecord record = result.getScanRecord();
+		final List<ParcelUuid> uuids = record != null ? record.getServiceUuids() : null;
+		if (uuids != null) {
+			for (int i = 0, size = uuids.size(); i < size; ++i)
+				matching |= index.matchServiceUuid(uuids.get(i).getUuid());
+		}
+		for (; matching != 0; matching &= matching - 1) {
+			final Subscription subscription = subscriptions[Long.numberOfTrailingZeros(matching)];
+			if (subscription != null)
+				subscription.deliver(result);
+		}
+	}
+
+	/**
+	 * Reports the results of subscribers whose report delay is not longer than the scan's,
+	 * at the end of each batch.
+	 */
+	private void flushDue() {
+		if (session == null)
+			return;
+		for (final Subscription subscription : subscriptions) {
+			if (subscription != null && subscription.isFlushedWithScan())
+				subscription.flush();
+		}
+	}
+
+	/**
+	 * A subscription to the shared scan.
+	 */
+	public final class Subscription {
+		private final int slot;
+		private final ScanSpec spec;
+		private final ScanCallback callback;
+		/** Results waiting for the report delay to pass. */
+		private final List<ScanResult> pending = new ArrayList<>();
+		private final Runnable flushTask = this::flush;
+		private boolean flushScheduled;
+		private boolean closed;
+
+		private Subscription(final int slot, @NonNull final ScanSpec spec, @NonNull final ScanCallback callback) {
+			this.slot = slot;
+			this.spec = spec;
+			this.callback = callback;
+		}
+
+		@NonNull
+		public ScanSpec getSpec() {
+			return spec;
+		}
+
+		/**
+		 * Stops receiving results. The scan is stopped when this was the last subscription.
+		 */
+		@MainThread
+		public void close() {
+			if (closed)
+				return;
+			release();
+			update();
+		}
+
+		/**
+		 * Removes the subscription without updating the scan.
+		 */
+		private void release() {
+			closed = true;
+			handler.removeCallbacks(flushTask);
+			pending.clear();
+			subscriptions[slot] = null;
+			index.remove(slot);
+		}
+
+		private boolean isFlushedWithScan() {
+			return spec.getReportDelay() > 0 && session != null
+					&& spec.getReportDelay() <= session.reportDelay;
+		}
+
+		private void deliver(@NonNull final ScanResult result) {
+			if (spec.getReportDelay() == 0) {
+				callback.onScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result);
+				return;
+			}
+			pending.add(result);
+			if (!flushScheduled && !isFlushedWithScan()) {
+				flushScheduled = true;
+				handler.postDelayed(flushTask, spec.getReportDelay());
+			}
+		}
+
+		private void flush() {
+			flushScheduled = false;
+			handler.removeCallbacks(flushTask);
+			if (closed || pending.isEmpty())
+				return;
+			final List<ScanResult> results = new ArrayList<>(pending);
+			pending.clear();
+			callback.onBatchScanResults(results);
+		}
+	}
+
+	/**
+	 * The parameters of a scan. A scan is restarted only when they change.
+	 */
+	private static final class Session {
+		private final int scanMode;
+		private final long reportDelay;
+		private final boolean matchAll;
+		private final List<Long> addresses;
+		private final List<UUID> serviceUuids;
+
+		private Session(final int scanMode, final long reportDelay, final boolean matchAll,
+						@NonNull final List<Long> addresses, @NonNull final List<UUID> serviceUuids) {
+			this.scanMode = scanMode;
+			this.reportDelay = reportDelay;
+			this.matchAll = matchAll;
+			// Filters are ignored when any subscriber wants all results.
+			this.addresses = matchAll ? new ArrayList<>() : addresses;
+			this.serviceUuids = matchAll ? new ArrayList<>() : serviceUuids;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Session))
+				return false;
+			final Session that = (Session) o;
+			return scanMode == that.scanMode && reportDelay == that.reportDelay
+					&& matchAll == that.matchAll && addresses.equals(that.addresses)
+					&& serviceUuids.equals(that.serviceUuids);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * scanMode + (int) reportDelay) * 31 + addresses.hashCode() * 31 + serviceUuids.hashCode();
+		}
+	}
+}
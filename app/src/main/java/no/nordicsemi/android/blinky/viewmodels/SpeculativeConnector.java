@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Observer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import no.nordicsemi.android.ble.livedata.state.ConnectionState;
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.blinky.utils.Utils;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+
+/**
+ * The speculative connector keeps a single {@link BlinkyManager} connected, with service
+ * discovery done, to the device the user is most likely going to tap on the scanner screen.
+ * When the user selects that device, the ready manager is handed over to the
+ * {@link BlinkyViewModel} and the Blinky screen does not have to wait for connection and
+ * initialization. If another device is selected, the scanner screen is left, or the link is
+ * held longer than the configured hold time, the speculative connection is dropped.
+ * <p>
+ * All methods must be called from the main thread.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SpeculativeConnector {
+	private static final String TAG = "SpeculativeConnector";
+	private static final ParcelUuid LBS_UUID = new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE);
+
+	/** Default maximum time a speculative link is kept open without being used. */
+	public static final long DEFAULT_HOLD_TIME = 20000; // [ms]
+	/** Default score advantage a new candidate must have to replace the current one. */
+	public static final float DEFAULT_SWITCH_MARGIN = 6.0f;
+
+	/**
+	 * The ranking function used to select the candidate. The device with the highest score
+	 * is chosen.
+	 */
+	@FunctionalInterface
+	public interface Ranking {
+		/**
+		 * Returns the score of the given device.
+		 *
+		 * @param device          the discovered device.
+		 * @param connectionCount number of times the user has connected to this device before.
+		 * @return The score, higher is better.
+		 */
+		float score(@NonNull final DiscoveredBluetoothDevice device, final int connectionCount);
+	}
+
+	/**
+	 * The default ranking: smoothed RSSI in dBm plus a bonus for each previous connection,
+	 * up to {@code maxHistory} connections.
+	 */
+	public static class DefaultRanking implements Ranking {
+		private final float historyWeight;
+		private final int maxHistory;
+
+		public DefaultRanking(final float historyWeight, final int maxHistory) {
+			this.historyWeight = historyWeight;
+			this.maxHistory = maxHistory;
+		}
+
+		@Override
+		public float score(@NonNull final DiscoveredBluetoothDevice device, final int connectionCount) {
+			return device.getSmoothedRssi() + historyWeight * Math.min(connectionCount, maxHistory);
+		}
+	}
+
+	private final Context context;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	/** Devices whose speculative link has expired. They will not be tried again until reset. */
+	private final Set<String> expired = new HashSet<>();
+
+	private Ranking ranking = new DefaultRanking(3.0f, 5);
+	private long holdTime = DEFAULT_HOLD_TIME;
+	private float switchMargin = DEFAULT_SWITCH_MARGIN;
+	private boolean enabled;
+
+	@Nullable
+	private BlinkyManager manager;
+	@Nullable
+	private DiscoveredBluetoothDevice target;
+	private long connectStartTime;
+	private long readyTime;
+	private boolean linkStarted;
+	private boolean selected;
+
+	// Statistics
+	private int attempts;
+	private int hits;
+	private int misses;
+	private int expirations;
+	private long totalTimeSaved;
+
+	public SpeculativeConnector(@NonNull final Context context) {
+		this.context = context.getApplicationContext();
+	}
+
+	/**
+	 * Enables or disables speculative connections. Disabling drops the current link.
+	 *
+	 * @param enabled true to enable speculative connections.
+	 */
+	@MainThread
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			cancel();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets the ranking used to find the most likely target device.
+	 *
+	 * @param ranking the ranking function.
+	 */
+	public void setRanking(@NonNull final Ranking ranking) {
+		this.ranking = ranking;
+	}
+
+	/**
+	 * Sets the maximum time a speculative link is kept open, counted from the moment the
+	 * connection was requested.
+	 *
+	 * @param holdTime the hold time in milliseconds.
+	 */
+	public void setHoldTime(final long holdTime) {
+		this.holdTime = holdTime;
+	}
+
+	/**
+	 * Sets how much better a new candidate has to score to replace the current target.
+	 * This prevents reconnecting each time the RSSI of two similar devices changes.
+	 *
+	 * @param switchMargin the margin, in score units.
+	 */
+	public void setSwitchMargin(final float switchMargin) {
+		this.switchMargin = switchMargin;
+	}
+
+	/**
+	 * Called each time the list of devices shown to the user has changed. The candidates
+	 * are ranked and, if needed, the speculative link is moved to the new best device.
+	 *
+	 * @param devices the devices currently displayed on the list.
+	 */
+	@MainThread
+	public void onCandidatesChanged(@Nullable final List<DiscoveredBluetoothDevice> devices) {
+		if (!enabled || selected || devices == null)
+			return;
+
+		DiscoveredBluetoothDevice best = null;
+		float bestScore = Float.NEGATIVE_INFINITY;
+		float currentScore = Float.NEGATIVE_INFINITY;
+		for (final DiscoveredBluetoothDevice device : devices) {
+			if (!advertisesLbs(device) || expired.contains(device.getAddress()))
+				continue;
+
+			final float score = ranking.score(device,
+					Utils.getConnectionCount(context, device.getAddress()));
+			if (device.equals(target))
+				currentScore = score;
+			if (score > bestScore) {
+				bestScore = score;
+				best = device;
+			}
+		}
+
+		if (best == null || best.equals(target))
+			return;
+		if (target != null && bestScore < currentScore + switchMargin)
+			return;
+
+		release();
+		connect(best, bestScore);
+	}
+
+	/**
+	 * Called when the user selected a device on the scanner screen. If it's the speculative
+	 * target, the link will be kept for {@link #adopt(DiscoveredBluetoothDevice)}, otherwise
+	 * it is dropped.
+	 *
+	 * @param device the selected device.
+	 */
+	@MainThread
+	public void onDeviceSelected(@NonNull final DiscoveredBluetoothDevice device) {
+		if (manager == null)
+			return;
+
+		if (device.equals(target)) {
+			selected = true;
+			handler.removeCallbacks(holdTimeout);
+			hits++;
+			// If the device isn't ready yet, the time spent so far is saved.
+			final long saved = (readyTime > 0 ? readyTime : SystemClock.elapsedRealtime()) - connectStartTime;
+			totalTimeSaved += saved;
+			Log.i(TAG, "Hit: " + device.getAddress() + ", saved " + saved + " ms (" + this + ")");
+		} else {
+			misses++;
+			Log.i(TAG, "Miss: " + device.getAddress() + " selected (" + this + ")");
+			release();
+		}
+	}
+
+	/**
+	 * Returns the manager connected to the given device, if the device was the speculative
+	 * target and has been selected by the user. The ownership of the manager is transferred
+	 * to the caller.
+	 *
+	 * @param device the device to connect to.
+	 * @return The manager, or null if there is no speculative link to this device.
+	 */
+	@MainThread
+	@Nullable
+	public BlinkyManager adopt(@NonNull final DiscoveredBluetoothDevice device) {
+		if (manager == null || !selected || !device.equals(target))
+			return null;
+
+		final BlinkyManager adopted = manager;
+		adopted.getState().removeObserver(stateObserver);
+		manager = null;
+		target = null;
+		selected = false;
+		return adopted;
+	}
+
+	/**
+	 * Drops the speculative link, if any, and allows the expired devices to be tried again.
+	 * This should be called when the user leaves the scanner screen.
+	 */
+	@MainThread
+	public void cancel() {
+		if (!selected) {
+			release();
+		}
+		expired.clear();
+	}
+
+	/**
+	 * Returns the ratio of speculative links that were used to all links that were
+	 * completed, either by user's selection or expiration.
+	 */
+	public float getHitRate() {
+		final int total = hits + misses + expirations;
+		return total > 0 ? (float) hits / total : 0.0f;
+	}
+
+	/**
+	 * Returns the average time of connection and initialization saved on each hit.
+	 */
+	public long getAverageTimeSaved() {
+		return hits > 0 ? totalTimeSaved / hits : 0;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	public int getExpirations() {
+		return expirations;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "attempts: " + attempts + ", hits: " + hits + ", misses: " + misses
+				+ ", expired: " + expirations + ", avg saved: " + getAverageTimeSaved() + " ms";
+	}
+
+	private void connect(@NonNull final DiscoveredBluetoothDevice device, final float score) {
+		attempts++;
+		target = device;
+		readyTime = 0;
+		linkStarted = false;
+		connectStartTime = SystemClock.elapsedRealtime();
+		manager = new BlinkyManager(context);
+		manager.getState().observeForever(stateObserver);
+		manager.connect(device.getDevice())
+				.retry(1, 100)
+				.useAutoConnect(false)
+				.enqueue();
+		handler.postDelayed(holdTimeout, holdTime);
+		Log.d(TAG, "Connecting to " + device.getAddress() + " (score " + score + ")");
+	}
+
+	private void release() {
+		handler.removeCallbacks(holdTimeout);
+		if (manager != null) {
+			manager.getState().removeObserver(stateObserver);
+			manager.disconnect().enqueue();
+		}
+		manager = null;
+		target = null;
+		selected = false;
+	}
+
+	private boolean advertisesLbs(@NonNull final DiscoveredBluetoothDevice device) {
+		final ScanRecord record = device.getScanResult().getScanRecord();
+		if (record == null)
+			return false;
+
+		final List<ParcelUuid> uuids = record.getServiceUuids();
+		return uuids != null && uuids.contains(LBS_UUID);
+	}
+
+	private final Observer<ConnectionState> stateObserver = state -> {
+		switch (state.getState()) {
+			case CONNECTING:
+				linkStarted = true;
+				break;
+			case READY:
+				readyTime = SystemClock.elapsedRealtime();
+				Log.d(TAG, "Ready in " + (readyTime - connectStartTime) + " ms");
+				break;
+			case DISCONNECTED:
+				// The device has been lost or is not supported. Try another one.
+				if (linkStarted && target != null && !selected) {
+					expired.add(target.getAddress());
+					release();
+				}
+				break;
+		}
+	};
+
+	private final Runnable holdTimeout = () -> {
+		if (target != null && !selected) {
+			expirations++;
+			expired.add(target.getAddress());
+			Log.i(TAG, "Expired: " + target.getAddress() + " (" + this + ")");
+			release();
+		}
+	};
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels.sim;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * A generator of synthetic advertising environments, used to load test the scanner path.
+ * <p>
+ * The simulator produces batches of {@link ScanResult}s, as the scanner does with a non-zero
+ * report delay, and may deliver them to a {@link ScanCallback} on the main thread at the
+ * report rate. Each advertisement is reported separately, so a device advertising every 20 ms
+ * appears about 25 times in a 500 ms batch, like on real phones.
+ * <p>
+ * The content of each batch depends only on the seed and the batch index, so runs can be
+ * compared with each other. Only the timestamps depend on the time the simulation started.
+ * <p>
+ * Each device has a path loss model with log-normal fading. A share of devices moves,
+ * changing its distance from the phone in a random walk. Devices may change their names,
+ * and a share of them advertises the LED Button Service UUID.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class ScanEnvironmentSimulator implements ScanSource {
+	private static final float PATH_LOSS_EXPONENT = 2.2f;
+	private static final int SENSITIVITY = -100; // [dBm]
+	/** Random delay added to each advertising interval by the advertiser, 0-10 ms. */
+	private static final long MAX_ADV_DELAY = 10_000_000L;
+
+	private final Random random;
+	private final List<SimulatedDevice> devices;
+	private final long reportDelay;
+	private final float receptionRate;
+	private final float fadingSigma;
+	private final float nameChurnRate;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/** Virtual time of the start of the next batch. */
+	private long time;
+	private long startTimeNanos;
+	private long advertisements;
+	private long batches;
+	@Nullable
+	private ScanCallback callback;
+
+	private ScanEnvironmentSimulator(@NonNull final Builder builder) {
+		random = new Random(builder.seed);
+		reportDelay = builder.reportDelay;
+		receptionRate = builder.receptionRate;
+		fadingSigma = builder.fadingSigma;
+		nameChurnRate = builder.nameChurnRate;
+
+		// Simulated devices are created by the adapter, as BluetoothDevice has no public constructor.
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		if (adapter == null)
+			throw new IllegalStateException("Simulating devices requires a Bluetooth adapter");
+		devices = new ArrayList<>(builder.deviceCount);
+		for (int i = 0; i < builder.deviceCount; ++i) {
+			final SimulatedDevice device = new SimulatedDevice();
+			device.address = randomStaticAddress();
+			device.device = adapter.getRemoteDevice(device.address);
+			device.lbs = random.nextFloat() < builder.lbsShare;
+			device.interval = builder.minInterval
+					+ (long) (random.nextDouble() * (builder.maxInterval - builder.minInterval));
+			device.nextAdvertisement = (long) (random.nextDouble() * device.interval);
+			device.txPower = -59 + (int) Math.round(random.nextGaussian() * 4);
+			device.distance = 0.5f + random.nextFloat() * (builder.maxDistance - 0.5f);
+			device.maxDistance = builder.maxDistance;
+			device.speed = random.nextFloat() < builder.mobileShare ? random.nextFloat() * 1.5f : 0;
+			device.name = device.lbs ? "LBS_" + i : (random.nextBoolean() ? "Device_" + i : null);
+			device.record = ScanRecord.parseFromBytes(advertisingData(device.name, device.lbs));
+			devices.add(device);
+		}
+	}
+
+	/**
+	 * Starts delivering batches to the given callback on the main thread, one every
+	 * report delay.
+	 *
+	 * @param callback the callback, usually the one passed to the scanner.
+	 */
+	@Override
+	public void start(@NonNull final ScanCallback callback) {
+		stop();
+		this.callback = callback;
+		handler.postDelayed(deliverBatch, reportDelay / 1_000_000L);
+	}
+
+	/**
+	 * Stops delivering batches.
+	 */
+	@Override
+	public void stop() {
+		handler.removeCallbacks(deliverBatch);
+		callback = null;
+	}
+
+	/**
+	 * Generates all advertisements received during the next report delay.
+	 *
+	 * @return The batch of scan results.
+	 */
+	@NonNull
+	public List<ScanResult> nextBatch() {
+		if (batches == 0)
+			startTimeNanos = SystemClock.elapsedRealtimeNanos();
+
+		final long end = time + reportDelay;
+		final float seconds = reportDelay / 1_000_000_000f;
+		final List<ScanResult> results = new ArrayList<>();
+		for (final SimulatedDevice device : devices) {
+			device.move(seconds);
+			if (device.name != null && nameChurnRate > 0 && random.nextFloat() < nameChurnRate * seconds) {
+				device.name = "Device_" + Integer.toHexString(random.nextInt(0x10000));
+				device.record = ScanRecord.parseFromBytes(advertisingData(device.name, device.lbs));
+			}
+
+			while (device.nextAdvertisement < end) {
+				final int rssi = device.rssi();
+				if (rssi >= SENSITIVITY && random.nextFloat() < receptionRate) {
+					results.add(new ScanResult(device.device, device.record, rssi,
+							startTimeNanos + device.nextAdvertisement));
+				}
+				device.nextAdvertisement += device.interval + (long) (random.nextDouble() * MAX_ADV_DELAY);
+			}
+		}
+		time = end;
+		batches++;
+		advertisements += results.size();
+		return results;
+	}
+
+	/**
+	 * Returns the number of simulated devices.
+	 */
+	public int getDeviceCount() {
+		return devices.size();
+	}
+
+	/**
+	 * Returns the number of batches generated so far.
+	 */
+	public long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * Returns the number of advertisements generated so far.
+	 */
+	public long getAdvertisementCount() {
+		return advertisements;
+	}
+
+	private final Runnable deliverBatch = new Runnable() {
+		@Override
+		public void run() {
+			final ScanCallback callback = ScanEnvironmentSimulator.this.callback;
+			if (callback == null)
+				return;
+			callback.onBatchScanResults(nextBatch());
+			handler.postDelayed(this, reportDelay / 1_000_000L);
+		}
+	};
+
+	@NonNull
+	private String randomStaticAddress() {
+		final byte[] bytes = new byte[6];
+		random.nextBytes(bytes);
+		// Random static addresses have 2 most significant bits set.
+		bytes[0] |= (byte) 0xC0;
+		return String.format(Locale.US, "%02X:%02X:%02X:%02X:%02X:%02X",
+				bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5]);
+	}
+
+	/**
+	 * Creates the advertising data with Flags, optionally the 128-bit LBS UUID and the
+	 * Complete Local Name.
+	 */
+	@NonNull
+	private static byte[] advertisingData(@Nullable final String name, final boolean lbs) {
+		final byte[] nameBytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		final int nameLength = Math.min(nameBytes.length, 31 - 3 - (lbs ? 18 : 0) - 2);
+		final ByteBuffer buffer = ByteBuffer.allocate(3 + (lbs ? 18 : 0) + (name != null ? 2 + nameLength : 0))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		// Flags: LE General Discoverable, BR/EDR not supported
+		buffer.put((byte) 2).put((byte) 0x01).put((byte) 0x06);
+		if (lbs) {
+			final UUID uuid = BlinkyManager.LBS_UUID_SERVICE;
+			buffer.put((byte) 17).put((byte) 0x07);
+			buffer.putLong(uuid.getLeastSignificantBits()).putLong(uuid.getMostSignificantBits());
+		}
+		if (name != null) {
+			buffer.put((byte) (nameLength + 1)).put((byte) 0x09).put(nameBytes, 0, nameLength);
+		}
+		return buffer.array();
+	}
+
+	private final class SimulatedDevice {
+		private BluetoothDevice device;
+		private String address;
+		private String name;
+		private ScanRecord record;
+		private boolean lbs;
+		private long interval;
+		private long nextAdvertisement;
+		private int txPower;
+		private float distance;
+		private float maxDistance;
+		private float speed;
+
+		private void move(final float seconds) {
+			if (speed == 0)
+				return;
+			distance += (random.nextBoolean() ? 1 : -1) * speed * seconds;
+			if (distance < 0.5f)
+				distance = 1.0f - distance;
+			if (distance > maxDistance)
+				distance = 2 * maxDistance - distance;
+		}
+
+		private int rssi() {
+			final double pathLoss = 10 * PATH_LOSS_EXPONENT * Math.log10(distance);
+			return (int) Math.round(txPower - pathLoss + random.nextGaussian() * fadingSigma);
+		}
+	}
+
+	/**
+	 * The builder of the simulator. By default, it simulates 50 devices advertising every
+	 * 20 - 1000 ms within 30 m, 10% of them advertising LBS and 20% moving.
+	 */
+	public static class Builder {
+		private int deviceCount = 50;
+		private long seed = 0;
+		private long minInterval = 20_000_000L;
+		private long maxInterval = 1_000_000_000L;
+		private long reportDelay = 500_000_000L;
+		private float lbsShare = 0.1f;
+		private float mobileShare = 0.2f;
+		private float maxDistance = 30.0f;
+		private float fadingSigma = 4.0f;
+		private float receptionRate = 0.9f;
+		private float nameChurnRate = 0.0f;
+
+		/**
+		 * Sets the number of advertisers.
+		 */
+		public Builder setDeviceCount(final int deviceCount) {
+			if (deviceCount < 0)
+				throw new IllegalArgumentException("Device count must not be negative");
+			this.deviceCount = deviceCount;
+			return this;
+		}
+
+		public Builder setSeed(final long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * Sets the range of advertising intervals. Each device gets a random interval from
+		 * the range.
+		 */
+		public Builder setAdvertisingIntervals(final long minMs, final long maxMs) {
+			if (minMs < 20 || maxMs < minMs)
+				throw new IllegalArgumentException("Invalid advertising interval range");
+			this.minInterval = minMs * 1_000_000L;
+			this.maxInterval = maxMs * 1_000_000L;
+			return this;
+		}
+
+		/**
+		 * Sets the period of batches, which should be equal to the scanner report delay.
+		 */
+		public Builder setReportDelay(final long reportDelayMs) {
+			if (reportDelayMs <= 0)
+				throw new IllegalArgumentException("Report delay must be positive");
+			this.reportDelay = reportDelayMs * 1_000_000L;
+			return this;
+		}
+
+		/**
+		 * Sets the share of devices advertising the LED Button Service UUID, in range [0, 1].
+		 */
+		public Builder setLbsShare(final float share) {
+			this.lbsShare = share;
+			return this;
+		}
+
+		/**
+		 * Sets the share of moving devices, in range [0, 1]. Moving devices walk towards
+		 * or away from the phone with a random speed up to 1.5 m/s.
+		 */
+		public Builder setMobileShare(final float share) {
+			this.mobileShare = share;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum distance of devices from the phone, in meters.
+		 */
+		public Builder setMaxDistance(final float meters) {
+			if (meters < 1)
+				throw new IllegalArgumentException("Maximum distance must be at least 1 m");
+			this.maxDistance = meters;
+			return this;
+		}
+
+		/**
+		 * Sets the standard deviation of RSSI fading, in dB.
+		 */
+		public Builder setFadingSigma(final float sigma) {
+			this.fadingSigma = sigma;
+			return this;
+		}
+
+		/**
+		 * Sets the probability of receiving an advertisement above the sensitivity level.
+		 */
+		public Builder setReceptionRate(final float rate) {
+			this.receptionRate = rate;
+			return this;
+		}
+
+		/**
+		 * Sets how often named devices change their names, in changes per second per device.
+		 */
+		public Builder setNameChurnRate(final float rate) {
+			this.nameChurnRate = rate;
+			return this;
+		}
+
+		/**
+		 * Creates the simulator.
+		 *
+		 * @throws IllegalStateException if the phone, e.g. an emulator, has no Bluetooth adapter.
+		 */
+		@NonNull
+		public ScanEnvironmentSimulator build() {
+			return new ScanEnvironmentSimulator(this);
+		}
+	}
+}
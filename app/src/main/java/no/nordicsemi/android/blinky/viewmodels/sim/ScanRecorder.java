@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels.sim;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Records scan results to a compact binary file, which can be replayed with
+ * {@link ScanReplayer}.
+ * <p>
+ * The file starts with a header: 4 bytes of {@link #MAGIC}, 1 byte of {@link #VERSION} and
+ * the timestamp of the first record as 8 byte long, in nanoseconds. It is followed by records,
+ * each prefixed with its length as 2 byte unsigned short. Each record starts with the time
+ * since the previous record as 4 byte unsigned int, in microseconds. A record of length 4 marks
+ * the end of a batch. Other records are scan results: 6 bytes of the device address, 1 byte of
+ * RSSI and the raw advertising data with zero padding removed. All values are little endian.
+ * <p>
+ * Results are encoded on the calling thread and written to the file on a background thread.
+ */
+@SuppressWarnings("unused")
+public class ScanRecorder {
+	private static final String TAG = "ScanRecorder";
+
+	/* package */ static final int MAGIC = 0x4E435342; // "BSCN"
+	/* package */ static final byte VERSION = 1;
+	/* package */ static final int HEADER_SIZE = 4 + 1 + 8;
+	/* package */ static final int BATCH_END_LENGTH = 4;
+	/* package */ static final int RESULT_HEADER_LENGTH = 4 + 6 + 1;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private final OutputStream stream;
+	private long lastTimestamp = -1;
+	private long records;
+	private boolean closed;
+
+	/**
+	 * Creates the recorder writing to the given file. An existing file is overwritten.
+	 *
+	 * @param file the target file.
+	 * @throws IOException when the file could not be created.
+	 */
+	public ScanRecorder(@NonNull final File file) throws IOException {
+		stream = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+	}
+
+	/**
+	 * Records a batch of results, as received in
+	 * {@link no.nordicsemi.android.support.v18.scanner.ScanCallback#onBatchScanResults(List)}.
+	 * A single result may be recorded as a batch of size 1.
+	 *
+	 * @param results the batch.
+	 */
+	public synchronized void record(@NonNull final List<ScanResult> results) {
+		// The first batch must not be empty, as it sets the start time.
+		if (closed || (lastTimestamp < 0 && results.isEmpty()))
+			return;
+
+		int size = lastTimestamp < 0 ? HEADER_SIZE : 0;
+		for (final ScanResult result : results)
+			size += 2 + RESULT_HEADER_LENGTH + advertisingDataLength(result);
+		size += 2 + BATCH_END_LENGTH;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		if (lastTimestamp < 0) {
+			lastTimestamp = results.get(0).getTimestampNanos();
+			buffer.putInt(MAGIC).put(VERSION).putLong(lastTimestamp);
+		}
+		long batchTimestamp = lastTimestamp;
+		for (final ScanResult result : results) {
+			final int length = advertisingDataLength(result);
+			buffer.putShort((short) (RESULT_HEADER_LENGTH + length));
+			putTimeDelta(buffer, result.getTimestampNanos());
+			putAddress(buffer, result.getDevice().getAddress());
+			buffer.put((byte) result.getRssi());
+			final ScanRecord record = result.getScanRecord();
+			if (length > 0)
+				buffer.put(record.getBytes(), 0, length);
+			batchTimestamp = Math.max(batchTimestamp, result.getTimestampNanos());
+		}
+		// The batch is delivered after its last result.
+		buffer.putShort((short) BATCH_END_LENGTH);
+		putTimeDelta(buffer, batchTimestamp);
+		records += results.size();
+
+		final byte[] bytes = buffer.array();
+		executor.execute(() -> {
+			try {
+				stream.write(bytes);
+			} catch (final IOException e) {
+				Log.e(TAG, "Writing scan results failed", e);
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of results recorded.
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Flushes pending data and closes the file. Results recorded after this are ignored.
+	 */
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		executor.execute(() -> {
+			try {
+				stream.close();
+			} catch (final IOException e) {
+				Log.e(TAG, "Closing the file failed", e);
+			}
+		});
+		executor.shutdown();
+	}
+
+	private void putTimeDelta(@NonNull final ByteBuffer buffer, final long timestamp) {
+		final long delta = Math.max(0, (timestamp - lastTimestamp) / 1000);
+		buffer.putInt((int) Math.min(delta, 0xFFFFFFFFL));
+		lastTimestamp = Math.max(lastTimestamp, timestamp);
+	}
+
+	private static void putAddress(@NonNull final ByteBuffer buffer, @NonNull final String address) {
+		// The address is in format "AA:BB:CC:DD:EE:FF".
+		for (int i = 0; i < 6; ++i) {
+			buffer.put((byte) Integer.parseInt(address.substring(i * 3, i * 3 + 2), 16));
+		}
+	}
+
+	/**
+	 * Returns the length of the advertising data without the zero padding added by Android
+	 * to legacy advertisements. The length-prefixed AD structures are walked until the first
+	 * zero length, as the last structure may itself end with zeros, e.g. TX Power of 0 dBm.
+	 */
+	private static int advertisingDataLength(@NonNull final ScanResult result) {
+		final ScanRecord record = result.getScanRecord();
+		final byte[] bytes = record != null ? record.getBytes() : null;
+		if (bytes == null)
+			return 0;
+		int length = 0;
+		while (length < bytes.length) {
+			final int fieldLength = bytes[length] & 0xFF;
+			if (fieldLength == 0)
+				break;
+			length += 1 + fieldLength;
+		}
+		// A malformed last structure is kept as received.
+		length = Math.min(length, bytes.length);
+		return Math.min(length, 0xFFFF - RESULT_HEADER_LENGTH);
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels.sim;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import no.nordicsemi.android.support.v18.scanner.ScanCallback;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Replays a file recorded by {@link ScanRecorder} to a {@link ScanCallback}, batch by batch,
+ * on the main thread. The file is memory mapped and read sequentially.
+ * <p>
+ * Batches are delivered with the original timing, divided by the speed factor. Timestamps
+ * of the results are shifted to the time of the replay, so that they are consistent with
+ * {@link SystemClock#elapsedRealtimeNanos()}.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class ScanReplayer implements ScanSource {
+	private final MappedByteBuffer buffer;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Map<Long, BluetoothDevice> devices = new HashMap<>();
+	private final BluetoothAdapter adapter;
+	private final float speed;
+	private final boolean loop;
+
+	@Nullable
+	private ScanCallback callback;
+	/** Timestamp of the last record read from the file. */
+	private long timestamp;
+	/** The file timestamp mapped to the start of the replay. */
+	private long fileStartTime;
+	private long replayStartTime;
+	private long batches;
+	private long results;
+
+	/**
+	 * Creates the replayer.
+	 *
+	 * @param file  the file recorded with {@link ScanRecorder}.
+	 * @param speed the speed factor, 1 for the original speed. 0 delivers the batches as fast
+	 *              as possible, one per main thread message.
+	 * @param loop  true to start from the beginning after the end of file is reached.
+	 * @throws IOException when the file could not be read or has a wrong format.
+	 * @throws IllegalStateException if the phone, e.g. an emulator, has no Bluetooth adapter.
+	 */
+	public ScanReplayer(@NonNull final File file, final float speed, final boolean loop) throws IOException {
+		// Replayed devices are created by the adapter, as BluetoothDevice has no public constructor.
+		adapter = BluetoothAdapter.getDefaultAdapter();
+		if (adapter == null)
+			throw new IllegalStateException("Replaying a scan requires a Bluetooth adapter");
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			 final FileChannel channel = raf.getChannel()) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < ScanRecorder.HEADER_SIZE
+				|| buffer.getInt() != ScanRecorder.MAGIC
+				|| buffer.get() != ScanRecorder.VERSION)
+			throw new IOException("Not a scan recording: " + file);
+		this.speed = speed;
+		this.loop = loop;
+		rewind();
+	}
+
+	@Override
+	public void start(@NonNull final ScanCallback callback) {
+		stop();
+		this.callback = callback;
+		fileStartTime = timestamp;
+		replayStartTime = SystemClock.elapsedRealtimeNanos();
+		handler.post(deliverBatch);
+	}
+
+	@Override
+	public void stop() {
+		handler.removeCallbacks(deliverBatch);
+		callback = null;
+	}
+
+	/**
+	 * Reads the next batch from the file.
+	 *
+	 * @return The batch, or null if the end of file has been reached.
+	 */
+	@Nullable
+	public List<ScanResult> nextBatch() {
+		final List<ScanResult> batch = new ArrayList<>();
+		final long offset = replayStartTime - fileStartTime;
+		while (buffer.remaining() >= 2) {
+			final int length = buffer.getShort() & 0xFFFF;
+			timestamp += (buffer.getInt() & 0xFFFFFFFFL) * 1000;
+			if (length == ScanRecorder.BATCH_END_LENGTH) {
+				batches++;
+				results += batch.size();
+				return batch;
+			}
+
+			final long address = readAddress();
+			final int rssi = buffer.get();
+			final byte[] bytes = new byte[length - ScanRecorder.RESULT_HEADER_LENGTH];
+			buffer.get(bytes);
+			batch.add(new ScanResult(device(address), ScanRecord.parseFromBytes(bytes), rssi,
+					timestamp + offset));
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of batches replayed.
+	 */
+	public long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * Returns the number of results replayed.
+	 */
+	public long getResultCount() {
+		return results;
+	}
+
+	private final Runnable deliverBatch = new Runnable() {
+		@Override
+		public void run() {
+			final ScanCallback callback = ScanReplayer.this.callback;
+			if (callback == null)
+				return;
+
+			List<ScanResult> batch = nextBatch();
+			if (batch == null && loop) {
+				rewind();
+				fileStartTime = timestamp;
+				replayStartTime = SystemClock.elapsedRealtimeNanos();
+				batch = nextBatch();
+			}
+			if (batch == null)
+				return;
+			callback.onBatchScanResults(batch);
+
+			// Schedule the next batch, which ends at the next batch end record.
+			final long next = peekNextBatchTime();
+			if (next < 0 && !loop)
+				return;
+			if (speed <= 0 || next < 0) {
+				handler.post(this);
+			} else {
+				final long due = replayStartTime + (long) ((next - fileStartTime) / speed);
+				final long delay = Math.max(0, due - SystemClock.elapsedRealtimeNanos()) / 1_000_000L;
+				handler.postDelayed(this, delay);
+			}
+		}
+	};
+
+	/**
+	 * Returns the file timestamp of the next batch end, or -1 if there is none.
+	 */
+	private long peekNextBatchTime() {
+		int position = buffer.position();
+		long time = timestamp;
+		while (position + 6 <= buffer.limit()) {
+			final int length = buffer.getShort(position) & 0xFFFF;
+			time += (buffer.getInt(position + 2) & 0xFFFFFFFFL) * 1000;
+			if (length == ScanRecorder.BATCH_END_LENGTH)
+				return time;
+			position += 2 + length;
+		}
+		return -1;
+	}
+
+	private void rewind() {
+		buffer.position(4 + 1);
+		timestamp = buffer.getLong();
+	}
+
+	private long readAddress() {
+		long address = 0;
+		for (int i = 0; i < 6; ++i)
+			address = (address << 8) | (buffer.get() & 0xFF);
+		return address;
+	}
+
+	@NonNull
+	private BluetoothDevice device(final long address) {
+		BluetoothDevice device = devices.get(address);
+		if (device == null) {
+			final String text = String.format(Locale.US, "%02X:%02X:%02X:%02X:%02X:%02X",
+					(address >> 40) & 0xFF, (address >> 32) & 0xFF, (address >> 24) & 0xFF,
+					(address >> 16) & 0xFF, (address >> 8) & 0xFF, address & 0xFF);
+			device = adapter.getRemoteDevice(text);
+			devices.put(address, device);
+		}
+		return device;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.sim;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import no.nordicsemi.android.blinky.profile.data.LedState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the GATT writes issued by the simulated LED switch using a virtual peripheral.
+ * The intent logic shared with {@link no.nordicsemi.android.blinky.profile.BlinkyManager}
+ * is tested in the core module.
+ */
+public class SimulatedLedLinkTest {
+	@Rule
+	public final InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+	private final VirtualClock clock = new VirtualClock();
+	private final SimulatedLedLink link = new SimulatedLedLink(clock, 0);
+	private final VirtualBlinkyPeripheral peripheral = link.getPeripheral();
+
+	@Test
+	public void initialReadIssuesNoWrite() {
+		connect();
+
+		final LedState state = link.getLedState().getValue();
+		assertNotNull(state);
+		assertFalse(state.isOn());
+		assertTrue(state.isLatest());
+		assertEquals(0, peripheral.getLedWrites());
+	}
+
+	@Test
+	public void rapidTogglesAreConfirmedInOrder() {
+		connect();
+
+		link.turnLed(true);
+		link.turnLed(false);
+		final int lastIntentId = link.turnLed(true);
+		clock.runUntilIdle();
+
+		final LedState state = link.getLedState().getValue();
+		assertNotNull(state);
+		assertEquals(lastIntentId, state.getIntentId());
+		assertTrue(state.isLatest());
+		assertEquals(3, peripheral.getLedWrites());
+	}
+
+	private void connect() {
+		link.connect(() -> {
+			// Empty
+		});
+		clock.runUntilIdle();
+		assertTrue(peripheral.isReady());
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.sim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.profile.data.BlinkyLED;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualBlinkyPeripheralTest {
+	private static final long INTERVAL = 30_000_000L;
+
+	@Test
+	public void writeIsReceivedOnce() {
+		final VirtualClock clock = new VirtualClock();
+		final VirtualBlinkyPeripheral peripheral = connect(clock, new VirtualBlinkyPeripheral.Builder(clock));
+		final List<Long> confirmations = new ArrayList<>();
+
+		peripheral.writeLed(BlinkyLED.turnOn(), (device, data) -> confirmations.add(clock.now()));
+		clock.runUntilIdle();
+
+		assertTrue(peripheral.isLedOn());
+		assertEquals(1, peripheral.getLedWrites());
+		assertEquals(1, confirmations.size());
+	}
+
+	@Test
+	public void writeTakesConnectionEvents() {
+		final VirtualClock clock = new VirtualClock();
+		final VirtualBlinkyPeripheral peripheral = connect(clock, new VirtualBlinkyPeripheral.Builder(clock));
+		final List<Long> confirmations = new ArrayList<>();
+
+		final long start = clock.now();
+		peripheral.writeLed(BlinkyLED.turnOn(), (device, data) -> confirmations.add(clock.now()));
+		clock.runUntilIdle();
+
+		// The Write Response is sent in the connection event following the request.
+		assertTrue(confirmations.get(0) - start >= INTERVAL);
+	}
+
+	@Test
+	public void requestsAreExecutedInOrder() {
+		final VirtualClock clock = new VirtualClock();
+		final VirtualBlinkyPeripheral peripheral = connect(clock, new VirtualBlinkyPeripheral.Builder(clock));
+		final List<Boolean> reads = new ArrayList<>();
+
+		peripheral.writeLed(BlinkyLED.turnOn(), null);
+		peripheral.writeLed(BlinkyLED.turnOff(), null);
+		peripheral.readLed((device, data) -> reads.add(data.getValue()[0] == 0x01));
+		clock.runUntilIdle();
+
+		assertEquals(2, peripheral.getLedWrites());
+		assertEquals(1, reads.size());
+		assertFalse(reads.get(0));
+	}
+
+	@Test
+	public void disconnectionDropsPendingRequests() {
+		final VirtualClock clock = new VirtualClock();
+		final VirtualBlinkyPeripheral peripheral = connect(clock, new VirtualBlinkyPeripheral.Builder(clock));
+		final List<Long> confirmations = new ArrayList<>();
+
+		peripheral.writeLed(BlinkyLED.turnOn(), (device, data) -> confirmations.add(clock.now()));
+		peripheral.writeLed(BlinkyLED.turnOff(), (device, data) -> confirmations.add(clock.now()));
+		peripheral.disconnect();
+		clock.runUntilIdle();
+
+		assertFalse(peripheral.isConnected());
+		assertEquals(0, peripheral.getLedWrites());
+		assertTrue(confirmations.isEmpty());
+	}
+
+	@Test
+	public void sameSeedGivesSameTimings() {
+		assertEquals(writeTimes(42), writeTimes(42));
+	}
+
+	@Test
+	public void lostPacketsAreRetransmitted() {
+		final VirtualClock clock = new VirtualClock();
+		final VirtualBlinkyPeripheral peripheral = connect(clock, new VirtualBlinkyPeripheral.Builder(clock)
+				.setSeed(1)
+				.setPacketLoss(0.5f));
+
+		for (int i = 0; i < 20; ++i)
+			peripheral.writeLed(i % 2 == 0 ? BlinkyLED.turnOn() : BlinkyLED.turnOff(), null);
+		clock.runUntilIdle();
+
+		assertEquals(20, peripheral.getLedWrites());
+		assertTrue(peripheral.getPacketsLost() > 0);
+		assertEquals(peripheral.getPacketsLost(), peripheral.getPacketsSent() - 2 * (20 + 6));
+	}
+
+	private static List<Long> writeTimes(final long seed) {
+		final VirtualClock clock = new VirtualClock();
+		final VirtualBlinkyPeripheral peripheral = connect(clock, new VirtualBlinkyPeripheral.Builder(clock)
+				.setSeed(seed)
+				.setJitter(5)
+				.setPacketLoss(0.1f));
+		final List<Long> confirmations = new ArrayList<>();
+		for (int i = 0; i < 10; ++i)
+			peripheral.writeLed(BlinkyLED.turnOn(), (device, data) -> confirmations.add(clock.now()));
+		clock.runUntilIdle();
+		return confirmations;
+	}
+
+	private static VirtualBlinkyPeripheral connect(final VirtualClock clock,
+												   final VirtualBlinkyPeripheral.Builder builder) {
+		final VirtualBlinkyPeripheral peripheral = builder.build();
+		peripheral.connect(new VirtualBlinkyPeripheral.ConnectionListener() {
+			@Override
+			public void onConnected() {
+				// Empty
+			}
+
+			@Override
+			public void onReady() {
+				// Empty
+			}
+
+			@Override
+			public void onDisconnected() {
+				// Empty
+			}
+		});
+		clock.runUntilIdle();
+		assertTrue(peripheral.isReady());
+		return peripheral;
+	}
+}
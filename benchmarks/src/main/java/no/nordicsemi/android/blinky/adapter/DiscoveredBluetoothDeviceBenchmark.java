@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.adapter;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import no.nordicsemi.android.blinky.benchmark.AllocationCounter;
+import no.nordicsemi.android.blinky.benchmark.ScanResults;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Benchmark of {@link DiscoveredBluetoothDevice#update(ScanResult)}. Results are applied
+ * to their devices in the order they were reported, so the population size decides how many
+ * device objects are touched between two updates of the same one.
+ */
+@RunWith(Parameterized.class)
+public class DiscoveredBluetoothDeviceBenchmark {
+	private static final int BATCHES = 10;
+
+	@Rule
+	public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+	@Parameterized.Parameter
+	public int population;
+
+	private ScanResult[] results;
+	private DiscoveredBluetoothDevice[] targets;
+
+	@Parameterized.Parameters(name = "population={0}")
+	public static List<Object> populations() {
+		return Arrays.asList(ScanResults.POPULATIONS);
+	}
+
+	@Before
+	public void setUp() {
+		results = ScanResults.generate(population, BATCHES);
+		targets = new DiscoveredBluetoothDevice[results.length];
+
+		final Map<String, DiscoveredBluetoothDevice> devices = new HashMap<>();
+		for (int i = 0; i < results.length; ++i) {
+			final String address = results[i].getDevice().getAddress();
+			DiscoveredBluetoothDevice device = devices.get(address);
+			if (device == null) {
+				device = new DiscoveredBluetoothDevice(results[i]);
+				devices.put(address, device);
+			}
+			targets[i] = device;
+		}
+	}
+
+	@Test
+	public void update() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("update[population=" + population + "]");
+		final ScanResult[] results = this.results;
+		final DiscoveredBluetoothDevice[] targets = this.targets;
+		int i = 0;
+		while (state.keepRunning()) {
+			targets[i].update(results[i]);
+			if (++i == results.length)
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+}
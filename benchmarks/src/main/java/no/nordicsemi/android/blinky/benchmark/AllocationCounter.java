@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.benchmark;
+
+import android.app.Instrumentation;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+/**
+ * Measures the allocation rate of a benchmark loop using the ART runtime statistics.
+ * <p>
+ * The counter reads the total number of bytes allocated by the runtime and the number of
+ * garbage collections when started and when reported. The difference is divided by the number
+ * of iterations, so the result includes allocations made by other threads at the same time
+ * and is rounded up to thread-local allocation buffers. Averaged over all iterations of
+ * a benchmark it is precise enough to notice new allocations on a hot path.
+ * <p>
+ * Results are logged and sent to the instrumentation as status, so they are printed
+ * by <code>am instrument</code> and by Android Studio next to the timing results.
+ * Allocation statistics are available on Android 6 and newer.
+ */
+public final class AllocationCounter {
+	private static final String TAG = "Allocations";
+	private static final String STAT_BYTES_ALLOCATED = "art.gc.bytes-allocated";
+	private static final String STAT_GC_COUNT = "art.gc.gc-count";
+	/** The test runner reports test status with codes from -4 to 1. */
+	private static final int STATUS_CODE = 2;
+
+	private final String name;
+	private final long startBytes;
+	private final long startGcs;
+	private long iterations;
+
+	private AllocationCounter(@NonNull final String name) {
+		this.name = name;
+		this.startGcs = readStat(STAT_GC_COUNT);
+		// Read last, so that the start value of the GC count is not counted.
+		this.startBytes = readStat(STAT_BYTES_ALLOCATED);
+	}
+
+	/**
+	 * Starts counting allocations.
+	 *
+	 * @param name the name of the benchmark, used when reporting.
+	 * @return The counter.
+	 */
+	@NonNull
+	public static AllocationCounter start(@NonNull final String name) {
+		return new AllocationCounter(name);
+	}
+
+	/**
+	 * Marks the end of a single iteration. This method does not allocate.
+	 */
+	public void iteration() {
+		iterations++;
+	}
+
+	/**
+	 * Reports the number of bytes allocated per iteration and the number of garbage
+	 * collections that happened while counting.
+	 */
+	public void report() {
+		final long bytes = readStat(STAT_BYTES_ALLOCATED);
+		final long gcs = readStat(STAT_GC_COUNT);
+		if (bytes < 0 || startBytes < 0 || iterations == 0) {
+			Log.w(TAG, name + ": allocation statistics not available");
+			return;
+		}
+
+		final long bytesPerOp = (bytes - startBytes) / iterations;
+		final long gcCount = gcs - startGcs;
+		Log.i(TAG, name + ": " + bytesPerOp + " B/op, " + gcCount + " GCs in " + iterations + " ops");
+
+		final Bundle status = new Bundle();
+		status.putString(Instrumentation.REPORT_KEY_STREAMRESULT,
+				name + " " + bytesPerOp + " B/op, " + gcCount + " GCs\n");
+		InstrumentationRegistry.getInstrumentation().sendStatus(STATUS_CODE, status);
+	}
+
+	private static long readStat(@NonNull final String stat) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
+			return -1;
+		final String value = Debug.getRuntimeStat(stat);
+		try {
+			return value != null ? Long.parseLong(value) : -1;
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.benchmark;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanEnvironmentSimulator;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanReplayer;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Generates reproducible scan results for benchmarks using {@link ScanEnvironmentSimulator}.
+ */
+public final class ScanResults {
+	/** Population sizes each scanner benchmark is run with. */
+	public static final Object[] POPULATIONS = { 10, 100, 1000 };
+
+	private static final long SEED = 0x426C696E6B79L;
+
+	private ScanResults() {
+		// empty
+	}
+
+	/**
+	 * Returns scan results received from the given number of devices during the given number
+	 * of report delays. All devices are close enough to be always received.
+	 *
+	 * @param deviceCount the number of advertisers.
+	 * @param batches     the number of batches to generate.
+	 * @return The results, in the order they were reported.
+	 */
+	@NonNull
+	public static ScanResult[] generate(final int deviceCount, final int batches) {
+		final List<ScanResult> results = new ArrayList<>();
+		for (final List<ScanResult> batch : generateBatches(deviceCount, batches)) {
+			results.addAll(batch);
+		}
+		return results.toArray(new ScanResult[0]);
+	}
+
+	/**
+	 * Returns the same scan results as {@link #generate(int, int)}, in batches as reported
+	 * by the scanner.
+	 *
+	 * @param deviceCount the number of advertisers.
+	 * @param batches     the number of batches to generate.
+	 * @return The batches.
+	 */
+	@NonNull
+	public static List<List<ScanResult>> generateBatches(final int deviceCount, final int batches) {
+		final ScanEnvironmentSimulator simulator = new ScanEnvironmentSimulator.Builder()
+				.setDeviceCount(deviceCount)
+				.setSeed(SEED)
+				.setMaxDistance(5.0f)
+				.setReceptionRate(1.0f)
+				.build();
+		final List<List<ScanResult>> results = new ArrayList<>();
+		for (int i = 0; i < batches; ++i) {
+			results.add(simulator.nextBatch());
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the same scan results as {@link #generateBatches(int, int)}, but with each
+	 * advertising data in its own array, as delivered by the scanner or by the
+	 * {@link ScanReplayer}. The simulator shares the array of a device between its results
+	 * until the data change, which would make comparing the data trivial.
+	 *
+	 * @param deviceCount the number of advertisers.
+	 * @param batches     the number of batches to generate.
+	 * @return The batches.
+	 */
+	@NonNull
+	public static List<List<ScanResult>> generateReplayedBatches(final int deviceCount, final int batches) {
+		final List<List<ScanResult>> results = new ArrayList<>();
+		for (final List<ScanResult> batch : generateBatches(deviceCount, batches)) {
+			final List<ScanResult> copy = new ArrayList<>(batch.size());
+			for (final ScanResult result : batch) {
+				final ScanRecord record = result.getScanRecord();
+				copy.add(new ScanResult(result.getDevice(),
+						record != null ? ScanRecord.parseFromBytes(record.getBytes().clone()) : null,
+						result.getRssi(), result.getTimestampNanos()));
+			}
+			results.add(copy);
+		}
+		return results;
+	}
+}
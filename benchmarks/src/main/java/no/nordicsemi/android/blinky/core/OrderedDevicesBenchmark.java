@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import no.nordicsemi.android.blinky.benchmark.AllocationCounter;
+import no.nordicsemi.android.blinky.benchmark.ScanResults;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Benchmarks of {@link OrderedDevices} recording the list updates the scanner screen receives
+ * to {@link ListUpdates}, and of replaying them to a copy of the list, as the adapter does.
+ */
+@RunWith(Parameterized.class)
+public class OrderedDevicesBenchmark {
+	private static final int BATCHES = 10;
+
+	@Rule
+	public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+	@Parameterized.Parameter
+	public int population;
+
+	private final ListUpdates<DeviceRecord> updates = new ListUpdates<>();
+	private final ListCopy adapter = new ListCopy();
+	private OrderedDevices<DeviceRecord> orderedDevices;
+	private DeviceRecord[][] batchRecords;
+	private int[][] batchRssi;
+	private long[][] batchTimestamps;
+	private byte[][][] batchData;
+	/** Every other device, removed and added back when the filter changes. */
+	private DeviceRecord[] filtered;
+
+	@Parameterized.Parameters(name = "population={0}")
+	public static List<Object> populations() {
+		return Arrays.asList(ScanResults.POPULATIONS);
+	}
+
+	@Before
+	public void setUp() {
+		final List<List<ScanResult>> batches = ScanResults.generateBatches(population, BATCHES);
+		final Map<String, DeviceRecord> records = new LinkedHashMap<>();
+		batchRecords = new DeviceRecord[BATCHES][];
+		batchRssi = new int[BATCHES][];
+		batchTimestamps = new long[BATCHES][];
+		batchData = new byte[BATCHES][][];
+		for (int i = 0; i < BATCHES; ++i) {
+			final List<ScanResult> batch = batches.get(i);
+			batchRecords[i] = new DeviceRecord[batch.size()];
+			batchRssi[i] = new int[batch.size()];
+			batchTimestamps[i] = new long[batch.size()];
+			batchData[i] = new byte[batch.size()][];
+			for (int j = 0; j < batch.size(); ++j) {
+				final ScanResult result = batch.get(j);
+				final String address = result.getDevice().getAddress();
+				DeviceRecord record = records.get(address);
+				if (record == null) {
+					record = new DeviceRecord(Addresses.parse(address));
+					records.put(address, record);
+				}
+				final ScanRecord scanRecord = result.getScanRecord();
+				batchRecords[i][j] = record;
+				batchRssi[i][j] = result.getRssi();
+				batchTimestamps[i][j] = result.getTimestampNanos();
+				batchData[i][j] = scanRecord != null ? scanRecord.getBytes() : null;
+				record.update(result.getRssi(), result.getTimestampNanos(), batchData[i][j]);
+			}
+		}
+
+		orderedDevices = new OrderedDevices<>(SortMode.SIGNAL);
+		final List<DeviceRecord> filtered = new ArrayList<>();
+		int i = 0;
+		for (final DeviceRecord record : records.values()) {
+			orderedDevices.add(record);
+			if (i++ % 2 == 0)
+				filtered.add(record);
+		}
+		this.filtered = filtered.toArray(new DeviceRecord[0]);
+		updates.reset(orderedDevices.toList());
+		updates.dispatchTo(adapter);
+	}
+
+	/**
+	 * Ingests a batch into a list sorted by signal strength, moves the devices whose signal
+	 * has changed and replays the moves.
+	 */
+	@Test
+	public void refresh() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("refresh[population=" + population + "]");
+		int i = 0;
+		while (state.keepRunning()) {
+			final DeviceRecord[] records = batchRecords[i];
+			for (int j = 0; j < records.length; ++j) {
+				records[j].update(batchRssi[i][j], batchTimestamps[i][j], batchData[i][j]);
+				orderedDevices.invalidate(records[j]);
+			}
+			orderedDevices.refresh(updates);
+			updates.dispatchTo(adapter);
+			if (++i == BATCHES)
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	/**
+	 * Removes every other device, like after a filter was enabled, or adds them back,
+	 * and replays the changes.
+	 */
+	@Test
+	public void filterChanged() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("filterChanged[population=" + population + "]");
+		boolean removed = false;
+		while (state.keepRunning()) {
+			for (final DeviceRecord record : filtered) {
+				if (removed)
+					updates.inserted(orderedDevices.add(record), record);
+				else
+					updates.removed(orderedDevices.remove(record));
+			}
+			updates.dispatchTo(adapter);
+			removed = !removed;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	/**
+	 * Applies the changes to a copy of the list, like the adapter, without notifying views.
+	 */
+	private static final class ListCopy implements ListUpdates.Listener<DeviceRecord> {
+		private final List<DeviceRecord> items = new ArrayList<>();
+
+		@Override
+		public void onReset(final List<DeviceRecord> items) {
+			this.items.clear();
+			this.items.addAll(items);
+		}
+
+		@Override
+		public void onInserted(final int position, final DeviceRecord item) {
+			items.add(position, item);
+		}
+
+		@Override
+		public void onRemoved(final int position) {
+			items.remove(position);
+		}
+
+		@Override
+		public void onMoved(final int fromPosition, final int toPosition) {
+			items.add(toPosition, items.remove(fromPosition));
+		}
+
+		@Override
+		public void onChanged(final int position) {
+			// Rows are bound again, the list is not changed.
+		}
+	}
+}
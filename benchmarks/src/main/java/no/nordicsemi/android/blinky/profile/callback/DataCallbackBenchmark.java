@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile.callback;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+import no.nordicsemi.android.ble.data.Data;
+import no.nordicsemi.android.blinky.benchmark.AllocationCounter;
+import no.nordicsemi.android.blinky.benchmark.ScanResults;
+
+/**
+ * Benchmarks of the parsers of the LED and Button characteristics. Each operation parses
+ * one value received from every device of the population, so the results are directly
+ * comparable with the scanner benchmarks.
+ */
+@RunWith(Parameterized.class)
+public class DataCallbackBenchmark {
+	private static final Data RELEASED = new Data(new byte[] { 0x00 });
+	private static final Data PRESSED = new Data(new byte[] { 0x01 });
+	private static final Data INVALID = new Data(new byte[] { 0x01, 0x02 });
+
+	@Rule
+	public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+	@Parameterized.Parameter
+	public int population;
+
+	private BluetoothDevice[] devices;
+	private Data[] values;
+	/** Prevents the callbacks from being optimized away. */
+	private int changes;
+
+	private final BlinkyButtonDataCallback buttonCallback = new BlinkyButtonDataCallback() {
+		@Override
+		public void onButtonStateChanged(@NonNull final BluetoothDevice device, final boolean pressed) {
+			if (pressed) changes++;
+		}
+
+		@Override
+		public void onInvalidDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
+			changes--;
+		}
+	};
+
+	private final BlinkyLedDataCallback ledCallback = new BlinkyLedDataCallback() {
+		@Override
+		public void onLedStateChanged(@NonNull final BluetoothDevice device, final boolean on) {
+			if (on) changes++;
+		}
+
+		@Override
+		public void onInvalidDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
+			changes--;
+		}
+	};
+
+	@Parameterized.Parameters(name = "population={0}")
+	public static List<Object> populations() {
+		return Arrays.asList(ScanResults.POPULATIONS);
+	}
+
+	@Before
+	public void setUp() {
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		devices = new BluetoothDevice[population];
+		values = new Data[population];
+		for (int i = 0; i < population; ++i) {
+			devices[i] = adapter.getRemoteDevice(String.format("C0:00:00:00:%02X:%02X", i >> 8, i & 0xFF));
+			// Every 50th value is invalid, the rest alternates between 0 and 1.
+			values[i] = i % 50 == 49 ? INVALID : (i % 2 == 0 ? PRESSED : RELEASED);
+		}
+	}
+
+	@Test
+	public void buttonNotifications() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("buttonNotifications[population=" + population + "]");
+		while (state.keepRunning()) {
+			for (int i = 0; i < population; ++i) {
+				buttonCallback.onDataReceived(devices[i], values[i]);
+			}
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	@Test
+	public void ledValues() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("ledValues[population=" + population + "]");
+		while (state.keepRunning()) {
+			for (int i = 0; i < population; ++i) {
+				ledCallback.onDataReceived(devices[i], values[i]);
+			}
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+}
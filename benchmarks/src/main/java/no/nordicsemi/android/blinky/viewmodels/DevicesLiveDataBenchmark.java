@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.DiscoveredBluetoothDevice;
+import no.nordicsemi.android.blinky.benchmark.AllocationCounter;
+import no.nordicsemi.android.blinky.benchmark.ScanResults;
+import no.nordicsemi.android.blinky.core.ListUpdates;
+import no.nordicsemi.android.blinky.core.SortMode;
+import no.nordicsemi.android.blinky.metrics.AppMetrics;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+/**
+ * Benchmarks of {@link DevicesLiveData} with all devices already discovered, which is the state
+ * the list is in for most of the scan.
+ */
+@RunWith(Parameterized.class)
+public class DevicesLiveDataBenchmark {
+	private static final String TAG = "DevicesLiveDataBenchmark";
+	private static final int BATCHES = 10;
+
+	@Rule
+	public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+	@Parameterized.Parameter
+	public int population;
+
+	private DevicesLiveData devicesLiveData;
+	private ScanResult[] results;
+	private List<List<ScanResult>> batches;
+	private List<List<ScanResult>> replayedBatches;
+
+	@Parameterized.Parameters(name = "population={0}")
+	public static List<Object> populations() {
+		return Arrays.asList(ScanResults.POPULATIONS);
+	}
+
+	@Before
+	public void setUp() {
+		results = ScanResults.generate(population, BATCHES);
+		batches = ScanResults.generateBatches(population, BATCHES);
+		replayedBatches = ScanResults.generateReplayedBatches(population, BATCHES);
+		devicesLiveData = new DevicesLiveData(true, false, false, SortMode.DISCOVERY);
+		for (final ScanResult result : results) {
+			devicesLiveData.deviceDiscovered(result);
+		}
+		devicesLiveData.applyFilter();
+	}
+
+	/**
+	 * Ingests results with the rate limit enabled. The results are replayed in a loop,
+	 * so their timestamps do not advance and once the burst is used up every advertisement
+	 * is only sampled, as of a device advertising far above the limit.
+	 */
+	@Test
+	public void deviceDiscoveredRateLimited() {
+		final DevicesLiveData devicesLiveData = new DevicesLiveData(true, false, true, SortMode.DISCOVERY);
+		final ScanResult[] results = this.results;
+		for (final ScanResult result : results) {
+			devicesLiveData.deviceDiscovered(result);
+		}
+		devicesLiveData.applyFilter();
+
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("deviceDiscoveredRateLimited[population=" + population + "]");
+		int i = 0;
+		while (state.keepRunning()) {
+			devicesLiveData.deviceDiscovered(results[i]);
+			if (++i == results.length)
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	@Test
+	public void deviceDiscovered() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("deviceDiscovered[population=" + population + "]");
+		final ScanResult[] results = this.results;
+		int i = 0;
+		while (state.keepRunning()) {
+			devicesLiveData.deviceDiscovered(results[i]);
+			if (++i == results.length)
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	/**
+	 * Ingests whole batches one result at a time, as before batches were coalesced.
+	 */
+	@Test
+	public void batchPerResult() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("batchPerResult[population=" + population + "]");
+		int i = 0;
+		while (state.keepRunning()) {
+			final List<ScanResult> batch = batches.get(i);
+			for (int j = 0, size = batch.size(); j < size; ++j)
+				devicesLiveData.deviceDiscovered(batch.get(j));
+			if (++i == batches.size())
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	@Test
+	public void batchCoalesced() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("batchCoalesced[population=" + population + "]");
+		int i = 0;
+		while (state.keepRunning()) {
+			devicesLiveData.devicesDiscovered(batches.get(i));
+			if (++i == batches.size())
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	/**
+	 * Ingests batches in which each advertising data are a new array, as received from
+	 * the scanner, so that unchanged payloads are recognized by their fingerprint.
+	 */
+	@Test
+	public void batchReplayed() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("batchReplayed[population=" + population + "]");
+		final long hits = AppMetrics.SCAN_FINGERPRINT_HITS.get();
+		final long misses = AppMetrics.SCAN_FINGERPRINT_MISSES.get();
+		int i = 0;
+		while (state.keepRunning()) {
+			devicesLiveData.devicesDiscovered(replayedBatches.get(i));
+			if (++i == replayedBatches.size())
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+
+		final long hitCount = AppMetrics.SCAN_FINGERPRINT_HITS.get() - hits;
+		final long total = hitCount + AppMetrics.SCAN_FINGERPRINT_MISSES.get() - misses;
+		if (total > 0)
+			Log.i(TAG, "batchReplayed[population=" + population + "]: fingerprint hit rate "
+					+ (100 * hitCount / total) + "%");
+	}
+
+	/**
+	 * Ingests batches into a list sorted by signal strength, applies the filter after each
+	 * batch and dispatches the moves, as the scanner screen does.
+	 */
+	@Test
+	public void batchSortedBySignal() {
+		final DevicesLiveData devicesLiveData = new DevicesLiveData(true, false, false, SortMode.SIGNAL);
+		final ListUpdates.Listener<DiscoveredBluetoothDevice> adapter = new EmptyListener();
+		for (final ScanResult result : results) {
+			devicesLiveData.deviceDiscovered(result);
+		}
+		devicesLiveData.applyFilter();
+		devicesLiveData.dispatchUpdatesTo(adapter);
+
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("batchSortedBySignal[population=" + population + "]");
+		int i = 0;
+		while (state.keepRunning()) {
+			devicesLiveData.devicesDiscovered(batches.get(i));
+			devicesLiveData.applyFilter();
+			devicesLiveData.dispatchUpdatesTo(adapter);
+			if (++i == batches.size())
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	/**
+	 * Types a name prefix and an address suffix one character at a time, as in the search box.
+	 * Each keystroke finds the matching devices and applies the filter.
+	 */
+	@Test
+	public void search() {
+		final String address = results[0].getDevice().getAddress();
+		final String name = results[0].getScanRecord() != null ? results[0].getScanRecord().getDeviceName() : null;
+		final String[] queries = typing(name != null ? name.substring(0, Math.min(4, name.length())) : "",
+				address.substring(address.length() - 5));
+
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("search[population=" + population + "]");
+		int i = 0;
+		while (state.keepRunning()) {
+			devicesLiveData.search(queries[i]);
+			if (++i == queries.length)
+				i = 0;
+			allocations.iteration();
+		}
+		allocations.report();
+		devicesLiveData.search(null);
+	}
+
+	/**
+	 * Returns the queries typed and then deleted character by character.
+	 */
+	private static String[] typing(final String... texts) {
+		final List<String> queries = new ArrayList<>();
+		for (final String text : texts) {
+			for (int i = 1; i <= text.length(); ++i)
+				queries.add(text.substring(0, i));
+			for (int i = text.length() - 1; i >= 0; --i)
+				queries.add(text.substring(0, i));
+		}
+		return queries.toArray(new String[0]);
+	}
+
+	@Test
+	public void applyFilter() {
+		final BenchmarkState state = benchmarkRule.getState();
+		final AllocationCounter allocations = AllocationCounter.start("applyFilter[population=" + population + "]");
+		while (state.keepRunning()) {
+			// Applies the filter to all devices, as no device has changed since.
+			devicesLiveData.filterByUuid(true);
+			allocations.iteration();
+		}
+		allocations.report();
+	}
+
+	private static final class EmptyListener implements ListUpdates.Listener<DiscoveredBluetoothDevice> {
+		@Override
+		public void onReset(final List<DiscoveredBluetoothDevice> items) {
+			// empty
+		}
+
+		@Override
+		public void onInserted(final int position, final DiscoveredBluetoothDevice item) {
+			// empty
+		}
+
+		@Override
+		public void onRemoved(final int position) {
+			// empty
+		}
+
+		@Override
+		public void onMoved(final int fromPosition, final int toPosition) {
+			// empty
+		}
+
+		@Override
+		public void onChanged(final int position) {
+			// empty
+		}
+	}
+}
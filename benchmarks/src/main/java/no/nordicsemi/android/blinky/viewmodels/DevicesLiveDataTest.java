@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.app.Instrumentation;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.DevicesAdapter;
+import no.nordicsemi.android.blinky.core.SortMode;
+import no.nordicsemi.android.blinky.viewmodels.sim.ScanEnvironmentSimulator;
+import no.nordicsemi.android.support.v18.scanner.ScanResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of {@link DevicesLiveData} with the {@link DevicesAdapter} observing it, as in
+ * the scanner activity. Unlike the benchmarks, these check the behaviour.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DevicesLiveDataTest {
+	private static final int BATCHES = 20;
+
+	private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+	private DevicesLiveData devicesLiveData;
+	private TestLifecycleOwner owner;
+	private DevicesAdapter adapter;
+
+	/**
+	 * Recreates the adapter in the middle of a scan, as when the activity is recreated
+	 * on rotation. The new adapter must show the whole list and apply further changes to it.
+	 */
+	@Test
+	public void adapterRecreatedDuringScan() {
+		final ScanEnvironmentSimulator simulator = new ScanEnvironmentSimulator.Builder()
+				.setDeviceCount(50)
+				.setSeed(1)
+				.setMaxDistance(20.0f)
+				.setReceptionRate(0.5f)
+				.build();
+		// Not all devices are received in each batch, so they are added during the whole scan.
+		devicesLiveData = new DevicesLiveData(false, false, false, SortMode.DISCOVERY);
+		instrumentation.runOnMainSync(this::createAdapter);
+
+		for (int i = 0; i < BATCHES; ++i) {
+			if (i == BATCHES / 2) {
+				instrumentation.runOnMainSync(() -> {
+					owner.destroy();
+					createAdapter();
+				});
+				instrumentation.waitForIdleSync();
+				assertAdapterShowsList();
+				assertFalse(adapter.isEmpty());
+			}
+			final List<ScanResult> batch = simulator.nextBatch();
+			instrumentation.runOnMainSync(() -> {
+				if (devicesLiveData.devicesDiscovered(batch))
+					devicesLiveData.applyFilter();
+			});
+			instrumentation.waitForIdleSync();
+			assertAdapterShowsList();
+		}
+	}
+
+	private void createAdapter() {
+		owner = new TestLifecycleOwner();
+		adapter = new DevicesAdapter(owner, devicesLiveData);
+	}
+
+	private void assertAdapterShowsList() {
+		instrumentation.runOnMainSync(() -> {
+			final List<?> devices = devicesLiveData.getFilteredDevices();
+			final int size = devices != null ? devices.size() : 0;
+			assertEquals(size, adapter.getItemCount());
+			for (int i = 0; i < size; ++i)
+				assertSame(devices.get(i), adapter.getItem(i));
+		});
+	}
+
+	private static final class TestLifecycleOwner implements LifecycleOwner {
+		private final LifecycleRegistry lifecycle = new LifecycleRegistry(this);
+
+		private TestLifecycleOwner() {
+			lifecycle.setCurrentState(Lifecycle.State.RESUMED);
+		}
+
+		private void destroy() {
+			lifecycle.setCurrentState(Lifecycle.State.DESTROYED);
+		}
+
+		@NonNull
+		@Override
+		public Lifecycle getLifecycle() {
+			return lifecycle;
+		}
+	}
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.budget;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import no.nordicsemi.android.blinky.core.Addresses;
+import no.nordicsemi.android.blinky.core.BatchCoalescer;
+import no.nordicsemi.android.blinky.core.DeviceFilter;
+import no.nordicsemi.android.blinky.core.DeviceRecord;
+import no.nordicsemi.android.blinky.core.DeviceRegistry;
+import no.nordicsemi.android.blinky.core.RateLimiter;
+import no.nordicsemi.android.blinky.core.button.ButtonEventLog;
+import no.nordicsemi.android.blinky.core.event.EventChannel;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+import no.nordicsemi.android.blinky.core.stream.EventPublisher;
+
+/**
+ * Measures the number of bytes allocated per ingested advertisement in steady state and exits
+ * with an error if any scenario exceeds its budget.
+ * <p>
+ * The ingest path mirrors DevicesLiveData.deviceDiscovered(ScanResult): the address is parsed
+ * from its text form, the record is looked up and updated and the registry is asked whether
+ * the filter has to be applied. Advertising data are given in a new array each time, like
+ * the scanner does. Allocations are counted per thread by the JVM, so the result is exact.
+ * <p>
+ * Recording Button events, together with streaming them out of the log, and publishing events
+ * to several subscribers of an {@link EventChannel} or an {@link EventPublisher} are checked
+ * as well.
+ */
+public final class AllocationBudgets {
+	private static final UUID LBS_UUID = UUID.fromString("00001523-1212-efde-1523-785feabcd123");
+	private static final int DEVICES = 200;
+	private static final int BATCH_SIZE = 50;
+	private static final int ADVERTISEMENTS = 200_000;
+	private static final int WARM_UP_ROUNDS = 10;
+	private static final int ROUNDS = 5;
+	/** The number of copies of each payload, each advertisement uses a different one. */
+	private static final int COPIES = 4;
+
+	private final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private final long threadId = Thread.currentThread().getId();
+
+	private final DeviceRegistry<DeviceRecord> registry;
+	private final BatchCoalescer coalescer = new BatchCoalescer();
+	private final RateLimiter rateLimiter = new RateLimiter(10, 20, 4);
+	/** The payload of each advertisement added to the coalescer, by its index in the batch. */
+	private final byte[][] batchPayloads = new byte[BATCH_SIZE][];
+	private final String[] addresses = new String[DEVICES];
+	private final int[] rssi = new int[ADVERTISEMENTS];
+	/** Payloads by device, copy and variant. Variants differ in the name only. */
+	private final byte[][][][] payloads = new byte[DEVICES][COPIES][2][];
+
+	private AllocationBudgets() {
+		final Random random = new Random(0);
+		final DeviceFilter filter = new DeviceFilter(LBS_UUID, -50);
+		filter.setUuidRequired(true);
+		registry = new DeviceRegistry<>(filter);
+
+		for (int i = 0; i < DEVICES; ++i) {
+			addresses[i] = Addresses.format(0xC00000000000L | random.nextInt(0x1000000) << 8 | i);
+			final boolean lbs = i % 10 == 0;
+			for (int c = 0; c < COPIES; ++c) {
+				payloads[i][c][0] = advertisingData("Device_" + i, lbs);
+				payloads[i][c][1] = advertisingData("Dev_" + i + "_b", lbs);
+			}
+		}
+		for (int i = 0; i < ADVERTISEMENTS; ++i) {
+			rssi[i] = -40 - random.nextInt(60);
+		}
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: AllocationBudgets <budgets.properties>");
+			System.exit(2);
+		}
+		final Properties budgets = new Properties();
+		try (InputStream in = new FileInputStream(args[0])) {
+			budgets.load(in);
+		}
+
+		final AllocationBudgets check = new AllocationBudgets();
+		final Map<String, Long> results = new TreeMap<>();
+		results.put("ingest.unchanged", check.measure(Scenario.UNCHANGED));
+		results.put("ingest.changed", check.measure(Scenario.CHANGED));
+		results.put("ingest.limited", check.measure(Scenario.LIMITED));
+		results.put("batch.unchanged", check.measure(Scenario.BATCH));
+		results.put("batch.coalesced", check.measure(Scenario.COALESCED));
+		results.put("button.record", check.measureButtonEvents());
+		results.put("event.publish", check.measureEvents());
+		results.put("stream.deliver", check.measureStream());
+
+		boolean failed = false;
+		for (final Map.Entry<String, Long> result : results.entrySet()) {
+			final String value = budgets.getProperty(result.getKey());
+			if (value == null) {
+				System.err.println(result.getKey() + ": no budget defined");
+				failed = true;
+				continue;
+			}
+			final long budget = Long.parseLong(value.trim());
+			final boolean exceeded = result.getValue() > budget;
+			System.out.println(String.format("%-18s %6d B/adv (budget %d)%s",
+					result.getKey(), result.getValue(), budget, exceeded ? " EXCEEDED" : ""));
+			failed |= exceeded;
+		}
+		if (failed) {
+			System.err.println("Allocation budget exceeded, see above.");
+			System.exit(1);
+		}
+	}
+
+	private enum Scenario {
+		UNCHANGED, CHANGED, LIMITED, BATCH, COALESCED
+	}
+
+	/**
+	 * Returns the lowest number of bytes allocated per advertisement in all measured rounds.
+	 */
+	private long measure(final Scenario scenario) {
+		registry.clear();
+		rateLimiter.clear();
+		// Discover all devices first, so that only known devices are measured.
+		for (int i = 0; i < DEVICES; ++i)
+			ingest(i, 0, 0, 0);
+		registry.applyChanges();
+
+		// The number of bytes allocated by reading the counter itself.
+		final long first = allocatedBytes();
+		final long overhead = allocatedBytes() - first;
+		long lowest = Long.MAX_VALUE;
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; ++round) {
+			final long start = allocatedBytes();
+			run(scenario);
+			final long bytes = allocatedBytes() - start - overhead;
+			if (round >= WARM_UP_ROUNDS)
+				lowest = Math.min(lowest, bytes / ADVERTISEMENTS);
+		}
+		return lowest;
+	}
+
+	/**
+	 * Returns the lowest number of bytes allocated per Button event recorded and read.
+	 */
+	private long measureButtonEvents() {
+		final ButtonEventLog log = new ButtonEventLog(1024);
+		final ButtonEventLog.Reader reader = log.newReader();
+		final long[] times = new long[256];
+		final byte[] states = new byte[256];
+
+		final long first = allocatedBytes();
+		final long overhead = allocatedBytes() - first;
+		long lowest = Long.MAX_VALUE;
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; ++round) {
+			final long start = allocatedBytes();
+			for (int i = 0; i < ADVERTISEMENTS; ++i) {
+				log.record(i, (i & 1) == 0);
+				if ((i & 0xFF) == 0xFF)
+					reader.read(times, states);
+			}
+			final long bytes = allocatedBytes() - start - overhead;
+			if (round >= WARM_UP_ROUNDS)
+				lowest = Math.min(lowest, bytes / ADVERTISEMENTS);
+		}
+		return lowest;
+	}
+
+	/**
+	 * Returns the lowest number of bytes allocated per event published to a channel with
+	 * three subscribers and received by all of them.
+	 */
+	private long measureEvents() {
+		final EventChannel<Boolean> channel = new EventChannel<>(256, OverflowPolicy.DROP_OLDEST);
+		final EventChannel.Subscription<Boolean> first = channel.subscribe();
+		final EventChannel.Subscription<Boolean> second = channel.subscribe();
+		final EventChannel.Subscription<Boolean> third = channel.subscribe();
+		final int[] received = new int[1];
+		final EventChannel.Handler<Boolean> handler = event -> received[0]++;
+
+		final long firstBytes = allocatedBytes();
+		final long overhead = allocatedBytes() - firstBytes;
+		long lowest = Long.MAX_VALUE;
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; ++round) {
+			final long start = allocatedBytes();
+			for (int i = 0; i < ADVERTISEMENTS; ++i) {
+				channel.publish((i & 1) == 0);
+				if ((i & 0x7F) == 0x7F) {
+					first.poll(handler);
+					second.poll(handler);
+					third.poll(handler);
+				}
+			}
+			final long bytes = allocatedBytes() - start - overhead;
+			if (round >= WARM_UP_ROUNDS)
+				lowest = Math.min(lowest, bytes / ADVERTISEMENTS);
+		}
+		return lowest;
+	}
+
+	/**
+	 * Returns the lowest number of bytes allocated per event published to a stream and
+	 * delivered to two subscribers, which request events in batches.
+	 */
+	private long measureStream() {
+		// A direct executor, as allocations are counted on this thread only.
+		final EventPublisher<Boolean> publisher =
+				new EventPublisher<>(256, OverflowPolicy.DROP_OLDEST, Runnable::run);
+		publisher.subscribe(new BatchSubscriber());
+		publisher.subscribe(new BatchSubscriber());
+
+		final long first = allocatedBytes();
+		final long overhead = allocatedBytes() - first;
+		long lowest = Long.MAX_VALUE;
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; ++round) {
+			final long start = allocatedBytes();
+			for (int i = 0; i < ADVERTISEMENTS; ++i)
+				publisher.publish((i & 1) == 0);
+			final long bytes = allocatedBytes() - start - overhead;
+			if (round >= WARM_UP_ROUNDS)
+				lowest = Math.min(lowest, bytes / ADVERTISEMENTS);
+		}
+		return lowest;
+	}
+
+	/**
+	 * Requests 64 events at a time, each time the previous ones have been received.
+	 */
+	private static final class BatchSubscriber implements Subscriber<Boolean> {
+		private static final int BATCH = 64;
+		private Subscription subscription;
+		private int received;
+
+		@Override
+		public void onSubscribe(final Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(BATCH);
+		}
+
+		@Override
+		public void onNext(final Boolean event) {
+			if (++received == BATCH) {
+				received = 0;
+				subscription.request(BATCH);
+			}
+		}
+
+		@Override
+		public void onError(final Throwable error) {
+			throw new IllegalStateException(error);
+		}
+
+		@Override
+		public void onComplete() {
+			// empty
+		}
+	}
+
+	private void run(final Scenario scenario) {
+		if (scenario == Scenario.COALESCED) {
+			runCoalesced();
+			return;
+		}
+		boolean relevant = false;
+		for (int i = 0; i < ADVERTISEMENTS; ++i) {
+			final int device = i % DEVICES;
+			final int copy = (i / DEVICES) % COPIES;
+			final int variant = scenario == Scenario.CHANGED ? (i / DEVICES) % 2 : 0;
+			if (scenario == Scenario.LIMITED)
+				relevant |= ingestLimited(device, copy, i);
+			else
+				relevant |= ingest(device, copy, variant, i);
+
+			if (scenario == Scenario.BATCH && (i + 1) % BATCH_SIZE == 0) {
+				if (relevant)
+					registry.applyChanges();
+				relevant = false;
+			}
+		}
+	}
+
+	/**
+	 * Ingests batches like DevicesLiveData.devicesDiscovered(List), where a few devices
+	 * advertise many times in each batch.
+	 */
+	private void runCoalesced() {
+		for (int start = 0; start < ADVERTISEMENTS; start += BATCH_SIZE) {
+			coalescer.reset();
+			for (int j = 0; j < BATCH_SIZE; ++j) {
+				final int i = start + j;
+				final int device = (i / 10) % DEVICES;
+				final int copy = (i / DEVICES) % COPIES;
+				batchPayloads[j] = payloads[device][copy][0];
+				coalescer.add(Addresses.parse(addresses[device]), rssi[i], i);
+			}
+			boolean relevant = false;
+			for (int group = 0; group < coalescer.getGroupCount(); ++group) {
+				final DeviceRecord record = registry.find(coalescer.getAddress(group));
+				record.update(coalescer, group, batchPayloads[coalescer.getLast(group)]);
+				registry.changed(record);
+				relevant |= registry.isRelevant(record);
+			}
+			if (relevant)
+				registry.applyChanges();
+		}
+	}
+
+	private boolean ingest(final int device, final int copy, final int variant, final int i) {
+		final long address = Addresses.parse(addresses[device]);
+		DeviceRecord record = registry.find(address);
+		if (record == null) {
+			record = new DeviceRecord(address);
+			registry.add(record);
+		}
+		if (record.update(rssi[i], i, payloads[device][copy][variant]))
+			registry.dataChanged(record);
+		registry.changed(record);
+		return registry.isRelevant(record);
+	}
+
+	/**
+	 * Ingests like DevicesLiveData.deviceDiscovered(ScanResult) with the rate limit enabled.
+	 * Timestamps advance by 1 ns per advertisement, so after the burst every advertisement
+	 * is only sampled.
+	 */
+	private boolean ingestLimited(final int device, final int copy, final int i) {
+		final long address = Addresses.parse(addresses[device]);
+		final DeviceRecord record = registry.find(address);
+		final boolean boosted = record.isFiltered() || registry.getFilter().advertisesService(record);
+		if (!rateLimiter.tryAcquire(address, i, boosted)) {
+			record.sample(rssi[i], i);
+			registry.changed(record);
+			return false;
+		}
+		record.update(rssi[i], i, payloads[device][copy][0]);
+		registry.changed(record);
+		return registry.isRelevant(record);
+	}
+
+	private long allocatedBytes() {
+		return threadBean.getThreadAllocatedBytes(threadId);
+	}
+
+	private static byte[] advertisingData(final String name, final boolean lbs) {
+		final byte[] data = new byte[31];
+		int offset = 0;
+		// Flags
+		data[offset++] = 2;
+		data[offset++] = 0x01;
+		data[offset++] = 0x06;
+		if (lbs) {
+			data[offset++] = 17;
+			data[offset++] = 0x07;
+			final long lsb = LBS_UUID.getLeastSignificantBits();
+			final long msb = LBS_UUID.getMostSignificantBits();
+			for (int i = 0; i < 8; ++i)
+				data[offset++] = (byte) (lsb >>> (8 * i));
+			for (int i = 0; i < 8; ++i)
+				data[offset++] = (byte) (msb >>> (8 * i));
+		}
+		final byte[] bytes = name.getBytes();
+		final int length = Math.min(bytes.length, data.length - offset - 2);
+		data[offset++] = (byte) (length + 1);
+		data[offset++] = 0x09;
+		System.arraycopy(bytes, 0, data, offset, length);
+		return data;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * Conversions between the textual form of a Bluetooth device address, e.g. "C0:01:02:03:04:05",
+ * and its 48-bit numeric form used as a key in the {@link DeviceRegistry}.
+ */
+public final class Addresses {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private Addresses() {
+		// empty
+	}
+
+	/**
+	 * Parses the address. This method does not allocate.
+	 *
+	 * @param address the address in "XX:XX:XX:XX:XX:XX" format, upper or lower case.
+	 * @return The address as a 48-bit number, most significant byte first.
+	 * @throws IllegalArgumentException if the address is not valid.
+	 */
+	public static long parse(final String address) {
+		if (address == null || address.length() != 17)
+			throw new IllegalArgumentException("Invalid address: " + address);
+
+		long value = 0;
+		for (int i = 0; i < 17; ++i) {
+			final char c = address.charAt(i);
+			if (i % 3 == 2) {
+				if (c != ':')
+					throw new IllegalArgumentException("Invalid address: " + address);
+				continue;
+			}
+			final int digit = Character.digit(c, 16);
+			if (digit < 0)
+				throw new IllegalArgumentException("Invalid address: " + address);
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Formats the address.
+	 *
+	 * @param address the address as a 48-bit number.
+	 * @return The address in "XX:XX:XX:XX:XX:XX" format, upper case.
+	 */
+	public static String format(final long address) {
+		final char[] chars = new char[17];
+		for (int i = 0; i < 6; ++i) {
+			final int b = (int) (address >>> (40 - 8 * i)) & 0xFF;
+			chars[i * 3] = HEX[b >>> 4];
+			chars[i * 3 + 1] = HEX[b & 0x0F];
+			if (i < 5)
+				chars[i * 3 + 2] = ':';
+		}
+		return new String(chars);
+	}
+}
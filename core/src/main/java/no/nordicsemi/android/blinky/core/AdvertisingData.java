@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * Parsers of the raw advertising data, a sequence of length-type-value structures as defined
+ * in Bluetooth Core Specification, Vol 3, Part C, 11. Unlike the scan record classes of the
+ * platform, these methods work directly on the bytes and do not allocate, except for
+ * the returned name.
+ */
+public final class AdvertisingData {
+	private static final int TYPE_SERVICE_UUIDS_16_BIT_PARTIAL = 0x02;
+	private static final int TYPE_SERVICE_UUIDS_16_BIT_COMPLETE = 0x03;
+	private static final int TYPE_SERVICE_UUIDS_32_BIT_PARTIAL = 0x04;
+	private static final int TYPE_SERVICE_UUIDS_32_BIT_COMPLETE = 0x05;
+	private static final int TYPE_SERVICE_UUIDS_128_BIT_PARTIAL = 0x06;
+	private static final int TYPE_SERVICE_UUIDS_128_BIT_COMPLETE = 0x07;
+	private static final int TYPE_LOCAL_NAME_SHORT = 0x08;
+	private static final int TYPE_LOCAL_NAME_COMPLETE = 0x09;
+	private static final int TYPE_TX_POWER_LEVEL = 0x0A;
+
+	/** Returned by {@link #getTxPowerLevel(byte[])} if the data do not contain the TX power. */
+	public static final int TX_POWER_UNKNOWN = Integer.MIN_VALUE;
+
+	/** The Bluetooth Base UUID, 00000000-0000-1000-8000-00805F9B34FB, without the short UUID. */
+	private static final long BASE_UUID_MSB = 0x0000000000001000L;
+	private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private AdvertisingData() {
+		// empty
+	}
+
+	/**
+	 * Returns whether the advertising data contain the given service UUID in any of the
+	 * 16, 32 or 128-bit service UUID lists.
+	 *
+	 * @param data the advertising data, may be null.
+	 * @param uuid the service UUID.
+	 * @return True, if the UUID was found.
+	 */
+	public static boolean containsServiceUuid(final byte[] data, final UUID uuid) {
+		if (data == null)
+			return false;
+
+		final long msb = uuid.getMostSignificantBits();
+		final long lsb = uuid.getLeastSignificantBits();
+		// A short UUID may only be found if the UUID is based on the Bluetooth Base UUID.
+		final boolean based = lsb == BASE_UUID_LSB && (msb & 0xFFFFFFFFL) == BASE_UUID_MSB;
+		final long shortUuid = msb >>> 32;
+
+		int offset = 0;
+		while (offset < data.length) {
+			final int length = data[offset] & 0xFF;
+			if (length == 0 || offset + 1 + length > data.length)
+				break;
+
+			final int type = data[offset + 1] & 0xFF;
+			final int start = offset + 2;
+			final int end = offset + 1 + length;
+			switch (type) {
+				case TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+				case TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+					if (based && shortUuid <= 0xFFFF) {
+						for (int i = start; i + 2 <= end; i += 2) {
+							if (readUnsigned(data, i, 2) == shortUuid)
+								return true;
+						}
+					}
+					break;
+				case TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+				case TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
+					if (based) {
+						for (int i = start; i + 4 <= end; i += 4) {
+							if (readUnsigned(data, i, 4) == shortUuid)
+								return true;
+						}
+					}
+					break;
+				case TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+				case TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
+					for (int i = start; i + 16 <= end; i += 16) {
+						// 128-bit UUIDs are little endian, least significant half first.
+						if (readUnsigned(data, i, 8) == lsb && readUnsigned(data, i + 8, 8) == msb)
+							return true;
+					}
+					break;
+			}
+			offset = end;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the complete local name of the device or, if not present, the shortened one.
+	 *
+	 * @param data the advertising data, may be null.
+	 * @return The name, or null if the data do not contain a name.
+	 */
+	public static String getLocalName(final byte[] data) {
+		if (data == null)
+			return null;
+
+		int shortNameOffset = -1;
+		int shortNameLength = 0;
+		int offset = 0;
+		while (offset < data.length) {
+			final int length = data[offset] & 0xFF;
+			if (length == 0 || offset + 1 + length > data.length)
+				break;
+
+			final int type = data[offset + 1] & 0xFF;
+			if (type == TYPE_LOCAL_NAME_COMPLETE)
+				return new String(data, offset + 2, length - 1, UTF_8);
+			if (type == TYPE_LOCAL_NAME_SHORT) {
+				shortNameOffset = offset + 2;
+				shortNameLength = length - 1;
+			}
+			offset += 1 + length;
+		}
+		return shortNameOffset >= 0 ? new String(data, shortNameOffset, shortNameLength, UTF_8) : null;
+	}
+
+	/**
+	 * Returns the advertised TX Power Level, that is the radiated power of the packet.
+	 *
+	 * @param data the advertising data, may be null.
+	 * @return The TX power in dBm, or {@link #TX_POWER_UNKNOWN} if not advertised.
+	 */
+	public static int getTxPowerLevel(final byte[] data) {
+		if (data == null)
+			return TX_POWER_UNKNOWN;
+
+		int offset = 0;
+		while (offset < data.length) {
+			final int length = data[offset] & 0xFF;
+			if (length == 0 || offset + 1 + length > data.length)
+				break;
+
+			final int type = data[offset + 1] & 0xFF;
+			if (type == TYPE_TX_POWER_LEVEL && length == 2)
+				return data[offset + 2];
+			offset += 1 + length;
+		}
+		return TX_POWER_UNKNOWN;
+	}
+
+	/**
+	 * Reads an unsigned little-endian number of up to 8 bytes.
+	 */
+	private static long readUnsigned(final byte[] data, final int offset, final int length) {
+		long value = 0;
+		for (int i = length - 1; i >= 0; --i) {
+			value = (value << 8) | (data[offset + i] & 0xFF);
+		}
+		return value;
+	}
+}
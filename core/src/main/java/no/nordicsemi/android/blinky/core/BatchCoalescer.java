@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+
+/**
+ * Collapses a batch of advertisements into one group per device before they are ingested
+ * into a {@link DeviceRegistry}, so that the registry is looked up and the filter evaluated
+ * once per device per batch, not once per advertisement. With batched scanning a device
+ * advertising every 20 ms is reported about 25 times in a 500 ms batch.
+ * <p>
+ * Each group keeps the index of the last advertisement in the batch, which carries the
+ * payload to be ingested, the number of advertisements and the RSSI statistics. The RSSI of
+ * every advertisement is kept as well, so that the {@link RssiModel} still gets all samples,
+ * see {@link DeviceRecord#update(BatchCoalescer, int, byte[])}.
+ * <p>
+ * The coalescer is meant to be reused for each batch, in which case it does not allocate
+ * once its arrays have grown to the batch size. This class is not thread safe.
+ */
+public final class BatchCoalescer {
+	private static final int NONE = -1;
+
+	private final LongIntMap groupsByAddress = new LongIntMap(64);
+
+	// By advertisement
+	private int[] rssi = new int[64];
+	private int[] next = new int[64];
+	private int size;
+
+	// By group
+	private long[] addresses = new long[16];
+	private int[] first = new int[16];
+	private int[] last = new int[16];
+	private long[] lastTimestamp = new long[16];
+	private int[] count = new int[16];
+	private int[] maxRssi = new int[16];
+	private int[] rssiSum = new int[16];
+	private int groups;
+
+	/**
+	 * Clears the coalescer before adding a new batch.
+	 */
+	public void reset() {
+		if (groups > 0)
+			groupsByAddress.clear();
+		size = 0;
+		groups = 0;
+	}
+
+	/**
+	 * Adds the next advertisement of the batch. Advertisements must be added in the order
+	 * they were received, their index is the order of adding.
+	 *
+	 * @param address        the device address, see {@link Addresses#parse(String)}.
+	 * @param rssi           the received signal strength, in dBm.
+	 * @param timestampNanos the time the advertisement was received.
+	 * @return The index of the group the advertisement was added to.
+	 */
+	public int add(final long address, final int rssi, final long timestampNanos) {
+		if (size == this.rssi.length) {
+			this.rssi = Arrays.copyOf(this.rssi, size * 2);
+			next = Arrays.copyOf(next, size * 2);
+		}
+		final int index = size++;
+		this.rssi[index] = rssi;
+		next[index] = NONE;
+
+		int group = groupsByAddress.get(address);
+		if (group < 0) {
+			group = newGroup(address, index);
+		} else {
+			next[last[group]] = index;
+		}
+		last[group] = index;
+		lastTimestamp[group] = timestampNanos;
+		count[group]++;
+		rssiSum[group] += rssi;
+		if (maxRssi[group] < rssi)
+			maxRssi[group] = rssi;
+		return group;
+	}
+
+	/** Returns the number of advertisements added since the last {@link #reset()}. */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the number of devices in the batch. */
+	public int getGroupCount() {
+		return groups;
+	}
+
+	public long getAddress(final int group) {
+		return addresses[group];
+	}
+
+	/** Returns the index of the last advertisement of the group in the batch. */
+	public int getLast(final int group) {
+		return last[group];
+	}
+
+	/** Returns the timestamp of the last advertisement of the group. */
+	public long getLastTimestamp(final int group) {
+		return lastTimestamp[group];
+	}
+
+	/** Returns the number of advertisements in the group. */
+	public int getCount(final int group) {
+		return count[group];
+	}
+
+	public int getMaxRssi(final int group) {
+		return maxRssi[group];
+	}
+
+	public float getMeanRssi(final int group) {
+		return (float) rssiSum[group] / count[group];
+	}
+
+	/** Returns the index of the first advertisement of the group. */
+	/* package */ int getFirst(final int group) {
+		return first[group];
+	}
+
+	/** Returns the index of the next advertisement of the same group, or -1. */
+	/* package */ int getNext(final int index) {
+		return next[index];
+	}
+
+	/* package */ int getRssi(final int index) {
+		return rssi[index];
+	}
+
+	private int newGroup(final long address, final int index) {
+		if (groups == addresses.length) {
+			final int capacity = groups * 2;
+			addresses = Arrays.copyOf(addresses, capacity);
+			first = Arrays.copyOf(first, capacity);
+			last = Arrays.copyOf(last, capacity);
+			lastTimestamp = Arrays.copyOf(lastTimestamp, capacity);
+			count = Arrays.copyOf(count, capacity);
+			maxRssi = Arrays.copyOf(maxRssi, capacity);
+			rssiSum = Arrays.copyOf(rssiSum, capacity);
+		}
+		final int group = groups++;
+		groupsByAddress.put(address, group);
+		addresses[group] = address;
+		first[group] = index;
+		count[group] = 0;
+		rssiSum[group] = 0;
+		maxRssi[group] = RssiModel.RSSI_UNKNOWN;
+		return group;
+	}
+}
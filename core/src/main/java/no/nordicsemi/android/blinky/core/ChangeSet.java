@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of applying the filter: the new list of devices matching the filter and
+ * the changes compared to the previous one.
+ *
+ * @param <D> the type of device records.
+ */
+public final class ChangeSet<D extends DeviceRecord> {
+	private final List<D> devices;
+	private final List<D> added;
+	private final List<D> removed;
+	private final List<D> changed;
+
+	/**
+	 * Creates a change set. The list of devices is not wrapped, as it may be shared by
+	 * many change sets, so it must be unmodifiable already.
+	 */
+	/* package */ ChangeSet(final List<D> devices, final List<D> added,
+							final List<D> removed, final List<D> changed) {
+		this.devices = devices;
+		this.added = Collections.unmodifiableList(added);
+		this.removed = Collections.unmodifiableList(removed);
+		this.changed = Collections.unmodifiableList(changed);
+	}
+
+	/**
+	 * Returns the devices matching the filter, in the order they were discovered.
+	 * See {@link OrderedDevices} for other orders.
+	 */
+	public List<D> getDevices() {
+		return devices;
+	}
+
+	/**
+	 * Returns the devices that started matching the filter.
+	 */
+	public List<D> getAdded() {
+		return added;
+	}
+
+	/**
+	 * Returns the devices that no longer match the filter.
+	 */
+	public List<D> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Returns the devices that matched the filter before and still do, but their
+	 * RSSI level has changed.
+	 */
+	public List<D> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * Returns whether nothing has changed.
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+
+	/**
+	 * The listener notified each time the filter is applied.
+	 */
+	public interface Listener<D extends DeviceRecord> {
+		void onChanged(ChangeSet<D> changeSet);
+	}
+}
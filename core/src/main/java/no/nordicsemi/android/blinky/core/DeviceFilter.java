@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.UUID;
+
+/**
+ * The filter deciding which of the discovered devices are shown. A device may be required
+ * to advertise a service UUID and to be nearby, that is to have the smoothed signal stronger
+ * than a threshold. A nearby device stays nearby until its signal drops
+ * {@link #NEARBY_HYSTERESIS} dB below the threshold. When a search query is set in the
+ * {@link SearchIndex}, only devices matching it are shown.
+ */
+public class DeviceFilter {
+	/** The difference between the thresholds of becoming and no longer being nearby, in dB. */
+	public static final int NEARBY_HYSTERESIS = 6;
+
+	private final UUID serviceUuid;
+	private final int nearbyRssi;
+	private final SearchIndex search = new SearchIndex();
+	private boolean uuidRequired;
+	private boolean nearbyOnly;
+
+	/**
+	 * Creates a filter with both conditions disabled.
+	 *
+	 * @param serviceUuid the service UUID required when {@link #setUuidRequired(boolean)} is set.
+	 * @param nearbyRssi  the smoothed RSSI a device has to reach to be shown when
+	 *                    {@link #setNearbyOnly(boolean)} is set, in dBm.
+	 */
+	public DeviceFilter(final UUID serviceUuid, final int nearbyRssi) {
+		this.serviceUuid = serviceUuid;
+		this.nearbyRssi = nearbyRssi;
+	}
+
+	public void setUuidRequired(final boolean uuidRequired) {
+		this.uuidRequired = uuidRequired;
+	}
+
+	public boolean isUuidRequired() {
+		return uuidRequired;
+	}
+
+	public void setNearbyOnly(final boolean nearbyOnly) {
+		this.nearbyOnly = nearbyOnly;
+	}
+
+	public boolean isNearbyOnly() {
+		return nearbyOnly;
+	}
+
+	/**
+	 * Returns the search index of the device names and addresses, which also keeps the query.
+	 */
+	public SearchIndex getSearch() {
+		return search;
+	}
+
+	/**
+	 * Returns whether the device matches all enabled conditions.
+	 *
+	 * @param record the device.
+	 * @return True, if the device should be shown.
+	 */
+	public boolean matches(final DeviceRecord record) {
+		return search.matches(record) && matchesUuid(record) && matchesNearby(record.getRssiModel());
+	}
+
+	private boolean matchesUuid(final DeviceRecord record) {
+		return !uuidRequired || advertisesService(record);
+	}
+
+	/**
+	 * Returns whether the device advertises the service UUID of the filter, whether or not
+	 * it is required. The result is cached in the record until its data change, so the
+	 * advertising data are not searched again for each advertisement with an unchanged payload.
+	 *
+	 * @param record the device.
+	 * @return True, if the service UUID is in the advertising data.
+	 */
+	public boolean advertisesService(final DeviceRecord record) {
+		if (record.uuidMatch == DeviceRecord.UUID_UNKNOWN)
+			record.uuidMatch = AdvertisingData.containsServiceUuid(record.getData(), serviceUuid) ?
+					DeviceRecord.UUID_FOUND : DeviceRecord.UUID_MISSING;
+		return record.uuidMatch == DeviceRecord.UUID_FOUND;
+	}
+
+	private boolean matchesNearby(final RssiModel rssiModel) {
+		return !nearbyOnly || rssiModel.isAbove(nearbyRssi, nearbyRssi - NEARBY_HYSTERESIS);
+	}
+}
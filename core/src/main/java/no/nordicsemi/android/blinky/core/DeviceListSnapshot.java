@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * A version of the state of all devices in a {@link DeviceRegistry}, published by
+ * {@link SnapshotPublisher}. Snapshots are immutable and share the unchanged parts with
+ * the previous version, so they may be handed to another thread and read there without
+ * locks while the records keep being updated.
+ *
+ * @param <D> the type of device records.
+ */
+public final class DeviceListSnapshot<D extends DeviceRecord> {
+	private final long version;
+	private final PersistentVector<DeviceSnapshot<D>> devices;
+
+	/* package */ DeviceListSnapshot(final long version, final PersistentVector<DeviceSnapshot<D>> devices) {
+		this.version = version;
+		this.devices = devices;
+	}
+
+	/**
+	 * Returns the version, increased with each published change.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the state of the device in this version.
+	 *
+	 * @param record the device.
+	 * @return The state, or null if the device was discovered after this version.
+	 */
+	public DeviceSnapshot<D> get(final D record) {
+		final int index = record.getDiscoveryIndex();
+		return index < devices.size() ? devices.get(index) : null;
+	}
+
+	/**
+	 * Returns the state of the device with the given discovery index.
+	 *
+	 * @param discoveryIndex see {@link DeviceRecord#getDiscoveryIndex()}.
+	 * @return The state, or null if the device was discovered after this version.
+	 */
+	public DeviceSnapshot<D> get(final int discoveryIndex) {
+		return discoveryIndex < devices.size() ? devices.get(discoveryIndex) : null;
+	}
+
+	/**
+	 * Returns the number of devices in this version, including devices not matching the filter.
+	 */
+	public int size() {
+		return devices.size();
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * The state of a single advertising device: its address, the last received advertising data
+ * and the signal strength. Platform adapters may extend this class to keep their own
+ * representation of the device.
+ * <p>
+ * This class is not thread safe.
+ */
+public class DeviceRecord {
+	private final long address;
+	private final RssiModel rssiModel;
+	private byte[] data;
+	private int dataLength = Fingerprint.NO_DATA;
+	private long dataHash;
+	private String name;
+	private int txPower = AdvertisingData.TX_POWER_UNKNOWN;
+	private long lastSeen;
+	private long advertisements;
+	private int connectionCount;
+
+	/** Whether the device matched the filter when it was last applied. */
+	/* package */ boolean filtered;
+	/**
+	 * The signal level when the device was last added or changed in a {@link ChangeSet},
+	 * that is the level shown, or -1.
+	 */
+	/* package */ int publishedRssiLevel = -1;
+
+	/* package */ static final byte UUID_UNKNOWN = 0;
+	/* package */ static final byte UUID_FOUND = 1;
+	/* package */ static final byte UUID_MISSING = 2;
+	/**
+	 * Whether the data contain the service UUID of the filter, cached by {@link DeviceFilter}
+	 * until the data change.
+	 */
+	/* package */ byte uuidMatch = UUID_UNKNOWN;
+	/** The position in the order of discovery, set by {@link DeviceRegistry#add(DeviceRecord)}. */
+	/* package */ int discoveryIndex;
+	/** The node of the device on an {@link OrderedDevices} list, or null. */
+	/* package */ OrderedDevices.Node orderNode;
+	/** Whether the record has changed since the last {@link SnapshotPublisher#publish()}. */
+	/* package */ boolean snapshotChanged;
+	/** Whether the record has changed since the filter was last applied to it. */
+	/* package */ boolean filterPending;
+
+	/**
+	 * Creates a record of a device that has not been seen yet.
+	 *
+	 * @param address the device address, see {@link Addresses#parse(String)}.
+	 */
+	public DeviceRecord(final long address) {
+		this.address = address;
+		this.rssiModel = new RssiModel();
+	}
+
+	/**
+	 * Restores a record from saved values.
+	 */
+	protected DeviceRecord(final long address, final byte[] data, final long lastSeen,
+						   final RssiModel rssiModel) {
+		this.address = address;
+		this.data = data;
+		this.dataLength = Fingerprint.length(data);
+		this.dataHash = Fingerprint.hash(data);
+		this.name = AdvertisingData.getLocalName(data);
+		this.txPower = AdvertisingData.getTxPowerLevel(data);
+		this.lastSeen = lastSeen;
+		this.rssiModel = rssiModel;
+	}
+
+	/**
+	 * Updates the record with a new advertisement. The data are compared with the last ones by
+	 * their {@link Fingerprint}. If they match, only the RSSI and the time the device was last
+	 * seen are updated, and the previous data are kept. Otherwise the name and TX power are
+	 * parsed again and the cached filter result is discarded.
+	 *
+	 * @param rssi           the received signal strength, in dBm.
+	 * @param timestampNanos the time the packet was received, in nanoseconds.
+	 * @param data           the raw advertising data, may be null.
+	 * @return True, if the advertising data have changed.
+	 */
+	public boolean update(final int rssi, final long timestampNanos, final byte[] data) {
+		rssiModel.update(rssi);
+		advertisements++;
+		return updateData(timestampNanos, data);
+	}
+
+	/**
+	 * Updates the record with all advertisements of the device in a batch. Each RSSI sample
+	 * is added to the {@link RssiModel}, while the data are updated once.
+	 *
+	 * @param batch the coalesced batch.
+	 * @param group the group of this device in the batch.
+	 * @param data  the raw advertising data of the last advertisement in the group, may be null.
+	 * @return True, if the advertising data have changed.
+	 */
+	public boolean update(final BatchCoalescer batch, final int group, final byte[] data) {
+		for (int i = batch.getFirst(group); i >= 0; i = batch.getNext(i))
+			rssiModel.update(batch.getRssi(i));
+		advertisements += batch.getCount(group);
+		return updateData(batch.getLastTimestamp(group), data);
+	}
+
+	/**
+	 * Updates only the RSSI and the time the device was last seen, for an advertisement that
+	 * is not ingested because of the {@link RateLimiter}. The data are not compared.
+	 *
+	 * @param rssi           the received signal strength, in dBm.
+	 * @param timestampNanos the time the packet was received, in nanoseconds.
+	 */
+	public void sample(final int rssi, final long timestampNanos) {
+		rssiModel.update(rssi);
+		advertisements++;
+		lastSeen = timestampNanos;
+	}
+
+	/**
+	 * Updates only the RSSI and the time the device was last seen with all advertisements
+	 * of the device in a batch, see {@link #sample(int, long)}.
+	 *
+	 * @param batch the coalesced batch.
+	 * @param group the group of this device in the batch.
+	 */
+	public void sample(final BatchCoalescer batch, final int group) {
+		for (int i = batch.getFirst(group); i >= 0; i = batch.getNext(i))
+			rssiModel.update(batch.getRssi(i));
+		advertisements += batch.getCount(group);
+		lastSeen = batch.getLastTimestamp(group);
+	}
+
+	private boolean updateData(final long timestampNanos, final byte[] data) {
+		lastSeen = timestampNanos;
+		if (data == this.data)
+			return false;
+		final int length = Fingerprint.length(data);
+		final long hash = Fingerprint.hash(data);
+		if (length == dataLength && hash == dataHash)
+			return false;
+		this.data = data;
+		this.dataLength = length;
+		this.dataHash = hash;
+		this.uuidMatch = UUID_UNKNOWN;
+		this.name = AdvertisingData.getLocalName(data);
+		this.txPower = AdvertisingData.getTxPowerLevel(data);
+		return true;
+	}
+
+	/**
+	 * Returns the device address as a 48-bit number.
+	 */
+	public long getRawAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the advertised name, or null if the device does not advertise one.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the last received advertising data, or null.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the timestamp of the last advertisement, in nanoseconds.
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	/**
+	 * Returns whether the device matched the filter when it was last applied,
+	 * that is whether it is shown.
+	 */
+	public boolean isFiltered() {
+		return filtered;
+	}
+
+	/**
+	 * Returns the position of the device in the order of discovery, from 0.
+	 */
+	public int getDiscoveryIndex() {
+		return discoveryIndex;
+	}
+
+	/**
+	 * Returns the number of previous connections to the device, as set by the platform.
+	 */
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public void setConnectionCount(final int connectionCount) {
+		this.connectionCount = connectionCount;
+	}
+
+	/**
+	 * Returns the number of advertisements received from the device.
+	 */
+	public long getAdvertisementCount() {
+		return advertisements;
+	}
+
+	public RssiModel getRssiModel() {
+		return rssiModel;
+	}
+
+	public int getRssi() {
+		return rssiModel.getRssi();
+	}
+
+	/**
+	 * Returns the smoothed RSSI, which should be used for filtering, sorting and display.
+	 * See {@link RssiModel#getSmoothedRssi()}.
+	 */
+	public float getSmoothedRssi() {
+		return rssiModel.getSmoothedRssi();
+	}
+
+	/**
+	 * Returns the estimated distance to the device, if it advertises its TX power.
+	 *
+	 * @return The distance in meters, or NaN if unknown.
+	 */
+	public float getEstimatedDistance() {
+		return txPower != AdvertisingData.TX_POWER_UNKNOWN ?
+				rssiModel.estimateDistance(txPower) : Float.NaN;
+	}
+
+	/**
+	 * Returns the highest recorded RSSI value during the scan.
+	 *
+	 * @return Highest RSSI value.
+	 */
+	public int getHighestRssi() {
+		return rssiModel.getHighestRssi();
+	}
+
+	/**
+	 * This method returns true if the RSSI range has changed since the device was last
+	 * reported by the {@link DeviceRegistry}, no matter how many advertisements were
+	 * received since.
+	 *
+	 * @return True, if the RSSI range has changed.
+	 */
+	public boolean hasRssiLevelChanged() {
+		return rssiModel.getLevel() != publishedRssiLevel;
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The registry of all devices discovered during a scan. Devices are kept in the order they
+ * were discovered and may be looked up by address without allocating.
+ * <p>
+ * The registry does not create records itself. The platform adapter finds the record with
+ * {@link #find(long)}, creates and {@link #add(DeviceRecord) adds} a new one if needed, updates
+ * it with the advertisement, marks it {@link #changed(DeviceRecord) changed} and then asks
+ * whether the filter has to be applied again. {@link #applyChanges()} checks only the devices
+ * changed since, {@link #applyFilter()} checks all of them after the filter itself has changed.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <D> the type of device records.
+ */
+public class DeviceRegistry<D extends DeviceRecord> {
+	private static final Comparator<DeviceRecord> DISCOVERY_ORDER =
+			(a, b) -> a.discoveryIndex - b.discoveryIndex;
+
+	private final DeviceFilter filter;
+	private final List<D> devices = new ArrayList<>();
+	private final LongIntMap index = new LongIntMap(64);
+	private final List<ChangeSet.Listener<D>> listeners = new CopyOnWriteArrayList<>();
+	/** The devices changed since the filter was last applied to them. */
+	private final List<D> pending = new ArrayList<>();
+	private List<D> filteredDevices = Collections.emptyList();
+
+	public DeviceRegistry(final DeviceFilter filter) {
+		this.filter = filter;
+	}
+
+	public DeviceFilter getFilter() {
+		return filter;
+	}
+
+	public void addListener(final ChangeSet.Listener<D> listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(final ChangeSet.Listener<D> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the record of the device with given address.
+	 *
+	 * @param address the device address.
+	 * @return The record, or null if the device has not been discovered yet.
+	 */
+	public D find(final long address) {
+		final int i = index.get(address);
+		return i >= 0 ? devices.get(i) : null;
+	}
+
+	/**
+	 * Adds a record of a newly discovered device.
+	 *
+	 * @param record the new record.
+	 * @throws IllegalArgumentException if a device with the same address is already registered.
+	 */
+	public void add(final D record) {
+		if (index.get(record.getRawAddress()) >= 0)
+			throw new IllegalArgumentException("Device already registered: "
+					+ Addresses.format(record.getRawAddress()));
+		record.discoveryIndex = devices.size();
+		index.put(record.getRawAddress(), devices.size());
+		devices.add(record);
+		filter.getSearch().add(record);
+		changed(record);
+	}
+
+	/**
+	 * Marks the record as updated, so that the filter is applied to it by the next
+	 * {@link #applyChanges()}. Records are marked when {@link #add(DeviceRecord) added}.
+	 *
+	 * @param record the updated record.
+	 */
+	public void changed(final D record) {
+		if (record.filterPending)
+			return;
+		record.filterPending = true;
+		pending.add(record);
+	}
+
+	/**
+	 * Notifies the registry that the advertising data of the record have changed, so that
+	 * its name is indexed again for search.
+	 *
+	 * @param record the updated record.
+	 */
+	public void dataChanged(final D record) {
+		filter.getSearch().update(record);
+	}
+
+	/**
+	 * Returns whether a change of the given record may change the list of filtered devices,
+	 * that is if the device was on the list when the filter was last applied, or matches
+	 * the filter now.
+	 *
+	 * @param record the updated record.
+	 * @return True, if the filter should be applied.
+	 */
+	public boolean isRelevant(final D record) {
+		return record.filtered || filter.matches(record);
+	}
+
+	/**
+	 * Applies the filter to the devices {@link #changed(DeviceRecord) changed} since it was
+	 * last applied and notifies listeners with the changes. This costs O(k) for k changed
+	 * devices, and the list of matching devices is only created again when a device
+	 * was added or removed.
+	 *
+	 * @return The change set.
+	 */
+	public ChangeSet<D> applyChanges() {
+		List<D> added = Collections.emptyList();
+		List<D> removed = Collections.emptyList();
+		List<D> changed = Collections.emptyList();
+
+		// Indexed loop, as an iterator would be allocated for each batch.
+		for (int i = 0, size = pending.size(); i < size; ++i) {
+			final D device = pending.get(i);
+			device.filterPending = false;
+			final boolean matches = filter.matches(device);
+			if (matches) {
+				if (!device.filtered) {
+					if (added.isEmpty()) added = new ArrayList<>();
+					added.add(device);
+					device.publishedRssiLevel = device.getRssiModel().getLevel();
+				} else if (device.hasRssiLevelChanged()) {
+					if (changed.isEmpty()) changed = new ArrayList<>();
+					changed.add(device);
+					device.publishedRssiLevel = device.getRssiModel().getLevel();
+				}
+			} else if (device.filtered) {
+				if (removed.isEmpty()) removed = new ArrayList<>();
+				removed.add(device);
+			}
+			device.filtered = matches;
+		}
+		pending.clear();
+		return publish(merge(added, removed), added, removed, changed);
+	}
+
+	/**
+	 * Creates a new list of devices matching the filter, checking all devices, and notifies
+	 * listeners with the changes. This must be called when the filter has changed.
+	 *
+	 * @return The change set.
+	 */
+	public ChangeSet<D> applyFilter() {
+		final List<D> matching = new ArrayList<>();
+		List<D> added = Collections.emptyList();
+		List<D> removed = Collections.emptyList();
+		List<D> changed = Collections.emptyList();
+
+		for (final D device : devices) {
+			final boolean matches = filter.matches(device);
+			if (matches) {
+				matching.add(device);
+				if (!device.filtered) {
+					if (added.isEmpty()) added = new ArrayList<>();
+					added.add(device);
+					device.publishedRssiLevel = device.getRssiModel().getLevel();
+				} else if (device.hasRssiLevelChanged()) {
+					if (changed.isEmpty()) changed = new ArrayList<>();
+					changed.add(device);
+					device.publishedRssiLevel = device.getRssiModel().getLevel();
+				}
+			} else if (device.filtered) {
+				if (removed.isEmpty()) removed = new ArrayList<>();
+				removed.add(device);
+			}
+			device.filtered = matches;
+			device.filterPending = false;
+		}
+		pending.clear();
+		return publish(Collections.unmodifiableList(matching), added, removed, changed);
+	}
+
+	/**
+	 * Applies the filter after the search query has changed. Only the devices which started or
+	 * stopped matching the query, as reported by {@link SearchIndex#getChangedCount()}, are
+	 * checked, so a keystroke does not check all devices. The new list is built from the
+	 * previous one, which is linear in the number of matching devices only.
+	 * <p>
+	 * When the query was set or cleared, any device may have changed and the filter is
+	 * {@link #applyFilter() applied} to all devices. Changes of the RSSI level are reported
+	 * by the next {@link #applyFilter()}.
+	 *
+	 * @return The change set.
+	 */
+	public ChangeSet<D> applySearch() {
+		final SearchIndex search = filter.getSearch();
+		final int count = search.getChangedCount();
+		if (count == SearchIndex.ALL_CHANGED)
+			return applyFilter();
+
+		List<D> added = Collections.emptyList();
+		List<D> removed = Collections.emptyList();
+		for (int i = 0; i < count; ++i) {
+			final D device = devices.get(search.getChanged(i));
+			final boolean matches = filter.matches(device);
+			if (matches == device.filtered)
+				continue;
+			if (matches) {
+				if (added.isEmpty()) added = new ArrayList<>();
+				added.add(device);
+				device.publishedRssiLevel = device.getRssiModel().getLevel();
+			} else {
+				if (removed.isEmpty()) removed = new ArrayList<>();
+				removed.add(device);
+			}
+			device.filtered = matches;
+		}
+		return publish(merge(added, removed), added, removed, Collections.<D>emptyList());
+	}
+
+	/**
+	 * Merges the added devices into the previous list of matching devices, in the order of
+	 * discovery, and leaves out the removed ones, whose flag has already been cleared.
+	 *
+	 * @return The new unmodifiable list, or the previous one if no device was added nor removed.
+	 */
+	private List<D> merge(final List<D> added, final List<D> removed) {
+		if (added.isEmpty() && removed.isEmpty())
+			return filteredDevices;
+
+		Collections.sort(added, DISCOVERY_ORDER);
+		final List<D> matching = new ArrayList<>(filteredDevices.size() - removed.size() + added.size());
+		int next = 0;
+		for (final D device : filteredDevices) {
+			if (!device.filtered)
+				continue;
+			while (next < added.size() && added.get(next).discoveryIndex < device.discoveryIndex)
+				matching.add(added.get(next++));
+			matching.add(device);
+		}
+		while (next < added.size())
+			matching.add(added.get(next++));
+		return Collections.unmodifiableList(matching);
+	}
+
+	private ChangeSet<D> publish(final List<D> matching, final List<D> added,
+								 final List<D> removed, final List<D> changed) {
+		final ChangeSet<D> changeSet = new ChangeSet<>(matching, added, removed, changed);
+		filteredDevices = changeSet.getDevices();
+		for (final ChangeSet.Listener<D> listener : listeners) {
+			listener.onChanged(changeSet);
+		}
+		return changeSet;
+	}
+
+	/**
+	 * Returns the devices matching the filter, as last created when the filter was applied.
+	 * The list is not modified later, a new one is created each time it changes.
+	 */
+	public List<D> getFilteredDevices() {
+		return filteredDevices;
+	}
+
+	/**
+	 * Returns all discovered devices, in the order of discovery.
+	 */
+	public List<D> getDevices() {
+		return Collections.unmodifiableList(devices);
+	}
+
+	public int size() {
+		return devices.size();
+	}
+
+	/**
+	 * Removes all devices. Listeners are not notified.
+	 */
+	public void clear() {
+		for (final D device : devices) {
+			device.filtered = false;
+			device.filterPending = false;
+		}
+		devices.clear();
+		pending.clear();
+		index.clear();
+		filter.getSearch().clear();
+		filteredDevices = Collections.emptyList();
+	}
+}
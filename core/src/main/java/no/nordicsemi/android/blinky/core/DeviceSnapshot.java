@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * An immutable copy of the values of a {@link DeviceRecord} that change with advertisements,
+ * taken when a {@link DeviceListSnapshot} is published. The record itself is kept for its
+ * identity and its immutable values, like the address.
+ *
+ * @param <D> the type of device records.
+ */
+public final class DeviceSnapshot<D extends DeviceRecord> {
+	private final D record;
+	private final String name;
+	private final int rssi;
+	private final float smoothedRssi;
+	private final int highestRssi;
+	private final long lastSeen;
+	private final long advertisementCount;
+	private final float estimatedDistance;
+
+	private DeviceSnapshot(final D record) {
+		this.record = record;
+		this.name = record.getName();
+		this.rssi = record.getRssi();
+		this.smoothedRssi = record.getSmoothedRssi();
+		this.highestRssi = record.getHighestRssi();
+		this.lastSeen = record.getLastSeen();
+		this.advertisementCount = record.getAdvertisementCount();
+		this.estimatedDistance = record.getEstimatedDistance();
+	}
+
+	/**
+	 * Takes a snapshot of the current values of the record. This must be called on the thread
+	 * updating the record.
+	 */
+	public static <D extends DeviceRecord> DeviceSnapshot<D> of(final D record) {
+		return new DeviceSnapshot<>(record);
+	}
+
+	public D getRecord() {
+		return record;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	/**
+	 * See {@link DeviceRecord#getSmoothedRssi()}.
+	 */
+	public float getSmoothedRssi() {
+		return smoothedRssi;
+	}
+
+	/**
+	 * Returns the smoothed signal strength as a percentage,
+	 * see {@link RssiModel#getSignalPercent(float)}.
+	 */
+	public int getSignalPercent() {
+		return RssiModel.getSignalPercent(smoothedRssi);
+	}
+
+	public int getHighestRssi() {
+		return highestRssi;
+	}
+
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	public long getAdvertisementCount() {
+		return advertisementCount;
+	}
+
+	/**
+	 * See {@link DeviceRecord#getEstimatedDistance()}.
+	 */
+	public float getEstimatedDistance() {
+		return estimatedDistance;
+	}
+}
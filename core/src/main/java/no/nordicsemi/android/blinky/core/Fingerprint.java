@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * The fingerprint of advertising data: the length and a 64-bit hash of the raw bytes.
+ * Stationary devices send byte-identical payloads most of the time, so comparing the
+ * fingerprint with the one of the last payload tells whether the data have to be parsed
+ * and filtered again.
+ * <p>
+ * The hash is not cryptographic. With 64 bits and the length compared as well, the chance
+ * that a changed payload of a device is taken for the previous one is negligible.
+ */
+public final class Fingerprint {
+	/** The length of missing data. */
+	public static final int NO_DATA = -1;
+
+	private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private Fingerprint() {
+		// empty
+	}
+
+	/**
+	 * Returns the length part of the fingerprint.
+	 *
+	 * @param data the raw advertising data, may be null.
+	 * @return The length of the data, or {@link #NO_DATA}.
+	 */
+	public static int length(final byte[] data) {
+		return data != null ? data.length : NO_DATA;
+	}
+
+	/**
+	 * Returns the 64-bit hash of the data, FNV-1a followed by a final mix so that payloads
+	 * differing in a single byte differ in about half of the bits.
+	 *
+	 * @param data the raw advertising data, may be null.
+	 * @return The hash, 0 for null.
+	 */
+	public static long hash(final byte[] data) {
+		if (data == null)
+			return 0;
+		long hash = FNV_OFFSET_BASIS;
+		for (final byte b : data) {
+			hash ^= b & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
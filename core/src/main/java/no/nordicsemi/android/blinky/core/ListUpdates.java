@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A log of changes of an ordered list, recorded by the producer of the list and replayed
+ * on the UI thread to a copy of it. Unlike calculating the difference of two lists, each
+ * change is recorded when it happens, so a device that moved costs one entry.
+ * <p>
+ * The log should be compacted with {@link #reset(List)} when it grows much longer than the
+ * list, for example when the UI does not dispatch it while in the background.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <D> the type of list items.
+ */
+public final class ListUpdates<D> {
+	private static final byte RESET = 0;
+	private static final byte INSERT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte MOVE = 3;
+	private static final byte CHANGE = 4;
+
+	/**
+	 * The target of the changes, usually an adapter keeping a copy of the list.
+	 */
+	public interface Listener<D> {
+		/** The list has been replaced with the given items. */
+		void onReset(List<D> items);
+
+		void onInserted(int position, D item);
+
+		void onRemoved(int position);
+
+		void onMoved(int fromPosition, int toPosition);
+
+		/** The item at given position has to be shown again. */
+		void onChanged(int position);
+	}
+
+	private byte[] types = new byte[64];
+	private int[] from = new int[64];
+	private int[] to = new int[64];
+	private Object[] items = new Object[64];
+	private int size;
+
+	/**
+	 * Discards all recorded changes and records replacing the list with the given items.
+	 *
+	 * @param items the current items, the list must not be modified later.
+	 */
+	public void reset(final List<D> items) {
+		Arrays.fill(this.items, 0, size, null);
+		size = 0;
+		add(RESET, 0, 0, items);
+	}
+
+	public void inserted(final int position, final D item) {
+		add(INSERT, position, position, item);
+	}
+
+	public void removed(final int position) {
+		add(REMOVE, position, position, null);
+	}
+
+	/**
+	 * Records a move of an item. Moves to the same position are ignored.
+	 */
+	public void moved(final int fromPosition, final int toPosition) {
+		if (fromPosition != toPosition)
+			add(MOVE, fromPosition, toPosition, null);
+	}
+
+	public void changed(final int position) {
+		add(CHANGE, position, position, null);
+	}
+
+	/**
+	 * Returns the number of recorded changes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Replays all recorded changes to the listener, in the order they were recorded,
+	 * and clears the log.
+	 *
+	 * @param listener the target.
+	 */
+	@SuppressWarnings("unchecked")
+	public void dispatchTo(final Listener<D> listener) {
+		for (int i = 0; i < size; ++i) {
+			switch (types[i]) {
+				case RESET:
+					listener.onReset((List<D>) items[i]);
+					break;
+				case INSERT:
+					listener.onInserted(from[i], (D) items[i]);
+					break;
+				case REMOVE:
+					listener.onRemoved(from[i]);
+					break;
+				case MOVE:
+					listener.onMoved(from[i], to[i]);
+					break;
+				case CHANGE:
+					listener.onChanged(from[i]);
+					break;
+			}
+		}
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+	}
+
+	private void add(final byte type, final int fromPosition, final int toPosition, final Object item) {
+		if (size == types.length) {
+			final int capacity = size * 2;
+			types = Arrays.copyOf(types, capacity);
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			items = Arrays.copyOf(items, capacity);
+		}
+		types[size] = type;
+		from[size] = fromPosition;
+		to[size] = toPosition;
+		items[size] = item;
+		size++;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from long keys to non-negative int values, used to avoid boxing
+ * addresses on every lookup. Entries cannot be removed, only cleared all at once.
+ */
+/* package */ final class LongIntMap {
+	private static final int MISSING = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	/* package */ LongIntMap(final int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, MISSING);
+	}
+
+	/**
+	 * Returns the value for the key, or -1 if there is none.
+	 */
+	/* package */ int get(final long key) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			if (values[i] == MISSING)
+				return MISSING;
+			if (keys[i] == key)
+				return values[i];
+		}
+	}
+
+	/* package */ void put(final long key, final int value) {
+		if ((size + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			if (values[i] == MISSING) {
+				keys[i] = key;
+				values[i] = value;
+				size++;
+				return;
+			}
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+		}
+	}
+
+	/* package */ void clear() {
+		Arrays.fill(values, MISSING);
+		size = 0;
+	}
+
+	/* package */ int size() {
+		return size;
+	}
+
+	private void resize(final int capacity) {
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, MISSING);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldValues[i] != MISSING)
+				put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+	private static int hash(final long key) {
+		// Addresses of devices from one vendor share the upper bytes, mix all bits.
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The devices shown on the list, kept in the order of a {@link SortMode}. The list is an
+ * indexable skip list: each link knows how many positions it skips, so adding, removing and
+ * moving a device, as well as finding its position, take O(log n) time on average.
+ * <p>
+ * The sort key of a device is taken when it is added. When the device is updated it should be
+ * {@link #invalidate(DeviceRecord) invalidated}, and {@link #refresh(ListUpdates)} then moves
+ * the invalidated devices whose key has changed. Each device keeps a reference to its node,
+ * so a device may be on one ordered list at a time.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <D> the type of device records.
+ */
+public final class OrderedDevices<D extends DeviceRecord> {
+	private static final int MAX_LEVEL = 16;
+	private static final long SEED = 0x536B69704C697374L;
+
+	/* package */ static final class Node {
+		private final OrderedDevices<?> list;
+		private final DeviceRecord record;
+		private final Node[] next;
+		/** The number of positions to the next node on each level, see {@link #insert(Node)}. */
+		private final int[] width;
+		private long key;
+		private String name;
+		private boolean dirty;
+
+		private Node(final OrderedDevices<?> list, final DeviceRecord record, final int level) {
+			this.list = list;
+			this.record = record;
+			this.next = new Node[level];
+			this.width = new int[level];
+		}
+	}
+
+	private final Node head = new Node(this, null, MAX_LEVEL);
+	/** The last node before the searched position on each level, reused by each search. */
+	private final Node[] update = new Node[MAX_LEVEL];
+	/** The positions of nodes in {@link #update}, 1-based with the head at 0. */
+	private final int[] rank = new int[MAX_LEVEL];
+	private final Random random = new Random(SEED);
+	private Node[] dirty = new Node[16];
+	private int dirtyCount;
+	private SortMode mode;
+	private int levels;
+	private int size;
+
+	public OrderedDevices(final SortMode mode) {
+		this.mode = mode;
+		reset();
+	}
+
+	public SortMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Changes the sort mode and sorts all devices again.
+	 *
+	 * @param mode the new mode.
+	 */
+	public void setMode(final SortMode mode) {
+		if (this.mode == mode)
+			return;
+		this.mode = mode;
+		final Node[] nodes = new Node[size];
+		int i = 0;
+		for (Node x = head.next[0]; x != null; x = x.next[0])
+			nodes[i++] = x;
+		reset();
+		for (final Node node : nodes) {
+			snapshot(node);
+			insert(node);
+		}
+	}
+
+	/**
+	 * Adds the device at the position given by its current key.
+	 *
+	 * @param record the device.
+	 * @return The position of the device.
+	 * @throws IllegalArgumentException if the device is already on a list.
+	 */
+	public int add(final D record) {
+		if (record.orderNode != null)
+			throw new IllegalArgumentException("Device already on the list: "
+					+ Addresses.format(record.getRawAddress()));
+		final Node node = new Node(this, record, randomLevel());
+		record.orderNode = node;
+		snapshot(node);
+		return insert(node);
+	}
+
+	/**
+	 * Removes the device.
+	 *
+	 * @param record the device.
+	 * @return The position the device was at, or -1 if it was not on the list.
+	 */
+	public int remove(final D record) {
+		final Node node = find(record);
+		if (node == null)
+			return -1;
+		record.orderNode = null;
+		node.dirty = false;
+		return delete(node);
+	}
+
+	public boolean contains(final D record) {
+		return find(record) != null;
+	}
+
+	/**
+	 * Returns the position of the device.
+	 *
+	 * @param record the device.
+	 * @return The position, or -1 if the device is not on the list.
+	 */
+	public int indexOf(final D record) {
+		final Node node = find(record);
+		if (node == null)
+			return -1;
+		search(node);
+		return rank[0];
+	}
+
+	/**
+	 * Returns the device at the given position.
+	 *
+	 * @param position the position, from 0.
+	 * @return The device.
+	 * @throws IndexOutOfBoundsException if the position is out of range.
+	 */
+	@SuppressWarnings("unchecked")
+	public D get(final int position) {
+		if (position < 0 || position >= size)
+			throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+		final int target = position + 1;
+		Node x = head;
+		int index = 0;
+		for (int i = levels - 1; i >= 0; --i) {
+			while (x.next[i] != null && index + x.width[i] <= target) {
+				index += x.width[i];
+				x = x.next[i];
+			}
+		}
+		return (D) x.record;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Marks the device as updated, so that its key is checked by the next
+	 * {@link #refresh(ListUpdates)}. Devices not on the list are ignored.
+	 *
+	 * @param record the updated device.
+	 */
+	public void invalidate(final D record) {
+		final Node node = find(record);
+		if (node == null || node.dirty)
+			return;
+		if (dirtyCount == dirty.length)
+			dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+		node.dirty = true;
+		dirty[dirtyCount++] = node;
+	}
+
+	/**
+	 * Moves the invalidated devices whose key has changed to their new positions.
+	 *
+	 * @param updates the log the moves are recorded to.
+	 */
+	public void refresh(final ListUpdates<D> updates) {
+		for (int i = 0; i < dirtyCount; ++i) {
+			final Node node = dirty[i];
+			dirty[i] = null;
+			// The node could have been removed after it was invalidated.
+			if (!node.dirty)
+				continue;
+			node.dirty = false;
+			if (node.key == mode.getKey(node.record)
+					&& (!mode.isByName() || equal(node.name, node.record.getName())))
+				continue;
+			final int from = delete(node);
+			snapshot(node);
+			updates.moved(from, insert(node));
+		}
+		dirtyCount = 0;
+	}
+
+	/**
+	 * Returns a new list of all devices, in order.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<D> toList() {
+		final List<D> list = new ArrayList<>(size);
+		for (Node x = head.next[0]; x != null; x = x.next[0])
+			list.add((D) x.record);
+		return list;
+	}
+
+	/**
+	 * Removes all devices.
+	 */
+	public void clear() {
+		for (Node x = head.next[0]; x != null; x = x.next[0])
+			x.record.orderNode = null;
+		Arrays.fill(dirty, 0, dirtyCount, null);
+		dirtyCount = 0;
+		reset();
+	}
+
+	private Node find(final D record) {
+		final Node node = record.orderNode;
+		return node != null && node.list == this ? node : null;
+	}
+
+	private void reset() {
+		Arrays.fill(head.next, null);
+		Arrays.fill(head.width, 1);
+		levels = 1;
+		size = 0;
+	}
+
+	private void snapshot(final Node node) {
+		node.key = mode.getKey(node.record);
+		node.name = mode.isByName() ? node.record.getName() : null;
+	}
+
+	/**
+	 * Fills {@link #update} and {@link #rank} with the last nodes before the given one.
+	 * After the search, the position of the node (0-based) is rank[0].
+	 */
+	private void search(final Node node) {
+		Node x = head;
+		int index = 0;
+		for (int i = levels - 1; i >= 0; --i) {
+			while (x.next[i] != null && compare(x.next[i], node) < 0) {
+				index += x.width[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+			rank[i] = index;
+		}
+	}
+
+	/**
+	 * Inserts the node at the position of its key. Positions are 1-based with the head at 0
+	 * and the end of the list at size + 1, and the width of a link is the difference
+	 * of the positions of its ends.
+	 *
+	 * @return The position of the node, from 0.
+	 */
+	private int insert(final Node node) {
+		search(node);
+		final int level = node.next.length;
+		if (level > levels) {
+			for (int i = levels; i < level; ++i) {
+				update[i] = head;
+				rank[i] = 0;
+				head.width[i] = size + 1;
+			}
+			levels = level;
+		}
+		final int position = rank[0] + 1;
+		for (int i = 0; i < level; ++i) {
+			final Node prev = update[i];
+			// The next node moves one position further.
+			final int nextPosition = rank[i] + prev.width[i] + 1;
+			node.next[i] = prev.next[i];
+			prev.next[i] = node;
+			node.width[i] = nextPosition - position;
+			prev.width[i] = position - rank[i];
+		}
+		for (int i = level; i < levels; ++i)
+			update[i].width[i]++;
+		size++;
+		return position - 1;
+	}
+
+	/**
+	 * Removes the node, which must be on the list.
+	 *
+	 * @return The position the node was at, from 0.
+	 */
+	private int delete(final Node node) {
+		search(node);
+		final int position = rank[0];
+		for (int i = 0; i < levels; ++i) {
+			final Node prev = update[i];
+			if (prev.next[i] == node) {
+				prev.width[i] += node.width[i] - 1;
+				prev.next[i] = node.next[i];
+			} else {
+				prev.width[i]--;
+			}
+		}
+		while (levels > 1 && head.next[levels - 1] == null)
+			levels--;
+		size--;
+		return position;
+	}
+
+	private int compare(final Node a, final Node b) {
+		int result = Long.compare(a.key, b.key);
+		if (result == 0 && mode.isByName())
+			result = compareNames(a.name, b.name);
+		if (result == 0)
+			result = Integer.compare(a.record.getDiscoveryIndex(), b.record.getDiscoveryIndex());
+		return result;
+	}
+
+	private int randomLevel() {
+		int level = 1;
+		// Each level has a quarter of the nodes of the level below.
+		while (level < MAX_LEVEL && (random.nextInt() & 3) == 0)
+			level++;
+		return level;
+	}
+
+	private static int compareNames(final String a, final String b) {
+		if (a == null)
+			return b == null ? 0 : 1;
+		if (b == null)
+			return -1;
+		return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+	}
+
+	private static boolean equal(final String a, final String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * An immutable vector with structural sharing: a trie of 32-slot arrays, so getting an element
+ * takes at most 7 steps and a changed version shares all arrays but the ones on the path to
+ * the changed elements with the previous one.
+ * <p>
+ * Changed versions are made with an {@link Editor}. An editor copies each array at most once
+ * and then modifies its copy in place, until {@link Editor#publish()} freezes all its copies.
+ * Changing k elements of a vector of n elements therefore copies O(k log n) slots, and
+ * the vectors already published never change, so they may be read by any thread without locks.
+ *
+ * @param <T> the type of elements.
+ */
+public final class PersistentVector<T> {
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final PersistentVector<Object> EMPTY = new PersistentVector<>(0, 0, new Node(null));
+
+	private static final class Node {
+		/** The editor that may modify this node in place, or null. */
+		private final Object edit;
+		private final Object[] array;
+
+		private Node(final Object edit) {
+			this.edit = edit;
+			this.array = new Object[WIDTH];
+		}
+
+		private Node(final Object edit, final Node node) {
+			this.edit = edit;
+			this.array = node.array.clone();
+		}
+	}
+
+	private final int size;
+	/** The number of bits of the index above the leaves, 0 when the root is a leaf. */
+	private final int shift;
+	private final Node root;
+
+	private PersistentVector(final int size, final int shift, final Node root) {
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> PersistentVector<T> empty() {
+		return (PersistentVector<T>) EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the element at the given index.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		Node node = root;
+		for (int level = shift; level > 0; level -= BITS)
+			node = (Node) node.array[(index >>> level) & MASK];
+		return (T) node.array[index & MASK];
+	}
+
+	/**
+	 * Returns an editor starting from this vector.
+	 */
+	public Editor<T> edit() {
+		return new Editor<>(this);
+	}
+
+	/**
+	 * Makes changed versions of a vector. An editor may be reused after publishing, and
+	 * should be used by one thread at a time.
+	 *
+	 * @param <T> the type of elements.
+	 */
+	public static final class Editor<T> {
+		private Object edit = new Object();
+		private int size;
+		private int shift;
+		private Node root;
+		private PersistentVector<T> published;
+
+		private Editor(final PersistentVector<T> vector) {
+			reset(vector);
+		}
+
+		/**
+		 * Discards the changes and starts from the given vector.
+		 */
+		public void reset(final PersistentVector<T> vector) {
+			edit = new Object();
+			size = vector.size;
+			shift = vector.shift;
+			root = vector.root;
+			published = vector;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Replaces the element at the given index.
+		 *
+		 * @throws IndexOutOfBoundsException if the index is out of range.
+		 */
+		public void set(final int index, final T value) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+			store(index, value);
+		}
+
+		/**
+		 * Adds an element at the end.
+		 */
+		public void append(final T value) {
+			if (size == 1 << (shift + BITS)) {
+				// The trie is full, add a level.
+				final Node newRoot = new Node(edit);
+				newRoot.array[0] = root;
+				root = newRoot;
+				shift += BITS;
+			}
+			size++;
+			store(size - 1, value);
+		}
+
+		/**
+		 * Returns the vector with all changes made so far. Later changes copy the arrays again,
+		 * so the returned vector never changes.
+		 */
+		public PersistentVector<T> publish() {
+			if (published == null) {
+				published = new PersistentVector<>(size, shift, root);
+				edit = new Object();
+			}
+			return published;
+		}
+
+		private void store(final int index, final T value) {
+			published = null;
+			Node node = root = editable(root);
+			for (int level = shift; level > 0; level -= BITS) {
+				final int i = (index >>> level) & MASK;
+				final Node child = (Node) node.array[i];
+				node = (Node) (node.array[i] = child != null ? editable(child) : new Node(edit));
+			}
+			node.array[index & MASK] = value;
+		}
+
+		private Node editable(final Node node) {
+			return node.edit == edit ? node : new Node(edit, node);
+		}
+	}
+}
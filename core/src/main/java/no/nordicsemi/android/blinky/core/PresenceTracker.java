@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+
+/**
+ * Computes enter and exit events of devices from sparse scan result deliveries, for example
+ * batches of results delivered to a PendingIntent every few tens of seconds. A device enters
+ * when it is seen while absent, and exits when it has not been seen for the exit timeout.
+ * As nothing is delivered when no device is in range, exits must also be checked when
+ * the timeout expires, see {@link #getNextExitTime()}.
+ * <p>
+ * Results of a batch may be delivered long after they were received and out of order,
+ * so time is taken from their timestamps and a sighting older than the last known one
+ * is ignored. The exit timeout must therefore be longer than the report delay of the scan,
+ * otherwise devices would exit and enter again between batches.
+ * <p>
+ * The state is kept in arrays indexed by a {@link LongIntMap}, so that sightings of known
+ * devices do not allocate. This class is not thread safe.
+ */
+public final class PresenceTracker {
+
+	/**
+	 * The listener of presence changes.
+	 */
+	public interface Listener {
+		/**
+		 * Called when a device is seen while absent.
+		 *
+		 * @param address the device address, see {@link Addresses#parse(String)}.
+		 * @param time    the timestamp of the sighting.
+		 */
+		void onEnter(final long address, final long time);
+
+		/**
+		 * Called when a device has not been seen for the exit timeout.
+		 *
+		 * @param address  the device address.
+		 * @param lastSeen the timestamp of the last sighting.
+		 */
+		void onExit(final long address, final long lastSeen);
+	}
+
+	private final LongIntMap slotsByAddress = new LongIntMap(16);
+	private final long exitTimeout;
+	private long[] addresses = new long[8];
+	private long[] lastSeen = new long[8];
+	private boolean[] present = new boolean[8];
+	private int size;
+	private int presentCount;
+
+	/**
+	 * Creates the tracker.
+	 *
+	 * @param exitTimeout the time after the last sighting when a device exits,
+	 *                    in the unit of the timestamps.
+	 */
+	public PresenceTracker(final long exitTimeout) {
+		if (exitTimeout <= 0)
+			throw new IllegalArgumentException("Invalid exit timeout: " + exitTimeout);
+		this.exitTimeout = exitTimeout;
+	}
+
+	public long getExitTimeout() {
+		return exitTimeout;
+	}
+
+	/**
+	 * Restores a present device, for example when the process was started to handle
+	 * a delivery. No event is reported.
+	 *
+	 * @param address  the device address.
+	 * @param lastSeen the timestamp of the last sighting.
+	 */
+	public void restore(final long address, final long lastSeen) {
+		final int slot = slot(address);
+		this.lastSeen[slot] = Math.max(this.lastSeen[slot], lastSeen);
+		if (!present[slot]) {
+			present[slot] = true;
+			presentCount++;
+		}
+	}
+
+	/**
+	 * Records a sighting of the device, reporting it as entered if it was absent.
+	 *
+	 * @param address  the device address.
+	 * @param time     the timestamp of the sighting.
+	 * @param listener the listener to report the change to.
+	 */
+	public void onSighting(final long address, final long time, final Listener listener) {
+		final int slot = slot(address);
+		if (time <= lastSeen[slot])
+			return;
+		lastSeen[slot] = time;
+		if (!present[slot]) {
+			present[slot] = true;
+			presentCount++;
+			listener.onEnter(address, time);
+		}
+	}
+
+	/**
+	 * Reports devices not seen for the exit timeout as exited. This should be called after
+	 * each delivery and when the time returned by {@link #getNextExitTime()} has passed.
+	 *
+	 * @param now      the current time, in the unit of the timestamps.
+	 * @param listener the listener to report the changes to.
+	 */
+	public void checkExits(final long now, final Listener listener) {
+		for (int i = 0; i < size && presentCount > 0; ++i) {
+			if (present[i] && now - lastSeen[i] >= exitTimeout) {
+				present[i] = false;
+				presentCount--;
+				listener.onExit(addresses[i], lastSeen[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the time when the first present device exits, unless seen again,
+	 * or {@link Long#MAX_VALUE} if no device is present.
+	 */
+	public long getNextExitTime() {
+		long next = Long.MAX_VALUE;
+		for (int i = 0; i < size; ++i) {
+			if (present[i])
+				next = Math.min(next, lastSeen[i] + exitTimeout);
+		}
+		return next;
+	}
+
+	public boolean isPresent(final long address) {
+		final int slot = slotsByAddress.get(address);
+		return slot >= 0 && present[slot];
+	}
+
+	/**
+	 * Returns the timestamp of the last sighting of the device, or 0 if it was never seen.
+	 */
+	public long getLastSeen(final long address) {
+		final int slot = slotsByAddress.get(address);
+		return slot >= 0 ? lastSeen[slot] : 0;
+	}
+
+	public int getPresentCount() {
+		return presentCount;
+	}
+
+	/**
+	 * Returns the addresses of the present devices.
+	 */
+	public long[] getPresent() {
+		final long[] result = new long[presentCount];
+		for (int i = 0, j = 0; i < size; ++i) {
+			if (present[i])
+				result[j++] = addresses[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets all devices without reporting them as exited.
+	 */
+	public void clear() {
+		slotsByAddress.clear();
+		Arrays.fill(present, false);
+		Arrays.fill(lastSeen, 0);
+		size = 0;
+		presentCount = 0;
+	}
+
+	private int slot(final long address) {
+		int slot = slotsByAddress.get(address);
+		if (slot >= 0)
+			return slot;
+		if (size == addresses.length) {
+			addresses = Arrays.copyOf(addresses, size * 2);
+			lastSeen = Arrays.copyOf(lastSeen, size * 2);
+			present = Arrays.copyOf(present, size * 2);
+		}
+		slot = size++;
+		addresses[slot] = address;
+		slotsByAddress.put(address, slot);
+		return slot;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+
+/**
+ * A token bucket per device address limiting how many advertisements of a device are fully
+ * ingested. A device misconfigured to advertise at the minimum interval would otherwise
+ * dominate the scan callback and the list updates. Advertisements over the limit should
+ * only be sampled, see {@link DeviceRecord#sample(int, long)}.
+ * <p>
+ * Each bucket holds up to the burst size of tokens and is refilled with the given rate.
+ * Boosted devices, for example the ones shown to the user, get both multiplied by the boost
+ * factor. A batch of advertisements ingested at once takes a token for each of them, and may
+ * leave the bucket in debt, so that batching does not raise the limit. Time is taken from the
+ * advertisement timestamps, so the limiter does not read
+ * the clock. The state is kept in arrays indexed by a {@link LongIntMap}, so that acquiring
+ * a token does not allocate.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class RateLimiter {
+	private static final float NANOS_PER_SECOND = 1_000_000_000f;
+
+	private final LongIntMap slotsByAddress = new LongIntMap(64);
+	private float[] tokens = new float[16];
+	private long[] lastRefill = new long[16];
+	private long[] dropped = new long[16];
+	private int size;
+	private long totalDropped;
+
+	private float rate;
+	private float burst;
+	private float boost;
+
+	/**
+	 * Creates the limiter.
+	 *
+	 * @param rate  the number of advertisements per second ingested from a device,
+	 *              0 to disable the limiter.
+	 * @param burst the number of advertisements ingested at once before the rate applies.
+	 * @param boost the factor the rate and burst are multiplied by for boosted devices.
+	 */
+	public RateLimiter(final float rate, final float burst, final float boost) {
+		setLimits(rate, burst, boost);
+	}
+
+	/**
+	 * Changes the limits. Current buckets are kept and will be refilled with the new rate.
+	 *
+	 * @see #RateLimiter(float, float, float)
+	 */
+	public void setLimits(final float rate, final float burst, final float boost) {
+		if (rate < 0 || burst < 1 || boost < 1)
+			throw new IllegalArgumentException("Invalid limits: rate " + rate
+					+ ", burst " + burst + ", boost " + boost);
+		this.rate = rate;
+		this.burst = burst;
+		this.boost = boost;
+	}
+
+	/**
+	 * Returns whether the limiter is enabled, that is the rate is not 0.
+	 */
+	public boolean isEnabled() {
+		return rate > 0;
+	}
+
+	/**
+	 * Takes a token from the bucket of the device. A device seen for the first time starts
+	 * with a full bucket.
+	 *
+	 * @param address        the device address, see {@link Addresses#parse(String)}.
+	 * @param timestampNanos the time the advertisement was received, in nanoseconds.
+	 * @param boosted        true to apply the boosted limits.
+	 * @return True, if the advertisement should be ingested, false if it should only be sampled.
+	 */
+	public boolean tryAcquire(final long address, final long timestampNanos, final boolean boosted) {
+		return tryAcquire(address, timestampNanos, boosted, 1);
+	}
+
+	/**
+	 * Takes tokens for a number of advertisements of the device ingested at once, for example
+	 * all advertisements of the device in a batch. They are ingested if at least one token is
+	 * available, and the tokens missing are taken from the following refills.
+	 *
+	 * @param address        the device address, see {@link Addresses#parse(String)}.
+	 * @param timestampNanos the time the last advertisement was received, in nanoseconds.
+	 * @param boosted        true to apply the boosted limits.
+	 * @param count          the number of advertisements.
+	 * @return True, if the advertisements should be ingested, false if they should only be sampled.
+	 */
+	public boolean tryAcquire(final long address, final long timestampNanos, final boolean boosted,
+							  final int count) {
+		if (rate <= 0)
+			return true;
+
+		final float capacity = boosted ? burst * boost : burst;
+		int slot = slotsByAddress.get(address);
+		if (slot < 0) {
+			slot = newSlot(address);
+			tokens[slot] = capacity;
+			lastRefill[slot] = timestampNanos;
+		}
+
+		float available = tokens[slot];
+		// Batched results may be reported out of order, time never goes back.
+		final long elapsed = timestampNanos - lastRefill[slot];
+		if (elapsed > 0) {
+			available += elapsed * (boosted ? rate * boost : rate) / NANOS_PER_SECOND;
+			lastRefill[slot] = timestampNanos;
+		}
+		if (available > capacity)
+			available = capacity;
+
+		if (available >= 1) {
+			tokens[slot] = available - count;
+			return true;
+		}
+		tokens[slot] = available;
+		dropped[slot] += count;
+		totalDropped += count;
+		return false;
+	}
+
+	/**
+	 * Returns the number of advertisements of the device that were not ingested.
+	 *
+	 * @param address the device address.
+	 */
+	public long getDropped(final long address) {
+		final int slot = slotsByAddress.get(address);
+		return slot >= 0 ? dropped[slot] : 0;
+	}
+
+	/**
+	 * Returns the number of advertisements of all devices that were not ingested.
+	 */
+	public long getTotalDropped() {
+		return totalDropped;
+	}
+
+	/**
+	 * Removes all buckets and drop counts.
+	 */
+	public void clear() {
+		if (size > 0)
+			slotsByAddress.clear();
+		size = 0;
+		totalDropped = 0;
+	}
+
+	private int newSlot(final long address) {
+		if (size == tokens.length) {
+			final int capacity = size * 2;
+			tokens = Arrays.copyOf(tokens, capacity);
+			lastRefill = Arrays.copyOf(lastRefill, capacity);
+			dropped = Arrays.copyOf(dropped, capacity);
+		}
+		final int slot = size++;
+		slotsByAddress.put(address, slot);
+		dropped[slot] = 0;
+		return slot;
+	}
+}
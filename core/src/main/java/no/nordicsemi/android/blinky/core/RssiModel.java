@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * Keeps track of the signal strength of a single device.
+ * <p>
+ * The raw RSSI of advertisements jitters by several dB between packets. Each sample is
+ * passed through a smoothing filter, by default a scalar Kalman filter, and the smoothed
+ * value should be used wherever the signal strength is compared or shown. The last
+ * {@link #HISTORY_SIZE} raw samples are kept in a ring buffer.
+ * <p>
+ * Updating the model does not allocate.
+ */
+public class RssiModel {
+	/** The lowest value reported by the scanner, also used before the first sample. */
+	public static final int RSSI_UNKNOWN = -128;
+	/** The number of raw samples kept. */
+	public static final int HISTORY_SIZE = 16;
+
+	/** The smoothing filter applied to the raw samples. */
+	public enum Smoothing {
+		/** No smoothing, the smoothed value is the last sample. */
+		NONE,
+		/** Exponential moving average with {@link #EMA_ALPHA} weight of the new sample. */
+		EMA,
+		/** Scalar Kalman filter with constant process and measurement noise. */
+		KALMAN
+	}
+
+	private static final float EMA_ALPHA = 0.2f;
+	/** Variance of the signal change between samples, in dB^2. */
+	private static final float KALMAN_PROCESS_NOISE = 1.0f;
+	/** Variance of the measurement noise, in dB^2. */
+	private static final float KALMAN_MEASUREMENT_NOISE = 16.0f;
+	/** The path loss exponent used for distance estimation, 2 in free space. */
+	private static final float PATH_LOSS_EXPONENT = 2.0f;
+	/** The path loss at 1 m for 2.4 GHz, in dB. */
+	private static final float PATH_LOSS_AT_1M = 41.0f;
+
+	private final Smoothing smoothing;
+	private final byte[] history = new byte[HISTORY_SIZE];
+	private int samples;
+	private int rssi;
+	private int previousRssi;
+	private int highestRssi = RSSI_UNKNOWN;
+	private float smoothed = RSSI_UNKNOWN;
+	private float variance;
+	private boolean above;
+
+	public RssiModel() {
+		this(Smoothing.KALMAN);
+	}
+
+	public RssiModel(final Smoothing smoothing) {
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Restores a model from saved values. The history is not restored.
+	 */
+	public RssiModel(final int rssi, final int previousRssi, final int highestRssi,
+					 final float smoothedRssi) {
+		this(Smoothing.KALMAN);
+		this.rssi = rssi;
+		this.previousRssi = previousRssi;
+		this.highestRssi = highestRssi;
+		this.smoothed = smoothedRssi;
+		this.variance = KALMAN_MEASUREMENT_NOISE;
+	}
+
+	/**
+	 * Adds a new sample.
+	 *
+	 * @param rssi the received signal strength, in dBm.
+	 */
+	public void update(final int rssi) {
+		previousRssi = this.rssi;
+		this.rssi = rssi;
+		if (highestRssi < rssi)
+			highestRssi = rssi;
+		history[samples++ % HISTORY_SIZE] = (byte) rssi;
+		// Avoid overflow, keeping the position in the ring buffer.
+		if (samples == 2 * HISTORY_SIZE)
+			samples = HISTORY_SIZE;
+
+		if (smoothed == RSSI_UNKNOWN || smoothing == Smoothing.NONE) {
+			smoothed = rssi;
+			variance = KALMAN_MEASUREMENT_NOISE;
+			return;
+		}
+		switch (smoothing) {
+			case EMA:
+				smoothed += EMA_ALPHA * (rssi - smoothed);
+				break;
+			case KALMAN: {
+				variance += KALMAN_PROCESS_NOISE;
+				final float gain = variance / (variance + KALMAN_MEASUREMENT_NOISE);
+				smoothed += gain * (rssi - smoothed);
+				variance *= 1 - gain;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the last received signal strength, in dBm.
+	 */
+	public int getRssi() {
+		return rssi;
+	}
+
+	/**
+	 * Returns the signal strength received before the last one, in dBm.
+	 */
+	public int getPreviousRssi() {
+		return previousRssi;
+	}
+
+	/**
+	 * Returns the highest recorded signal strength, in dBm.
+	 */
+	public int getHighestRssi() {
+		return highestRssi;
+	}
+
+	/**
+	 * Returns the smoothed signal strength, in dBm, or {@link #RSSI_UNKNOWN} before the
+	 * first sample.
+	 */
+	public float getSmoothedRssi() {
+		return smoothed;
+	}
+
+	/**
+	 * Returns the number of raw samples in the history, up to {@link #HISTORY_SIZE}.
+	 */
+	public int getHistorySize() {
+		return Math.min(samples, HISTORY_SIZE);
+	}
+
+	/**
+	 * Copies the raw samples in the history to the given array, oldest first.
+	 *
+	 * @param out the array, at least {@link #getHistorySize()} long.
+	 * @return The number of samples copied.
+	 */
+	public int getHistory(final int[] out) {
+		final int size = getHistorySize();
+		for (int i = 0; i < size; ++i)
+			out[i] = history[(samples - size + i) % HISTORY_SIZE];
+		return size;
+	}
+
+	/**
+	 * Returns the standard deviation of the raw samples in the history, in dB.
+	 */
+	public float getJitter() {
+		final int size = getHistorySize();
+		if (size < 2)
+			return 0;
+		float sum = 0, sumOfSquares = 0;
+		for (int i = 0; i < size; ++i) {
+			sum += history[i];
+			sumOfSquares += history[i] * history[i];
+		}
+		final float mean = sum / size;
+		return (float) Math.sqrt(Math.max(0, sumOfSquares / size - mean * mean));
+	}
+
+	/**
+	 * Returns whether the smoothed signal is above a threshold, with hysteresis.
+	 * The result becomes true when the signal reaches the upper threshold and false when it
+	 * drops below the lower one. In between, the last result is returned, so that a device
+	 * on the edge does not flicker.
+	 *
+	 * @param upper the threshold to become true, in dBm.
+	 * @param lower the threshold to become false, in dBm, not higher than the upper one.
+	 * @return True, if the signal is above the threshold.
+	 */
+	public boolean isAbove(final int upper, final int lower) {
+		if (smoothed >= upper)
+			above = true;
+		else if (smoothed < lower)
+			above = false;
+		return above;
+	}
+
+	/**
+	 * Estimates the distance to the device from the smoothed signal using the log-distance
+	 * path loss model. The estimate is rough, as it assumes free space and an isotropic antenna.
+	 *
+	 * @param txPower the TX Power Level advertised by the device, in dBm.
+	 * @return The estimated distance in meters, or NaN before the first sample.
+	 */
+	public float estimateDistance(final int txPower) {
+		if (smoothed == RSSI_UNKNOWN)
+			return Float.NaN;
+		final float pathLoss = txPower - smoothed;
+		return (float) Math.pow(10, (pathLoss - PATH_LOSS_AT_1M) / (10 * PATH_LOSS_EXPONENT));
+	}
+
+	/**
+	 * Returns the signal level of the smoothed value, from 0 to 4. See {@link #getLevel(int)}.
+	 */
+	public int getLevel() {
+		return getLevel(getSignalPercent(smoothed));
+	}
+
+	/**
+	 * Returns the signal strength in percent, as shown by the signal bar drawable,
+	 * where -127 dBm is 0% and -20 dBm is 100%.
+	 *
+	 * @param rssi the signal strength, in dBm.
+	 * @return The signal strength in percent.
+	 */
+	public static int getSignalPercent(final float rssi) {
+		return (int) (100.0f * (127.0f + rssi) / (127.0f + 20.0f));
+	}
+
+	/**
+	 * Returns the range of the given value, from 0 to 4, as used by the signal bar drawable.
+	 *
+	 * @param percent the signal strength in percent, see {@link #getSignalPercent(float)}.
+	 * @return The range.
+	 */
+	public static int getLevel(final int percent) {
+		return percent <= 10 ? 0 : percent <= 28 ? 1 : percent <= 45 ? 2 : percent <= 65 ? 3 : 4;
+	}
+}
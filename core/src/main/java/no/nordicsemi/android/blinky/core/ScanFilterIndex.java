@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An index of the filters of the subscribers of a shared scan, used to find the subscribers
+ * matching a scan result without checking each subscriber's filter.
+ * <p>
+ * Each subscriber takes one of {@link #MAX_SUBSCRIBERS} slots and the matching subscribers
+ * are returned as a bit mask of slots. A subscriber matches a result advertised by any of its
+ * addresses or advertising any of its service UUIDs, or every result if it has neither.
+ * The index also gives the union of all filters, to be set on the hardware scanner.
+ * <p>
+ * Matching does not allocate. Adding and removing subscribers rebuilds the index.
+ */
+public final class ScanFilterIndex {
+	public static final int MAX_SUBSCRIBERS = 64;
+	private static final long[] NO_ADDRESSES = new long[0];
+	private static final UUID[] NO_UUIDS = new UUID[0];
+
+	private final long[][] addresses = new long[MAX_SUBSCRIBERS][];
+	private final UUID[][] serviceUuids = new UUID[MAX_SUBSCRIBERS][];
+	/** The slots in use. */
+	private long slots;
+	/** The slots of subscribers without filters. */
+	private long matchAll;
+	/** Indexes of the masks of addresses in {@link #addressMasks}. */
+	private final LongIntMap addressIndex = new LongIntMap(16);
+	private long[] addressMasks = new long[16];
+	private final Map<UUID, Long> uuidMasks = new HashMap<>();
+
+	/**
+	 * Adds a subscriber.
+	 *
+	 * @param addresses    the addresses, see {@link Addresses#parse(String)}, or null.
+	 * @param serviceUuids the service UUIDs, or null.
+	 * @return The slot of the subscriber.
+	 * @throws IllegalStateException if all slots are taken.
+	 */
+	public int add(final long[] addresses, final UUID[] serviceUuids) {
+		if (slots == -1L)
+			throw new IllegalStateException("Too many subscribers, the limit is " + MAX_SUBSCRIBERS);
+		final int slot = Long.numberOfTrailingZeros(~slots);
+		slots |= 1L << slot;
+		this.addresses[slot] = addresses != null ? addresses.clone() : NO_ADDRESSES;
+		this.serviceUuids[slot] = serviceUuids != null ? serviceUuids.clone() : NO_UUIDS;
+		rebuild();
+		return slot;
+	}
+
+	/**
+	 * Removes the subscriber in the given slot, which may be reused.
+	 */
+	public void remove(final int slot) {
+		slots &= ~(1L << slot);
+		addresses[slot] = null;
+		serviceUuids[slot] = null;
+		rebuild();
+	}
+
+	public boolean isEmpty() {
+		return slots == 0;
+	}
+
+	/**
+	 * Returns the number of subscribers.
+	 */
+	public int size() {
+		return Long.bitCount(slots);
+	}
+
+	/**
+	 * Returns true if any subscriber has no filters, in which case the hardware scanner must
+	 * not filter either.
+	 */
+	public boolean matchesAll() {
+		return matchAll != 0;
+	}
+
+	/**
+	 * Returns all addresses of all subscribers, without duplicates.
+	 */
+	public List<Long> getAddresses() {
+		final Set<Long> union = new LinkedHashSet<>();
+		for (long s = slots; s != 0; s &= s - 1) {
+			for (final long address : addresses[Long.numberOfTrailingZeros(s)])
+				union.add(address);
+		}
+		return new ArrayList<>(union);
+	}
+
+	/**
+	 * Returns all service UUIDs of all subscribers, without duplicates.
+	 */
+	public List<UUID> getServiceUuids() {
+		final Set<UUID> union = new LinkedHashSet<>();
+		for (long s = slots; s != 0; s &= s - 1)
+			union.addAll(Arrays.asList(serviceUuids[Long.numberOfTrailingZeros(s)]));
+		return new ArrayList<>(union);
+	}
+
+	/**
+	 * Returns the slots of subscribers matching the address, including those without filters.
+	 */
+	public long matchAddress(final long address) {
+		final int index = addressIndex.get(address);
+		return index < 0 ? matchAll : matchAll | addressMasks[index];
+	}
+
+	/**
+	 * Returns the slots of subscribers matching the service UUID.
+	 */
+	public long matchServiceUuid(final UUID uuid) {
+		final Long mask = uuidMasks.get(uuid);
+		return mask != null ? mask : 0;
+	}
+
+	private void rebuild() {
+		matchAll = 0;
+		addressIndex.clear();
+		uuidMasks.clear();
+		int count = 0;
+		for (long s = slots; s != 0; s &= s - 1) {
+			final int slot = Long.numberOfTrailingZeros(s);
+			final long bit = 1L << slot;
+			if (addresses[slot].length == 0 && serviceUuids[slot].length == 0)
+				matchAll |= bit;
+			for (final long address : addresses[slot]) {
+				int index = addressIndex.get(address);
+				if (index < 0) {
+					index = count++;
+					if (index == addressMasks.length)
+						addressMasks = Arrays.copyOf(addressMasks, index * 2);
+					addressMasks[index] = 0;
+					addressIndex.put(address, index);
+				}
+				addressMasks[index] |= bit;
+			}
+			for (final UUID uuid : serviceUuids[slot]) {
+				final Long mask = uuidMasks.get(uuid);
+				uuidMasks.put(uuid, mask != null ? mask | bit : bit);
+			}
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * An incremental n-gram index of device names and addresses, used to find devices as the user
+ * types. Every substring of 1 to 3 characters of the name and of the address without
+ * separators, in lower case, is a gram, and each gram keeps the list of devices containing it.
+ * Names are kept as given and compared ignoring case, so reindexing a changed name
+ * does not allocate a lower case copy.
+ * <p>
+ * A query is looked up by its grams: only the devices on the shortest list of the grams
+ * are checked whether they contain the query, so a keystroke does not scan all devices.
+ * The devices which started or stopped matching with the new query are reported, so that
+ * {@link DeviceRegistry#applySearch()} updates the list without checking all devices either.
+ * The address is matched without separators, so "C3:4F" and "c34f" find the same device.
+ * <p>
+ * Devices are identified by their {@link DeviceRecord#getDiscoveryIndex() discovery index},
+ * so the index should be cleared together with the {@link DeviceRegistry}.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class SearchIndex {
+	/** Returned by {@link #getChangedCount()} when the match of any device may have changed. */
+	public static final int ALL_CHANGED = -1;
+
+	private static final int MAX_GRAM = 3;
+
+	private final LongIntMap postingsByGram = new LongIntMap(256);
+	private int[][] postings = new int[64][];
+	private int[] postingSizes = new int[64];
+	private int postingCount;
+
+	/** The indexed names and lower case addresses without separators, by device. */
+	private String[] names = new String[64];
+	private String[] addresses = new String[64];
+	private boolean[] indexed = new boolean[64];
+	/** Grams of a device, reused while indexing. */
+	private long[] grams = new long[64];
+
+	private String query = "";
+	private String addressQuery = "";
+	private boolean[] matches = new boolean[64];
+	private int[] matchIds = new int[16];
+	private int matchCount;
+	/** The matches of the previous query, used while the query is being changed. */
+	private boolean[] previousMatches = new boolean[64];
+	private int[] previousIds = new int[16];
+	/** Devices which started or stopped matching with the last query. */
+	private int[] changedIds = new int[16];
+	private int changedCount;
+
+	/**
+	 * Adds a newly discovered device.
+	 *
+	 * @param record the device.
+	 */
+	public void add(final DeviceRecord record) {
+		final int id = record.getDiscoveryIndex();
+		ensureDeviceCapacity(id + 1);
+		addresses[id] = normalizeAddress(Addresses.format(record.getRawAddress()));
+		names[id] = record.getName();
+		indexed[id] = true;
+		index(id, 1);
+		if (isActive())
+			setMatch(id, verify(id));
+	}
+
+	/**
+	 * Indexes the device again if its name has changed. This should be called when the
+	 * advertising data of the device have changed.
+	 *
+	 * @param record the updated device.
+	 */
+	public void update(final DeviceRecord record) {
+		final int id = record.getDiscoveryIndex();
+		if (id >= indexed.length || !indexed[id]) {
+			add(record);
+			return;
+		}
+		final String name = record.getName();
+		if (name == null ? names[id] == null : name.equals(names[id]))
+			return;
+		index(id, -1);
+		names[id] = name;
+		index(id, 1);
+		if (isActive())
+			setMatch(id, verify(id));
+	}
+
+	/**
+	 * Sets the query. Devices whose name or address contain the query match it.
+	 *
+	 * @param query the text typed by the user, empty or null to match all devices.
+	 */
+	public void setQuery(final String query) {
+		final String normalized = query != null ? query.trim().toLowerCase(Locale.US) : "";
+		changedCount = 0;
+		if (normalized.equals(this.query))
+			return;
+
+		final boolean wasActive = isActive();
+		final int previousCount = matchCount;
+		if (previousIds.length < previousCount)
+			previousIds = new int[matchIds.length];
+		for (int i = 0; i < previousCount; ++i) {
+			final int id = matchIds[i];
+			previousIds[i] = id;
+			previousMatches[id] = true;
+			matches[id] = false;
+		}
+		matchCount = 0;
+		this.query = normalized;
+		this.addressQuery = normalizeAddress(normalized);
+		if (isActive()) {
+			checkCandidates(normalized);
+			if (!addressQuery.equals(normalized) && !addressQuery.isEmpty())
+				checkCandidates(addressQuery);
+		}
+
+		if (wasActive != isActive()) {
+			// All devices matched without a query.
+			changedCount = ALL_CHANGED;
+		} else {
+			for (int i = 0; i < previousCount; ++i) {
+				if (!matches[previousIds[i]])
+					addChanged(previousIds[i]);
+			}
+			for (int i = 0; i < matchCount; ++i) {
+				if (!previousMatches[matchIds[i]])
+					addChanged(matchIds[i]);
+			}
+		}
+		for (int i = 0; i < previousCount; ++i)
+			previousMatches[previousIds[i]] = false;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns whether a query is set.
+	 */
+	public boolean isActive() {
+		return !query.isEmpty();
+	}
+
+	/**
+	 * Returns whether the device matches the query. All devices match when no query is set.
+	 *
+	 * @param record the device.
+	 * @return True, if the device matches.
+	 */
+	public boolean matches(final DeviceRecord record) {
+		if (!isActive())
+			return true;
+		final int id = record.getDiscoveryIndex();
+		return id < matches.length && matches[id];
+	}
+
+	/**
+	 * Returns the number of devices matching the query.
+	 */
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	/**
+	 * Returns the number of devices which started or stopped matching with the last
+	 * {@link #setQuery(String)}, or {@link #ALL_CHANGED} if the query was set or cleared.
+	 * Devices added or updated since are not included.
+	 */
+	public int getChangedCount() {
+		return changedCount;
+	}
+
+	/**
+	 * Returns the {@link DeviceRecord#getDiscoveryIndex() discovery index} of a device which
+	 * started or stopped matching with the last query.
+	 *
+	 * @param i the position, lower than {@link #getChangedCount()}.
+	 * @return The discovery index.
+	 */
+	public int getChanged(final int i) {
+		return changedIds[i];
+	}
+
+	/**
+	 * Removes all devices. The query is kept.
+	 */
+	public void clear() {
+		if (postingCount > 0)
+			postingsByGram.clear();
+		postingCount = 0;
+		Arrays.fill(names, null);
+		Arrays.fill(addresses, null);
+		Arrays.fill(indexed, false);
+		for (int i = 0; i < matchCount; ++i)
+			matches[matchIds[i]] = false;
+		matchCount = 0;
+		changedCount = 0;
+	}
+
+	/**
+	 * Checks the devices on the shortest posting list of the grams of the text.
+	 */
+	private void checkCandidates(final String text) {
+		int shortest = -1;
+		final int n = Math.min(MAX_GRAM, text.length());
+		for (int i = 0; i + n <= text.length(); ++i) {
+			final int posting = postingsByGram.get(gram(text, i, n));
+			if (posting < 0 || postingSizes[posting] == 0)
+				return; // No device contains this gram.
+			if (shortest < 0 || postingSizes[posting] < postingSizes[shortest])
+				shortest = posting;
+		}
+		if (shortest < 0)
+			return;
+		final int[] ids = postings[shortest];
+		for (int i = 0, size = postingSizes[shortest]; i < size; ++i) {
+			final int id = ids[i];
+			if (!matches[id] && verify(id))
+				setMatch(id, true);
+		}
+	}
+
+	private boolean verify(final int id) {
+		return (names[id] != null && containsIgnoreCase(names[id], query))
+				|| (!addressQuery.isEmpty() && addresses[id].contains(addressQuery));
+	}
+
+	private void addChanged(final int id) {
+		if (changedCount == changedIds.length)
+			changedIds = Arrays.copyOf(changedIds, changedCount * 2);
+		changedIds[changedCount++] = id;
+	}
+
+	private void setMatch(final int id, final boolean match) {
+		if (matches[id] == match)
+			return;
+		matches[id] = match;
+		if (match) {
+			if (matchCount == matchIds.length)
+				matchIds = Arrays.copyOf(matchIds, matchCount * 2);
+			matchIds[matchCount++] = id;
+		} else {
+			for (int i = 0; i < matchCount; ++i) {
+				if (matchIds[i] == id) {
+					matchIds[i] = matchIds[--matchCount];
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the device to, or removes it from, the posting lists of all grams of its
+	 * name and address.
+	 *
+	 * @param id    the device.
+	 * @param delta 1 to add, -1 to remove.
+	 */
+	private void index(final int id, final int delta) {
+		int count = collectGrams(names[id], 0);
+		count = collectGrams(addresses[id], count);
+		Arrays.sort(grams, 0, count);
+		for (int i = 0; i < count; ++i) {
+			if (i > 0 && grams[i] == grams[i - 1])
+				continue;
+			if (delta > 0)
+				addPosting(grams[i], id);
+			else
+				removePosting(grams[i], id);
+		}
+	}
+
+	private int collectGrams(final String text, int count) {
+		if (text == null)
+			return count;
+		for (int n = 1; n <= MAX_GRAM; ++n) {
+			for (int i = 0; i + n <= text.length(); ++i) {
+				if (count == grams.length)
+					grams = Arrays.copyOf(grams, count * 2);
+				grams[count++] = gram(text, i, n);
+			}
+		}
+		return count;
+	}
+
+	private void addPosting(final long gram, final int id) {
+		int posting = postingsByGram.get(gram);
+		if (posting < 0) {
+			if (postingCount == postings.length) {
+				postings = Arrays.copyOf(postings, postingCount * 2);
+				postingSizes = Arrays.copyOf(postingSizes, postingCount * 2);
+			}
+			posting = postingCount++;
+			postings[posting] = new int[4];
+			postingSizes[posting] = 0;
+			postingsByGram.put(gram, posting);
+		}
+		int[] ids = postings[posting];
+		final int size = postingSizes[posting];
+		if (size == ids.length)
+			postings[posting] = ids = Arrays.copyOf(ids, size * 2);
+		ids[size] = id;
+		postingSizes[posting] = size + 1;
+	}
+
+	private void removePosting(final long gram, final int id) {
+		final int posting = postingsByGram.get(gram);
+		if (posting < 0)
+			return;
+		final int[] ids = postings[posting];
+		final int size = postingSizes[posting];
+		for (int i = 0; i < size; ++i) {
+			if (ids[i] == id) {
+				ids[i] = ids[size - 1];
+				postingSizes[posting] = size - 1;
+				return;
+			}
+		}
+	}
+
+	private void ensureDeviceCapacity(final int capacity) {
+		if (capacity <= names.length)
+			return;
+		final int newCapacity = Math.max(capacity, names.length * 2);
+		names = Arrays.copyOf(names, newCapacity);
+		addresses = Arrays.copyOf(addresses, newCapacity);
+		indexed = Arrays.copyOf(indexed, newCapacity);
+		matches = Arrays.copyOf(matches, newCapacity);
+		previousMatches = Arrays.copyOf(previousMatches, newCapacity);
+	}
+
+	/**
+	 * Encodes up to {@link #MAX_GRAM} characters and their number in a long.
+	 */
+	private static long gram(final String text, final int start, final int length) {
+		long gram = length;
+		for (int i = 0; i < length; ++i)
+			gram = (gram << 16) | Character.toLowerCase(text.charAt(start + i));
+		return gram;
+	}
+
+	private static boolean containsIgnoreCase(final String text, final String lowerCaseQuery) {
+		final int length = lowerCaseQuery.length();
+		for (int i = 0; i + length <= text.length(); ++i) {
+			if (text.regionMatches(true, i, lowerCaseQuery, 0, length))
+				return true;
+		}
+		return false;
+	}
+
+	private static String normalizeAddress(final String text) {
+		if (text.indexOf(':') < 0 && text.indexOf('-') < 0)
+			return text.toLowerCase(Locale.US);
+		final StringBuilder builder = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			final char c = text.charAt(i);
+			if (c != ':' && c != '-')
+				builder.append(Character.toLowerCase(c));
+		}
+		return builder.toString();
+	}
+}
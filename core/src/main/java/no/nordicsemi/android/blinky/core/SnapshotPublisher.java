@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import java.util.Arrays;
+
+/**
+ * Publishes {@link DeviceListSnapshot}s of the devices of a registry. The thread updating
+ * the records marks each updated record as {@link #changed(DeviceRecord) changed}, and
+ * {@link #publish()} then takes a {@link DeviceSnapshot} of the changed records only and stores
+ * them in a new version of a {@link PersistentVector}, indexed by the discovery index.
+ * Publishing k changed devices of n costs O(k log n).
+ * <p>
+ * Each record keeps its changed flag, so a record may be published by one publisher only.
+ * This class is not thread safe, the published snapshots are.
+ *
+ * @param <D> the type of device records.
+ */
+public final class SnapshotPublisher<D extends DeviceRecord> {
+	private final PersistentVector.Editor<DeviceSnapshot<D>> editor =
+			PersistentVector.<DeviceSnapshot<D>>empty().edit();
+	private DeviceRecord[] changed = new DeviceRecord[64];
+	private int changedCount;
+	private DeviceListSnapshot<D> current =
+			new DeviceListSnapshot<>(0, PersistentVector.<DeviceSnapshot<D>>empty());
+
+	/**
+	 * Marks the record as changed since the last published version. A newly discovered device
+	 * must be marked as well.
+	 *
+	 * @param record the new or updated record.
+	 */
+	public void changed(final D record) {
+		if (record.snapshotChanged)
+			return;
+		if (changedCount == changed.length)
+			changed = Arrays.copyOf(changed, changedCount * 2);
+		record.snapshotChanged = true;
+		changed[changedCount++] = record;
+	}
+
+	/**
+	 * Publishes a new version with the current values of the changed records.
+	 *
+	 * @return The new version, or the last one if nothing has changed.
+	 */
+	@SuppressWarnings("unchecked")
+	public DeviceListSnapshot<D> publish() {
+		if (changedCount == 0)
+			return current;
+		for (int i = 0; i < changedCount; ++i) {
+			final D record = (D) changed[i];
+			changed[i] = null;
+			record.snapshotChanged = false;
+			final int index = record.getDiscoveryIndex();
+			while (editor.size() <= index)
+				editor.append(null);
+			editor.set(index, DeviceSnapshot.of(record));
+		}
+		changedCount = 0;
+		current = new DeviceListSnapshot<>(current.getVersion() + 1, editor.publish());
+		return current;
+	}
+
+	/**
+	 * Returns the last published version.
+	 */
+	public DeviceListSnapshot<D> getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Publishes an empty version, after the registry has been cleared.
+	 *
+	 * @return The empty version.
+	 */
+	public DeviceListSnapshot<D> clear() {
+		for (int i = 0; i < changedCount; ++i) {
+			changed[i].snapshotChanged = false;
+			changed[i] = null;
+		}
+		changedCount = 0;
+		editor.reset(PersistentVector.<DeviceSnapshot<D>>empty());
+		current = new DeviceListSnapshot<>(current.getVersion() + 1, editor.publish());
+		return current;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+/**
+ * The order of the device list. Each mode maps a device to a numeric key, smaller keys are
+ * shown first. Devices with equal keys are ordered by name in the {@link #NAME} mode and by
+ * the order of discovery otherwise, so the order is always total and stable.
+ * <p>
+ * Keys are coarse on purpose: the signal is compared with 1 dB resolution and the last seen
+ * time with 1 s resolution, so that rows do not move with every advertisement.
+ */
+public enum SortMode {
+	/** The order in which the devices were discovered. */
+	DISCOVERY,
+	/** The strongest smoothed signal first. */
+	SIGNAL,
+	/** By advertised name, devices without a name last. */
+	NAME,
+	/** The most recently seen devices first. */
+	LAST_SEEN,
+	/** The devices connected to most often first. */
+	CONNECTIONS;
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	/**
+	 * Returns the sort key of the device in this mode.
+	 *
+	 * @param record the device.
+	 * @return The key, smaller keys are shown first.
+	 */
+	public long getKey(final DeviceRecord record) {
+		switch (this) {
+			case SIGNAL:
+				return -Math.round(record.getSmoothedRssi());
+			case LAST_SEEN:
+				return -(record.getLastSeen() / NANOS_PER_SECOND);
+			case CONNECTIONS:
+				return -record.getConnectionCount();
+			case NAME:
+				return 0;
+			case DISCOVERY:
+			default:
+				return record.getDiscoveryIndex();
+		}
+	}
+
+	/**
+	 * Returns whether devices with equal keys are ordered by name.
+	 */
+	public boolean isByName() {
+		return this == NAME;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.button;
+
+import no.nordicsemi.android.blinky.core.metrics.Samples;
+import no.nordicsemi.android.blinky.core.metrics.Unit;
+
+/**
+ * A fixed-capacity ring buffer of Button state changes.
+ * <p>
+ * Events are kept in primitive arrays, so recording does not allocate. When the buffer is
+ * full, the oldest events are overwritten. Each event has a sequence number, counted from 0
+ * since the log was created, which allows a {@link Reader} to stream all events to a file
+ * while they are recorded and to tell how many were overwritten before they were read.
+ * <p>
+ * This class is thread safe. Events are usually recorded on the main thread and read on
+ * a background thread.
+ */
+public final class ButtonEventLog {
+	private final long[] times;
+	private final byte[] states;
+	private final int mask;
+	/** The number of events recorded, which is the sequence number of the next event. */
+	private long sequence;
+	/** The sequence number of the first event recorded after the last {@link #clear()}. */
+	private long cleared;
+
+	/**
+	 * Creates the log.
+	 *
+	 * @param capacity the number of events kept, rounded up to a power of 2.
+	 */
+	public ButtonEventLog(final int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		final int size = Integer.highestOneBit(capacity - 1) << 1;
+		times = new long[Math.max(1, size)];
+		states = new byte[times.length];
+		mask = times.length - 1;
+	}
+
+	/**
+	 * Records a Button state change. This method does not allocate.
+	 *
+	 * @param time    the time of the event, in nanoseconds.
+	 * @param pressed true if the button was pressed, false if released.
+	 */
+	public synchronized void record(final long time, final boolean pressed) {
+		final int index = (int) sequence & mask;
+		times[index] = time;
+		states[index] = (byte) (pressed ? 1 : 0);
+		sequence++;
+	}
+
+	public int getCapacity() {
+		return times.length;
+	}
+
+	/**
+	 * Returns the number of events recorded since the log was created, including those
+	 * which were overwritten.
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the number of events kept in the buffer.
+	 */
+	public synchronized int size() {
+		return (int) (sequence - getOldestSequence());
+	}
+
+	/**
+	 * Removes all events. Readers continue with events recorded after this call.
+	 */
+	public synchronized void clear() {
+		// Sequence numbers are never reused, so readers stay consistent.
+		cleared = sequence;
+	}
+
+	/**
+	 * Returns a new reader, starting from the oldest event kept in the buffer.
+	 */
+	public Reader newReader() {
+		return new Reader(getOldestSequence());
+	}
+
+	/**
+	 * Calculates the press duration and event rate statistics of the events kept in the buffer.
+	 *
+	 * @param now    the current time, in the same time base as the events.
+	 * @param window the period over which the event rate is calculated, in nanoseconds.
+	 * @return The statistics.
+	 */
+	public synchronized ButtonEventStatistics getStatistics(final long now, final long window) {
+		final Samples pressDurations = new Samples("press duration", Unit.NANOSECONDS);
+		int presses = 0;
+		int eventsInWindow = 0;
+		long pressTime = Long.MIN_VALUE;
+		for (long s = getOldestSequence(); s < sequence; ++s) {
+			final int index = (int) s & mask;
+			final long time = times[index];
+			if (states[index] != 0) {
+				presses++;
+				pressTime = time;
+			} else if (pressTime != Long.MIN_VALUE) {
+				pressDurations.add(time - pressTime);
+				pressTime = Long.MIN_VALUE;
+			}
+			if (time >= now - window)
+				eventsInWindow++;
+		}
+		return new ButtonEventStatistics(sequence - getOldestSequence(), presses, pressDurations,
+				eventsInWindow * 1_000_000_000f / window);
+	}
+
+	private long getOldestSequence() {
+		return Math.max(cleared, sequence - times.length);
+	}
+
+	/**
+	 * A cursor reading events in order. Each reader is meant to be used by a single thread.
+	 */
+	public final class Reader {
+		private long position;
+		private long lost;
+
+		private Reader(final long position) {
+			this.position = position;
+		}
+
+		/**
+		 * Copies the next events to the given arrays. This method does not allocate.
+		 *
+		 * @param times  the array for the event times.
+		 * @param states the array for the event states, 1 for pressed and 0 for released.
+		 * @return The number of events copied, 0 if there are no new events.
+		 */
+		public int read(final long[] times, final byte[] states) {
+			synchronized (ButtonEventLog.this) {
+				if (position < cleared)
+					position = cleared;
+				final long oldest = sequence - ButtonEventLog.this.times.length;
+				if (position < oldest) {
+					lost += oldest - position;
+					position = oldest;
+				}
+				final int count = (int) Math.min(Math.min(times.length, states.length), sequence - position);
+				for (int i = 0; i < count; ++i) {
+					final int index = (int) (position + i) & mask;
+					times[i] = ButtonEventLog.this.times[index];
+					states[i] = ButtonEventLog.this.states[index];
+				}
+				position += count;
+				return count;
+			}
+		}
+
+		/**
+		 * Returns the number of events overwritten before they could be read.
+		 */
+		public long getLost() {
+			synchronized (ButtonEventLog.this) {
+				return lost;
+			}
+		}
+	}
+}
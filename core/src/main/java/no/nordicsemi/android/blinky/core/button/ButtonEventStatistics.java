@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.button;
+
+import java.util.Locale;
+
+import no.nordicsemi.android.blinky.core.metrics.Samples;
+
+/**
+ * Statistics of the events kept in a {@link ButtonEventLog}.
+ */
+public final class ButtonEventStatistics {
+	private final long events;
+	private final int presses;
+	private final Samples pressDurations;
+	private final float eventRate;
+
+	/* package */ ButtonEventStatistics(final long events, final int presses,
+										final Samples pressDurations, final float eventRate) {
+		this.events = events;
+		this.presses = presses;
+		this.pressDurations = pressDurations;
+		this.eventRate = eventRate;
+	}
+
+	/** Returns the number of events the statistics were calculated from. */
+	public long getEvents() {
+		return events;
+	}
+
+	/** Returns the number of presses. */
+	public int getPresses() {
+		return presses;
+	}
+
+	/** Returns the durations of presses followed by a release, in nanoseconds. */
+	public Samples getPressDurations() {
+		return pressDurations;
+	}
+
+	/** Returns the number of events per second in the requested window. */
+	public float getEventRate() {
+		return eventRate;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%d events, %d presses, %.1f events/s\n%s",
+				events, presses, eventRate, pressDurations);
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.button;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Button events to a stream, as CSV or in a compact binary format.
+ * <p>
+ * The CSV format has a <code>time_ns,pressed</code> header followed by a line per event,
+ * with the state written as 1 or 0. The binary format starts with the {@link #MAGIC} bytes
+ * followed by 9 bytes per event: the time as a big-endian 64-bit integer and the state byte.
+ */
+public final class ButtonEventWriter implements Closeable {
+	/** The header of the binary format. */
+	public static final byte[] MAGIC = { 'B', 'T', 'N', 'E', 'V', '1' };
+
+	public enum Format {
+		CSV("csv"),
+		BINARY("bin");
+
+		private final String extension;
+
+		Format(final String extension) {
+			this.extension = extension;
+		}
+
+		/** Returns the file name extension, without the dot. */
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	private final DataOutputStream out;
+	private final Format format;
+	/** Buffer for formatting numbers without creating strings. */
+	private final byte[] digits = new byte[20];
+	private long written;
+
+	/**
+	 * Creates the writer and writes the header.
+	 *
+	 * @param out    the output stream, buffered by the writer.
+	 * @param format the format.
+	 * @throws IOException if writing the header failed.
+	 */
+	public ButtonEventWriter(final OutputStream out, final Format format) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.format = format;
+		if (format == Format.CSV) {
+			this.out.write("time_ns,pressed\n".getBytes(StandardCharsets.US_ASCII));
+		} else {
+			this.out.write(MAGIC);
+		}
+	}
+
+	/**
+	 * Writes the given events, as read by a {@link ButtonEventLog.Reader}.
+	 *
+	 * @param times  the event times.
+	 * @param states the event states.
+	 * @param count  the number of events to write.
+	 * @throws IOException if writing failed.
+	 */
+	public void write(final long[] times, final byte[] states, final int count) throws IOException {
+		for (int i = 0; i < count; ++i) {
+			if (format == Format.CSV) {
+				writeDecimal(times[i]);
+				out.write(',');
+				out.write(states[i] != 0 ? '1' : '0');
+				out.write('\n');
+			} else {
+				out.writeLong(times[i]);
+				out.writeByte(states[i]);
+			}
+		}
+		written += count;
+	}
+
+	/**
+	 * Returns the number of events written.
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeDecimal(long value) throws IOException {
+		if (value < 0) {
+			// Not expected for timestamps, keep it simple.
+			out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+			return;
+		}
+		int position = digits.length;
+		do {
+			digits[--position] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		out.write(digits, position, digits.length - position);
+	}
+}
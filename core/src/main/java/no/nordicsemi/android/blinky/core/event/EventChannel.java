@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.event;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded ring buffer of events delivered to any number of subscribers.
+ * <p>
+ * Like in {@link no.nordicsemi.android.blinky.core.button.ButtonEventLog}, each event has
+ * a sequence number, counted from 0 since the channel was created. Each {@link Subscription}
+ * keeps its own position, so all subscribers receive all events, each on its own thread and
+ * at its own pace. What happens when the buffer is full is decided by the
+ * {@link OverflowPolicy}.
+ * <p>
+ * Publishing and polling do not allocate nor lock. Producers claim a sequence number with
+ * a compare-and-set and publish events in the order of their sequence numbers. Subscribing
+ * and closing a subscription copy the array of subscribers, which happens rarely.
+ *
+ * @param <T> the type of events.
+ */
+public final class EventChannel<T> {
+	private static final Subscription<?>[] NO_SUBSCRIBERS = new Subscription<?>[0];
+
+	/**
+	 * Receives events from {@link Subscription#poll(Handler)}.
+	 *
+	 * @param <T> the type of events.
+	 */
+	@FunctionalInterface
+	public interface Handler<T> {
+		void onEvent(T event);
+	}
+
+	private final AtomicReferenceArray<T> events;
+	private final int mask;
+	private final OverflowPolicy policy;
+	/** The sequence number of the next event to be claimed by a producer. */
+	private final AtomicLong claimed = new AtomicLong();
+	/** The number of events published, which is the sequence number of the next event. */
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile Subscription<?>[] subscribers = NO_SUBSCRIBERS;
+
+	/**
+	 * Creates the channel.
+	 *
+	 * @param capacity the number of events kept, rounded up to a power of 2.
+	 * @param policy   the policy used when the slowest subscriber is that many events behind.
+	 */
+	public EventChannel(final int capacity, final OverflowPolicy policy) {
+		if (capacity <= 0 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		final int size = Math.max(1, Integer.highestOneBit(capacity - 1) << 1);
+		events = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+		this.policy = policy;
+	}
+
+	public int getCapacity() {
+		return events.length();
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Publishes the event to all subscribers. This method does not allocate and may be
+	 * called on any thread.
+	 *
+	 * @param event the event.
+	 * @return True, if the event was published, false if it was dropped because of
+	 * {@link OverflowPolicy#DROP_NEWEST}.
+	 */
+	public boolean publish(final T event) {
+		final int capacity = events.length();
+		long sequence;
+		while (true) {
+			sequence = claimed.get();
+			if (policy != OverflowPolicy.DROP_OLDEST && sequence - getSlowestPosition(sequence) >= capacity) {
+				if (policy == OverflowPolicy.DROP_NEWEST) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				// OverflowPolicy.BLOCK
+				Thread.yield();
+				continue;
+			}
+			if (claimed.compareAndSet(sequence, sequence + 1))
+				break;
+		}
+		events.set((int) sequence & mask, event);
+		// Wait for producers which claimed earlier sequence numbers to publish their events.
+		while (published.get() != sequence)
+			Thread.yield();
+		published.set(sequence + 1);
+		return true;
+	}
+
+	/**
+	 * Returns the number of events published since the channel was created.
+	 */
+	public long getSequence() {
+		return published.get();
+	}
+
+	/**
+	 * Returns the number of events dropped with {@link OverflowPolicy#DROP_NEWEST}.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Creates a subscription receiving events published after this call.
+	 */
+	public Subscription<T> subscribe() {
+		return subscribe(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a subscription receiving events starting from the given sequence number.
+	 * Events which are no longer kept are skipped.
+	 *
+	 * @param sequence the sequence number of the first event to receive.
+	 * @return The subscription.
+	 */
+	public synchronized Subscription<T> subscribe(final long sequence) {
+		final long next = published.get();
+		final long position = Math.max(Math.min(sequence, next), Math.max(0, next - events.length()));
+		final Subscription<T> subscription = new Subscription<>(this, position);
+		final Subscription<?>[] current = subscribers;
+		final Subscription<?>[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = subscription;
+		subscribers = updated;
+		return subscription;
+	}
+
+	private synchronized void unsubscribe(final Subscription<?> subscription) {
+		final Subscription<?>[] current = subscribers;
+		for (int i = 0; i < current.length; ++i) {
+			if (current[i] == subscription) {
+				final Subscription<?>[] updated = new Subscription<?>[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, updated.length - i);
+				subscribers = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of the subscriber which is the most behind, or the given sequence
+	 * number if there are no subscribers.
+	 */
+	private long getSlowestPosition(final long sequence) {
+		long slowest = sequence;
+		for (final Subscription<?> subscriber : subscribers)
+			slowest = Math.min(slowest, subscriber.position);
+		return slowest;
+	}
+
+	/**
+	 * A cursor receiving events in order. Each subscription is meant to be polled by a single
+	 * thread. Subscriptions which are no longer used must be closed, as with
+	 * {@link OverflowPolicy#DROP_NEWEST} and {@link OverflowPolicy#BLOCK} they hold back
+	 * the producers.
+	 *
+	 * @param <T> the type of events.
+	 */
+	public static final class Subscription<T> {
+		private final EventChannel<T> channel;
+		/** The sequence number of the next event to be received. */
+		private volatile long position;
+		private long lost;
+		private volatile boolean closed;
+
+		private Subscription(final EventChannel<T> channel, final long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		/**
+		 * Delivers all events published since the last call to the handler.
+		 * This method does not allocate.
+		 *
+		 * @param handler the handler.
+		 * @return The number of events delivered.
+		 */
+		public int poll(final Handler<? super T> handler) {
+			return poll(handler, Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Delivers at most the given number of events published since the last call to
+		 * the handler. This method does not allocate.
+		 *
+		 * @param handler the handler.
+		 * @param max     the maximum number of events to deliver.
+		 * @return The number of events delivered.
+		 */
+		public int poll(final Handler<? super T> handler, final int max) {
+			final EventChannel<T> channel = this.channel;
+			final int capacity = channel.events.length();
+			final long available = channel.published.get();
+			long position = this.position;
+			int count = 0;
+			while (!closed && position < available && count < max) {
+				// With OverflowPolicy.DROP_OLDEST producers may overwrite events not yet received.
+				final long oldest = channel.claimed.get() - capacity;
+				if (position < oldest) {
+					lost += oldest - position;
+					position = oldest;
+					continue;
+				}
+				final T event = channel.events.get((int) position & channel.mask);
+				if (channel.claimed.get() - capacity > position)
+					// The event was overwritten while it was being read.
+					continue;
+				this.position = ++position;
+				count++;
+				handler.onEvent(event);
+			}
+			this.position = position;
+			return count;
+		}
+
+		/**
+		 * Returns the number of events not yet received.
+		 */
+		public long getPending() {
+			return closed ? 0 : channel.published.get() - position;
+		}
+
+		/**
+		 * Returns the sequence number of the next event to be received.
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * Returns the number of events overwritten before they could be received,
+		 * with {@link OverflowPolicy#DROP_OLDEST}.
+		 */
+		public long getLost() {
+			return lost;
+		}
+
+		/**
+		 * Stops receiving events. Polling a closed subscription delivers nothing.
+		 */
+		public void close() {
+			closed = true;
+			channel.unsubscribe(this);
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.led;
+
+/**
+ * The LED logic of the Blinky profile without the GATT requests: turns user intents into
+ * writes and reports the states to be shown, using a {@link LedIntentTracker}.
+ * <p>
+ * The {@link Writer} issues each write and reports its progress back:
+ * {@link #onWriteStarted(int)} when the write is sent, {@link #onStateReceived(boolean)}
+ * with the value written, and {@link #onWriteFinished(int, boolean)} when it has completed
+ * or failed. Values read are reported with {@link #onStateReceived(boolean)} as well.
+ * <p>
+ * This class is not thread safe, see {@link LedIntentTracker}.
+ */
+public final class LedController {
+	private final LedIntentTracker intents = new LedIntentTracker();
+	private final Writer writer;
+	private final Listener listener;
+
+	public interface Writer {
+		/**
+		 * Enqueues a write of the LED state. Exactly one write is enqueued for each intent.
+		 *
+		 * @param intentId the ID of the intent.
+		 * @param on       true to turn the LED on, false to turn it off.
+		 */
+		void writeLed(int intentId, boolean on);
+	}
+
+	public interface Listener {
+		/**
+		 * Called when the device confirmed a write or the state was read.
+		 *
+		 * @param on       the LED state.
+		 * @param intentId the ID of the intent confirmed, or {@link LedIntentTracker#NO_INTENT}
+		 *                 if the state was read.
+		 * @param latest   true if no newer intent is pending and the state should be shown.
+		 */
+		void onLedStateReceived(boolean on, int intentId, boolean latest);
+
+		/**
+		 * Called when a write failed. The last confirmed state should be shown again,
+		 * unless a newer intent is pending.
+		 *
+		 * @param intentId    the ID of the intent.
+		 * @param confirmedOn the LED state confirmed by the device.
+		 * @param latest      true if no newer intent is pending.
+		 */
+		void onLedWriteFailed(int intentId, boolean confirmedOn, boolean latest);
+	}
+
+	public LedController(final Writer writer, final Listener listener) {
+		this.writer = writer;
+		this.listener = listener;
+	}
+
+	/**
+	 * Requests the LED to be turned on or off, and enqueues a write if the state was not
+	 * requested already.
+	 *
+	 * @param on true to turn the LED on, false to turn it off.
+	 * @return The ID of the intent, or {@link LedIntentTracker#NO_INTENT} if no write was needed.
+	 */
+	public int turnLed(final boolean on) {
+		final int intentId = intents.request(on);
+		if (intentId != LedIntentTracker.NO_INTENT)
+			writer.writeLed(intentId, on);
+		return intentId;
+	}
+
+	public void onWriteStarted(final int intentId) {
+		intents.onWriteStarted(intentId);
+	}
+
+	public void onStateReceived(final boolean on) {
+		final int intentId = intents.getCurrentIntentId();
+		final boolean latest = intents.onStateReceived(on);
+		listener.onLedStateReceived(on, intentId, latest);
+	}
+
+	public void onWriteFinished(final int intentId, final boolean success) {
+		final boolean latest = intents.onWriteFinished(intentId, success);
+		if (!success)
+			listener.onLedWriteFailed(intentId, intents.isConfirmedOn(), latest);
+	}
+
+	/**
+	 * Forgets the writes of the closed connection, see {@link LedIntentTracker#onDisconnected()}.
+	 */
+	public void onDisconnected() {
+		intents.onDisconnected();
+	}
+
+	/**
+	 * Returns the tracker of the intents, for inspection.
+	 */
+	public LedIntentTracker getIntents() {
+		return intents;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.led;
+
+/**
+ * Keeps LED user intents apart from the states confirmed by the device.
+ * <p>
+ * Each user action that changes the requested state becomes an intent with a new ID and
+ * exactly one write. Requesting the state already requested, for example when a control is
+ * updated with a confirmation, does not create a write. A confirmed state is the latest one
+ * only if no newer intent is pending, so the UI does not jump back to an older state while
+ * writes are in flight. A state read while no write is pending resynchronizes the requested
+ * state with the device.
+ * <p>
+ * Writes are counted per connection. Writes enqueued before a disconnection are failed
+ * by the request queue after it, and their completion is ignored, so that the device is
+ * resynchronized by the first read on the next connection.
+ * <p>
+ * This class is not thread safe. All methods should be called from the thread the write
+ * callbacks are called on.
+ */
+public final class LedIntentTracker {
+	/** The intent ID of states not caused by a user action. */
+	public static final int NO_INTENT = 0;
+
+	/** The LED state confirmed by the device. */
+	private boolean confirmed;
+	/** The LED state requested by the last intent, or confirmed, if none is pending. */
+	private boolean requested;
+	/** The ID of the last intent. */
+	private int lastIntentId;
+	/** The ID of the first intent of the current connection. */
+	private int firstIntentId = 1;
+	/** The ID of the intent whose write is being executed. */
+	private int currentIntentId = NO_INTENT;
+	private int pendingWrites;
+	private long writeCount;
+
+	/**
+	 * Requests the LED to be turned on or off. If an intent is returned, the caller must
+	 * issue exactly one write for it.
+	 *
+	 * @param on true to turn the LED on, false to turn it off.
+	 * @return The ID of the new intent, or {@link #NO_INTENT} if the state is already requested.
+	 */
+	public int request(final boolean on) {
+		// Compared with the last requested state, as the previous write might not have been
+		// confirmed yet.
+		if (requested == on)
+			return NO_INTENT;
+		requested = on;
+		pendingWrites++;
+		writeCount++;
+		return ++lastIntentId;
+	}
+
+	/**
+	 * Marks the write of the given intent as being executed. States received until
+	 * {@link #onWriteFinished(int, boolean)} confirm this intent.
+	 */
+	public void onWriteStarted(final int intentId) {
+		currentIntentId = intentId;
+	}
+
+	/**
+	 * Records a state received from the device, either confirming the current write
+	 * or read.
+	 *
+	 * @param on the LED state.
+	 * @return True if this is the latest state and should be shown.
+	 */
+	public boolean onStateReceived(final boolean on) {
+		confirmed = on;
+		if (currentIntentId == NO_INTENT) {
+			// The value was read. It's the latest state only if no write is pending.
+			final boolean latest = pendingWrites == 0;
+			if (latest)
+				requested = on;
+			return latest;
+		}
+		return currentIntentId == lastIntentId;
+	}
+
+	/**
+	 * Records the completion of the write of the given intent. When it failed, the confirmed
+	 * state is requested again, unless a newer intent is pending.
+	 *
+	 * @param intentId the intent ID.
+	 * @param success  true if the write was confirmed, false if it failed.
+	 * @return True if the intent is the latest one.
+	 */
+	public boolean onWriteFinished(final int intentId, final boolean success) {
+		if (currentIntentId == intentId)
+			currentIntentId = NO_INTENT;
+		final boolean latest = intentId == lastIntentId;
+		// Writes of a previous connection were already discounted when it was closed.
+		if (intentId < firstIntentId)
+			return latest;
+		pendingWrites--;
+		if (!success && latest)
+			requested = confirmed;
+		return latest;
+	}
+
+	/**
+	 * Forgets the writes of the closed connection. Their completion, reported afterwards,
+	 * is ignored.
+	 */
+	public void onDisconnected() {
+		currentIntentId = NO_INTENT;
+		pendingWrites = 0;
+		firstIntentId = lastIntentId + 1;
+	}
+
+	/**
+	 * Returns the ID of the intent whose write is being executed, or {@link #NO_INTENT}.
+	 */
+	public int getCurrentIntentId() {
+		return currentIntentId;
+	}
+
+	public int getLastIntentId() {
+		return lastIntentId;
+	}
+
+	/**
+	 * Returns the LED state confirmed by the device.
+	 */
+	public boolean isConfirmedOn() {
+		return confirmed;
+	}
+
+	/**
+	 * Returns the LED state requested by the last intent, or confirmed, if none is pending.
+	 */
+	public boolean isRequestedOn() {
+		return requested;
+	}
+
+	/**
+	 * Returns the number of writes of the current connection which have not completed.
+	 */
+	public int getPendingWrites() {
+		return pendingWrites;
+	}
+
+	/**
+	 * Returns the number of writes requested since the tracker was created.
+	 */
+	public long getWriteCount() {
+		return writeCount;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.metrics;
+
+import java.util.Locale;
+
+/**
+ * Statistics of the work done to handle deliveries of a scan, for comparing the cost of
+ * scanning modes. Each delivery, a callback or a broadcast, is counted as a wakeup, together
+ * with the CPU time spent handling it. Rates are given per hour of the time the scan was
+ * running, which is summed over the periods between {@link #start(long)} and {@link #stop(long)}.
+ * <p>
+ * All times are in nanoseconds. This class is not thread safe.
+ */
+public final class DeliveryStats {
+	private static final double NANOS_PER_HOUR = 3_600_000_000_000.0;
+
+	private long deliveries;
+	private long results;
+	private long cpuTime;
+	private long activeTime;
+	/** The time the current period started, or -1 when stopped. */
+	private long startedAt = -1;
+
+	public DeliveryStats() {
+		// empty
+	}
+
+	/**
+	 * Restores statistics saved earlier. The restored statistics are stopped.
+	 */
+	public DeliveryStats(final long deliveries, final long results, final long cpuTime, final long activeTime) {
+		this.deliveries = deliveries;
+		this.results = results;
+		this.cpuTime = cpuTime;
+		this.activeTime = activeTime;
+	}
+
+	/**
+	 * Starts a period of scanning. Does nothing if already started.
+	 */
+	public void start(final long now) {
+		if (startedAt < 0)
+			startedAt = now;
+	}
+
+	/**
+	 * Ends the current period of scanning. Does nothing if not started.
+	 */
+	public void stop(final long now) {
+		if (startedAt >= 0) {
+			activeTime += Math.max(0, now - startedAt);
+			startedAt = -1;
+		}
+	}
+
+	public boolean isStarted() {
+		return startedAt >= 0;
+	}
+
+	/**
+	 * Returns the time the current period started, or -1 if stopped.
+	 */
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	/**
+	 * Clears the statistics and stops them.
+	 */
+	public void reset() {
+		deliveries = 0;
+		results = 0;
+		cpuTime = 0;
+		activeTime = 0;
+		startedAt = -1;
+	}
+
+	/**
+	 * Records a delivery.
+	 *
+	 * @param resultCount the number of results delivered.
+	 * @param cpuTime     the CPU time spent handling the delivery, negative if unknown.
+	 */
+	public void record(final int resultCount, final long cpuTime) {
+		deliveries++;
+		results += resultCount;
+		if (cpuTime > 0)
+			this.cpuTime += cpuTime;
+	}
+
+	public long getDeliveries() {
+		return deliveries;
+	}
+
+	public long getResults() {
+		return results;
+	}
+
+	public long getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * Returns the time the scan was running, including the current period.
+	 */
+	public long getActiveTime(final long now) {
+		return startedAt >= 0 ? activeTime + Math.max(0, now - startedAt) : activeTime;
+	}
+
+	public double getDeliveriesPerHour(final long now) {
+		return perHour(deliveries, now);
+	}
+
+	public double getResultsPerHour(final long now) {
+		return perHour(results, now);
+	}
+
+	/**
+	 * Returns the CPU time spent per hour, in nanoseconds.
+	 */
+	public double getCpuTimePerHour(final long now) {
+		return perHour(cpuTime, now);
+	}
+
+	/**
+	 * Returns a one line summary of the rates, for logging.
+	 */
+	public String format(final long now) {
+		return String.format(Locale.US, "%.0f wakeups/h, %.0f results/h, %.1f ms CPU/h over %.1f min",
+				getDeliveriesPerHour(now), getResultsPerHour(now), getCpuTimePerHour(now) / 1_000_000.0,
+				getActiveTime(now) / 60_000_000_000.0);
+	}
+
+	private double perHour(final long value, final long now) {
+		final long time = getActiveTime(now);
+		return time > 0 ? value * NANOS_PER_HOUR / time : 0;
+	}
+}
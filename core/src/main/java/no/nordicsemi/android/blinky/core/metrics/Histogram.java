@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram with fixed, logarithmic buckets. Bucket 0 counts values lower than 1,
+ * bucket <i>i</i> values from 2<sup>i-1</sup> to 2<sup>i</sup> - 1. The relative error of
+ * reported percentiles is therefore below 2x, which is enough to see regressions and tail
+ * latencies, while recording takes a few atomic increments and does not allocate.
+ */
+public final class Histogram {
+	/* package */ static final int BUCKETS = 64;
+
+	private final String name;
+	private final Unit unit;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+	/* package */ Histogram(final String name, final Unit unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Unit getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value the value, in the unit of this histogram.
+	 */
+	public void record(final long value) {
+		buckets.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value))
+				break;
+		}
+	}
+
+	/**
+	 * Records the time elapsed since the given start time, in nanoseconds.
+	 *
+	 * @param startNanos the start time, from the same clock as the now parameter.
+	 * @param nowNanos   the current time.
+	 */
+	public void recordSince(final long startNanos, final long nowNanos) {
+		record(nowNanos - startNanos);
+	}
+
+	/**
+	 * Returns a consistent enough copy of the current values. Values recorded concurrently
+	 * may be counted in some of the fields only.
+	 */
+	public HistogramSnapshot snapshot() {
+		final long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; ++i)
+			counts[i] = buckets.get(i);
+		final long count = this.count.get();
+		return new HistogramSnapshot(name, unit, count, sum.get(),
+				count > 0 ? max.get() : 0, counts);
+	}
+
+	/* package */ void reset() {
+		for (int i = 0; i < BUCKETS; ++i)
+			buckets.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(Long.MIN_VALUE);
+	}
+
+	/* package */ static int bucketOf(final long value) {
+		if (value < 1)
+			return 0;
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	/**
+	 * Returns the highest value counted in the given bucket.
+	 */
+	/* package */ static long upperBoundOf(final int bucket) {
+		if (bucket == 0)
+			return 0;
+		if (bucket >= BUCKETS - 1)
+			return Long.MAX_VALUE;
+		return (1L << bucket) - 1;
+	}
+}
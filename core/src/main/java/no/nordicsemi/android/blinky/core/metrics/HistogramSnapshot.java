@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.metrics;
+
+/**
+ * An immutable copy of the values of a {@link Histogram}.
+ */
+public final class HistogramSnapshot {
+	private final String name;
+	private final Unit unit;
+	private final long count;
+	private final long sum;
+	private final long max;
+	private final long[] buckets;
+
+	/* package */ HistogramSnapshot(final String name, final Unit unit, final long count,
+									final long sum, final long max, final long[] buckets) {
+		this.name = name;
+		this.unit = unit;
+		this.count = count;
+		this.sum = sum;
+		this.max = max;
+		this.buckets = buckets;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public long getMean() {
+		return count > 0 ? sum / count : 0;
+	}
+
+	/**
+	 * Returns the number of values counted in the given bucket, see {@link Histogram}.
+	 */
+	public long getBucketCount(final int bucket) {
+		return buckets[bucket];
+	}
+
+	public int getBucketCount() {
+		return buckets.length;
+	}
+
+	/**
+	 * Returns an upper estimate of the given percentile: the upper bound of the bucket
+	 * containing it, but not more than the maximum recorded value.
+	 *
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return The estimate, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(final double percentile) {
+		long total = 0;
+		for (final long bucket : buckets)
+			total += bucket;
+		if (total == 0)
+			return 0;
+
+		final long rank = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; ++i) {
+			seen += buckets[i];
+			if (seen >= rank && buckets[i] > 0)
+				return Math.min(Histogram.upperBoundOf(i), max);
+		}
+		return max;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The registry of counters and histograms. Metrics should be created once, usually
+ * in static fields, and then recorded to directly. Only creating a metric and taking
+ * a snapshot take a lock.
+ */
+public final class MetricsRegistry {
+	private final Map<String, Counter> counters = new LinkedHashMap<>();
+	private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+	/**
+	 * Returns the counter with the given name, creating it if needed.
+	 */
+	public synchronized Counter counter(final String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			counter = new Counter(name);
+			counters.put(name, counter);
+		}
+		return counter;
+	}
+
+	/**
+	 * Returns the histogram with the given name, creating it if needed.
+	 *
+	 * @throws IllegalArgumentException if the histogram exists with a different unit.
+	 */
+	public synchronized Histogram histogram(final String name, final Unit unit) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new Histogram(name, unit);
+			histograms.put(name, histogram);
+		} else if (histogram.getUnit() != unit) {
+			throw new IllegalArgumentException("Histogram " + name + " exists with unit " + histogram.getUnit());
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the current values of all metrics, in the order they were created.
+	 */
+	public synchronized MetricsSnapshot snapshot() {
+		final Map<String, Long> counterValues = new LinkedHashMap<>();
+		for (final Counter counter : counters.values())
+			counterValues.put(counter.getName(), counter.get());
+		final List<HistogramSnapshot> histogramSnapshots = new ArrayList<>(histograms.size());
+		for (final Histogram histogram : histograms.values())
+			histogramSnapshots.add(histogram.snapshot());
+		return new MetricsSnapshot(counterValues, histogramSnapshots);
+	}
+
+	/**
+	 * Sets all metrics to zero.
+	 */
+	public synchronized void reset() {
+		for (final Counter counter : counters.values())
+			counter.reset();
+		for (final Histogram histogram : histograms.values())
+			histogram.reset();
+	}
+}
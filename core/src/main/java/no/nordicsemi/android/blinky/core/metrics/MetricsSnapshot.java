@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.metrics;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of all metrics of a {@link MetricsRegistry}, which can be exported
+ * as JSON or as a short text for display.
+ */
+public final class MetricsSnapshot {
+	private final Map<String, Long> counters;
+	private final List<HistogramSnapshot> histograms;
+
+	/* package */ MetricsSnapshot(final Map<String, Long> counters,
+								  final List<HistogramSnapshot> histograms) {
+		this.counters = Collections.unmodifiableMap(counters);
+		this.histograms = Collections.unmodifiableList(histograms);
+	}
+
+	public Map<String, Long> getCounters() {
+		return counters;
+	}
+
+	public List<HistogramSnapshot> getHistograms() {
+		return histograms;
+	}
+
+	/**
+	 * Writes the snapshot as a JSON object with "counters" and "histograms" objects. Each
+	 * histogram contains the count, sum, max, mean, p50, p90, p99 and the non-empty buckets
+	 * by their upper bound.
+	 *
+	 * @param out the output.
+	 * @throws IOException if writing failed.
+	 */
+	public void writeJson(final Appendable out) throws IOException {
+		out.append("{\"counters\":{");
+		boolean first = true;
+		for (final Map.Entry<String, Long> counter : counters.entrySet()) {
+			if (!first) out.append(',');
+			first = false;
+			out.append('"').append(counter.getKey()).append("\":").append(String.valueOf(counter.getValue()));
+		}
+		out.append("},\"histograms\":{");
+		first = true;
+		for (final HistogramSnapshot histogram : histograms) {
+			if (!first) out.append(',');
+			first = false;
+			out.append('"').append(histogram.getName()).append("\":{")
+					.append("\"unit\":\"").append(histogram.getUnit().name()).append('"')
+					.append(",\"count\":").append(String.valueOf(histogram.getCount()))
+					.append(",\"sum\":").append(String.valueOf(histogram.getSum()))
+					.append(",\"max\":").append(String.valueOf(histogram.getMax()))
+					.append(",\"mean\":").append(String.valueOf(histogram.getMean()))
+					.append(",\"p50\":").append(String.valueOf(histogram.getPercentile(50)))
+					.append(",\"p90\":").append(String.valueOf(histogram.getPercentile(90)))
+					.append(",\"p99\":").append(String.valueOf(histogram.getPercentile(99)))
+					.append(",\"buckets\":{");
+			boolean firstBucket = true;
+			for (int i = 0; i < histogram.getBucketCount(); ++i) {
+				final long count = histogram.getBucketCount(i);
+				if (count == 0)
+					continue;
+				if (!firstBucket) out.append(',');
+				firstBucket = false;
+				out.append('"').append(String.valueOf(Histogram.upperBoundOf(i))).append("\":")
+						.append(String.valueOf(count));
+			}
+			out.append("}}");
+		}
+		out.append("}}");
+	}
+
+	/**
+	 * Returns the snapshot as JSON, see {@link #writeJson(Appendable)}.
+	 */
+	public String toJson() {
+		final StringBuilder builder = new StringBuilder();
+		try {
+			writeJson(builder);
+		} catch (final IOException e) {
+			// StringBuilder does not throw
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns a short, multi-line summary with one line per metric.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		for (final Map.Entry<String, Long> counter : counters.entrySet()) {
+			builder.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+		}
+		for (final HistogramSnapshot histogram : histograms) {
+			final Unit unit = histogram.getUnit();
+			builder.append(histogram.getName()).append(": n=").append(histogram.getCount());
+			if (histogram.getCount() > 0) {
+				builder.append(" p50=").append(unit.format(histogram.getPercentile(50)))
+						.append(" p99=").append(unit.format(histogram.getPercentile(99)))
+						.append(" max=").append(unit.format(histogram.getMax()));
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A set of individual samples with exact percentiles, for measurements with a limited number
+ * of samples, like a test run. Use a {@link Histogram} for continuous recording instead.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class Samples {
+	private final String name;
+	private final Unit unit;
+	private long[] values = new long[64];
+	private int size;
+	private boolean sorted = true;
+
+	public Samples(final String name, final Unit unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Unit getUnit() {
+		return unit;
+	}
+
+	public void add(final long value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+		values[size++] = value;
+		sorted = false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+		sorted = true;
+	}
+
+	public long getMin() {
+		return size > 0 ? sorted()[0] : 0;
+	}
+
+	public long getMax() {
+		return size > 0 ? sorted()[size - 1] : 0;
+	}
+
+	public long getMean() {
+		long sum = 0;
+		for (int i = 0; i < size; ++i)
+			sum += values[i];
+		return size > 0 ? sum / size : 0;
+	}
+
+	/**
+	 * Returns the given percentile using the nearest-rank method.
+	 *
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return The value, or 0 if there are no samples.
+	 */
+	public long getPercentile(final double percentile) {
+		if (size == 0)
+			return 0;
+		final int rank = (int) Math.ceil(percentile / 100.0 * size);
+		return sorted()[Math.max(0, Math.min(size - 1, rank - 1))];
+	}
+
+	/**
+	 * Returns a one line summary with the number of samples, p50, p95, p99 and max.
+	 */
+	@Override
+	public String toString() {
+		if (size == 0)
+			return name + ": no samples";
+		return name + ": n=" + size
+				+ " p50=" + unit.format(getPercentile(50))
+				+ " p95=" + unit.format(getPercentile(95))
+				+ " p99=" + unit.format(getPercentile(99))
+				+ " max=" + unit.format(getMax());
+	}
+
+	private long[] sorted() {
+		if (!sorted) {
+			Arrays.sort(values, 0, size);
+			sorted = true;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.stream;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import no.nordicsemi.android.blinky.core.event.EventChannel;
+import no.nordicsemi.android.blinky.core.event.OverflowPolicy;
+
+/**
+ * A hot Reactive Streams {@link Publisher} of events, backed by an {@link EventChannel}.
+ * <p>
+ * Each subscriber has its own position in the channel and receives events only as requested.
+ * Events not yet requested wait in the channel, so a slow subscriber falls behind without
+ * slowing down the others until the channel is full. Then the {@link OverflowPolicy} of the
+ * channel decides whether the producer waits or events are dropped.
+ * <p>
+ * Signals are delivered on the executor given for the subscriber, by default
+ * {@link Streams#defaultExecutor()}, so subscribers never run on the producer's thread unless
+ * a direct executor is used. Publishing and delivering do not allocate, other than what
+ * the executor needs to run a task when a subscriber has caught up.
+ *
+ * @param <T> the type of events.
+ */
+public final class EventPublisher<T> implements Publisher<T> {
+	private static final EventSubscription<?>[] NO_SUBSCRIPTIONS = new EventSubscription<?>[0];
+	/** The maximum number of events delivered before checking for cancellation and demand. */
+	private static final int BATCH = 64;
+
+	private final EventChannel<T> channel;
+	private final Executor executor;
+	private volatile EventSubscription<?>[] subscriptions = NO_SUBSCRIPTIONS;
+	private volatile boolean completed;
+
+	/**
+	 * Creates the publisher delivering on {@link Streams#defaultExecutor()}.
+	 *
+	 * @param capacity the number of events kept for subscribers, rounded up to a power of 2.
+	 * @param policy   the policy used when the slowest subscriber is that many events behind.
+	 */
+	public EventPublisher(final int capacity, final OverflowPolicy policy) {
+		this(capacity, policy, Streams.defaultExecutor());
+	}
+
+	/**
+	 * Creates the publisher.
+	 *
+	 * @param capacity the number of events kept for subscribers, rounded up to a power of 2.
+	 * @param policy   the policy used when the slowest subscriber is that many events behind.
+	 * @param executor the executor delivering signals to subscribers.
+	 */
+	public EventPublisher(final int capacity, final OverflowPolicy policy, final Executor executor) {
+		channel = new EventChannel<>(capacity, policy);
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the channel, which may also be subscribed to directly.
+	 */
+	public EventChannel<T> getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Publishes the event to all subscribers. This method may be called on any thread.
+	 *
+	 * @param event the event.
+	 * @return False, if the event was dropped, see {@link OverflowPolicy#DROP_NEWEST}.
+	 */
+	public boolean publish(final T event) {
+		if (event == null)
+			throw new NullPointerException("Events must not be null");
+		if (!channel.publish(event))
+			return false;
+		for (final EventSubscription<?> subscription : subscriptions)
+			subscription.signal();
+		return true;
+	}
+
+	/**
+	 * Completes the stream. Subscribers receive onComplete after the events published before.
+	 * No events may be published afterwards.
+	 */
+	public void complete() {
+		completed = true;
+		for (final EventSubscription<?> subscription : subscriptions)
+			subscription.schedule();
+	}
+
+	/**
+	 * Returns a view of this publisher delivering signals on the given executor.
+	 *
+	 * @param executor the executor, which may run tasks sequentially or in parallel.
+	 * @return The publisher.
+	 */
+	public Publisher<T> deliverOn(final Executor executor) {
+		return subscriber -> subscribe(subscriber, executor);
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super T> subscriber) {
+		subscribe(subscriber, executor);
+	}
+
+	private void subscribe(final Subscriber<? super T> subscriber, final Executor executor) {
+		if (subscriber == null)
+			throw new NullPointerException("Subscriber must not be null");
+		final EventSubscription<T> subscription =
+				new EventSubscription<>(this, subscriber, channel.subscribe(), executor);
+		synchronized (this) {
+			final EventSubscription<?>[] current = subscriptions;
+			final EventSubscription<?>[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = subscription;
+			subscriptions = updated;
+		}
+		// The first run calls onSubscribe.
+		subscription.schedule();
+	}
+
+	private synchronized void remove(final EventSubscription<?> subscription) {
+		final EventSubscription<?>[] current = subscriptions;
+		for (int i = 0; i < current.length; ++i) {
+			if (current[i] == subscription) {
+				final EventSubscription<?>[] updated = new EventSubscription<?>[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, updated.length - i);
+				subscriptions = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Delivers events of the channel to one subscriber, as requested. All signals are sent
+	 * by {@link #run()}, which runs on the executor and is never run concurrently: a request
+	 * or an event arriving while it runs makes it loop once more instead.
+	 */
+	private static final class EventSubscription<T> implements Subscription, Runnable, EventChannel.Handler<T> {
+		private final EventPublisher<T> publisher;
+		private final Subscriber<? super T> subscriber;
+		private final EventChannel.Subscription<T> cursor;
+		private final Executor executor;
+		private final AtomicLong requested = new AtomicLong();
+		/** The number of times {@link #run()} was scheduled and has not yet seen it. */
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile IllegalArgumentException invalidRequest;
+		/** Whether onSubscribe has been called, accessed in {@link #run()} only. */
+		private boolean subscribed;
+
+		private EventSubscription(final EventPublisher<T> publisher, final Subscriber<? super T> subscriber,
+								  final EventChannel.Subscription<T> cursor, final Executor executor) {
+			this.publisher = publisher;
+			this.subscriber = subscriber;
+			this.cursor = cursor;
+			this.executor = executor;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				// Rule 3.9.
+				invalidRequest = new IllegalArgumentException("Non-positive request: " + n);
+			} else {
+				long current, updated;
+				do {
+					current = requested.get();
+					updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while (!requested.compareAndSet(current, updated));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			if (cancelled)
+				return;
+			cancelled = true;
+			cursor.close();
+			publisher.remove(this);
+		}
+
+		/**
+		 * Called when an event has been published. Nothing is scheduled without demand.
+		 */
+		private void signal() {
+			if (requested.get() != 0)
+				schedule();
+		}
+
+		private void schedule() {
+			if (pending.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!subscribed) {
+					subscribed = true;
+					subscriber.onSubscribe(this);
+				}
+				if (cancelled)
+					return;
+				final IllegalArgumentException error = invalidRequest;
+				if (error != null) {
+					cancel();
+					subscriber.onError(error);
+					return;
+				}
+				final long demand = requested.get();
+				long delivered = 0;
+				while (delivered != demand && !cancelled) {
+					final int count = cursor.poll(this, (int) Math.min(demand - delivered, BATCH));
+					if (count == 0)
+						break;
+					delivered += count;
+				}
+				if (delivered != 0 && demand != Long.MAX_VALUE)
+					requested.addAndGet(-delivered);
+				if (!cancelled && publisher.completed && cursor.getPending() <= 0) {
+					cancel();
+					subscriber.onComplete();
+					return;
+				}
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		@Override
+		public void onEvent(final T event) {
+			subscriber.onNext(event);
+		}
+	}
+}
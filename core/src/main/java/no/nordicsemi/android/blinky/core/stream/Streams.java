@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.stream;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Operators for Reactive Streams publishers, like those of {@link EventPublisher}.
+ * <p>
+ * Count windows pass the demand on to the source. Time windows and sampling request
+ * all events from the source, so that it is consumed at full rate, and emit on the given
+ * scheduler only as requested: a window or sample due while there is no demand is dropped.
+ */
+public final class Streams {
+	private static volatile ExecutorService defaultExecutor;
+
+	private Streams() {
+		// empty
+	}
+
+	/**
+	 * Returns the executor used by {@link EventPublisher} by default: a pool of daemon threads,
+	 * created as needed and kept for a minute when idle.
+	 */
+	public static Executor defaultExecutor() {
+		ExecutorService executor = defaultExecutor;
+		if (executor == null) {
+			synchronized (Streams.class) {
+				executor = defaultExecutor;
+				if (executor == null)
+					executor = defaultExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Groups events into lists of the given size. The last list, emitted when the source
+	 * completes, may be shorter. Requesting n lists requests n times the size from the source.
+	 *
+	 * @param source the source.
+	 * @param size   the number of events in each list.
+	 * @return The publisher of lists.
+	 */
+	public static <T> Publisher<List<T>> window(final Publisher<T> source, final int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Invalid size: " + size);
+		return subscriber -> source.subscribe(new CountWindow<>(subscriber, size));
+	}
+
+	/**
+	 * Groups events received in each period into a list, emitted on the scheduler at the end
+	 * of the period. Lists are emitted also for periods without events.
+	 *
+	 * @param source    the source.
+	 * @param period    the length of each window.
+	 * @param unit      the unit of the period.
+	 * @param scheduler the scheduler emitting the lists.
+	 * @return The publisher of lists.
+	 */
+	public static <T> Publisher<List<T>> window(final Publisher<T> source, final long period,
+												final TimeUnit unit, final ScheduledExecutorService scheduler) {
+		return subscriber -> source.subscribe(new TimeWindow<>(subscriber, period, unit, scheduler));
+	}
+
+	/**
+	 * Emits the latest event received in each period on the scheduler at the end of the period.
+	 * Nothing is emitted for periods without events.
+	 *
+	 * @param source    the source.
+	 * @param period    the sampling period.
+	 * @param unit      the unit of the period.
+	 * @param scheduler the scheduler emitting the samples.
+	 * @return The publisher of samples.
+	 */
+	public static <T> Publisher<T> sample(final Publisher<T> source, final long period,
+										  final TimeUnit unit, final ScheduledExecutorService scheduler) {
+		return subscriber -> source.subscribe(new Sample<>(subscriber, period, unit, scheduler));
+	}
+
+	/**
+	 * Adds n to the demand, capping at {@link Long#MAX_VALUE} which means unbounded.
+	 */
+	private static void addDemand(final AtomicLong requested, final long n) {
+		long current, updated;
+		do {
+			current = requested.get();
+			if (current == Long.MAX_VALUE)
+				return;
+			updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+		} while (!requested.compareAndSet(current, updated));
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "EventDelivery-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static final class CountWindow<T> implements Subscriber<T>, Subscription {
+		private final Subscriber<? super List<T>> downstream;
+		private final int size;
+		private Subscription upstream;
+		private List<T> buffer;
+
+		private CountWindow(final Subscriber<? super List<T>> downstream, final int size) {
+			this.downstream = downstream;
+			this.size = size;
+		}
+
+		@Override
+		public void onSubscribe(final Subscription subscription) {
+			upstream = subscription;
+			downstream.onSubscribe(this);
+		}
+
+		@Override
+		public void onNext(final T event) {
+			if (buffer == null)
+				buffer = new ArrayList<>(size);
+			buffer.add(event);
+			if (buffer.size() == size) {
+				final List<T> window = buffer;
+				buffer = null;
+				downstream.onNext(window);
+			}
+		}
+
+		@Override
+		public void onError(final Throwable error) {
+			buffer = null;
+			downstream.onError(error);
+		}
+
+		@Override
+		public void onComplete() {
+			// The demand for a partial window was not used up, so it may be emitted.
+			final List<T> window = buffer;
+			buffer = null;
+			if (window != null)
+				downstream.onNext(window);
+			downstream.onComplete();
+		}
+
+		@Override
+		public void request(final long n) {
+			// Non-positive requests are passed on, so that the source signals the error.
+			if (n <= 0 || n > Long.MAX_VALUE / size)
+				upstream.request(n <= 0 ? n : Long.MAX_VALUE);
+			else
+				upstream.request(n * size);
+		}
+
+		@Override
+		public void cancel() {
+			upstream.cancel();
+		}
+	}
+
+	/**
+	 * A base of the timed operators. The source is requested without bounds, and downstream
+	 * signals from the scheduler and from the source are serialized with a lock.
+	 */
+	private static abstract class Timed<T, R> implements Subscriber<T>, Subscription, Runnable {
+		private final Subscriber<? super R> downstream;
+		private final long period;
+		private final TimeUnit unit;
+		private final ScheduledExecutorService scheduler;
+		private final AtomicLong requested = new AtomicLong();
+		private Subscription upstream;
+		private ScheduledFuture<?> task;
+		/** Set once the downstream has been terminated or has cancelled, guarded by this. */
+		private boolean done;
+
+		Timed(final Subscriber<? super R> downstream, final long period, final TimeUnit unit,
+			  final ScheduledExecutorService scheduler) {
+			if (period <= 0)
+				throw new IllegalArgumentException("Invalid period: " + period);
+			this.downstream = downstream;
+			this.period = period;
+			this.unit = unit;
+			this.scheduler = scheduler;
+		}
+
+		@Override
+		public final void onSubscribe(final Subscription subscription) {
+			upstream = subscription;
+			downstream.onSubscribe(this);
+			synchronized (this) {
+				if (!done)
+					task = scheduler.scheduleAtFixedRate(this, period, period, unit);
+			}
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		/**
+		 * Takes the value to emit at the end of a period, or null to emit nothing.
+		 */
+		abstract R take();
+
+		@Override
+		public final void run() {
+			final R value = take();
+			synchronized (this) {
+				if (done || value == null)
+					return;
+				if (requested.get() == 0)
+					// No demand, the value is dropped.
+					return;
+				if (requested.get() != Long.MAX_VALUE)
+					requested.decrementAndGet();
+				downstream.onNext(value);
+			}
+		}
+
+		@Override
+		public final void onError(final Throwable error) {
+			synchronized (this) {
+				if (done)
+					return;
+				terminate();
+				downstream.onError(error);
+			}
+		}
+
+		@Override
+		public final void onComplete() {
+			// The events received in the last period are emitted, if requested.
+			run();
+			synchronized (this) {
+				if (done)
+					return;
+				terminate();
+				downstream.onComplete();
+			}
+		}
+
+		@Override
+		public final void request(final long n) {
+			if (n <= 0) {
+				cancel();
+				synchronized (this) {
+					// Rule 3.9.
+					downstream.onError(new IllegalArgumentException("Non-positive request: " + n));
+				}
+				return;
+			}
+			addDemand(requested, n);
+		}
+
+		@Override
+		public final void cancel() {
+			synchronized (this) {
+				if (done)
+					return;
+				terminate();
+			}
+			upstream.cancel();
+		}
+
+		private void terminate() {
+			done = true;
+			if (task != null)
+				task.cancel(false);
+		}
+	}
+
+	private static final class TimeWindow<T> extends Timed<T, List<T>> {
+		/** Guards the buffer, so that the source is not blocked while a window is emitted. */
+		private final Object lock = new Object();
+		private List<T> buffer = new ArrayList<>();
+
+		private TimeWindow(final Subscriber<? super List<T>> downstream, final long period,
+						   final TimeUnit unit, final ScheduledExecutorService scheduler) {
+			super(downstream, period, unit, scheduler);
+		}
+
+		@Override
+		public void onNext(final T event) {
+			synchronized (lock) {
+				buffer.add(event);
+			}
+		}
+
+		@Override
+		List<T> take() {
+			synchronized (lock) {
+				final List<T> window = buffer;
+				if (window.isEmpty())
+					return Collections.emptyList();
+				buffer = new ArrayList<>(window.size());
+				return window;
+			}
+		}
+	}
+
+	private static final class Sample<T> extends Timed<T, T> {
+		private final AtomicReference<T> latest = new AtomicReference<>();
+
+		private Sample(final Subscriber<? super T> downstream, final long period,
+					   final TimeUnit unit, final ScheduledExecutorService scheduler) {
+			super(downstream, period, unit, scheduler);
+		}
+
+		@Override
+		public void onNext(final T event) {
+			latest.set(event);
+		}
+
+		@Override
+		T take() {
+			return latest.getAndSet(null);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.trace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A tracing backend keeping completed sections in memory, to be checked in tests and
+ * benchmarks on the JVM.
+ */
+public class RecordingBackend implements Tracing.Backend {
+	/** The depth of async sections, which are not nested. */
+	public static final int ASYNC_DEPTH = -1;
+
+	/**
+	 * A completed trace section.
+	 */
+	public static final class Span {
+		private final String name;
+		private final String threadName;
+		private final int depth;
+		private final long startNanos;
+		private final long endNanos;
+
+		private Span(final String name, final String threadName, final int depth,
+					 final long startNanos, final long endNanos) {
+			this.name = name;
+			this.threadName = threadName;
+			this.depth = depth;
+			this.startNanos = startNanos;
+			this.endNanos = endNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getThreadName() {
+			return threadName;
+		}
+
+		/**
+		 * Returns the number of sections this one was nested in, 0 for top level sections,
+		 * or {@link #ASYNC_DEPTH} for async sections. The thread of an async section
+		 * is the one it ended on.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		public long getStartNanos() {
+			return startNanos;
+		}
+
+		public long getEndNanos() {
+			return endNanos;
+		}
+
+		public long getDurationNanos() {
+			return endNanos - startNanos;
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + threadName + ", depth " + depth + "): " + getDurationNanos() + " ns";
+		}
+	}
+
+	private static final class OpenSection {
+		private final String name;
+		private final long startNanos;
+
+		private OpenSection(final String name, final long startNanos) {
+			this.name = name;
+			this.startNanos = startNanos;
+		}
+	}
+
+	private final ThreadLocal<Deque<OpenSection>> openSections = new ThreadLocal<Deque<OpenSection>>() {
+		@Override
+		protected Deque<OpenSection> initialValue() {
+			return new ArrayDeque<>();
+		}
+	};
+	private final List<Span> spans = new ArrayList<>();
+	private final Map<String, Long> openAsyncSections = new HashMap<>();
+
+	@Override
+	public void beginSection(final String name) {
+		openSections.get().push(new OpenSection(name, System.nanoTime()));
+	}
+
+	@Override
+	public void endSection() {
+		final long end = System.nanoTime();
+		final Deque<OpenSection> open = openSections.get();
+		final OpenSection section = open.poll();
+		if (section == null)
+			throw new IllegalStateException("No section begun on " + Thread.currentThread().getName());
+
+		final Span span = new Span(section.name, Thread.currentThread().getName(),
+				open.size(), section.startNanos, end);
+		synchronized (spans) {
+			spans.add(span);
+		}
+	}
+
+	@Override
+	public void beginAsyncSection(final String name, final int cookie) {
+		final long start = System.nanoTime();
+		synchronized (spans) {
+			openAsyncSections.put(name + '#' + cookie, start);
+		}
+	}
+
+	@Override
+	public void endAsyncSection(final String name, final int cookie) {
+		final long end = System.nanoTime();
+		synchronized (spans) {
+			final Long start = openAsyncSections.remove(name + '#' + cookie);
+			if (start == null)
+				throw new IllegalStateException("No async section " + name + " with cookie " + cookie);
+			spans.add(new Span(name, Thread.currentThread().getName(), ASYNC_DEPTH, start, end));
+		}
+	}
+
+	/**
+	 * Returns all completed sections, in the order they were ended.
+	 */
+	public List<Span> getSpans() {
+		synchronized (spans) {
+			return Collections.unmodifiableList(new ArrayList<>(spans));
+		}
+	}
+
+	/**
+	 * Returns the completed sections with the given name.
+	 */
+	public List<Span> getSpans(final String name) {
+		final List<Span> result = new ArrayList<>();
+		synchronized (spans) {
+			for (final Span span : spans) {
+				if (span.name.equals(name))
+					result.add(span);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of sections begun on the current thread and not ended yet.
+	 */
+	public int getOpenSectionCount() {
+		return openSections.get().size();
+	}
+
+	/**
+	 * Returns the number of async sections begun and not ended yet.
+	 */
+	public int getOpenAsyncSectionCount() {
+		synchronized (spans) {
+			return openAsyncSections.size();
+		}
+	}
+
+	/**
+	 * Removes all completed sections.
+	 */
+	public void clear() {
+		synchronized (spans) {
+			spans.clear();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.trace;
+
+/**
+ * A facade for tracing named sections of code. Without a backend, tracing costs a single
+ * read of a static field. On Android the backend writes sections to the system trace, on
+ * the JVM a {@link RecordingBackend} may be used to check the sections in tests and benchmarks.
+ * <p>
+ * Sections are nested and must be ended on the thread they were begun, in reverse order:
+ * <pre>
+ * Tracing.beginSection("DevicesLiveData.applyFilter");
+ * try {
+ *     ...
+ * } finally {
+ *     Tracing.endSection();
+ * }
+ * </pre>
+ * Sections which begin and end on different threads or in different methods, for example
+ * phases of a connection, are traced as async sections identified by a cookie.
+ * Section names should be constant strings, so that no allocation is needed to trace them.
+ */
+public final class Tracing {
+	/**
+	 * The backend receiving trace sections.
+	 */
+	public interface Backend {
+		/**
+		 * Begins a section on the current thread.
+		 *
+		 * @param name the name of the section.
+		 */
+		void beginSection(String name);
+
+		/**
+		 * Ends the last section begun on the current thread.
+		 */
+		void endSection();
+
+		/**
+		 * Begins a section that may end on another thread.
+		 *
+		 * @param name   the name of the section.
+		 * @param cookie the identifier of the section, unique among sections with the same name.
+		 */
+		void beginAsyncSection(String name, int cookie);
+
+		/**
+		 * Ends the section begun with the same name and cookie.
+		 */
+		void endAsyncSection(String name, int cookie);
+	}
+
+	private static volatile Backend backend;
+
+	private Tracing() {
+		// empty
+	}
+
+	/**
+	 * Sets the backend. Sections begun before the backend was changed must not be ended after,
+	 * so this should be called at startup, or in tests before the code under test is called.
+	 *
+	 * @param backend the new backend, or null to disable tracing.
+	 */
+	public static void setBackend(final Backend backend) {
+		Tracing.backend = backend;
+	}
+
+	public static boolean isEnabled() {
+		return backend != null;
+	}
+
+	/**
+	 * Begins a section on the current thread.
+	 *
+	 * @param name the name of the section, preferably a constant.
+	 */
+	public static void beginSection(final String name) {
+		final Backend backend = Tracing.backend;
+		if (backend != null)
+			backend.beginSection(name);
+	}
+
+	/**
+	 * Ends the last section begun on the current thread.
+	 */
+	public static void endSection() {
+		final Backend backend = Tracing.backend;
+		if (backend != null)
+			backend.endSection();
+	}
+
+	/**
+	 * Begins a section that may end on another thread, e.g. a phase of a connection.
+	 *
+	 * @param name   the name of the section, preferably a constant.
+	 * @param cookie the identifier of the section, unique among sections with the same name.
+	 */
+	public static void beginAsyncSection(final String name, final int cookie) {
+		final Backend backend = Tracing.backend;
+		if (backend != null)
+			backend.beginAsyncSection(name, cookie);
+	}
+
+	/**
+	 * Ends the section begun with the same name and cookie.
+	 */
+	public static void endAsyncSection(final String name, final int cookie) {
+		final Backend backend = Tracing.backend;
+		if (backend != null)
+			backend.endAsyncSection(name, cookie);
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceRegistryTest {
+	private static final UUID SERVICE_UUID = UUID.fromString("00001523-1212-efde-1523-785feabcd123");
+
+	@Test
+	public void levelChangeWithinBatchIsReported() {
+		final DeviceRegistry<DeviceRecord> registry = new DeviceRegistry<>(new DeviceFilter(SERVICE_UUID, -50));
+		final DeviceRecord device = new DeviceRecord(1);
+		registry.add(device);
+		device.sample(-100, 0);
+		assertEquals(1, registry.applyFilter().getAdded().size());
+
+		// Many samples between two updates, the last two on the same level.
+		for (int i = 1; i <= 50; ++i)
+			device.sample(-30, i);
+		assertEquals(RssiModel.getLevel(RssiModel.getSignalPercent(-30)), device.getRssiModel().getLevel());
+
+		assertEquals(1, registry.applyFilter().getChanged().size());
+		assertTrue(registry.applyFilter().getChanged().isEmpty());
+	}
+
+	@Test
+	public void unchangedLevelIsNotReported() {
+		final DeviceRegistry<DeviceRecord> registry = new DeviceRegistry<>(new DeviceFilter(SERVICE_UUID, -50));
+		final DeviceRecord device = new DeviceRecord(1);
+		registry.add(device);
+		device.sample(-60, 0);
+		registry.applyFilter();
+
+		for (int i = 1; i <= 10; ++i)
+			device.sample(i % 2 == 0 ? -59 : -61, i);
+
+		assertTrue(registry.applyFilter().getChanged().isEmpty());
+	}
+
+	@Test
+	public void searchChecksOnlyChangedDevices() {
+		final DeviceRegistry<DeviceRecord> registry = new DeviceRegistry<>(new DeviceFilter(SERVICE_UUID, -50));
+		final String[] names = { "Blinky", "Blinky 2", "Thingy", "Bike", "Blinky 3", "Tag" };
+		for (int i = 0; i < names.length; ++i) {
+			final DeviceRecord device = new DeviceRecord(i + 1);
+			device.update(-60, 0, advertisingData(names[i]));
+			registry.add(device);
+		}
+		registry.applyFilter();
+
+		final SearchIndex search = registry.getFilter().getSearch();
+		search.setQuery("b");
+		assertEquals(SearchIndex.ALL_CHANGED, search.getChangedCount());
+		registry.applySearch();
+
+		// "Bike" stops matching.
+		search.setQuery("bli");
+		assertEquals(1, search.getChangedCount());
+		ChangeSet<DeviceRecord> changes = registry.applySearch();
+		assertEquals(Arrays.asList("Bike"), names(changes.getRemoved()));
+		assertTrue(changes.getAdded().isEmpty());
+		assertEquals(Arrays.asList("Blinky", "Blinky 2", "Blinky 3"), names(changes.getDevices()));
+
+		search.setQuery("blinky 2");
+		changes = registry.applySearch();
+		assertEquals(Arrays.asList("Blinky 2"), names(changes.getDevices()));
+
+		// Devices added back are merged in the order of discovery.
+		search.setQuery("blinky");
+		changes = registry.applySearch();
+		assertEquals(2, changes.getAdded().size());
+		assertEquals(Arrays.asList("Blinky", "Blinky 2", "Blinky 3"), names(changes.getDevices()));
+
+		search.setQuery("blinky");
+		assertEquals(0, search.getChangedCount());
+		assertTrue(registry.applySearch().isEmpty());
+
+		// The result equals applying the filter to all devices.
+		search.setQuery("y");
+		registry.applySearch();
+		final List<DeviceRecord> incremental = registry.getFilteredDevices();
+		assertTrue(registry.applyFilter().isEmpty());
+		assertEquals(incremental, registry.getFilteredDevices());
+		assertFalse(incremental.isEmpty());
+	}
+
+	@Test
+	public void changesAreAppliedToChangedDevicesOnly() {
+		final DeviceFilter filter = new DeviceFilter(SERVICE_UUID, -50);
+		filter.setNearbyOnly(true);
+		final DeviceRegistry<DeviceRecord> registry = new DeviceRegistry<>(filter);
+		final DeviceRecord[] devices = new DeviceRecord[4];
+		for (int i = 0; i < devices.length; ++i) {
+			devices[i] = new DeviceRecord(i + 1);
+			devices[i].update(i % 2 == 0 ? -40 : -80, 0, advertisingData("Device " + i));
+			registry.add(devices[i]);
+		}
+		ChangeSet<DeviceRecord> changes = registry.applyChanges();
+		assertEquals(Arrays.asList(devices[0], devices[2]), changes.getDevices());
+
+		// A device not marked as changed is not checked.
+		for (int i = 1; i <= 10; ++i)
+			devices[1].sample(-30, i);
+		changes = registry.applyChanges();
+		assertTrue(changes.isEmpty());
+		final List<DeviceRecord> unchanged = registry.getFilteredDevices();
+
+		// Devices updated without joining nor leaving the list keep the same list.
+		devices[0].sample(-41, 11);
+		registry.changed(devices[0]);
+		assertTrue(registry.applyChanges().isEmpty());
+		assertSame(unchanged, registry.getFilteredDevices());
+
+		registry.changed(devices[1]);
+		for (int i = 12; i <= 30; ++i)
+			devices[2].sample(-90, i);
+		registry.changed(devices[2]);
+		changes = registry.applyChanges();
+		assertEquals(Arrays.asList(devices[1]), changes.getAdded());
+		assertEquals(Arrays.asList(devices[2]), changes.getRemoved());
+		assertEquals(Arrays.asList(devices[0], devices[1]), changes.getDevices());
+
+		// The result equals applying the filter to all devices.
+		assertTrue(registry.applyFilter().isEmpty());
+		assertEquals(changes.getDevices(), registry.getFilteredDevices());
+	}
+
+	private static byte[] advertisingData(final String name) {
+		final byte[] bytes = name.getBytes(Charset.forName("UTF-8"));
+		final byte[] data = new byte[bytes.length + 2];
+		data[0] = (byte) (bytes.length + 1);
+		data[1] = 0x09; // Complete Local Name
+		System.arraycopy(bytes, 0, data, 2, bytes.length);
+		return data;
+	}
+
+	private static List<String> names(final List<DeviceRecord> devices) {
+		final List<String> names = new ArrayList<>();
+		for (final DeviceRecord device : devices)
+			names.add(device.getName());
+		return names;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+	private static final long ADDRESS = 0x0102030405L;
+	private static final long MILLISECOND = 1_000_000L;
+	private static final long REPORT_DELAY = 500 * MILLISECOND;
+
+	@Test
+	public void batchedChattyAdvertiserIsSampled() {
+		final RateLimiter limiter = new RateLimiter(10, 20, 4);
+		// 50 Hz advertiser reported every 500 ms, for 60 seconds.
+		final int perBatch = 25;
+		final int batches = 120;
+		int ingested = 0;
+		for (int i = 1; i <= batches; ++i) {
+			if (limiter.tryAcquire(ADDRESS, i * REPORT_DELAY, false, perBatch))
+				ingested += perBatch;
+		}
+
+		assertEquals(batches * perBatch - ingested, limiter.getDropped(ADDRESS));
+		// 10 advertisements per second and the burst, give or take one batch.
+		assertTrue("Ingested " + ingested, ingested <= 10 * 60 + 20 + perBatch);
+		assertTrue("Ingested " + ingested, ingested >= 10 * 60 - perBatch);
+	}
+
+	@Test
+	public void batchedAdvertiserBelowLimitIsIngested() {
+		final RateLimiter limiter = new RateLimiter(10, 20, 4);
+		// 8 Hz advertiser reported every 500 ms.
+		for (int i = 1; i <= 120; ++i)
+			assertTrue(limiter.tryAcquire(ADDRESS, i * REPORT_DELAY, false, 4));
+		assertEquals(0, limiter.getTotalDropped());
+	}
+
+	@Test
+	public void boostedAdvertiserGetsHigherLimit() {
+		final RateLimiter limiter = new RateLimiter(10, 20, 4);
+		// 20 Hz advertiser, limited unless boosted.
+		for (int i = 1; i <= 120; ++i)
+			assertTrue(limiter.tryAcquire(ADDRESS, i * REPORT_DELAY, true, 10));
+		assertEquals(0, limiter.getTotalDropped());
+
+		final RateLimiter unboosted = new RateLimiter(10, 20, 4);
+		for (int i = 1; i <= 120; ++i)
+			unboosted.tryAcquire(ADDRESS, i * REPORT_DELAY, false, 10);
+		assertTrue(unboosted.getTotalDropped() > 0);
+	}
+
+	@Test
+	public void singleAdvertisementsAreLimited() {
+		final RateLimiter limiter = new RateLimiter(10, 20, 4);
+		int ingested = 0;
+		// 50 Hz advertiser reported one by one, for 10 seconds.
+		for (int i = 1; i <= 500; ++i) {
+			if (limiter.tryAcquire(ADDRESS, i * 20 * MILLISECOND, false))
+				ingested++;
+		}
+		assertTrue("Ingested " + ingested, ingested >= 100 && ingested <= 121);
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.led;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static no.nordicsemi.android.blinky.core.led.LedIntentTracker.NO_INTENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the LED logic of BlinkyManager with a request queue executing the writes
+ * one by one, as the BLE library does.
+ */
+public class LedControllerTest {
+	private final Queue<int[]> queue = new ArrayDeque<>();
+	private final List<String> shown = new ArrayList<>();
+	private int writes;
+	private boolean ledOn;
+
+	private final LedController controller = new LedController((intentId, on) -> {
+		writes++;
+		queue.add(new int[] { intentId, on ? 1 : 0 });
+	}, new LedController.Listener() {
+		@Override
+		public void onLedStateReceived(final boolean on, final int intentId, final boolean latest) {
+			if (latest)
+				shown.add((on ? "ON" : "OFF") + "#" + intentId);
+		}
+
+		@Override
+		public void onLedWriteFailed(final int intentId, final boolean confirmedOn, final boolean latest) {
+			if (latest)
+				shown.add((confirmedOn ? "ON" : "OFF") + "#" + intentId);
+		}
+	});
+
+	@Test
+	public void toggleIsWrittenAndConfirmed() {
+		read(false);
+		final int intentId = controller.turnLed(true);
+		assertNotEquals(NO_INTENT, intentId);
+		// The switch showing the requested state calls back with the same value.
+		assertEquals(NO_INTENT, controller.turnLed(true));
+		executeAll(true);
+
+		assertEquals(1, writes);
+		assertTrue(ledOn);
+		assertEquals("ON#" + intentId, last());
+		assertEquals(NO_INTENT, controller.turnLed(true));
+		assertEquals(1, writes);
+	}
+
+	@Test
+	public void rapidTogglesShowOnlyTheLastConfirmation() {
+		read(false);
+		controller.turnLed(true);
+		controller.turnLed(false);
+		final int last = controller.turnLed(true);
+		executeAll(true);
+
+		assertEquals(3, writes);
+		assertEquals(2, shown.size());
+		assertEquals("ON#" + last, last());
+	}
+
+	@Test
+	public void failedWriteShowsConfirmedState() {
+		read(false);
+		final int intentId = controller.turnLed(true);
+		executeAll(false);
+
+		assertFalse(ledOn);
+		assertEquals("OFF#" + intentId, last());
+		// The state may be requested again.
+		assertNotEquals(NO_INTENT, controller.turnLed(true));
+		executeAll(true);
+		assertTrue(ledOn);
+		assertEquals(2, writes);
+	}
+
+	@Test
+	public void readAfterReconnectionResynchronizes() {
+		read(false);
+		controller.turnLed(true);
+		final int last = controller.turnLed(false);
+
+		// The queue fails the writes after the disconnection, the confirmed state is shown.
+		controller.onDisconnected();
+		executeAll(false);
+		assertEquals("OFF#" + last, last());
+		assertEquals(0, controller.getIntents().getPendingWrites());
+
+		read(true);
+		assertEquals("ON#" + NO_INTENT, last());
+		assertEquals(NO_INTENT, controller.turnLed(true));
+		assertNotEquals(NO_INTENT, controller.turnLed(false));
+		assertEquals(1, controller.getIntents().getPendingWrites());
+	}
+
+	private void read(final boolean on) {
+		ledOn = on;
+		controller.onStateReceived(on);
+	}
+
+	private void executeAll(final boolean success) {
+		int[] write;
+		while ((write = queue.poll()) != null) {
+			final int intentId = write[0];
+			if (success) {
+				controller.onWriteStarted(intentId);
+				ledOn = write[1] == 1;
+				controller.onStateReceived(ledOn);
+			}
+			controller.onWriteFinished(intentId, success);
+		}
+	}
+
+	private String last() {
+		return shown.get(shown.size() - 1);
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.core.led;
+
+import org.junit.Test;
+
+import static no.nordicsemi.android.blinky.core.led.LedIntentTracker.NO_INTENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LedIntentTrackerTest {
+
+	@Test
+	public void toggleIssuesOneWrite() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		assertTrue(tracker.onStateReceived(false));
+
+		assertNotEquals(NO_INTENT, tracker.request(true));
+		assertEquals(NO_INTENT, tracker.request(true));
+		assertEquals(1, tracker.getWriteCount());
+	}
+
+	@Test
+	public void confirmationIssuesNoWrite() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		final int intentId = tracker.request(true);
+		write(tracker, intentId, true);
+
+		// The control showing the confirmed state requests it again.
+		assertEquals(NO_INTENT, tracker.request(true));
+		assertEquals(1, tracker.getWriteCount());
+		assertEquals(0, tracker.getPendingWrites());
+	}
+
+	@Test
+	public void readIssuesNoWrite() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		assertTrue(tracker.onStateReceived(true));
+
+		assertEquals(NO_INTENT, tracker.request(true));
+		assertEquals(0, tracker.getWriteCount());
+	}
+
+	@Test
+	public void eachToggleIssuesOneWrite() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		for (int i = 0; i < 10; ++i) {
+			final boolean on = i % 2 == 0;
+			final int intentId = tracker.request(on);
+			assertNotEquals(NO_INTENT, intentId);
+			write(tracker, intentId, on);
+			assertEquals(NO_INTENT, tracker.request(on));
+			assertEquals(i + 1, tracker.getWriteCount());
+		}
+	}
+
+	@Test
+	public void olderConfirmationIsNotLatest() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		final int first = tracker.request(true);
+		final int second = tracker.request(false);
+
+		tracker.onWriteStarted(first);
+		assertFalse(tracker.onStateReceived(true));
+		tracker.onWriteFinished(first, true);
+		assertFalse(tracker.isRequestedOn());
+
+		tracker.onWriteStarted(second);
+		assertTrue(tracker.onStateReceived(false));
+		tracker.onWriteFinished(second, true);
+		assertEquals(2, tracker.getWriteCount());
+	}
+
+	@Test
+	public void readWhileWritePendingIsNotLatest() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		tracker.request(true);
+
+		assertFalse(tracker.onStateReceived(false));
+		assertTrue(tracker.isRequestedOn());
+	}
+
+	@Test
+	public void failedWriteRequestsConfirmedState() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		tracker.onStateReceived(false);
+		final int intentId = tracker.request(true);
+
+		tracker.onWriteStarted(intentId);
+		assertTrue(tracker.onWriteFinished(intentId, false));
+		assertFalse(tracker.isRequestedOn());
+		assertEquals(0, tracker.getPendingWrites());
+		assertNotEquals(NO_INTENT, tracker.request(true));
+	}
+
+	@Test
+	public void readAfterReconnectionResynchronizes() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		tracker.onStateReceived(false);
+		final int first = tracker.request(true);
+		final int second = tracker.request(false);
+		final int third = tracker.request(true);
+
+		// The request queue fails the queued writes after the disconnection.
+		tracker.onDisconnected();
+		tracker.onWriteFinished(first, false);
+		tracker.onWriteFinished(second, false);
+		tracker.onWriteFinished(third, false);
+		assertEquals(0, tracker.getPendingWrites());
+
+		// The initial read on the next connection is the latest state.
+		assertTrue(tracker.onStateReceived(false));
+		assertFalse(tracker.isRequestedOn());
+		assertEquals(NO_INTENT, tracker.request(false));
+		assertNotEquals(NO_INTENT, tracker.request(true));
+		assertEquals(1, tracker.getPendingWrites());
+	}
+
+	@Test
+	public void writeFailedAfterReconnectionIsIgnored() {
+		final LedIntentTracker tracker = new LedIntentTracker();
+		final int old = tracker.request(true);
+		tracker.onDisconnected();
+		final int current = tracker.request(false);
+
+		tracker.onWriteFinished(old, false);
+		assertEquals(1, tracker.getPendingWrites());
+		tracker.onWriteStarted(current);
+		assertTrue(tracker.onStateReceived(false));
+		tracker.onWriteFinished(current, true);
+		assertEquals(0, tracker.getPendingWrites());
+	}
+
+	private static void write(final LedIntentTracker tracker, final int intentId, final boolean on) {
+		tracker.onWriteStarted(intentId);
+		assertTrue(tracker.onStateReceived(on));
+		tracker.onWriteFinished(intentId, true);
+	}
+}